@@ -1,6 +1,8 @@
 package com.orgzly.android
 
+import com.orgzly.android.db.*
 import com.orgzly.android.espresso.*
+import com.orgzly.android.git.GitFileSynchronizerTest
 import com.orgzly.android.misc.*
 import com.orgzly.android.query.*
 import com.orgzly.android.reminders.*
@@ -38,27 +40,52 @@ import org.junit.runners.Suite
         ShareActivityTest::class,
         SyncingTest::class,
 
+        AgendaOccurrenceTest::class,
+        BookNotesPagingSourceTest::class,
+        NestedSetGapsTest::class,
+        NoteAncestorsTrackerTest::class,
+        NoteTagTest::class,
+        NotesFtsTest::class,
+        OrgTimeIdCacheTest::class,
+
+        GitFileSynchronizerTest::class,
+
+        AgendaQuerySpeedTest::class,
+        BookExportSpeedTest::class,
+        BookIncrementalLoadTest::class,
+        BookLoadSpeedTest::class,
         BookNameTest::class,
         BookParsingTest::class,
         CreatedAtPropertyTest::class,
         DataTest::class,
+        NoteIndexSpeedTest::class,
+        NoteQuerySpeedTest::class,
+        NoteSearchSpeedTest::class,
+        QueryBuildSpeedTest::class,
         SettingsTest::class,
         StateChangeTest::class,
         StructureTest::class,
         UriTest::class,
 
+        AgendaQueryTest::class,
+        QueryProfilerTest::class,
+        QueryRefinementTest::class,
         QueryTest::class,
         QueryTokenizerTest::class,
         QueryUtilsTest::class,
+        SqlQueryCacheTest::class,
 
         NoteRemindersTest::class,
 
+        ContentRepoTest::class,
         DataRepositoryTest::class,
         DirectoryRepoTest::class,
+        DropboxClientTest::class,
         DropboxRepoTest::class,
         LocalDbRepoTest::class,
         RepoFactoryTest::class,
         SyncTest::class,
+        WebdavRepoTest::class,
 
         ImageLoaderTest::class,
 
@@ -69,6 +96,8 @@ import org.junit.runners.Suite
 
         AgendaUtilsTest::class,
         EncodingDetectTest::class,
+        FileTransferSpeedTest::class,
+        FileTransferTest::class,
         MiscUtilsTest::class,
         OrgFormatterLinkTest::class,
         OrgFormatterMiscTest::class,
@@ -11,6 +11,8 @@ import android.os.Build;
 import com.orgzly.R;
 import com.orgzly.android.data.DataRepository;
 import com.orgzly.android.data.DbRepoBookRepository;
+import com.orgzly.android.data.DropboxListingRepository;
+import com.orgzly.android.data.logs.DatabaseAppLogsRepository;
 import com.orgzly.android.db.OrgzlyDatabase;
 import com.orgzly.android.prefs.AppPreferences;
 import com.orgzly.android.prefs.AppPreferencesValues;
@@ -50,7 +52,7 @@ public class OrgzlyTest {
 
     protected DataRepository dataRepository;
 
-    private OrgzlyDatabase database;
+    protected OrgzlyDatabase database;
 
     @Rule
     public GrantPermissionRule grantPermissionRule;
@@ -72,10 +74,12 @@ public class OrgzlyTest {
 
         localStorage = new LocalStorage(context);
 
-        RepoFactory repoFactory = new RepoFactory(context, dbRepoBookRepository);
+        RepoFactory repoFactory = new RepoFactory(
+                context, dbRepoBookRepository, new DropboxListingRepository(database));
 
         dataRepository = new DataRepository(
-                context, database, repoFactory, context.getResources(), localStorage);
+                context, database, repoFactory, context.getResources(), localStorage,
+                new DatabaseAppLogsRepository(database));
 
         testUtils = new TestUtils(dataRepository, dbRepoBookRepository);
 
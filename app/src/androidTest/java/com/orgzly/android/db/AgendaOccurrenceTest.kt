@@ -0,0 +1,112 @@
+package com.orgzly.android.db
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.db.entity.AgendaHorizon
+import com.orgzly.android.db.entity.AgendaOccurrence
+import com.orgzly.android.ui.TimeType
+import com.orgzly.android.ui.note.NotePayload
+import com.orgzly.org.datetime.OrgDateTime
+import com.orgzly.org.datetime.OrgInterval
+import com.orgzly.org.datetime.OrgRepeater
+import org.joda.time.DateTime
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class AgendaOccurrenceTest : OrgzlyTest() {
+    @Test
+    fun testRepeatedScheduledTime() {
+        testUtils.setupBook("book-a", "* Note A-01\nSCHEDULED: ${time(0, repeater = true)}\n")
+
+        assertEquals(
+                listOf(TimeType.SCHEDULED to day(0), TimeType.SCHEDULED to day(1), TimeType.SCHEDULED to day(2)),
+                occurrences("Note A-01", 3))
+    }
+
+    @Test
+    fun testOverdueDeadline() {
+        testUtils.setupBook("book-a", "* Note A-01\nDEADLINE: ${time(-2)}\n")
+
+        assertEquals(
+                listOf(TimeType.DEADLINE to AgendaOccurrence.OVERDUE),
+                occurrences("Note A-01", 3))
+    }
+
+    @Test
+    fun testEvents() {
+        testUtils.setupBook("book-a", "* Note A-01\n${time(1)} ${time(5)}\n")
+
+        assertEquals(
+                listOf(TimeType.EVENT to day(1)),
+                occurrences("Note A-01", 3))
+    }
+
+    @Test
+    fun testRefreshedForChangedNoteOnly() {
+        testUtils.setupBook("book-a", "* Note A-01\nSCHEDULED: ${time(1)}\n* Note A-02\nSCHEDULED: ${time(2)}\n")
+
+        dataRepository.getAgendaOccurrences(3)
+
+        assertTrue(database.agendaOccurrence().getStaleNoteIds().isEmpty())
+
+        val note = dataRepository.getLastNote("Note A-01")!!
+
+        dataRepository.updateNote(note.id, NotePayload("Note A-01", scheduled = time(0)))
+
+        assertEquals(listOf(note.id), database.agendaOccurrence().getStaleNoteIds())
+
+        assertEquals(listOf(TimeType.SCHEDULED to day(0)), occurrences("Note A-01", 3))
+        assertEquals(listOf(TimeType.SCHEDULED to day(2)), occurrences("Note A-02", 3))
+
+        assertTrue(database.agendaOccurrence().getStaleNoteIds().isEmpty())
+    }
+
+    @Test
+    fun testMoreDaysRequested() {
+        testUtils.setupBook("book-a", "* Note A-01\nSCHEDULED: ${time(5)}\n")
+
+        assertEquals(emptyList<Pair<TimeType, Long>>(), occurrences("Note A-01", 3))
+        assertEquals(listOf(TimeType.SCHEDULED to day(5)), occurrences("Note A-01", 7))
+        assertEquals(emptyList<Pair<TimeType, Long>>(), occurrences("Note A-01", 3))
+    }
+
+    @Test
+    fun testHorizonStored() {
+        testUtils.setupBook("book-a", "* Note A-01\nSCHEDULED: ${time(1)}\n")
+
+        dataRepository.getAgendaOccurrences(3)
+        dataRepository.getAgendaOccurrences(2)
+
+        assertEquals(AgendaHorizon(today = day(0), days = 3), database.agendaOccurrence().getHorizon())
+
+        dataRepository.updateTimestamps()
+
+        assertNull(database.agendaOccurrence().getHorizon())
+    }
+
+    private fun occurrences(title: String, days: Int): List<Pair<TimeType, Long>> {
+        val note = dataRepository.getLastNote(title)!!
+
+        return dataRepository.getAgendaOccurrences(days)
+                .filter { it.noteId == note.id }
+                .map { it.timeType to it.day }
+    }
+
+    private fun day(daysFromToday: Int): Long {
+        return DateTime.now().withTimeAtStartOfDay().plusDays(daysFromToday).millis
+    }
+
+    private fun time(daysFromToday: Int, repeater: Boolean = false): String {
+        return OrgDateTime.Builder()
+                .setDateTime(DateTime.now().plusDays(daysFromToday).withTimeAtStartOfDay().millis)
+                .setIsActive(true)
+                .apply {
+                    if (repeater) {
+                        setRepeater(OrgRepeater(OrgRepeater.Type.CATCH_UP, 1, OrgInterval.Unit.DAY))
+                    }
+                }
+                .build()
+                .toString()
+    }
+}
@@ -0,0 +1,141 @@
+package com.orgzly.android.db
+
+import androidx.paging.PagingSource
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.db.dao.NoteViewDao
+import com.orgzly.android.db.entity.NoteView
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+
+class BookNotesPagingSourceTest : OrgzlyTest() {
+    private var bookId: Long = 0
+
+    private lateinit var visibleTitles: List<String>
+
+    @Before
+    @Throws(Exception::class)
+    override fun setUp() {
+        super.setUp()
+
+        val content = (1..100).joinToString("") { i ->
+            "* Note $i\n** Note $i.1\n*** Note $i.1.1\n"
+        }
+
+        bookId = testUtils.setupBook("book-a", content).book.id
+
+        /* Fold every third note, hiding its descendants. */
+        for (i in 1..100 step 3) {
+            dataRepository.toggleNoteFoldedState(dataRepository.getLastNote("Note $i")!!.id)
+        }
+
+        /* Fold some of their descendants too, some of them already hidden. */
+        for (i in 1..100 step 5) {
+            dataRepository.toggleNoteFoldedState(dataRepository.getLastNote("Note $i.1")!!.id)
+        }
+
+        visibleTitles = dataRepository.getNotes("book-a")
+                .filter { view -> dataRepository.getNoteAncestors(view.note.id).none { it.position.isFolded } }
+                .map { it.note.title }
+    }
+
+    @Test
+    fun testAppendingPagesReturnsAllVisibleNotes() {
+        val source = pagingSource()
+
+        val first = load(source, PagingSource.LoadParams.Refresh(null, PAGE_SIZE, true))
+
+        assertEquals(0, first.itemsBefore)
+        assertEquals(visibleTitles.size - PAGE_SIZE, first.itemsAfter)
+        assertNull(first.prevKey)
+
+        val titles = first.data.mapTo(mutableListOf()) { it.note.title }
+
+        var nextKey = first.nextKey
+
+        while (nextKey != null) {
+            val page = load(source, PagingSource.LoadParams.Append(nextKey, PAGE_SIZE, true))
+
+            page.data.mapTo(titles) { it.note.title }
+
+            nextKey = page.nextKey
+        }
+
+        assertEquals(visibleTitles, titles)
+    }
+
+    @Test
+    fun testRefreshFromPositionAndPrepend() {
+        val source = pagingSource()
+
+        val page = load(source, PagingSource.LoadParams.Refresh(BookNotesPagingSource.Key.Position(100), PAGE_SIZE, true))
+
+        assertEquals(100, page.itemsBefore)
+        assertEquals(visibleTitles.subList(100, 100 + PAGE_SIZE), page.data.map { it.note.title })
+
+        val before = load(source, PagingSource.LoadParams.Prepend(page.prevKey!!, PAGE_SIZE, true))
+
+        assertEquals(visibleTitles.subList(100 - PAGE_SIZE, 100), before.data.map { it.note.title })
+    }
+
+    @Test
+    fun testRefreshFromLft() {
+        val note = dataRepository.getLastNote(visibleTitles[150])!!
+
+        val page = load(pagingSource(), PagingSource.LoadParams.Refresh(BookNotesPagingSource.Key.Lft(note.position.lft), PAGE_SIZE, true))
+
+        assertEquals(150, page.itemsBefore)
+        assertEquals(visibleTitles.size - 150 - PAGE_SIZE, page.itemsAfter)
+        assertEquals(visibleTitles[150], page.data.first().note.title)
+    }
+
+    @Test
+    fun testRefreshFromHiddenNoteLft() {
+        val note = dataRepository.getLastNote("Note 4.1")!!
+
+        val page = load(pagingSource(), PagingSource.LoadParams.Refresh(BookNotesPagingSource.Key.Lft(note.position.lft), PAGE_SIZE, true))
+
+        val position = visibleTitles.indexOf("Note 5")
+
+        assertEquals(position, page.itemsBefore)
+        assertEquals(visibleTitles.subList(position, position + PAGE_SIZE), page.data.map { it.note.title })
+    }
+
+    @Test
+    fun testVisibleNotePosition() {
+        visibleTitles.forEachIndexed { i, title ->
+            assertEquals(i, dataRepository.getVisibleNotePosition(bookId, dataRepository.getLastNote(title)!!.id))
+        }
+
+        assertNull(dataRepository.getVisibleNotePosition(bookId, dataRepository.getLastNote("Note 1.1")!!.id))
+    }
+
+    @Test
+    fun testRefreshFromPositionPastEnd() {
+        val page = load(pagingSource(), PagingSource.LoadParams.Refresh(BookNotesPagingSource.Key.Position(10000), PAGE_SIZE, true))
+
+        assertEquals(visibleTitles.size - PAGE_SIZE, page.itemsBefore)
+        assertEquals(0, page.itemsAfter)
+        assertNull(page.nextKey)
+    }
+
+    private fun pagingSource(): PagingSource<BookNotesPagingSource.Key, NoteView> {
+        return dataRepository.getVisibleNotesPagingSource(bookId, NoteViewDao.Projection.LIST_ITEM)
+    }
+
+    private fun load(
+            source: PagingSource<BookNotesPagingSource.Key, NoteView>,
+            params: PagingSource.LoadParams<BookNotesPagingSource.Key>
+    ): PagingSource.LoadResult.Page<BookNotesPagingSource.Key, NoteView> {
+
+        return runBlocking {
+            source.load(params) as PagingSource.LoadResult.Page
+        }
+    }
+
+    companion object {
+        private const val PAGE_SIZE = 40
+    }
+}
@@ -0,0 +1,114 @@
+package com.orgzly.android.db
+
+import com.orgzly.android.BookFormat
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.ui.NotePlace
+import com.orgzly.android.ui.Place
+import com.orgzly.android.ui.note.NotePayload
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class NestedSetGapsTest : OrgzlyTest() {
+    @Test
+    fun testNewNoteDoesNotShiftFollowingNotes() {
+        val book = testUtils.setupBook("book-a", "* Note 1\n** Note 2\n* Note 3\n** Note 4\n* Note 5\n")
+
+        val positions = listOf("Note 3", "Note 4", "Note 5").map { getNote(it).position }
+
+        dataRepository.createNote(
+                NotePayload("New"), NotePlace(book.book.id, getNote("Note 1").id, Place.UNDER))
+
+        assertEquals(positions, listOf("Note 3", "Note 4", "Note 5").map { getNote(it).position })
+
+        assertEquals(
+                "* Note 1\n** Note 2\n** New\n* Note 3\n** Note 4\n* Note 5\n",
+                dataRepository.getBookContent("book-a", BookFormat.ORG))
+
+        assertValidNestedSet("book-a")
+    }
+
+    @Test
+    fun testRenumberingOnceGapIsExhausted() {
+        val book = testUtils.setupBook("book-a", "* Note 1\n** Note 2\n* Note 3\n")
+
+        for (i in 1..40) {
+            dataRepository.createNote(
+                    NotePayload("New $i"), NotePlace(book.book.id, getNote("Note 2").id, Place.ABOVE))
+        }
+
+        val expected = StringBuilder("* Note 1\n")
+        for (i in 1..40) {
+            expected.append("** New $i\n")
+        }
+        expected.append("** Note 2\n* Note 3\n")
+
+        assertEquals(expected.toString(), dataRepository.getBookContent("book-a", BookFormat.ORG))
+
+        assertValidNestedSet("book-a")
+    }
+
+    @Test
+    fun testMovingAndPasting() {
+        val book = testUtils.setupBook("book-a", "* Note 1\n** Note 2\n*** Note 3\n* Note 4\n")
+
+        for (i in 1..10) {
+            dataRepository.moveNote(book.book.id, setOf(getNote("Note 4").id), -1)
+            dataRepository.moveNote(book.book.id, setOf(getNote("Note 4").id), 1)
+        }
+
+        dataRepository.demoteNotes(setOf(getNote("Note 4").id))
+
+        val clipboard = NotesClipboard.create(dataRepository, setOf(getNote("Note 2").id))
+
+        for (i in 1..10) {
+            dataRepository.pasteNotes(clipboard, book.book.id, getNote("Note 4").id, Place.UNDER)
+        }
+
+        val expected = StringBuilder("* Note 1\n** Note 2\n*** Note 3\n** Note 4\n")
+        for (i in 1..10) {
+            expected.append("*** Note 2\n**** Note 3\n")
+        }
+
+        assertEquals(expected.toString(), dataRepository.getBookContent("book-a", BookFormat.ORG))
+
+        assertValidNestedSet("book-a")
+    }
+
+    @Test
+    fun testAppendingToBook() {
+        val book = testUtils.setupBook("book-a", "")
+
+        for (i in 1..10) {
+            dataRepository.createNote(NotePayload("Note $i"), NotePlace(book.book.id))
+        }
+
+        val root = dataRepository.getRootNode(book.book.id)!!
+
+        dataRepository.getNotes("book-a").forEach {
+            assertTrue(it.note.position.rgt < root.position.rgt)
+        }
+
+        assertValidNestedSet("book-a")
+    }
+
+    private fun getNote(title: String) = dataRepository.getLastNote(title)!!
+
+    /* Every note is within its parent and notes' lft and rgt values are all distinct. */
+    private fun assertValidNestedSet(bookName: String) {
+        val notes = dataRepository.getNotes(bookName).map { it.note }.associateBy { it.id }
+
+        val values = notes.values.flatMap { listOf(it.position.lft, it.position.rgt) }
+
+        assertEquals(values.size, values.toSet().size)
+
+        notes.values.forEach { note ->
+            assertTrue(note.position.lft < note.position.rgt)
+
+            notes[note.position.parentId]?.let { parent ->
+                assertTrue(parent.position.lft < note.position.lft)
+                assertTrue(note.position.rgt < parent.position.rgt)
+            }
+        }
+    }
+}
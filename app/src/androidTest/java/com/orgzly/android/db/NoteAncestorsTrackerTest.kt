@@ -0,0 +1,152 @@
+package com.orgzly.android.db
+
+import androidx.test.platform.app.InstrumentationRegistry
+import com.orgzly.R
+import com.orgzly.android.util.MiscUtils
+import com.orgzly.org.OrgFile
+import com.orgzly.org.parser.OrgNestedSetParserListener
+import com.orgzly.org.parser.OrgNodeInSet
+import com.orgzly.org.parser.OrgParser
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Compares parents and ancestors from [NoteAncestorsTracker] with the ones
+ * found by scanning all lft values between node's lft and rgt.
+ */
+class NoteAncestorsTrackerTest {
+    @Test
+    fun testGettingStartedBook() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+
+        val content = context.resources.openRawResource(R.raw.orgzly_getting_started).use {
+            MiscUtils.readStream(it)
+        }
+
+        assertSameAsRangeScan(content)
+    }
+
+    @Test
+    fun testAssetBooks() {
+        listOf("assets/org/markup-heavy-content.org", "assets/org/links-heavy-content.org").forEach {
+            val content = javaClass.classLoader!!.getResourceAsStream(it).use { stream ->
+                MiscUtils.readStream(stream)
+            }
+
+            assertSameAsRangeScan(content)
+        }
+    }
+
+    @Test
+    fun testEmptyBook() {
+        assertSameAsRangeScan("Preface only\n")
+    }
+
+    @Test
+    fun testLevelJumps() {
+        assertSameAsRangeScan("""
+            *** Note 1
+            * Note 2
+            **** Note 3
+            ** Note 4
+            ***** Note 5
+            *** Note 6
+            * Note 7
+            ** Note 8
+            *** Note 9
+            **** Note 10
+            ** Note 11
+        """.trimIndent())
+    }
+
+    @Test
+    fun testDeepBook() {
+        val content = (1..200).joinToString("\n") { "*".repeat(it) + " Note $it" }
+
+        assertSameAsRangeScan(content)
+    }
+
+    private fun assertSameAsRangeScan(content: String) {
+        val nodes = parse(content)
+
+        val expected = rangeScan(nodes)
+        val actual = tracker(nodes)
+
+        assertEquals(expected.first, actual.first)
+        assertEquals(expected.second, actual.second)
+    }
+
+    /** Returns parent per ID and sorted ancestor rows. */
+    private fun tracker(nodes: List<Node>): Pair<Map<Long, Long>, List<Pair<Long, Long>>> {
+        val parents = sortedMapOf<Long, Long>()
+        val ancestors = mutableListOf<Pair<Long, Long>>()
+
+        val tracker = NoteAncestorsTracker<Long>()
+
+        nodes.forEach { node ->
+            tracker.add(node.lft, node.id, node.id, { childId ->
+                parents[childId] = node.id
+            }, { descendantId ->
+                ancestors.add(Pair(descendantId, node.id))
+            })
+        }
+
+        tracker.removeRemaining().forEach { id ->
+            parents[id] = 0
+        }
+
+        return Pair(parents, ancestors.sortedWith(compareBy({ it.first }, { it.second })))
+    }
+
+    /** Implementation used before [NoteAncestorsTracker]. */
+    private fun rangeScan(nodes: List<Node>): Pair<Map<Long, Long>, List<Pair<Long, Long>>> {
+        val parents = sortedMapOf<Long, Long>()
+        val ancestors = mutableListOf<Pair<Long, Long>>()
+
+        val lft2id = HashMap<Long, Long>()
+
+        nodes.forEach { node ->
+            lft2id[node.lft] = node.id
+
+            for (index in node.lft + 1 until node.rgt) {
+                val descendantId = lft2id[index]
+                if (descendantId != null) {
+                    if (!parents.containsKey(descendantId)) {
+                        parents[descendantId] = node.id
+                    }
+
+                    ancestors.add(Pair(descendantId, node.id))
+                }
+            }
+        }
+
+        nodes.forEach { node ->
+            if (!parents.containsKey(node.id)) {
+                parents[node.id] = 0
+            }
+        }
+
+        return Pair(parents, ancestors.sortedWith(compareBy({ it.first }, { it.second })))
+    }
+
+    private fun parse(content: String): List<Node> {
+        val nodes = mutableListOf<Node>()
+
+        OrgParser.Builder()
+                .setInput(content)
+                .setListener(object : OrgNestedSetParserListener {
+                    override fun onNode(node: OrgNodeInSet) {
+                        nodes.add(Node(nodes.size + 1L, node.lft, node.rgt))
+                    }
+
+                    override fun onFile(file: OrgFile) {
+                    }
+                })
+                .build()
+                .parse()
+
+        return nodes
+    }
+
+    private data class Node(val id: Long, val lft: Long, val rgt: Long)
+}
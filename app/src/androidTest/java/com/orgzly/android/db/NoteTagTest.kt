@@ -0,0 +1,52 @@
+package com.orgzly.android.db
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.query.user.InternalQueryParser
+import com.orgzly.android.ui.note.NotePayload
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class NoteTagTest : OrgzlyTest() {
+    @Test
+    fun testTagsStoredOnLoad() {
+        testUtils.setupBook("book-a", "* Note A-01 :work:\n** Note A-02 :home:\n")
+
+        assertEquals(listOf("work" to false), tags("Note A-01"))
+        assertEquals(listOf("home" to false, "work" to true), tags("Note A-02"))
+    }
+
+    @Test
+    fun testTagsReplacedOnUpdate() {
+        testUtils.setupBook("book-a", "* Note A-01 :work:\n** Note A-02\n")
+
+        val note = dataRepository.getLastNote("Note A-01")!!
+
+        dataRepository.updateNote(note.id, NotePayload("Note A-01", tags = listOf("home", "errand")))
+
+        assertEquals(listOf("errand" to false, "home" to false), tags("Note A-01"))
+        assertEquals(listOf("errand" to true, "home" to true), tags("Note A-02"))
+        assertEquals(listOf("errand", "home"), dataRepository.selectAllTags())
+    }
+
+    @Test
+    fun testSearchMatchesWholeTag() {
+        testUtils.setupBook("book-a", "* Note A-01 :work:\n* Note A-02 :homework:\n** Note A-03\n")
+
+        assertEquals(listOf("Note A-01"), search("t.work"))
+        assertEquals(listOf("Note A-02", "Note A-03"), search("t.HOMEWORK"))
+        assertEquals(listOf("Note A-02"), search("tn.homework"))
+    }
+
+    private fun tags(title: String): List<Pair<String, Boolean>> {
+        val note = dataRepository.getLastNote(title)!!
+
+        return database.noteTag().get(note.id)
+                .map { it.tag to it.isInherited }
+                .sortedWith(compareBy({ it.second }, { it.first }))
+    }
+
+    private fun search(query: String): List<String> {
+        return dataRepository.selectNotesFromQuery(InternalQueryParser().parse(query))
+                .map { it.note.title }
+    }
+}
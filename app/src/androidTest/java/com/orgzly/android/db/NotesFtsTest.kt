@@ -0,0 +1,74 @@
+package com.orgzly.android.db
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.query.user.InternalQueryParser
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Unquoted words match beginnings of words in notes' text, not any substring.
+ * Quoted text is still matched as a substring.
+ */
+class NotesFtsTest : OrgzlyTest() {
+    @Test
+    fun testWordPrefix() {
+        testUtils.setupBook("book-a", "* Port\n* Portable\n* Import\n* Support\n")
+
+        assertEquals(listOf("Port", "Portable"), search("port"))
+    }
+
+    @Test
+    fun testQuotedTextIsSubstring() {
+        testUtils.setupBook("book-a", "* Port\n* Portable\n* Import\n* Support\n")
+
+        assertEquals(listOf("Import", "Port", "Portable", "Support"), search("\"port\""))
+    }
+
+    @Test
+    fun testContentAndTags() {
+        testUtils.setupBook("book-a", "* Note A-01\nPorting notes\n* Note A-02 :portable:\n* Note A-03\nImported\n")
+
+        assertEquals(listOf("Note A-01", "Note A-02"), search("port"))
+    }
+
+    @Test
+    fun testPhrase() {
+        testUtils.setupBook("book-a", "* Quick brown fox\n* Quick red brown fox\n* Very quick browser\n")
+
+        assertEquals(listOf("Quick brown fox", "Very quick browser"), search("quick.bro"))
+    }
+
+    @Test
+    fun testPunctuationSeparatesWords() {
+        testUtils.setupBook("book-a", "* See foo.bar\n* See foo-bar\n* See foobar\n")
+
+        assertEquals(listOf("See foo-bar", "See foo.bar"), search("foo.bar"))
+        assertEquals(emptyList<String>(), search("o.ba"))
+    }
+
+    @Test
+    fun testCaseAndDiacritics() {
+        testUtils.setupBook("book-a", "* Café\n* CAFETERIA\n")
+
+        assertEquals(listOf("CAFETERIA", "Café"), search("cafe"))
+    }
+
+    @Test
+    fun testMatchesInMemorySameAsIndex() {
+        assertTrue(NotesFts.matches("port", "Portable"))
+        assertTrue(NotesFts.matches("quick.bro", "Very quick browser"))
+        assertTrue(NotesFts.matches("cafe", "Café"))
+
+        assertFalse(NotesFts.matches("port", "Import"))
+        assertFalse(NotesFts.matches("quick.bro", "Quick red brown fox"))
+        assertFalse(NotesFts.matches("o.ba", "See foo.bar"))
+    }
+
+    private fun search(query: String): List<String> {
+        return dataRepository.selectNotesFromQuery(InternalQueryParser().parse(query))
+                .map { it.note.title }
+                .sorted()
+    }
+}
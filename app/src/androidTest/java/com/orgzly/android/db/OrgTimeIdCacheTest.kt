@@ -0,0 +1,45 @@
+package com.orgzly.android.db
+
+import com.orgzly.android.OrgzlyTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class OrgTimeIdCacheTest : OrgzlyTest() {
+    @Test
+    fun testRepeatedTimesAreCached() {
+        val before = dataRepository.getOrgTimeIdCacheStats()
+
+        val content = (1..10).joinToString("") {
+            "* Note $it\nSCHEDULED: <2018-01-01 Mon>\n<2018-01-01 Mon>\n"
+        }
+
+        testUtils.setupBook("book-a", content)
+
+        val after = dataRepository.getOrgTimeIdCacheStats()
+
+        /* Scheduled time and event in each note, but only one range and timestamp. */
+        assertEquals(2L, after.misses - before.misses)
+        assertEquals(19L, after.hits - before.hits)
+
+        val rangeId = database.orgRange().getByString("<2018-01-01 Mon>")!!.id
+
+        assertTrue(dataRepository.getNotes("book-a").all { it.note.scheduledRangeId == rangeId })
+    }
+
+    @Test
+    fun testLeastRecentlyUsedIsEvicted() {
+        val cache = OrgTimeIdCache(2)
+
+        cache.getRangeId("a") { 1 }
+        cache.getRangeId("b") { 2 }
+        cache.getRangeId("a") { 0 }
+        cache.getRangeId("c") { 3 }
+
+        assertEquals(1L, cache.getRangeId("a") { 0 })
+        assertEquals(4L, cache.getRangeId("b") { 4 })
+
+        assertEquals(2L, cache.hits)
+        assertEquals(4L, cache.misses)
+    }
+}
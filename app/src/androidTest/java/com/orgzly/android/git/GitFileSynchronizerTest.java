@@ -0,0 +1,88 @@
+package com.orgzly.android.git;
+
+import com.orgzly.android.LocalStorage;
+import com.orgzly.android.OrgzlyTest;
+import com.orgzly.android.util.MiscUtils;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class GitFileSynchronizerTest extends OrgzlyTest {
+    private File dir;
+    private Git git;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        dir = localStorage.getCacheDirectory("orgzly-git-file-synchronizer-test");
+        LocalStorage.deleteRecursive(dir);
+
+        git = Git.init().setDirectory(dir).call();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+
+        git.close();
+        LocalStorage.deleteRecursive(dir);
+    }
+
+    @Test
+    public void testLatestCommitsOfFiles() throws Exception {
+        RevCommit a = commit("a.org", "* A");
+        commit("b.org", "* B");
+        RevCommit b = commit("b.org", "* B modified");
+        RevCommit c = commit("c.org", "* C");
+
+        GitFileSynchronizer synchronizer = new GitFileSynchronizer(git, null);
+
+        Map<String, RevCommit> commits = synchronizer.getLatestCommitsOfFiles(paths());
+
+        assertEquals(a, commits.get("a.org"));
+        assertEquals(b, commits.get("b.org"));
+        assertEquals(c, commits.get("c.org"));
+    }
+
+    @Test
+    public void testFileCommittedBeforeWalkedCommits() throws Exception {
+        RevCommit a = commit("a.org", "* A");
+        commit("b.org", "* B");
+        RevCommit b = commit("b.org", "* B modified");
+        RevCommit c = commit("c.org", "* C");
+
+        GitFileSynchronizer synchronizer = new GitFileSynchronizer(git, null);
+
+        /* Only the last two commits are walked, a.org is looked up separately. */
+        Map<String, RevCommit> commits = synchronizer.getLatestCommitsOfFiles(paths(), 2);
+
+        assertEquals(3, commits.size());
+        assertEquals(a, commits.get("a.org"));
+        assertEquals(b, commits.get("b.org"));
+        assertEquals(c, commits.get("c.org"));
+    }
+
+    private List<String> paths() {
+        return Arrays.asList("a.org", "b.org", "c.org");
+    }
+
+    private RevCommit commit(String fileName, String content) throws Exception {
+        MiscUtils.writeStringToFile(content, new File(dir, fileName));
+
+        git.add().addFilepattern(fileName).call();
+
+        return git.commit().setMessage("Update " + fileName).call();
+    }
+}
@@ -0,0 +1,83 @@
+package com.orgzly.android.misc
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.ui.notes.query.agenda.AgendaItems
+import com.orgzly.org.datetime.OrgDateTime
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Ignore
+import org.junit.Test
+import java.util.Arrays
+
+/**
+ * Simple benchmark for agenda, written as a failing test (to display the results).
+ *
+ * Notes have events and planning times spread over a few years, most of them done.
+ */
+@Ignore("Not a test")
+class AgendaQuerySpeedTest : OrgzlyTest() {
+    @Before
+    override fun setUp() {
+        super.setUp()
+
+        val now = System.currentTimeMillis()
+
+        val sb = StringBuilder()
+
+        for (i in 1..NOTES) {
+            val time = OrgDateTime.Builder()
+                    .setDateTime(now + (i % 1500 - 1000) * DAY)
+                    .setIsActive(true)
+                    .build()
+
+            when (i % 3) {
+                0 -> sb.append("* DONE Note $i\nSCHEDULED: $time\n")
+                1 -> sb.append("* Note $i $time\n")
+                else -> sb.append("* Note $i\n")
+            }
+        }
+
+        testUtils.setupBook("book-a", sb.toString())
+    }
+
+    @Test
+    fun agenda7Days() {
+        test(".it.done ad.7")
+    }
+
+    @Test
+    fun agenda1Day() {
+        test(".it.done ad.1")
+    }
+
+    private fun test(queryString: String) {
+        val times = LongArray(ITERATIONS)
+        var count = 0
+        var items = 0
+
+        for (i in 0 until ITERATIONS) {
+            val t1 = System.currentTimeMillis()
+
+            val notes = dataRepository.selectNotesFromQuery(queryString)
+
+            items = AgendaItems.getList(dataRepository, notes, queryString, mutableMapOf()).size
+
+            times[i] = System.currentTimeMillis() - t1
+
+            count = notes.size
+        }
+
+        val stats = Arrays.stream(times).skip(SKIP_FIRST).summaryStatistics()
+
+        Assert.fail("$count rows, $items items, $stats")
+    }
+
+    companion object {
+        private const val NOTES = 100_000
+
+        private const val DAY = 1000L * 60 * 60 * 24
+
+        private const val ITERATIONS = 5
+        private const val SKIP_FIRST = 2L
+    }
+}
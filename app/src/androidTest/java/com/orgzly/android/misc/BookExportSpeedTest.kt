@@ -0,0 +1,169 @@
+package com.orgzly.android.misc
+
+import com.orgzly.android.NotesOrgExporter
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.data.mappers.OrgMapper
+import com.orgzly.android.db.dao.NoteViewDao
+import com.orgzly.android.db.entity.Book
+import com.orgzly.org.parser.OrgParserSettings
+import com.orgzly.org.parser.OrgParserWriter
+import org.junit.Assert
+import org.junit.Ignore
+import org.junit.Test
+import java.io.Writer
+import java.util.Arrays
+
+/**
+ * Simple benchmark for exporting books, written as a failing test (to display the results).
+ *
+ * Compares the streaming export with selecting all notes first and
+ * then selecting properties for each note.
+ */
+@Ignore("Not a test")
+class BookExportSpeedTest : OrgzlyTest() {
+    @Test
+    fun export10k() {
+        test(10_000) { book, writer -> NotesOrgExporter(dataRepository).exportBook(book, writer) }
+    }
+
+    @Test
+    fun exportAllNotes10k() {
+        test(10_000) { book, writer -> exportAllNotes(book, writer) }
+    }
+
+    @Test
+    fun export100k() {
+        test(100_000) { book, writer -> NotesOrgExporter(dataRepository).exportBook(book, writer) }
+    }
+
+    @Test
+    fun exportAllNotes100k() {
+        test(100_000) { book, writer -> exportAllNotes(book, writer) }
+    }
+
+    private fun test(headings: Int, export: (Book, Writer) -> Unit) {
+        val book = testUtils.setupBook("book-$headings", generateBook(headings)).book
+
+        val times = LongArray(ITERATIONS)
+        var heap = 0L
+        var size = 0L
+
+        for (i in 0 until ITERATIONS) {
+            val writer = HeapSamplingWriter()
+
+            val t1 = System.currentTimeMillis()
+
+            export(book, writer)
+
+            times[i] = System.currentTimeMillis() - t1
+
+            heap = writer.peakHeap
+            size = writer.size
+        }
+
+        val stats = Arrays.stream(times).skip(SKIP_FIRST).summaryStatistics()
+
+        Assert.fail("$headings headings, $size chars, peak heap growth ${heap / 1024} KiB, $stats")
+    }
+
+    /** Previous implementation of the export. */
+    private fun exportAllNotes(book: Book, writer: Writer) {
+        val orgWriter = OrgParserWriter(OrgParserSettings.getBasic())
+
+        writer.write(orgWriter.whiteSpacedFilePreface(book.preface))
+
+        dataRepository.getNotes(book.name, NoteViewDao.Projection.EXPORT).forEach { noteView ->
+            val note = noteView.note
+
+            val head = OrgMapper.toOrgHead(noteView).apply {
+                properties = OrgMapper.toOrgProperties(dataRepository.getNoteProperties(note.id))
+            }
+
+            writer.write(orgWriter.whiteSpacedHead(head, note.position.level, book.isIndented == true))
+        }
+    }
+
+    /**
+     * Discards written text, sampling used heap as it goes.
+     */
+    private class HeapSamplingWriter : Writer() {
+        private val runtime = Runtime.getRuntime()
+
+        private val baseline: Long
+
+        var peakHeap = 0L
+            private set
+
+        var size = 0L
+            private set
+
+        private var writes = 0
+
+        init {
+            runtime.gc()
+            baseline = usedHeap()
+        }
+
+        override fun write(cbuf: CharArray, off: Int, len: Int) {
+            size += len
+
+            if (writes++ % SAMPLE_EVERY == 0) {
+                peakHeap = maxOf(peakHeap, usedHeap() - baseline)
+            }
+        }
+
+        override fun flush() {
+        }
+
+        override fun close() {
+        }
+
+        private fun usedHeap(): Long {
+            return runtime.totalMemory() - runtime.freeMemory()
+        }
+    }
+
+    /**
+     * Book with nested headings, some of them with content, tags, properties and times.
+     */
+    private fun generateBook(headings: Int): String {
+        val sb = StringBuilder("Preface\n\n")
+
+        for (i in 1..headings) {
+            sb.append("*".repeat(1 + i % 5)).append(" ")
+
+            if (i % 3 == 0) {
+                sb.append("TODO ")
+            }
+
+            sb.append("Heading $i")
+
+            if (i % 4 == 0) {
+                sb.append(" :tag${i % 10}:")
+            }
+
+            sb.append("\n")
+
+            if (i % 7 == 0) {
+                sb.append("SCHEDULED: <2018-01-${1 + i % 28} Mon>\n")
+            }
+
+            if (i % 5 == 0) {
+                sb.append(":PROPERTIES:\n:ID: $i\n:CREATED: [2018-01-01 Mon 09:00]\n:END:\n")
+            }
+
+            if (i % 2 == 0) {
+                sb.append("Content of heading $i\n")
+            }
+        }
+
+        return sb.toString()
+    }
+
+    companion object {
+        private const val ITERATIONS = 5
+        private const val SKIP_FIRST = 2L
+
+        private const val SAMPLE_EVERY = 100
+    }
+}
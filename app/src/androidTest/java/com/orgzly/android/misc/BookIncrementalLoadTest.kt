@@ -0,0 +1,126 @@
+package com.orgzly.android.misc
+
+import com.orgzly.android.OrgzlyTest
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Loading an already loaded book updates it in place.
+ * Result must be the same as loading the book from scratch.
+ */
+class BookIncrementalLoadTest : OrgzlyTest() {
+    @Test
+    fun testReloadingSameContentWritesNothing() {
+        val content = "* Note 1\n** Note 1.1\n* Note 2 :tag:\n** Note 2.1\n:PROPERTIES:\n:A: 1\n:END:\n"
+
+        val bookId = testUtils.setupBook("book-a", content).book.id
+        val ids = noteIds("book-a")
+
+        testUtils.setupBook("book-a", content)
+
+        val stats = dataRepository.removeBookLoadStats(bookId)!!
+
+        assertEquals(ids, noteIds("book-a"))
+        assertEquals(0L, stats.rows)
+        assertEquals(4, stats.unchanged)
+    }
+
+    @Test
+    fun testChangedNoteKeepsId() {
+        val bookId = testUtils.setupBook("book-a", "* Note 1\n** Note 1.1\n* Note 2\n").book.id
+        val ids = noteIds("book-a")
+
+        assertSameAsFreshLoad("book-a", "* Note 1\n** Note 1.1\nContent\n* TODO Note 2 :tag:\n")
+
+        val stats = dataRepository.removeBookLoadStats(bookId)!!
+
+        assertEquals(ids.values.toList(), noteIds("book-a").values.toList())
+        assertEquals(0, stats.inserted)
+        assertEquals(2, stats.updated)
+        assertEquals(0, stats.deleted)
+    }
+
+    @Test
+    fun testInsertedNoteBeforeExisting() {
+        testUtils.setupBook("book-a", "* Note 1 :tag:\n** Note 1.1\n* Note 2\n")
+        val ids = noteIds("book-a")
+
+        assertSameAsFreshLoad("book-a", "* Note 0\n* Note 1 :tag:\n** Note 1.0\n** Note 1.1\n* Note 2\n")
+
+        val newIds = noteIds("book-a")
+
+        listOf("Note 1", "Note 1.1", "Note 2").forEach {
+            assertEquals(ids[it], newIds[it])
+        }
+    }
+
+    @Test
+    fun testDeletedParentMovesChildren() {
+        testUtils.setupBook("book-a", "* Note 1 :a:\n** Note 1.1 :b:\n*** Note 1.1.1\n**** Note 1.1.1.1\n* Note 2\n")
+        val ids = noteIds("book-a")
+
+        assertSameAsFreshLoad("book-a", "* Note 1 :a:\n*** Note 1.1.1\n**** Note 1.1.1.1\n* Note 2\n")
+
+        val newIds = noteIds("book-a")
+
+        listOf("Note 1", "Note 1.1.1", "Note 1.1.1.1", "Note 2").forEach {
+            assertEquals(ids[it], newIds[it])
+        }
+    }
+
+    @Test
+    fun testMovedSubtree() {
+        testUtils.setupBook("book-a", "* Note 1 :a:\n** Note 1.1\n*** Note 1.1.1\n* Note 2 :b:\n")
+        val ids = noteIds("book-a")
+
+        assertSameAsFreshLoad("book-a", "* Note 1 :a:\n* Note 2 :b:\n** Note 1.1\n*** Note 1.1.1\n")
+
+        assertEquals(ids, noteIds("book-a"))
+    }
+
+    @Test
+    fun testDuplicateTitles() {
+        testUtils.setupBook("book-a", "* Note\n** Note\n* Note\n")
+
+        assertSameAsFreshLoad("book-a", "* Note\n* Note\n** Note\n*** Note\n")
+    }
+
+    private fun noteIds(bookName: String): Map<String, Long> {
+        return dataRepository.getNotes(bookName).associate { it.note.title to it.note.id }
+    }
+
+    private fun assertSameAsFreshLoad(bookName: String, content: String) {
+        testUtils.setupBook(bookName, content)
+        testUtils.setupBook("fresh", content)
+
+        assertEquals(snapshot("fresh"), snapshot(bookName))
+    }
+
+    private fun snapshot(bookName: String): List<String> {
+        val notes = dataRepository.getNotes(bookName)
+
+        val titles = notes.associate { it.note.id to it.note.title }
+
+        return notes.map { noteView ->
+            val note = noteView.note
+
+            val ancestors = dataRepository.getNoteAncestors(note.id).map { it.title }
+            val properties = dataRepository.getNoteProperties(note.id).map { "${it.name}=${it.value}" }
+
+            listOf(
+                    note.title,
+                    note.state,
+                    note.tags,
+                    note.inheritedTags,
+                    note.content,
+                    note.position.lft,
+                    note.position.rgt,
+                    note.position.level,
+                    note.position.descendantsCount,
+                    titles[note.position.parentId],
+                    ancestors,
+                    properties
+            ).joinToString("|")
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.orgzly.android.misc
+
+import com.orgzly.android.OrgzlyTest
+import org.junit.Assert
+import org.junit.Ignore
+import org.junit.Test
+import java.util.Arrays
+
+/**
+ * Simple benchmark for loading books, written as a failing test (to display the results).
+ */
+@Ignore("Not a test")
+class BookLoadSpeedTest : OrgzlyTest() {
+    @Test
+    fun load1k() {
+        test(1_000)
+    }
+
+    @Test
+    fun load10k() {
+        test(10_000)
+    }
+
+    @Test
+    fun load100k() {
+        test(100_000)
+    }
+
+    private fun test(headings: Int) {
+        val content = generateBook(headings)
+
+        val times = LongArray(ITERATIONS)
+
+        for (i in 0 until ITERATIONS) {
+            val t1 = System.currentTimeMillis()
+
+            testUtils.setupBook("book-$headings", content)
+
+            times[i] = System.currentTimeMillis() - t1
+        }
+
+        val stats = Arrays.stream(times).skip(SKIP_FIRST).summaryStatistics()
+
+        val notesPerSecond = headings * 1000L / stats.average.toLong().coerceAtLeast(1)
+
+        Assert.fail("$headings headings, $notesPerSecond notes/s, $stats")
+    }
+
+    /**
+     * Book with nested headings, some of them with content, tags, properties and times.
+     */
+    private fun generateBook(headings: Int): String {
+        val sb = StringBuilder("Preface\n\n")
+
+        for (i in 1..headings) {
+            val level = 1 + i % 5
+
+            sb.append("*".repeat(level)).append(" ")
+
+            if (i % 3 == 0) {
+                sb.append("TODO ")
+            }
+
+            sb.append("Heading $i")
+
+            if (i % 4 == 0) {
+                sb.append(" :tag${i % 10}:")
+            }
+
+            sb.append("\n")
+
+            if (i % 7 == 0) {
+                sb.append("SCHEDULED: <2018-01-${1 + i % 28} Mon>\n")
+            }
+
+            if (i % 5 == 0) {
+                sb.append(":PROPERTIES:\n:ID: $i\n:CREATED: [2018-01-01 Mon 09:00]\n:END:\n")
+            }
+
+            if (i % 2 == 0) {
+                sb.append("Content of heading $i, with an event <2019-02-${1 + i % 28} Fri>.\n")
+            }
+        }
+
+        return sb.toString()
+    }
+
+    companion object {
+        private const val ITERATIONS = 3
+        private const val SKIP_FIRST = 1L
+    }
+}
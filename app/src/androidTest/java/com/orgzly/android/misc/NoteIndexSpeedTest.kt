@@ -0,0 +1,184 @@
+package com.orgzly.android.misc
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.db.BookVisibility
+import com.orgzly.android.db.dao.NoteViewDao
+import com.orgzly.android.ui.NotePlace
+import com.orgzly.android.ui.Place
+import com.orgzly.android.ui.note.NotePayload
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Ignore
+import org.junit.Test
+import java.util.Arrays
+
+/**
+ * Simple benchmark for notes' indexes, written as a failing test (to display the results).
+ *
+ * Compares writes and reads of a book using the current composite indexes
+ * with the single-column indexes used before.
+ */
+@Ignore("Not a test")
+class NoteIndexSpeedTest : OrgzlyTest() {
+    private var bookId = 0L
+    private var firstNoteId = 0L
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+
+        val sb = StringBuilder()
+
+        for (i in 1..NOTES) {
+            val level = if (i % 1000 == 1) 1 else 2 + i % 3
+            sb.append("*".repeat(level)).append(" Note $i\n")
+        }
+
+        bookId = testUtils.setupBook("book-a", sb.toString()).book.id
+
+        firstNoteId = dataRepository.getLastNote("Note 1")!!.id
+    }
+
+    @After
+    override fun tearDown() {
+        useCurrentIndexes()
+
+        super.tearDown()
+    }
+
+    @Test
+    fun writes() {
+        testWrites()
+    }
+
+    @Test
+    fun writesPreviousIndexes() {
+        usePreviousIndexes()
+        testWrites()
+    }
+
+    @Test
+    fun folding() {
+        testFolding()
+    }
+
+    @Test
+    fun foldingPreviousIndexes() {
+        usePreviousIndexes()
+        testFolding()
+    }
+
+    @Test
+    fun reads() {
+        testReads()
+    }
+
+    @Test
+    fun readsPreviousIndexes() {
+        usePreviousIndexes()
+        testReads()
+    }
+
+    private fun testWrites() {
+        test {
+            for (j in 1..NEW_NOTES) {
+                dataRepository.createNote(NotePayload("New"), NotePlace(bookId, firstNoteId, Place.UNDER))
+            }
+            NEW_NOTES
+        }
+    }
+
+    private fun testFolding() {
+        test {
+            dataRepository.toggleNoteFoldedState(firstNoteId)
+            dataRepository.toggleNoteFoldedState(firstNoteId)
+        }
+    }
+
+    /* Pages through the whole book, like the book's list does. */
+    private fun testReads() {
+        test {
+            val visibility = BookVisibility.load(database, bookId)
+
+            var count = 0
+            var lft = 0L
+
+            while (true) {
+                val page = visibility.getAfter(lft, PAGE_SIZE, NoteViewDao.Projection.LIST_ITEM)
+
+                if (page.isEmpty()) {
+                    break
+                }
+
+                lft = page.last().note.position.lft
+
+                visibility.countBefore(lft)
+
+                count += page.size
+            }
+
+            count
+        }
+    }
+
+    private fun test(run: () -> Int) {
+        val times = LongArray(ITERATIONS)
+        var count = 0
+
+        for (i in 0 until ITERATIONS) {
+            val t1 = System.currentTimeMillis()
+
+            count = run()
+
+            times[i] = System.currentTimeMillis() - t1
+        }
+
+        val stats = Arrays.stream(times).skip(SKIP_FIRST).summaryStatistics()
+
+        Assert.fail("$count rows, $stats")
+    }
+
+    private fun usePreviousIndexes() {
+        val db = database.openHelper.writableDatabase
+
+        for (index in CURRENT_INDEXES.keys) {
+            db.execSQL("DROP INDEX IF EXISTS `$index`")
+        }
+
+        for (column in PREVIOUS_INDEXES) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notes_$column` ON `notes` (`$column`)")
+        }
+    }
+
+    private fun useCurrentIndexes() {
+        val db = database.openHelper.writableDatabase
+
+        for (column in PREVIOUS_INDEXES) {
+            db.execSQL("DROP INDEX IF EXISTS `index_notes_$column`")
+        }
+
+        for ((index, columns) in CURRENT_INDEXES) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `$index` ON `notes` ($columns)")
+        }
+    }
+
+    companion object {
+        private const val NOTES = 30_000
+
+        private const val NEW_NOTES = 20
+
+        private const val PAGE_SIZE = 100
+
+        private const val ITERATIONS = 5
+        private const val SKIP_FIRST = 2L
+
+        private val CURRENT_INDEXES = mapOf(
+                "index_notes_book_id_is_cut_lft" to "`book_id`, `is_cut`, `lft`",
+                "index_notes_book_id_is_cut_rgt" to "`book_id`, `is_cut`, `rgt`",
+                "index_notes_book_id_is_cut_is_folded_lft" to "`book_id`, `is_cut`, `is_folded`, `lft`")
+
+        private val PREVIOUS_INDEXES = listOf(
+                "tags", "content", "book_id", "is_cut", "lft", "rgt", "is_folded", "descendants_count")
+    }
+}
@@ -0,0 +1,87 @@
+package com.orgzly.android.misc
+
+import androidx.sqlite.db.SimpleSQLiteQuery
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.db.dao.NoteViewDao
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Ignore
+import org.junit.Test
+import java.util.Arrays
+
+/**
+ * Simple benchmark for selecting notes, written as a failing test (to display the results).
+ *
+ * Compares the current query with the one joining note ancestors to get inherited tags.
+ */
+@Ignore("Not a test")
+class NoteQuerySpeedTest : OrgzlyTest() {
+    @Before
+    override fun setUp() {
+        super.setUp()
+
+        val sb = StringBuilder()
+
+        for (i in 1..NOTES) {
+            val level = 1 + i % 6
+            sb.append("*".repeat(level)).append(" Note $i")
+            if (i % 3 == 0) {
+                sb.append(" :tag${i % 20}:")
+            }
+            sb.append("\n")
+        }
+
+        testUtils.setupBook("book-a", sb.toString())
+    }
+
+    @Test
+    fun bookNotesWithAncestorsJoin() {
+        test("$QUERY_WITH_ANCESTORS WHERE notes.level > 0 GROUP BY notes.id ORDER BY notes.lft")
+    }
+
+    @Test
+    fun bookNotes() {
+        test("${NoteViewDao.QUERY} WHERE notes.level > 0 ORDER BY notes.lft")
+    }
+
+    @Test
+    fun tagSearchWithAncestorsJoin() {
+        test("SELECT * FROM ($QUERY_WITH_ANCESTORS GROUP BY notes.id) WHERE COALESCE(ancestors_tags, '') LIKE '%tag7%'")
+    }
+
+    @Test
+    fun tagSearch() {
+        test("SELECT * FROM (${NoteViewDao.QUERY}) WHERE COALESCE(inherited_tags, '') LIKE '%tag7%'")
+    }
+
+    private fun test(sql: String) {
+        val times = LongArray(ITERATIONS)
+        var count = 0
+
+        for (i in 0 until ITERATIONS) {
+            val t1 = System.currentTimeMillis()
+
+            count = database.noteView().runQuery(SimpleSQLiteQuery(sql)).size
+
+            times[i] = System.currentTimeMillis() - t1
+        }
+
+        val stats = Arrays.stream(times).skip(SKIP_FIRST).summaryStatistics()
+
+        Assert.fail("$count rows, $stats")
+    }
+
+    companion object {
+        private const val NOTES = 50_000
+
+        private const val ITERATIONS = 5
+        private const val SKIP_FIRST = 2L
+
+        private val QUERY_WITH_ANCESTORS = NoteViewDao.QUERY
+                .replace("notes.*,", "notes.*, group_concat(t_notes_with_inherited_tags.tags, ' ') AS ancestors_tags,")
+                .plus("""
+                    LEFT JOIN note_ancestors t_note_ancestors ON t_note_ancestors.note_id = notes.id
+                    LEFT JOIN notes t_notes_with_inherited_tags ON t_notes_with_inherited_tags.id = t_note_ancestors.ancestor_note_id
+                """)
+    }
+}
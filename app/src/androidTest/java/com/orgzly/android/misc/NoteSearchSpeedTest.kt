@@ -0,0 +1,112 @@
+package com.orgzly.android.misc
+
+import androidx.sqlite.db.SimpleSQLiteQuery
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.db.NotesFts
+import com.orgzly.android.db.dao.NoteViewDao
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Ignore
+import org.junit.Test
+import java.util.Arrays
+
+/**
+ * Simple benchmark for searching notes' text, written as a failing test (to display the results).
+ *
+ * Compares the full-text index with matching title, content and tags using LIKE.
+ * Searched words only appear as whole words or word prefixes, so both return the same notes
+ * (LIKE also matches inside words, full-text index does not).
+ */
+@Ignore("Not a test")
+class NoteSearchSpeedTest : OrgzlyTest() {
+    @Before
+    override fun setUp() {
+        super.setUp()
+
+        val sb = StringBuilder()
+
+        for (i in 1..NOTES) {
+            sb.append("*".repeat(1 + i % 6)).append(" Note $i ${WORDS[i % WORDS.size]}")
+            if (i % 3 == 0) {
+                sb.append(" :tag${i % 20}:")
+            }
+            sb.append("\n")
+            if (i % 2 == 0) {
+                sb.append("Content of note $i mentions ${WORDS[(i / 2) % WORDS.size]} and more\n")
+            }
+        }
+
+        testUtils.setupBook("book-a", sb.toString())
+    }
+
+    @Test
+    fun wordLike() {
+        testLike("quince")
+    }
+
+    @Test
+    fun wordFts() {
+        testFts("quince")
+    }
+
+    @Test
+    fun prefixLike() {
+        testLike("quin")
+    }
+
+    @Test
+    fun prefixFts() {
+        testFts("quin")
+    }
+
+    private fun testLike(text: String) {
+        assertSameNotes(text)
+
+        test(LIKE_QUERY, "%$text%", "%$text%", "%$text%")
+    }
+
+    private fun testFts(text: String) {
+        assertSameNotes(text)
+
+        test(FTS_QUERY, NotesFts.matchExpression(text))
+    }
+
+    private fun assertSameNotes(text: String) {
+        val like = database.noteView().runQuery(SimpleSQLiteQuery(LIKE_QUERY, arrayOf("%$text%", "%$text%", "%$text%")))
+        val fts = database.noteView().runQuery(SimpleSQLiteQuery(FTS_QUERY, arrayOf(NotesFts.matchExpression(text))))
+
+        Assert.assertEquals(like.map { it.note.id }.toSet(), fts.map { it.note.id }.toSet())
+    }
+
+    private fun test(sql: String, vararg args: Any?) {
+        val times = LongArray(ITERATIONS)
+        var count = 0
+
+        for (i in 0 until ITERATIONS) {
+            val t1 = System.currentTimeMillis()
+
+            count = database.noteView().runQuery(SimpleSQLiteQuery(sql, args)).size
+
+            times[i] = System.currentTimeMillis() - t1
+        }
+
+        val stats = Arrays.stream(times).skip(SKIP_FIRST).summaryStatistics()
+
+        Assert.fail("$count rows, $stats")
+    }
+
+    companion object {
+        private const val NOTES = 80_000
+
+        private const val ITERATIONS = 5
+        private const val SKIP_FIRST = 2L
+
+        private val WORDS = listOf("apple", "banana", "cherry", "grape", "lemon", "mango", "quince", "plum")
+
+        private val QUERY = "SELECT * FROM (${NoteViewDao.QUERY})"
+
+        private val LIKE_QUERY = "$QUERY WHERE (title LIKE ? OR content LIKE ? OR tags LIKE ?)"
+
+        private val FTS_QUERY = "$QUERY WHERE id IN (SELECT docid FROM ${NotesFts.TABLE} WHERE ${NotesFts.TABLE} MATCH ?)"
+    }
+}
@@ -0,0 +1,66 @@
+package com.orgzly.android.misc
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.query.sql.SqlQueryCache
+import com.orgzly.android.query.sql.SqliteQueryBuilder
+import com.orgzly.android.query.user.InternalQueryParser
+import org.junit.Assert
+import org.junit.Ignore
+import org.junit.Test
+import java.util.Arrays
+
+/**
+ * Simple benchmark for parsing queries and building their SQL,
+ * written as a failing test (to display the results).
+ *
+ * Uses queries of the default saved searches.
+ */
+@Ignore("Not a test")
+class QueryBuildSpeedTest : OrgzlyTest() {
+    @Test
+    fun parseAndBuild() {
+        test { queryString ->
+            val query = InternalQueryParser().parse(queryString)
+            SqliteQueryBuilder(context).build(query)
+        }
+    }
+
+    @Test
+    fun cached() {
+        val cache = SqlQueryCache()
+
+        test { queryString ->
+            cache.get(SqlQueryCache.key(context, queryString)) {
+                val query = InternalQueryParser().parse(queryString)
+                SqlQueryCache.Entry(query, SqliteQueryBuilder(context).buildTemplate(query))
+            }.template.resolve()
+        }
+    }
+
+    private fun test(build: (String) -> Unit) {
+        val times = LongArray(ITERATIONS)
+
+        for (i in 0 until ITERATIONS) {
+            val t1 = System.currentTimeMillis()
+
+            for (j in 0 until RUNS) {
+                QUERIES.forEach(build)
+            }
+
+            times[i] = System.currentTimeMillis() - t1
+        }
+
+        val stats = Arrays.stream(times).skip(SKIP_FIRST).summaryStatistics()
+
+        Assert.fail("${RUNS * QUERIES.size} queries, $stats")
+    }
+
+    companion object {
+        private const val RUNS = 2_500
+
+        private const val ITERATIONS = 5
+        private const val SKIP_FIRST = 2L
+
+        private val QUERIES = listOf(".it.done ad.7", ".it.done s.ge.today ad.3", "s.today .it.done", "i.todo")
+    }
+}
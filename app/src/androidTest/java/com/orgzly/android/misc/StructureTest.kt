@@ -370,12 +370,12 @@ class StructureTest : OrgzlyTest() {
         Assert.assertEquals(0, nA04.position.descendantsCount)
         Assert.assertEquals(0, nA06.position.descendantsCount)
         Assert.assertEquals(0, nA05.position.descendantsCount)
-        Assert.assertEquals(0, nA01.position.foldedUnderId)
-        Assert.assertEquals(0, nA02.position.foldedUnderId)
-        Assert.assertEquals(0, nA03.position.foldedUnderId)
-        Assert.assertEquals(0, nA04.position.foldedUnderId)
-        Assert.assertEquals(0, nA06.position.foldedUnderId)
-        Assert.assertEquals(0, nA05.position.foldedUnderId)
+        Assert.assertTrue(isVisible("Note A-01"))
+        Assert.assertTrue(isVisible("Note A-02"))
+        Assert.assertTrue(isVisible("Note A-03"))
+        Assert.assertTrue(isVisible("Note A-04"))
+        Assert.assertTrue(isVisible("Note A-06"))
+        Assert.assertTrue(isVisible("Note A-05"))
     }
 
     /**
@@ -478,9 +478,9 @@ class StructureTest : OrgzlyTest() {
                     """.trimIndent(),
                 dataRepository.getBookContent("Book A", BookFormat.ORG))
 
-        Assert.assertEquals(0, getNote("Note A-01").position.foldedUnderId)
-        Assert.assertEquals(0, getNote("Note A-02").position.foldedUnderId)
-        Assert.assertEquals(0, getNote("Note A-03").position.foldedUnderId)
+        Assert.assertTrue(isVisible("Note A-01"))
+        Assert.assertTrue(isVisible("Note A-02"))
+        Assert.assertTrue(isVisible("Note A-03"))
     }
 
     @Test
@@ -644,11 +644,11 @@ class StructureTest : OrgzlyTest() {
         Assert.assertEquals(1, nA02.level)
         Assert.assertEquals(2, nA03.level)
         Assert.assertEquals(1, nA05.level)
-        Assert.assertEquals(0, nA01.foldedUnderId)
-        Assert.assertEquals(0, nA04.foldedUnderId)
-        Assert.assertEquals(0, nA02.foldedUnderId)
-        Assert.assertEquals(getNote("Note A-02").id, nA03.foldedUnderId)
-        Assert.assertEquals(0, nA05.foldedUnderId)
+        Assert.assertTrue(isVisible("Note A-01"))
+        Assert.assertTrue(isVisible("Note A-04"))
+        Assert.assertTrue(isVisible("Note A-02"))
+        Assert.assertFalse(isVisible("Note A-03"))
+        Assert.assertTrue(isVisible("Note A-05"))
         Assert.assertFalse(nA01.isFolded)
         Assert.assertFalse(nA04.isFolded)
         Assert.assertTrue(nA02.isFolded)
@@ -863,9 +863,7 @@ class StructureTest : OrgzlyTest() {
 
         // Is folded
         Assert.assertTrue(getNote("Note A-01").position.isFolded)
-        Assert.assertEquals(
-                getNote("Note A-01").id,
-                getNote("Note A-02").position.foldedUnderId)
+        Assert.assertFalse(isVisible("Note A-02"))
 
         UseCaseRunner.run(NoteCut(
                 book.book.id, setOf(getNote("Note A-01").id)))
@@ -885,9 +883,7 @@ class StructureTest : OrgzlyTest() {
 
         // Remains folded
         Assert.assertTrue(getNote("Note A-01").position.isFolded)
-        Assert.assertEquals(
-                getNote("Note A-01").id,
-                getNote("Note A-02").position.foldedUnderId)
+        Assert.assertFalse(isVisible("Note A-02"))
     }
 
     @Test
@@ -918,8 +914,8 @@ class StructureTest : OrgzlyTest() {
                 dataRepository.getBookContent("Book A", BookFormat.ORG))
 
         Assert.assertFalse(getNote("Note A-01").position.isFolded)
-        Assert.assertEquals(0, getNote("Note A-02").position.foldedUnderId)
-        Assert.assertEquals(0, getNote("Note A-03").position.foldedUnderId)
+        Assert.assertTrue(isVisible("Note A-02"))
+        Assert.assertTrue(isVisible("Note A-03"))
     }
 
     @Test
@@ -947,8 +943,8 @@ class StructureTest : OrgzlyTest() {
                 dataRepository.getBookContent("Book A", BookFormat.ORG))
 
         Assert.assertFalse(getNote("Note A-01").position.isFolded)
-        Assert.assertEquals(0, getNote("Note A-02").position.foldedUnderId)
-        Assert.assertEquals(0, getNote("Note A-03").position.foldedUnderId)
+        Assert.assertTrue(isVisible("Note A-02"))
+        Assert.assertTrue(isVisible("Note A-03"))
     }
 
     @Test
@@ -1150,8 +1146,8 @@ class StructureTest : OrgzlyTest() {
         // Unfold A-01
         UseCaseRunner.run(NoteToggleFolding(getNote("Note A-01").id))
 
-        Assert.assertEquals(0, getNote("Note A-02").position.foldedUnderId)
-        Assert.assertEquals(0, getNote("Note A-04").position.foldedUnderId)
+        Assert.assertTrue(isVisible("Note A-02"))
+        Assert.assertTrue(isVisible("Note A-04"))
 
         // Fold all
         UseCaseRunner.run(BookCycleVisibility(book.book))
@@ -1253,7 +1249,8 @@ class StructureTest : OrgzlyTest() {
         Assert.assertFalse(getNote("Note A-01").position.isFolded)
         Assert.assertTrue(getNote("Note A-02").position.isFolded)
         Assert.assertTrue(getNote("Note A-03").position.isFolded)
-        Assert.assertEquals(getNote("Note A-02").id, getNote("Note A-03").position.foldedUnderId)
+        Assert.assertTrue(isVisible("Note A-02"))
+        Assert.assertFalse(isVisible("Note A-03"))
     }
 
     @Test
@@ -1747,6 +1744,13 @@ class StructureTest : OrgzlyTest() {
         return dataRepository.getLastNote(title)!!
     }
 
+    /* Visible if none of its ancestors is folded. */
+    private fun isVisible(title: String): Boolean {
+        return getNote(title).let { note ->
+            dataRepository.getVisibleNotePosition(note.position.bookId, note.id) != null
+        }
+    }
+
     private fun getRootNode(bookId: Long): Note {
         return dataRepository.getRootNode(bookId)!!
     }
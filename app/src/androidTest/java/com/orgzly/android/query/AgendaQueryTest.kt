@@ -0,0 +1,57 @@
+package com.orgzly.android.query
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.org.datetime.OrgDateTime
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class AgendaQueryTest : OrgzlyTest() {
+    @Test
+    fun testOnlyNotesInWindowAreSelected() {
+        testUtils.setupBook("book-a", """
+            * Scheduled today
+            SCHEDULED: ${day(0)}
+            * Scheduled long ago
+            SCHEDULED: ${day(-100)}
+            * Scheduled later
+            SCHEDULED: ${day(30)}
+            * Scheduled later, inactive
+            SCHEDULED: ${day(3, isActive = false)}
+            * Deadline later with warning
+            DEADLINE: ${day(30, suffix = " -30d")}
+            * Deadline later
+            DEADLINE: ${day(30)}
+            * Event tomorrow ${day(1)}
+            * Event long ago ${day(-100)}
+            * Event repeating ${day(-100, suffix = " +1w")}
+            * Event range ${day(-10)}--${day(10)}
+            * Event ended ${day(-10)}--${day(-5)}
+            * Event later ${day(30)}
+            """.trimIndent())
+
+        val titles = dataRepository.selectNotesFromQuery("ad.7").map { it.note.title.substringBefore(" <") }.toSet()
+
+        assertEquals(setOf(
+                "Scheduled today",
+                "Scheduled long ago",
+                "Deadline later with warning",
+                "Event tomorrow",
+                "Event repeating",
+                "Event range"
+        ), titles)
+    }
+
+    private fun day(offset: Int, isActive: Boolean = true, suffix: String = ""): String {
+        val str = OrgDateTime.Builder()
+                .setDateTime(System.currentTimeMillis() + offset * DAY)
+                .setIsActive(isActive)
+                .build()
+                .toString()
+
+        return if (suffix.isEmpty()) str else str.dropLast(1) + suffix + str.last()
+    }
+
+    companion object {
+        private const val DAY = 1000L * 60 * 60 * 24
+    }
+}
@@ -0,0 +1,57 @@
+package com.orgzly.android.query
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.data.logs.QueryProfiler
+import com.orgzly.android.util.LogMajorEvents
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class QueryProfilerTest : OrgzlyTest() {
+    @Test
+    fun testFullScanOfNotes() {
+        assertTrue(profile("SCAN notes").isFullScan)
+        assertTrue(profile("SCAN TABLE notes").isFullScan)
+        assertFalse(profile("SCAN notes USING INDEX index_notes_book_id").isFullScan)
+        assertFalse(profile("SEARCH notes USING INTEGER PRIMARY KEY (rowid=?)").isFullScan)
+        assertFalse(profile("SCAN note_tags").isFullScan)
+    }
+
+    @Test
+    fun testSortedUsingTempBTree() {
+        assertTrue(profile("USE TEMP B-TREE FOR ORDER BY").isSortedUsingTempBTree)
+        assertFalse(profile("USE TEMP B-TREE FOR GROUP BY").isSortedUsingTempBTree)
+    }
+
+    @Test
+    fun testLogMessageFlags() {
+        val message = profile("SCAN notes", "USE TEMP B-TREE FOR ORDER BY").toLogMessage()
+
+        assertEquals(
+                "i.todo\n5 ms, 2 rows, ${QueryProfiler.FULL_SCAN_FLAG}, ${QueryProfiler.ORDER_BY_FLAG}\n"
+                        + "  SCAN notes\n  USE TEMP B-TREE FOR ORDER BY",
+                message)
+    }
+
+    @Test
+    fun testSavedSearchesProfiled() {
+        testUtils.setupBook("book-a", "* TODO Note A-01\n* Note A-02\n")
+
+        dataRepository.profileSavedSearches()
+
+        val entries = runBlocking {
+            database.appLog().getFlow(LogMajorEvents.QUERIES).first()
+        }
+
+        assertEquals(
+                dataRepository.getSavedSearches().map { it.query },
+                entries.map { it.message.substringBefore("\n") })
+    }
+
+    private fun profile(vararg plan: String): QueryProfiler.Profile {
+        return QueryProfiler.Profile("i.todo", 5, 2, plan.toList())
+    }
+}
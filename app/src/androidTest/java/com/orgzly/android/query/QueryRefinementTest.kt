@@ -0,0 +1,88 @@
+package com.orgzly.android.query
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.prefs.AppPreferences
+import com.orgzly.android.query.user.InternalQueryParser
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class QueryRefinementTest : OrgzlyTest() {
+    @Test
+    fun testTypingWord() {
+        assertEquals(
+                listOf(Condition.HasText("meeting", false)),
+                QueryRefinement.conditionsAdded(parse("meet"), parse("meeting")))
+    }
+
+    @Test
+    fun testAddingCondition() {
+        assertEquals(
+                listOf(Condition.HasTag("work")),
+                QueryRefinement.conditionsAdded(parse("meet"), parse("meet t.work")))
+    }
+
+    @Test
+    fun testSameQuery() {
+        assertEquals(
+                emptyList<Condition>(),
+                QueryRefinement.conditionsAdded(parse("meet t.work"), parse("meet t.work")))
+    }
+
+    @Test
+    fun testNotRefinements() {
+        assertNull(QueryRefinement.conditionsAdded(parse("meet"), parse("mee")))
+        assertNull(QueryRefinement.conditionsAdded(parse("meet"), parse("meet o.title")))
+        assertNull(QueryRefinement.conditionsAdded(parse("meet t.work"), parse("meet or t.work")))
+        assertNull(QueryRefinement.conditionsAdded(parse("\"meet\""), parse("\"meeting\"")))
+        assertNull(QueryRefinement.conditionsAdded(parse(""), parse("meet")))
+    }
+
+    @Test
+    fun testFilteringMatchesQuerying() {
+        testUtils.setupBook("book-a", """
+            * TODO Meeting notes :work:
+            Agenda for the café meeting
+            ** [#A] Meet Ana
+            * DONE Meetup :home:
+            * Notes about meetings
+            ** TODO Péché mignon :work:
+        """.trimIndent())
+
+        testUtils.setupBook("book-b", "* Meeting in other book\n")
+
+        val refinements = listOf(
+                "meet" to "meeting",
+                "meet" to "meeting n",
+                "meet" to "meet t.work",
+                "meet" to "meet tn.work",
+                "meet" to "meet i.todo",
+                "meet" to "meet p.a",
+                "meet" to "meet ps.b",
+                "meet" to "meet b.book-a",
+                "meet" to "meet .b.book-a",
+                "t.work" to "t.work peche",
+                "t.work" to "t.work \"CAFÉ\"",
+                "t.work" to "t.work (cafe or ana)")
+
+        for ((previous, query) in refinements) {
+            val previousQuery = parse(previous)
+            val refinedQuery = parse(query)
+
+            val conditions = QueryRefinement.conditionsAdded(previousQuery, refinedQuery)!!
+
+            val filtered = dataRepository.selectNotesFromQuery(previousQuery).filter { note ->
+                conditions.all { QueryRefinement.matches(note, it, AppPreferences.defaultPriority(context))!! }
+            }
+
+            assertEquals(
+                    "$previous -> $query",
+                    dataRepository.selectNotesFromQuery(refinedQuery).map { it.note.title },
+                    filtered.map { it.note.title })
+        }
+    }
+
+    private fun parse(queryString: String): Query {
+        return InternalQueryParser().parse(queryString)
+    }
+}
@@ -48,21 +48,21 @@ class QueryTest(private val param: Parameter) : OrgzlyTest() {
                     Parameter(
                             queryString = "i.todo t.work",
                             expectedQueryString = "i.todo t.work",
-                            expectedSqlSelection = "(COALESCE(state, '') = ? AND (COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?))",
-                            expectedSelectionArgs = listOf("TODO", "%work%", "%work%")
+                            expectedSqlSelection = "(COALESCE(state, '') = ? AND id IN (SELECT note_id FROM note_tags WHERE tag = ?))",
+                            expectedSelectionArgs = listOf("TODO", "work")
                     ),
                     Parameter(
                             queryString = "i.todo and t.work",
                             expectedQueryString = "i.todo t.work",
-                            expectedSqlSelection = "(COALESCE(state, '') = ? AND (COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?))",
-                            expectedSelectionArgs = listOf("TODO", "%work%", "%work%"),
+                            expectedSqlSelection = "(COALESCE(state, '') = ? AND id IN (SELECT note_id FROM note_tags WHERE tag = ?))",
+                            expectedSelectionArgs = listOf("TODO", "work"),
                             expectedQuerySortOrders = listOf()
                     ),
                     Parameter(
                             queryString = "i.todo AND t.work",
                             expectedQueryString = "i.todo t.work",
-                            expectedSqlSelection = "(COALESCE(state, '') = ? AND (COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?))",
-                            expectedSelectionArgs = listOf("TODO", "%work%", "%work%"),
+                            expectedSqlSelection = "(COALESCE(state, '') = ? AND id IN (SELECT note_id FROM note_tags WHERE tag = ?))",
+                            expectedSelectionArgs = listOf("TODO", "work"),
                             expectedQuerySortOrders = listOf()
                     ),
                     Parameter(
@@ -81,32 +81,32 @@ class QueryTest(private val param: Parameter) : OrgzlyTest() {
                     Parameter(
                             queryString = "i.todo or i.next and t.work",
                             expectedQueryString = "i.todo or i.next t.work",
-                            expectedSqlSelection = "(COALESCE(state, '') = ? OR (COALESCE(state, '') = ? AND (COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?)))",
-                            expectedSelectionArgs = listOf("TODO", "NEXT", "%work%", "%work%")
+                            expectedSqlSelection = "(COALESCE(state, '') = ? OR (COALESCE(state, '') = ? AND id IN (SELECT note_id FROM note_tags WHERE tag = ?)))",
+                            expectedSelectionArgs = listOf("TODO", "NEXT", "work")
                     ),
                     Parameter(
                             queryString = "i.todo and t.work or i.next",
                             expectedQueryString = "i.todo t.work or i.next",
-                            expectedSqlSelection = "((COALESCE(state, '') = ? AND (COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?)) OR COALESCE(state, '') = ?)",
-                            expectedSelectionArgs = listOf("TODO", "%work%", "%work%", "NEXT")
+                            expectedSqlSelection = "((COALESCE(state, '') = ? AND id IN (SELECT note_id FROM note_tags WHERE tag = ?)) OR COALESCE(state, '') = ?)",
+                            expectedSelectionArgs = listOf("TODO", "work", "NEXT")
                     ),
                     Parameter(
                             queryString = "i.todo t.work or i.next t.home",
                             expectedQueryString = "i.todo t.work or i.next t.home",
-                            expectedSqlSelection = "((COALESCE(state, '') = ? AND (COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?)) OR (COALESCE(state, '') = ? AND (COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?)))",
-                            expectedSelectionArgs = listOf("TODO", "%work%", "%work%", "NEXT", "%home%", "%home%")
+                            expectedSqlSelection = "((COALESCE(state, '') = ? AND id IN (SELECT note_id FROM note_tags WHERE tag = ?)) OR (COALESCE(state, '') = ? AND id IN (SELECT note_id FROM note_tags WHERE tag = ?)))",
+                            expectedSelectionArgs = listOf("TODO", "work", "NEXT", "home")
                     ),
                     Parameter(
                             queryString = "( i.todo t.work ) or i.next",
                             expectedQueryString = "i.todo t.work or i.next",
-                            expectedSqlSelection = "((COALESCE(state, '') = ? AND (COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?)) OR COALESCE(state, '') = ?)",
-                            expectedSelectionArgs = listOf("TODO", "%work%", "%work%", "NEXT")
+                            expectedSqlSelection = "((COALESCE(state, '') = ? AND id IN (SELECT note_id FROM note_tags WHERE tag = ?)) OR COALESCE(state, '') = ?)",
+                            expectedSelectionArgs = listOf("TODO", "work", "NEXT")
                     ),
                     Parameter(
                             queryString = "i.todo (i.next or t.work)",
                             expectedQueryString = "i.todo (i.next or t.work)",
-                            expectedSqlSelection = "(COALESCE(state, '') = ? AND (COALESCE(state, '') = ? OR (COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?)))",
-                            expectedSelectionArgs = listOf("TODO", "NEXT", "%work%", "%work%")
+                            expectedSqlSelection = "(COALESCE(state, '') = ? AND (COALESCE(state, '') = ? OR id IN (SELECT note_id FROM note_tags WHERE tag = ?)))",
+                            expectedSelectionArgs = listOf("TODO", "NEXT", "work")
                     ),
                     Parameter(
                             queryString = "(( i.todo) )",
@@ -117,8 +117,8 @@ class QueryTest(private val param: Parameter) : OrgzlyTest() {
                     Parameter(
                             queryString = "(it.todo b.gtd )or .s.none",
                             expectedQueryString = "it.todo b.gtd or .s.none",
-                            expectedSqlSelection = "((COALESCE(state, '') IN (?, ?) AND book_name = ?) OR (title LIKE ? OR content LIKE ? OR tags LIKE ?))",
-                            expectedSelectionArgs = listOf("TODO", "NEXT", "gtd", "%.s.none%", "%.s.none%", "%.s.none%")
+                            expectedSqlSelection = "((COALESCE(state, '') IN (?, ?) AND book_name = ?) OR id IN (SELECT docid FROM notes_fts WHERE notes_fts MATCH ?))",
+                            expectedSelectionArgs = listOf("TODO", "NEXT", "gtd", "\".s.none*\"")
                     ),
                     Parameter(
                             queryString = "it.todo",
@@ -135,39 +135,39 @@ class QueryTest(private val param: Parameter) : OrgzlyTest() {
                     Parameter(
                             queryString = "i.todo (t.work or o.p i.next) .o.book t.home",
                             expectedQueryString = "i.todo (t.work or i.next) t.home o.p .o.b",
-                            expectedSqlSelection = "(COALESCE(state, '') = ? AND ((COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?) OR COALESCE(state, '') = ?) AND (COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?))",
-                            expectedSelectionArgs = listOf("TODO", "%work%", "%work%", "NEXT", "%home%", "%home%"),
+                            expectedSqlSelection = "(COALESCE(state, '') = ? AND (id IN (SELECT note_id FROM note_tags WHERE tag = ?) OR COALESCE(state, '') = ?) AND id IN (SELECT note_id FROM note_tags WHERE tag = ?))",
+                            expectedSelectionArgs = listOf("TODO", "work", "NEXT", "home"),
                             expectedQuerySortOrders = listOf(SortOrder.Priority(), SortOrder.Book(desc = true))
                     ),
                     Parameter(
                             queryString = ".i.done ( t.t1 or t.t2)",
                             expectedQueryString = ".i.done (t.t1 or t.t2)",
-                            expectedSqlSelection = "(NOT(COALESCE(state, '') = ?) AND ((COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?) OR (COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?)))",
-                            expectedSelectionArgs = listOf("DONE", "%t1%", "%t1%", "%t2%", "%t2%")
+                            expectedSqlSelection = "(NOT(COALESCE(state, '') = ?) AND (id IN (SELECT note_id FROM note_tags WHERE tag = ?) OR id IN (SELECT note_id FROM note_tags WHERE tag = ?)))",
+                            expectedSelectionArgs = listOf("DONE", "t1", "t2")
                     ),
                     Parameter(
                             queryString = "tnn.tag1",
                             expectedQueryString = "tnn.tag1",
-                            expectedSqlSelection = "((title LIKE ? OR content LIKE ? OR tags LIKE ?))",
-                            expectedSelectionArgs = listOf("%tnn.tag1%", "%tnn.tag1%", "%tnn.tag1%")
+                            expectedSqlSelection = "(id IN (SELECT docid FROM notes_fts WHERE notes_fts MATCH ?))",
+                            expectedSelectionArgs = listOf("\"tnn.tag1*\"")
                     ),
                     Parameter(
                             queryString = "p.",
                             expectedQueryString = "p.",
-                            expectedSqlSelection = "((title LIKE ? OR content LIKE ? OR tags LIKE ?))",
-                            expectedSelectionArgs = listOf("%p.%", "%p.%", "%p.%")
+                            expectedSqlSelection = "(id IN (SELECT docid FROM notes_fts WHERE notes_fts MATCH ?))",
+                            expectedSelectionArgs = listOf("\"p*\"")
                     ),
                     Parameter( // Operator with no expression before it
                             queryString = "and t.tag",
                             expectedQueryString = "t.tag",
-                            expectedSqlSelection = "((COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?))",
-                            expectedSelectionArgs = listOf("%tag%", "%tag%")
+                            expectedSqlSelection = "(id IN (SELECT note_id FROM note_tags WHERE tag = ?))",
+                            expectedSelectionArgs = listOf("tag")
                     ),
                     Parameter(
                             queryString = ".tn.tag",
                             expectedQueryString = ".tn.tag",
-                            expectedSqlSelection = "(NOT((COALESCE(tags, '') LIKE ?)))",
-                            expectedSelectionArgs = listOf("%tag%")
+                            expectedSqlSelection = "(NOT(id IN (SELECT note_id FROM note_tags WHERE tag = ? AND is_inherited = 0)))",
+                            expectedSelectionArgs = listOf("tag")
                     ),
                     Parameter(
                             queryString = "i.todo (b.\"book(1) name\" or b.book2)",
@@ -224,7 +224,6 @@ class QueryTest(private val param: Parameter) : OrgzlyTest() {
                     Parameter(
                             queryString = "ad.2",
                             expectedQueryString = "ad.2",
-                            expectedSqlSelection = "",
                             expectedSelectionArgs = listOf()
                     ),
                     Parameter(
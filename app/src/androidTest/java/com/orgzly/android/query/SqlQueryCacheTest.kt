@@ -0,0 +1,71 @@
+package com.orgzly.android.query
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.prefs.AppPreferences
+import com.orgzly.android.query.sql.SqlQueryCache
+import com.orgzly.android.query.sql.SqliteQueryBuilder
+import com.orgzly.android.query.user.InternalQueryParser
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class SqlQueryCacheTest : OrgzlyTest() {
+    @Test
+    fun testTemplateResolvesToBuiltQuery() {
+        val query = InternalQueryParser().parse(".it.done s.ge.today d.tom")
+
+        val template = SqliteQueryBuilder(context).buildTemplate(query)
+
+        assertEquals(2, template.times.size)
+        assertEquals(SqliteQueryBuilder(context).build(query), template.resolve())
+    }
+
+    @Test
+    fun testSameQueryIsReused() {
+        val cache = SqlQueryCache()
+
+        val first = get(cache, "i.todo")
+        val second = get(cache, "i.todo")
+
+        assertSame(first, second)
+        assertEquals(1L, cache.hits)
+        assertEquals(1L, cache.misses)
+    }
+
+    @Test
+    fun testPreferencesChangeKey() {
+        val cache = SqlQueryCache()
+
+        val first = get(cache, "p.a")
+
+        AppPreferences.defaultPriority(context, "A")
+
+        val second = get(cache, "p.a")
+
+        assertEquals(0L, cache.hits)
+        assertEquals(listOf("B", "a"), first.template.selectionArgs)
+        assertEquals(listOf("A", "a"), second.template.selectionArgs)
+    }
+
+    @Test
+    fun testLeastRecentlyUsedIsEvicted() {
+        val cache = SqlQueryCache(2)
+
+        get(cache, "i.todo")
+        get(cache, "i.done")
+        get(cache, "i.todo")
+        get(cache, "i.next")
+        get(cache, "i.todo")
+        get(cache, "i.done")
+
+        assertEquals(2L, cache.hits)
+        assertEquals(4L, cache.misses)
+    }
+
+    private fun get(cache: SqlQueryCache, queryString: String): SqlQueryCache.Entry {
+        return cache.get(SqlQueryCache.key(context, queryString)) {
+            val query = InternalQueryParser().parse(queryString)
+            SqlQueryCache.Entry(query, SqliteQueryBuilder(context).buildTemplate(query))
+        }
+    }
+}
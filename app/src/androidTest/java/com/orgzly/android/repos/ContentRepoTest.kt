@@ -0,0 +1,398 @@
+package com.orgzly.android.repos
+
+import android.Manifest
+import android.content.ContentResolver
+import android.content.Context
+import android.content.ContextWrapper
+import android.content.pm.ProviderInfo
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.net.Uri
+import android.os.CancellationSignal
+import android.os.ParcelFileDescriptor
+import android.provider.DocumentsContract
+import android.provider.DocumentsContract.Document
+import android.provider.DocumentsProvider
+import android.test.mock.MockContentResolver
+import com.orgzly.android.LocalStorage
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.db.entity.Repo
+import com.orgzly.android.util.MiscUtils
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.io.FileNotFoundException
+import java.io.IOException
+
+class ContentRepoTest : OrgzlyTest() {
+    private lateinit var dir: File
+    private lateinit var provider: MockDocumentsProvider
+    private lateinit var repoContext: Context
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+
+        dir = localStorage.getCacheDirectory("orgzly-content-repo-test")
+        LocalStorage.deleteRecursive(dir)
+        dir.mkdirs()
+
+        provider = MockDocumentsProvider(dir)
+        provider.attachInfo(context, ProviderInfo().apply {
+            authority = AUTHORITY
+            exported = true
+            grantUriPermissions = true
+            readPermission = Manifest.permission.MANAGE_DOCUMENTS
+            writePermission = Manifest.permission.MANAGE_DOCUMENTS
+        })
+
+        val resolver = MockContentResolver(context).apply {
+            addProvider(AUTHORITY, provider)
+        }
+
+        repoContext = object : ContextWrapper(context) {
+            override fun getContentResolver(): ContentResolver = resolver
+        }
+    }
+
+    @After
+    override fun tearDown() {
+        super.tearDown()
+
+        ContentRepo.clearListings()
+
+        LocalStorage.deleteRecursive(dir)
+    }
+
+    @Test
+    fun testGetBooksUsesSingleQuery() {
+        MiscUtils.writeStringToFile("* Note A", File(dir, "book-a.org"))
+        MiscUtils.writeStringToFile("* Note B", File(dir, "book-b.org"))
+        MiscUtils.writeStringToFile("Not a book", File(dir, "notes.txt"))
+
+        val books = repo().books
+
+        assertEquals(listOf("book-a.org", "book-b.org"), books.map { it.uri.lastPathSegment }.sorted())
+        assertEquals(1, provider.childDocumentsQueries)
+        assertEquals(0, provider.documentQueries)
+    }
+
+    @Test
+    fun testRetrieveBooksWithoutListingAgain() {
+        MiscUtils.writeStringToFile("* Note A", File(dir, "book-a.org"))
+        MiscUtils.writeStringToFile("* Note B", File(dir, "book-b.org"))
+
+        repo().books
+
+        /* New instances, as used by sync. */
+        assertEquals("* Note A", retrieve("book-a.org"))
+        assertEquals("* Note B", retrieve("book-b.org"))
+
+        assertEquals(1, provider.childDocumentsQueries)
+    }
+
+    @Test
+    fun testGetBooksListsAgain() {
+        MiscUtils.writeStringToFile("* Note A", File(dir, "book-a.org"))
+
+        repo().books
+
+        MiscUtils.writeStringToFile("* Note B", File(dir, "book-b.org"))
+
+        assertEquals(2, repo().books.size)
+        assertEquals(2, provider.childDocumentsQueries)
+    }
+
+    @Test
+    fun testRetrieveBookAddedAfterListing() {
+        repo().books
+
+        MiscUtils.writeStringToFile("* Note A", File(dir, "book-a.org"))
+
+        assertEquals("* Note A", retrieve("book-a.org"))
+        assertEquals(2, provider.childDocumentsQueries)
+    }
+
+    @Test
+    fun testRetrieveBookChangedAfterListing() {
+        val bookFile = File(dir, "book-a.org")
+
+        MiscUtils.writeStringToFile("* Note A", bookFile)
+        bookFile.setLastModified(1000000)
+
+        repo().books
+
+        MiscUtils.writeStringToFile("* Note A changed", bookFile)
+        bookFile.setLastModified(2000000)
+
+        val file = dataRepository.tempBookFile
+        val retrieved = try {
+            repo().retrieveBook("book-a.org", file)
+        } finally {
+            file.delete()
+        }
+
+        /* Size differs from the listed one. */
+        assertEquals("2000000", retrieved.revision)
+        assertEquals(2, provider.childDocumentsQueries)
+    }
+
+    @Test
+    fun testListingIsDroppedWhenSyncEnds() {
+        MiscUtils.writeStringToFile("* Note A", File(dir, "book-a.org"))
+
+        repo().books
+
+        ContentRepo.clearListings()
+
+        assertEquals("* Note A", retrieve("book-a.org"))
+        assertEquals(2, provider.childDocumentsQueries)
+    }
+
+    @Test
+    fun testStoreBookReplacesExistingDocument() {
+        MiscUtils.writeStringToFile("* Note A", File(dir, "book-a.org"))
+
+        repo().books
+
+        val stored = store("book-a.org", "* Note A changed")
+
+        assertEquals("* Note A changed", MiscUtils.readStringFromFile(File(dir, "book-a.org")))
+        assertEquals(listOf("book-a.org"), dir.list()?.toList())
+        assertEquals("book-a.org", stored.uri.lastPathSegment)
+
+        /* Stored document is kept in the listing. */
+        assertEquals("* Note A changed", retrieve("book-a.org"))
+        assertEquals(1, provider.childDocumentsQueries)
+    }
+
+    @Test
+    fun testStoreNewBook() {
+        repo().books
+
+        store("book-a.org", "* Note A")
+
+        assertEquals("* Note A", MiscUtils.readStringFromFile(File(dir, "book-a.org")))
+        assertEquals(listOf("book-a.org"), dir.list()?.toList())
+    }
+
+    @Test
+    fun testStoreBookOverwritesIfRenameIsNotSupported() {
+        provider.supportsRename = false
+
+        MiscUtils.writeStringToFile("* Note A with longer content", File(dir, "book-a.org"))
+
+        repo().books
+
+        store("book-a.org", "* Note A")
+
+        assertEquals("* Note A", MiscUtils.readStringFromFile(File(dir, "book-a.org")))
+        assertEquals(listOf("book-a.org"), dir.list()?.toList())
+    }
+
+    @Test
+    fun testStoreBookKeepsExistingDocumentIfReplacingFails() {
+        MiscUtils.writeStringToFile("* Note A", File(dir, "book-a.org"))
+
+        repo().books
+
+        /* Temporary document written with the new content. */
+        provider.failRenaming = ".book-a.org.tmp"
+
+        try {
+            store("book-a.org", "* Note A changed")
+            fail("Storing should fail")
+        } catch (e: IOException) {
+        }
+
+        assertEquals("* Note A", MiscUtils.readStringFromFile(File(dir, "book-a.org")))
+        assertEquals(listOf("book-a.org"), dir.list()?.toList())
+    }
+
+    @Test
+    fun testStoreBookQueriesOnlyStoredDocument() {
+        MiscUtils.writeStringToFile("* Note A", File(dir, "book-a.org"))
+
+        repo().books
+
+        store("book-a.org", "* Note A changed")
+
+        /* Flags are listed, only modification time of the stored document is queried. */
+        assertEquals(1, provider.documentQueries)
+        assertEquals(1, provider.childDocumentsQueries)
+    }
+
+    @Test
+    fun testInterruptedReplacingIsFinished() {
+        MiscUtils.writeStringToFile("* Note A", File(dir, ".book-a.org.old"))
+        MiscUtils.writeStringToFile("* Note A changed", File(dir, ".book-a.org.tmp"))
+
+        val books = repo().books
+
+        assertEquals(listOf("book-a.org"), books.map { it.uri.lastPathSegment })
+        assertEquals(listOf("book-a.org"), dir.list()?.toList())
+        assertEquals("* Note A changed", retrieve("book-a.org"))
+    }
+
+    @Test
+    fun testInterruptedReplacingRestoresOldDocument() {
+        MiscUtils.writeStringToFile("* Note A", File(dir, ".book-a.org.old"))
+
+        val books = repo().books
+
+        assertEquals(listOf("book-a.org"), books.map { it.uri.lastPathSegment })
+        assertEquals(listOf("book-a.org"), dir.list()?.toList())
+        assertEquals("* Note A", retrieve("book-a.org"))
+    }
+
+    @Test
+    fun testLeftoversOfReplacingAreDeleted() {
+        MiscUtils.writeStringToFile("* Note A", File(dir, "book-a.org"))
+        MiscUtils.writeStringToFile("* Note A partial", File(dir, ".book-a.org.tmp"))
+        MiscUtils.writeStringToFile("* Note A old", File(dir, ".book-a.org.old"))
+
+        val books = repo().books
+
+        assertEquals(listOf("book-a.org"), books.map { it.uri.lastPathSegment })
+        assertEquals(listOf("book-a.org"), dir.list()?.toList())
+        assertEquals("* Note A", retrieve("book-a.org"))
+    }
+
+    private fun repo(): ContentRepo {
+        return ContentRepo(RepoWithProps(Repo(1, RepoType.DOCUMENT, TREE_URI.toString())), repoContext)
+    }
+
+    private fun store(fileName: String, content: String): VersionedRook {
+        val file = dataRepository.tempBookFile
+        try {
+            MiscUtils.writeStringToFile(content, file)
+            return repo().storeBook(file, fileName)
+        } finally {
+            file.delete()
+        }
+    }
+
+    private fun retrieve(fileName: String): String {
+        val file = dataRepository.tempBookFile
+        try {
+            repo().retrieveBook(fileName, file)
+            return MiscUtils.readStringFromFile(file)
+        } finally {
+            file.delete()
+        }
+    }
+
+    /** Provider of a single directory, counting queries. Documents are identified by name. */
+    private class MockDocumentsProvider(private val dir: File) : DocumentsProvider() {
+        var documentQueries = 0
+        var childDocumentsQueries = 0
+
+        var supportsRename = true
+
+        /* Renaming of this document fails, as if the provider refused it. */
+        var failRenaming: String? = null
+
+        override fun onCreate() = true
+
+        override fun queryRoots(projection: Array<out String>?): Cursor {
+            throw UnsupportedOperationException()
+        }
+
+        override fun queryDocument(documentId: String, projection: Array<out String>?): Cursor {
+            documentQueries++
+
+            return MatrixCursor(projection ?: DOCUMENT_PROJECTION).apply {
+                addDocument(this, documentId)
+            }
+        }
+
+        override fun queryChildDocuments(parentDocumentId: String, projection: Array<out String>?, sortOrder: String?): Cursor {
+            childDocumentsQueries++
+
+            return MatrixCursor(projection ?: DOCUMENT_PROJECTION).apply {
+                dir.list()?.sorted()?.forEach { addDocument(this, it) }
+            }
+        }
+
+        override fun openDocument(documentId: String, mode: String, signal: CancellationSignal?): ParcelFileDescriptor {
+            return ParcelFileDescriptor.open(file(documentId), ParcelFileDescriptor.parseMode(mode))
+        }
+
+        override fun createDocument(parentDocumentId: String, mimeType: String, displayName: String): String {
+            if (!File(dir, displayName).createNewFile()) {
+                throw IllegalStateException("Document $displayName already exists")
+            }
+
+            return displayName
+        }
+
+        override fun renameDocument(documentId: String, displayName: String): String {
+            val target = File(dir, displayName)
+
+            if (!supportsRename || documentId == failRenaming || target.exists() || !file(documentId).renameTo(target)) {
+                throw IllegalStateException("Failed renaming $documentId to $displayName")
+            }
+
+            return displayName
+        }
+
+        override fun deleteDocument(documentId: String) {
+            if (!file(documentId).delete()) {
+                throw IllegalStateException("Failed deleting $documentId")
+            }
+        }
+
+        override fun isChildDocument(parentDocumentId: String, documentId: String): Boolean {
+            return parentDocumentId == ROOT_ID && documentId != ROOT_ID
+        }
+
+        private fun addDocument(cursor: MatrixCursor, documentId: String) {
+            val file = file(documentId)
+
+            cursor.newRow()
+                    .add(Document.COLUMN_DOCUMENT_ID, documentId)
+                    .add(Document.COLUMN_DISPLAY_NAME, file.name)
+                    .add(Document.COLUMN_LAST_MODIFIED, file.lastModified())
+                    .add(Document.COLUMN_MIME_TYPE, if (file.isDirectory) Document.MIME_TYPE_DIR else "text/plain")
+                    .add(Document.COLUMN_FLAGS, flags(file))
+                    .add(Document.COLUMN_SIZE, file.length())
+        }
+
+        private fun flags(file: File): Int {
+            return if (file.isDirectory) {
+                Document.FLAG_DIR_SUPPORTS_CREATE
+            } else {
+                Document.FLAG_SUPPORTS_WRITE or Document.FLAG_SUPPORTS_DELETE or
+                        (if (supportsRename) Document.FLAG_SUPPORTS_RENAME else 0)
+            }
+        }
+
+        private fun file(documentId: String): File {
+            val file = if (documentId == ROOT_ID) dir else File(dir, documentId)
+
+            if (!file.exists()) {
+                throw FileNotFoundException("Document $documentId not found")
+            }
+
+            return file
+        }
+    }
+
+    companion object {
+        private const val AUTHORITY = "com.orgzly.test.documents"
+        private const val ROOT_ID = "root"
+
+        private val TREE_URI: Uri = DocumentsContract.buildTreeDocumentUri(AUTHORITY, ROOT_ID)
+
+        private val DOCUMENT_PROJECTION = arrayOf(
+                Document.COLUMN_DOCUMENT_ID,
+                Document.COLUMN_DISPLAY_NAME,
+                Document.COLUMN_LAST_MODIFIED,
+                Document.COLUMN_MIME_TYPE,
+                Document.COLUMN_FLAGS,
+                Document.COLUMN_SIZE)
+    }
+}
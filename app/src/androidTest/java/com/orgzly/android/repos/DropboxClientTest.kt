@@ -0,0 +1,247 @@
+package com.orgzly.android.repos
+
+import android.net.Uri
+import com.dropbox.core.DbxRequestConfig
+import com.dropbox.core.http.HttpRequestor
+import com.dropbox.core.v2.DbxClientV2
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.data.DropboxListingRepository
+import com.orgzly.android.db.entity.Repo
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.text.SimpleDateFormat
+import java.util.*
+
+class DropboxClientTest : OrgzlyTest() {
+    private lateinit var repo: Repo
+    private lateinit var dropbox: MockDropbox
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+
+        repo = testUtils.setupRepo(RepoType.DROPBOX, REPO_URL)
+        dropbox = MockDropbox()
+    }
+
+    @Test
+    fun testSyncWithoutChangesMakesSingleCall() {
+        dropbox.putFile("book-a.org")
+        dropbox.putFile("book-b.org")
+
+        val listed = getBooks()
+
+        assertEquals(listOf("list_folder"), dropbox.calls)
+
+        dropbox.calls.clear()
+
+        /* New client, as used by sync. */
+        val relisted = getBooks()
+
+        assertEquals(listOf("list_folder/continue"), dropbox.calls)
+        assertEquals(revisions(listed), revisions(relisted))
+    }
+
+    @Test
+    fun testChangesAreApplied() {
+        dropbox.putFile("book-a.org")
+        dropbox.putFile("book-b.org")
+
+        getBooks()
+
+        dropbox.putFile("book-a.org")
+        dropbox.deleteFile("book-b.org")
+        dropbox.putFile("book-c.org")
+        dropbox.putFile("notes.txt")
+        dropbox.putFile("book-d.org")
+        dropbox.deleteFile("book-d.org")
+
+        dropbox.calls.clear()
+
+        val books = getBooks()
+
+        assertEquals(listOf("list_folder/continue"), dropbox.calls)
+        assertEquals(dropbox.revisions("book-a.org", "book-c.org"), revisions(books))
+    }
+
+    @Test
+    fun testResetCursorListsFolderAgain() {
+        dropbox.putFile("book-a.org")
+
+        getBooks()
+
+        dropbox.putFile("book-b.org")
+        dropbox.resetCursors()
+
+        dropbox.calls.clear()
+
+        val books = getBooks()
+
+        assertEquals(listOf("list_folder/continue", "list_folder"), dropbox.calls)
+        assertEquals(dropbox.revisions("book-a.org", "book-b.org"), revisions(books))
+    }
+
+    @Test
+    fun testMissingFolder() {
+        dropbox.folderExists = false
+
+        assertTrue(getBooks().isEmpty())
+    }
+
+    private fun getBooks(): List<VersionedRook> {
+        val dbxClient = DbxClientV2(
+                DbxRequestConfig.newBuilder("orgzly-test").withHttpRequestor(dropbox).build(),
+                "token")
+
+        val client = DropboxClient(context, repo.id, DropboxListingRepository(database), dbxClient)
+
+        return client.getBooks(Uri.parse(REPO_URL))
+    }
+
+    private fun revisions(books: List<VersionedRook>): Map<String, String> {
+        return books.associate { it.uri.lastPathSegment!! to it.revision }
+    }
+
+    /** Dropbox API serving a single folder, with changes listed by cursor. */
+    private class MockDropbox : HttpRequestor() {
+        val calls = mutableListOf<String>()
+
+        var folderExists = true
+
+        /* Name to metadata, including deleted files. */
+        private val entries = linkedMapOf<String, JSONObject>()
+
+        /* Version of the folder and the version at which each entry last changed. */
+        private var version = 0
+        private val changedAt = mutableMapOf<String, Int>()
+
+        private var minCursor = 0
+
+        fun putFile(name: String) {
+            version++
+
+            entries[name] = JSONObject()
+                    .put(".tag", "file")
+                    .put("name", name)
+                    .put("id", "id:$name")
+                    .put("client_modified", DATE)
+                    .put("server_modified", DATE)
+                    .put("rev", String.format("%09x", version))
+                    .put("size", 1)
+                    .put("path_lower", "$PATH/$name")
+                    .put("path_display", "$PATH/$name")
+
+            changedAt[name] = version
+        }
+
+        fun deleteFile(name: String) {
+            version++
+
+            entries[name] = JSONObject()
+                    .put(".tag", "deleted")
+                    .put("name", name)
+                    .put("path_lower", "$PATH/$name")
+                    .put("path_display", "$PATH/$name")
+
+            changedAt[name] = version
+        }
+
+        fun resetCursors() {
+            minCursor = version
+        }
+
+        fun revisions(vararg names: String): Map<String, String> {
+            return names.associate { it to entries.getValue(it).getString("rev") }
+        }
+
+        override fun startPost(url: String, headers: Iterable<Header>): Uploader {
+            val endpoint = url.substringAfter("/2/files/")
+
+            calls.add(endpoint)
+
+            return object : Uploader() {
+                private val body = ByteArrayOutputStream()
+
+                override fun getBody(): OutputStream = body
+
+                override fun close() {}
+
+                override fun abort() {}
+
+                override fun finish(): Response {
+                    return dispatch(endpoint, JSONObject(body.toString("UTF-8")))
+                }
+            }
+        }
+
+        override fun startPut(url: String, headers: Iterable<Header>): Uploader {
+            throw UnsupportedOperationException()
+        }
+
+        override fun doGet(url: String, headers: Iterable<Header>): Response {
+            throw UnsupportedOperationException()
+        }
+
+        private fun dispatch(endpoint: String, request: JSONObject): Response {
+            return when (endpoint) {
+                "list_folder" -> {
+                    if (!folderExists) {
+                        error("path/not_found/", JSONObject()
+                                .put(".tag", "path")
+                                .put("path", JSONObject().put(".tag", "not_found")))
+                    } else {
+                        listed(entries.values.filter { it.getString(".tag") == "file" })
+                    }
+                }
+
+                "list_folder/continue" -> {
+                    val cursor = request.getString("cursor").toInt()
+
+                    if (cursor < minCursor) {
+                        error("reset/", JSONObject().put(".tag", "reset"))
+                    } else {
+                        listed(entries.filterKeys { changedAt.getValue(it) > cursor }.values)
+                    }
+                }
+
+                else -> throw UnsupportedOperationException(endpoint)
+            }
+        }
+
+        private fun listed(entries: Collection<JSONObject>): Response {
+            val result = JSONObject()
+                    .put("entries", JSONArray(entries))
+                    .put("cursor", version.toString())
+                    .put("has_more", false)
+
+            return response(200, result)
+        }
+
+        private fun error(summary: String, error: JSONObject): Response {
+            return response(409, JSONObject().put("error_summary", summary).put("error", error))
+        }
+
+        private fun response(code: Int, json: JSONObject): Response {
+            return Response(
+                    code,
+                    ByteArrayInputStream(json.toString().toByteArray()),
+                    mapOf("Content-Type" to listOf("application/json")))
+        }
+    }
+
+    companion object {
+        private const val PATH = "/orgzly"
+        private const val REPO_URL = "dropbox:$PATH"
+
+        private val DATE = SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US).apply {
+            timeZone = TimeZone.getTimeZone("UTC")
+        }.format(Date(1_600_000_000_000))
+    }
+}
@@ -6,6 +6,7 @@ import com.orgzly.BuildConfig;
 import com.orgzly.android.BookName;
 import com.orgzly.android.LocalStorage;
 import com.orgzly.android.OrgzlyTest;
+import com.orgzly.android.data.ParsedBook;
 import com.orgzly.android.db.entity.Book;
 import com.orgzly.android.db.entity.BookView;
 import com.orgzly.android.db.entity.NoteView;
@@ -13,17 +14,25 @@ import com.orgzly.android.db.entity.Repo;
 import com.orgzly.android.prefs.AppPreferences;
 import com.orgzly.android.sync.BookNamesake;
 import com.orgzly.android.sync.BookSyncStatus;
+import com.orgzly.android.sync.SyncUtils;
 import com.orgzly.android.util.EncodingDetect;
 import com.orgzly.android.util.MiscUtils;
+import com.orgzly.org.datetime.OrgDateTime;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -77,6 +86,40 @@ public class SyncTest extends OrgzlyTest {
         assertEquals("mock://repo-a/todo.org", dataRepository.getBooks().get(0).getSyncedTo().getUri().toString());
     }
 
+    @Test
+    public void testSyncPreparedConcurrently() throws Exception {
+        Repo repo = testUtils.setupRepo(RepoType.MOCK, "mock://repo-a");
+        for (int i = 1; i <= 5; i++) {
+            testUtils.setupRook(repo, "mock://repo-a/book-" + i + ".org", "* Note " + i + "\nSCHEDULED: <2018-01-01 Mon>", "abc" + i, 1400067156);
+        }
+
+        Map<String, BookNamesake> namesakes = SyncUtils.groupAllNotebooksByName(dataRepository);
+
+        /* Download and parse all books at once, then load them one by one. */
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        Map<String, Future<ParsedBook>> parsedBooks = new HashMap<>();
+        for (BookNamesake namesake : namesakes.values()) {
+            parsedBooks.put(namesake.getName(), executor.submit(() -> SyncUtils.prepareNamesake(dataRepository, namesake)));
+        }
+        executor.shutdown();
+
+        for (BookNamesake namesake : namesakes.values()) {
+            ParsedBook parsedBook = parsedBooks.get(namesake.getName()).get();
+            assertNotNull(parsedBook);
+
+            SyncUtils.syncNamesake(dataRepository, namesake, parsedBook);
+        }
+
+        assertEquals(5, dataRepository.getBooks().size());
+
+        for (int i = 1; i <= 5; i++) {
+            BookView book = dataRepository.getBookView("book-" + i);
+            assertNotNull(book.getSyncedTo());
+            assertEquals("mock://repo-a/book-" + i + ".org", book.getSyncedTo().getUri().toString());
+            assertEquals("<2018-01-01 Mon>", dataRepository.getLastNoteView("Note " + i).getScheduledRangeString());
+        }
+    }
+
     @Test
     public void testSync2() {
         /* Add remote books. */
@@ -216,6 +259,63 @@ public class SyncTest extends OrgzlyTest {
         assertNull(book.getBook().getSelectedEncoding());
     }
 
+    @Test
+    public void testRemoteBookWithSameContentIsNotLoaded() {
+        Repo repo = testUtils.setupRepo(RepoType.MOCK, "mock://repo-a");
+        testUtils.setupRook(repo, "mock://repo-a/book.org", "* Note A", "rev1", 1400067156000L);
+
+        testUtils.sync();
+
+        BookView book = dataRepository.getBookView("book");
+        assertFalse(dataRepository.removeUnchangedContent(book.getBook().getId()));
+
+        /* Touched remotely, new revision with the same content. */
+        testUtils.setupRook(repo, "mock://repo-a/book.org", "* Note A", "rev2", 1400067157000L);
+
+        testUtils.sync();
+
+        book = dataRepository.getBookView("book");
+        assertEquals(BookSyncStatus.BOOK_WITH_LINK_AND_ROOK_MODIFIED.toString(), book.getBook().getSyncStatus());
+        assertEquals("rev2", book.getSyncedTo().getRevision());
+        assertTrue(dataRepository.removeUnchangedContent(book.getBook().getId()));
+
+        /* Modified remotely. */
+        testUtils.setupRook(repo, "mock://repo-a/book.org", "* Note B", "rev3", 1400067158000L);
+
+        testUtils.sync();
+
+        book = dataRepository.getBookView("book");
+        assertEquals("rev3", book.getSyncedTo().getRevision());
+        assertFalse(dataRepository.removeUnchangedContent(book.getBook().getId()));
+        testUtils.assertBook("book", "* Note B\n");
+    }
+
+    @Test
+    public void testBookWithSameContentIsNotSaved() {
+        Repo repo = testUtils.setupRepo(RepoType.MOCK, "mock://repo-a");
+        testUtils.setupBook("book", "* Note A", repo);
+
+        testUtils.sync();
+
+        BookView book = dataRepository.getBookView("book");
+        String revision = book.getSyncedTo().getRevision();
+
+        /* Modified, then changed back. */
+        Set<Long> ids = Collections.singleton(dataRepository.getLastNote("Note A").getId());
+        dataRepository.setNotesScheduledTime(ids, OrgDateTime.parse("<2018-01-01 Mon>"));
+        dataRepository.setNotesScheduledTime(ids, null);
+
+        assertTrue(dataRepository.getBookView("book").isOutOfSync());
+
+        testUtils.sync();
+
+        book = dataRepository.getBookView("book");
+        assertEquals(BookSyncStatus.BOOK_WITH_LINK_LOCAL_MODIFIED.toString(), book.getBook().getSyncStatus());
+        assertEquals(revision, book.getSyncedTo().getRevision());
+        assertFalse(book.isOutOfSync());
+        assertTrue(dataRepository.removeUnchangedContent(book.getBook().getId()));
+    }
+
     @Test
     public void testOnlyBookWithLink() {
         Repo repoA = testUtils.setupRepo(RepoType.MOCK, "mock://repo-a");
@@ -0,0 +1,291 @@
+package com.orgzly.android.repos
+
+import android.net.Uri
+import com.orgzly.android.LocalStorage
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.util.MiscUtils
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.text.SimpleDateFormat
+import java.util.*
+
+class WebdavRepoTest : OrgzlyTest() {
+    private lateinit var server: MockWebServer
+    private lateinit var dav: MockWebdav
+    private lateinit var cacheDir: File
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+
+        dav = MockWebdav()
+
+        server = MockWebServer()
+        server.dispatcher = dav
+        server.start()
+
+        cacheDir = localStorage.getCacheDirectory("orgzly-webdav-repo-test")
+        LocalStorage.deleteRecursive(cacheDir)
+    }
+
+    @After
+    override fun tearDown() {
+        super.tearDown()
+
+        server.shutdown()
+
+        LocalStorage.deleteRecursive(cacheDir)
+    }
+
+    @Test
+    fun testGetBooksUsesSinglePropfind() {
+        dav.putFile("book-a.org", "* Note A")
+        dav.putFile("book-b.org", "* Note B")
+        dav.putFile("notes.txt", "Not a book")
+
+        val books = repo().books
+
+        assertEquals(listOf("book-a.org", "book-b.org"), books.map { it.uri.lastPathSegment }.sorted())
+        assertEquals(listOf("PROPFIND"), dav.methods)
+    }
+
+    @Test
+    fun testMissingDirectoryIsCreated() {
+        dav.directoryExists = false
+
+        assertTrue(repo().books.isEmpty())
+        assertEquals(listOf("PROPFIND", "MKCOL"), dav.methods)
+        assertTrue(dav.directoryExists)
+    }
+
+    @Test
+    fun testRetrieveBookWithoutPropfind() {
+        dav.putFile("book-a.org", "* Note A")
+
+        val listed = repo().books.first()
+
+        dav.methods.clear()
+
+        val retrieved = retrieve("book-a.org")
+
+        assertEquals(listOf("GET"), dav.methods)
+        assertEquals(listed.revision, retrieved.first.revision)
+        assertEquals(listed.mtime, retrieved.first.mtime)
+        assertEquals("* Note A", retrieved.second)
+    }
+
+    @Test
+    fun testRetrievingUnchangedBookAgain() {
+        dav.putFile("book-a.org", "* Note A")
+
+        repo().books
+        val first = retrieve("book-a.org")
+
+        dav.notModifiedCount = 0
+
+        /* New instance, as used by sync. */
+        repo().books
+        val second = retrieve("book-a.org")
+
+        assertEquals(1, dav.notModifiedCount)
+        assertEquals(first.first.revision, second.first.revision)
+        assertEquals("* Note A", second.second)
+    }
+
+    @Test
+    fun testRetrievingChangedBook() {
+        dav.putFile("book-a.org", "* Note A")
+
+        repo().books
+        retrieve("book-a.org")
+
+        dav.putFile("book-a.org", "* Note A changed", 2000)
+
+        val listed = repo().books.first()
+        val retrieved = retrieve("book-a.org")
+
+        assertEquals(0, dav.notModifiedCount)
+        assertEquals(listed.revision, retrieved.first.revision)
+        assertEquals("* Note A changed", retrieved.second)
+    }
+
+    @Test
+    fun testStoreBookWithoutPropfind() {
+        repo().books
+
+        dav.methods.clear()
+
+        val file = dataRepository.tempBookFile
+        val stored = try {
+            MiscUtils.writeStringToFile("* Note A", file)
+            repo().storeBook(file, "book-a.org")
+        } finally {
+            file.delete()
+        }
+
+        assertEquals(listOf("PUT"), dav.methods)
+        assertEquals("* Note A", dav.files["book-a.org"]?.content)
+
+        val listed = repo().books.first()
+
+        assertEquals(listed.revision, stored.revision)
+
+        /* Content of uploaded file is cached. */
+        retrieve("book-a.org")
+        assertEquals(1, dav.notModifiedCount)
+    }
+
+    @Test
+    fun testStoreBookWithOnlyEtagInResponse() {
+        dav.lastModifiedOnPut = false
+
+        repo().books
+
+        dav.methods.clear()
+
+        val file = dataRepository.tempBookFile
+        val stored = try {
+            MiscUtils.writeStringToFile("* Note A", file)
+            repo().storeBook(file, "book-a.org")
+        } finally {
+            file.delete()
+        }
+
+        assertEquals(listOf("PUT"), dav.methods)
+
+        val listed = repo().books.first()
+
+        assertEquals(listed.revision, stored.revision)
+    }
+
+    private fun repo(): WebdavRepo {
+        val uri = Uri.parse(server.url(DIR_PATH).toString())
+        return WebdavRepo(1, uri, "user", "pass", null, WebdavCache.forDirectory(cacheDir))
+    }
+
+    private fun retrieve(fileName: String): Pair<VersionedRook, String> {
+        val file = dataRepository.tempBookFile
+        try {
+            val vrook = repo().retrieveBook(fileName, file)
+            return Pair(vrook, MiscUtils.readStringFromFile(file))
+        } finally {
+            file.delete()
+        }
+    }
+
+    private class MockFile(val content: String, val etag: String, val modified: Date)
+
+    /** Minimal WebDAV server with a single directory. */
+    private class MockWebdav : Dispatcher() {
+        val files = Collections.synchronizedMap(mutableMapOf<String, MockFile>())
+
+        var directoryExists = true
+
+        val methods = Collections.synchronizedList(mutableListOf<String>())
+
+        var notModifiedCount = 0
+
+        var lastModifiedOnPut = true
+
+        private var etagCounter = 0
+
+        fun putFile(name: String, content: String, modified: Long = 1000) {
+            files[name] = MockFile(content, "\"${++etagCounter}\"", Date(modified * 1000))
+        }
+
+        override fun dispatch(request: RecordedRequest): MockResponse {
+            methods.add(checkNotNull(request.method))
+
+            val path = checkNotNull(request.path).trimEnd('/')
+
+            if (!directoryExists && request.method != "MKCOL") {
+                return MockResponse().setResponseCode(404)
+            }
+
+            return when (request.method) {
+                "PROPFIND" -> propfind(path)
+
+                "MKCOL" -> {
+                    directoryExists = true
+                    MockResponse().setResponseCode(201)
+                }
+
+                "GET" -> {
+                    val file = files[name(path)] ?: return MockResponse().setResponseCode(404)
+
+                    if (request.getHeader("If-None-Match") == file.etag) {
+                        notModifiedCount++
+                        MockResponse().setResponseCode(304).setHeader("ETag", file.etag)
+                    } else {
+                        fileHeaders(MockResponse().setBody(file.content), file)
+                    }
+                }
+
+                "PUT" -> {
+                    putFile(name(path), request.body.readUtf8(), 3000)
+                    val file = files.getValue(name(path))
+
+                    if (lastModifiedOnPut) {
+                        fileHeaders(MockResponse().setResponseCode(201), file)
+                    } else {
+                        MockResponse().setResponseCode(201).setHeader("ETag", file.etag)
+                    }
+                }
+
+                else -> MockResponse().setResponseCode(405)
+            }
+        }
+
+        private fun propfind(path: String): MockResponse {
+            val responses = if (path == DIR_PATH) {
+                listOf(directoryXml()) + files.keys.map { fileXml(it) }
+            } else {
+                listOfNotNull(files[name(path)]?.let { fileXml(name(path)) })
+            }
+
+            if (responses.isEmpty()) {
+                return MockResponse().setResponseCode(404)
+            }
+
+            return MockResponse()
+                    .setResponseCode(207)
+                    .setHeader("Content-Type", "application/xml; charset=utf-8")
+                    .setBody("""<?xml version="1.0" encoding="utf-8"?><d:multistatus xmlns:d="DAV:">${responses.joinToString("")}</d:multistatus>""")
+        }
+
+        private fun directoryXml(): String {
+            return """<d:response><d:href>$DIR_PATH/</d:href><d:propstat><d:prop><d:getlastmodified>${httpDate(Date(0))}</d:getlastmodified><d:resourcetype><d:collection/></d:resourcetype></d:prop><d:status>HTTP/1.1 200 OK</d:status></d:propstat></d:response>"""
+        }
+
+        private fun fileXml(name: String): String {
+            val file = files.getValue(name)
+            return """<d:response><d:href>$DIR_PATH/$name</d:href><d:propstat><d:prop><d:getlastmodified>${httpDate(file.modified)}</d:getlastmodified><d:getetag>${file.etag}</d:getetag><d:resourcetype/></d:prop><d:status>HTTP/1.1 200 OK</d:status></d:propstat></d:response>"""
+        }
+
+        private fun fileHeaders(response: MockResponse, file: MockFile): MockResponse {
+            return response
+                    .setHeader("ETag", file.etag)
+                    .setHeader("Last-Modified", httpDate(file.modified))
+        }
+
+        private fun name(path: String) = path.substringAfterLast('/')
+
+        private fun httpDate(date: Date): String {
+            return SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).apply {
+                timeZone = TimeZone.getTimeZone("GMT")
+            }.format(date)
+        }
+    }
+
+    companion object {
+        private const val DIR_PATH = "/org"
+    }
+}
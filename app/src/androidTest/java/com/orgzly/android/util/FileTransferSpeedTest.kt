@@ -0,0 +1,129 @@
+package com.orgzly.android.util
+
+import com.orgzly.android.LocalStorage
+import com.orgzly.android.OrgzlyTest
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Ignore
+import org.junit.Test
+import java.io.*
+import java.util.Arrays
+
+/**
+ * Simple benchmark for copying and reading multi-MB books, written as a failing test
+ * (to display the results).
+ *
+ * Compares [FileTransfer] with the previous 1 KB buffer implementations.
+ */
+@Ignore("Not a test")
+class FileTransferSpeedTest : OrgzlyTest() {
+    private lateinit var dir: File
+    private lateinit var src: File
+    private lateinit var dst: File
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+
+        dir = localStorage.getCacheDirectory("file-transfer-speed-test")
+
+        src = File(dir, "src.org")
+        dst = File(dir, "dst.org")
+    }
+
+    @After
+    override fun tearDown() {
+        super.tearDown()
+
+        LocalStorage.deleteRecursive(dir)
+    }
+
+    @Test
+    fun copyFile8MB() {
+        test(8) { FileTransfer.copy(src, dst) }
+    }
+
+    @Test
+    fun copyFileAtomically8MB() {
+        test(8) { FileTransfer.copyAtomically(src, dst) }
+    }
+
+    @Test
+    fun copyFileWithSmallBuffer8MB() {
+        test(8) { FileInputStream(src).use { input -> FileOutputStream(dst).use { copyWithSmallBuffer(input, it) } } }
+    }
+
+    @Test
+    fun copyStream8MB() {
+        test(8) { FileInputStream(src).use { FileTransfer.copy(it, dst) } }
+    }
+
+    @Test
+    fun readString8MB() {
+        test(8) { FileTransfer.readString(src) }
+    }
+
+    @Test
+    fun readStringWithSmallBuffer8MB() {
+        test(8) { readStringWithSmallBuffer(src) }
+    }
+
+    private fun test(megabytes: Int, transfer: () -> Unit) {
+        MiscUtils.writeStringToFile(generateBook(megabytes * 1024 * 1024), src)
+
+        val times = LongArray(ITERATIONS)
+
+        for (i in 0 until ITERATIONS) {
+            val t1 = System.currentTimeMillis()
+
+            transfer()
+
+            times[i] = System.currentTimeMillis() - t1
+        }
+
+        val stats = Arrays.stream(times).skip(SKIP_FIRST).summaryStatistics()
+
+        Assert.fail("${src.length() / 1024} KiB, $stats")
+    }
+
+    /** Previous implementation of copying. */
+    private fun copyWithSmallBuffer(input: InputStream, output: OutputStream) {
+        val buffer = ByteArray(1024)
+        var len: Int
+        while (input.read(buffer, 0, buffer.size).also { len = it } != -1) {
+            output.write(buffer, 0, len)
+        }
+    }
+
+    /** Previous implementation of reading. */
+    private fun readStringWithSmallBuffer(file: File): String {
+        val fileData = StringBuffer()
+        BufferedReader(FileReader(file)).use { reader ->
+            val buf = CharArray(1024)
+            var numRead: Int
+            while (reader.read(buf).also { numRead = it } != -1) {
+                fileData.append(String(buf, 0, numRead))
+            }
+        }
+        return fileData.toString()
+    }
+
+    private fun generateBook(size: Int): String {
+        val sb = StringBuilder(size)
+
+        var i = 0
+        while (sb.length < size) {
+            sb.append("*".repeat(1 + i % 5)).append(" Heading ").append(i).append("\n")
+            sb.append("Content of heading ").append(i).append("\n")
+            i++
+        }
+
+        return sb.toString()
+    }
+
+    companion object {
+        private const val ITERATIONS = 5
+        private const val SKIP_FIRST = 2L
+    }
+}
@@ -0,0 +1,65 @@
+package com.orgzly.android.util;
+
+import com.orgzly.android.LocalStorage;
+import com.orgzly.android.OrgzlyTest;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class FileTransferTest extends OrgzlyTest {
+    @Test
+    public void testCopyAtomicallyReplacesFile() throws IOException {
+        File dir = localStorage.getCacheDirectory("file-transfer-test");
+        File src = new File(dir, "src.org");
+        File dst = new File(dir, "dst.org");
+
+        try {
+            MiscUtils.writeStringToFile("* New content", src);
+            MiscUtils.writeStringToFile("* Old, longer content", dst);
+
+            FileTransfer.copyAtomically(src, dst);
+
+            assertEquals("* New content", FileTransfer.readString(dst));
+
+            /* No temporary files are left behind. */
+            String[] names = dir.list();
+            assertNotNull(names);
+            assertEquals(2, names.length);
+
+        } finally {
+            LocalStorage.deleteRecursive(dir);
+        }
+    }
+
+    @Test
+    public void testCopyingStreams() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("* Note ").append(i).append(" ✓\n");
+        }
+        String content = sb.toString();
+
+        File file = dataRepository.getTempBookFile();
+
+        try {
+            FileTransfer.copy(new ByteArrayInputStream(content.getBytes("UTF-8")), file);
+
+            assertEquals(content, FileTransfer.readString(file));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            FileTransfer.copy(file, out);
+
+            assertEquals(content, out.toString("UTF-8"));
+
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -23,6 +23,7 @@ class NotesOrgExporter(val dataRepository: DataRepository) {
     fun exportBook(book: Book, file: File) {
         val encoding = book.usedEncoding ?: Charset.defaultCharset().name()
 
+        // Buffered by PrintWriter
         PrintWriter(file, encoding).use {
             exportBook(book, it)
         }
@@ -36,15 +37,13 @@ class NotesOrgExporter(val dataRepository: DataRepository) {
         // Write preface
         writer.write(orgWriter.whiteSpacedFilePreface(book.preface))
 
-        // Write each note
-        dataRepository.getNotes(book.name).forEach { noteView ->
-            val note = noteView.note
-
+        // Write each note as it is read, without keeping the whole book in memory
+        dataRepository.forEachNoteToExport(book.id) { noteView, noteProperties ->
             val head = OrgMapper.toOrgHead(noteView).apply {
-                properties = OrgMapper.toOrgProperties(dataRepository.getNoteProperties(note.id))
+                properties = OrgMapper.toOrgProperties(noteProperties)
             }
 
-            writer.write(orgWriter.whiteSpacedHead(head, note.position.level, book.isIndented == true))
+            writer.write(orgWriter.whiteSpacedHead(head, noteView.note.position.level, book.isIndented == true))
         }
     }
 
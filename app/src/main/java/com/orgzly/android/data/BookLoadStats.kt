@@ -0,0 +1,15 @@
+package com.orgzly.android.data
+
+/**
+ * Notes written while loading a book.
+ *
+ * @property rows all rows written, including properties, events and ancestors
+ * @property time time it took to parse and store the book, in milliseconds
+ */
+data class BookLoadStats(
+        val inserted: Int,
+        val updated: Int,
+        val deleted: Int,
+        val unchanged: Int,
+        val rows: Long,
+        val time: Long)
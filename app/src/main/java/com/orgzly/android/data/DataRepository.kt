@@ -1,6 +1,5 @@
 package com.orgzly.android.data
 
-import android.annotation.SuppressLint
 import android.content.Context
 import android.content.Intent
 import android.content.res.Resources
@@ -9,17 +8,26 @@ import android.net.Uri
 import android.os.Handler
 import android.text.TextUtils
 import androidx.lifecycle.LiveData
-import androidx.lifecycle.MutableLiveData
-import androidx.lifecycle.Transformations
 import androidx.localbroadcastmanager.content.LocalBroadcastManager
+import androidx.paging.PagingSource
 import androidx.sqlite.db.SupportSQLiteQuery
 import androidx.sqlite.db.SupportSQLiteQueryBuilder
 import com.orgzly.BuildConfig
 import com.orgzly.R
 import com.orgzly.android.*
+import com.orgzly.android.data.logs.AppLogsRepository
+import com.orgzly.android.data.logs.QueryProfiler
 import com.orgzly.android.data.mappers.OrgMapper
+import com.orgzly.android.db.BookNotesPagingSource
+import com.orgzly.android.db.BookVisibility
+import com.orgzly.android.db.NestedSetGaps
+import com.orgzly.android.db.NoteAncestorsTracker
+import com.orgzly.android.db.NotesBulkWriter
 import com.orgzly.android.db.NotesClipboard
+import com.orgzly.android.db.NotesDiffWriter
+import com.orgzly.android.db.OrgTimeIdCache
 import com.orgzly.android.db.OrgzlyDatabase
+import com.orgzly.android.db.dao.AgendaOccurrenceDao
 import com.orgzly.android.db.dao.NoteDao
 import com.orgzly.android.db.dao.NoteViewDao
 import com.orgzly.android.db.dao.ReminderTimeDao
@@ -27,7 +35,10 @@ import com.orgzly.android.db.entity.*
 import com.orgzly.android.db.mappers.OrgTimestampMapper
 import com.orgzly.android.prefs.AppPreferences
 import com.orgzly.android.query.Query
+import com.orgzly.android.query.sql.SqlQueryCache
+import com.orgzly.android.query.sql.SqlQueryTemplate
 import com.orgzly.android.query.sql.SqliteQueryBuilder
+import com.orgzly.android.query.user.DottedQueryBuilder
 import com.orgzly.android.query.user.InternalQueryParser
 import com.orgzly.android.repos.*
 import com.orgzly.android.repos.Rook
@@ -38,6 +49,7 @@ import com.orgzly.android.ui.NotePlace
 import com.orgzly.android.ui.Place
 import com.orgzly.android.ui.note.NoteBuilder
 import com.orgzly.android.ui.note.NotePayload
+import com.orgzly.android.ui.notes.query.agenda.AgendaItems
 import com.orgzly.android.usecase.RepoCreate
 import com.orgzly.android.util.*
 import com.orgzly.org.OrgActiveTimestamps
@@ -51,10 +63,12 @@ import com.orgzly.org.parser.OrgNodeInSet
 import com.orgzly.org.parser.OrgParser
 import com.orgzly.org.parser.OrgParserWriter
 import com.orgzly.org.utils.StateChangeLogic
+import org.joda.time.DateTime
 import java.io.*
 import java.lang.IllegalStateException
 import java.util.*
 import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -65,7 +79,22 @@ class DataRepository @Inject constructor(
         private val db: OrgzlyDatabase,
         private val repoFactory: RepoFactory,
         private val resources: Resources,
-        private val localStorage: LocalStorage) {
+        private val localStorage: LocalStorage,
+        private val appLogs: AppLogsRepository) {
+
+    /* Statistics of the last load, per book. */
+    private val bookLoadStats = ConcurrentHashMap<Long, BookLoadStats>()
+
+    /* Books not loaded or saved while syncing, as their content was unchanged. */
+    private val unchangedContentBooks = ConcurrentHashMap.newKeySet<Long>()
+
+    /* Cache of time IDs for the transaction running on the current thread. */
+    private val orgTimeIdCache = ThreadLocal<OrgTimeIdCache?>()
+
+    /* Parsed queries and their SQL, by query string. */
+    private val sqlQueryCache = SqlQueryCache()
+
+    private val queryProfiler = QueryProfiler(db, appLogs)
 
     fun forceLoadBook(bookId: Long) {
         val book = getBookView(bookId)
@@ -138,7 +167,9 @@ class DataRepository @Inject constructor(
      * Exports `Book`, uploads it to repo and link it to newly created
      * [com.orgzly.android.repos.VersionedRook].
      *
-     * @return [Book]
+     * @param skipIfUnchanged do not upload if the exported book is the same as last loaded
+     * or saved, when it is known that the linked remote book has not changed since
+     * @return true if the book was uploaded
      * @throws IOException
      */
     @Throws(IOException::class)
@@ -146,9 +177,11 @@ class DataRepository @Inject constructor(
             repoEntity: Repo,
             fileName: String,
             bookView: BookView,
-            @Suppress("UNUSED_PARAMETER") format: BookFormat) {
+            @Suppress("UNUSED_PARAMETER") format: BookFormat,
+            skipIfUnchanged: Boolean = false): Boolean {
 
         val uploadedBook: VersionedRook
+        val contentHash: String
 
         val repo = getRepoInstance(repoEntity.id, repoEntity.type, repoEntity.url)
 
@@ -157,6 +190,18 @@ class DataRepository @Inject constructor(
             /* Write to temporary file. */
             NotesOrgExporter(this).exportBook(bookView.book, tmpFile)
 
+            contentHash = MiscUtils.sha1(tmpFile)
+
+            if (skipIfUnchanged && contentHash == bookView.book.contentHash) {
+                if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Not uploading unchanged ${bookView.book.name}")
+
+                updateBookIsModified(bookView.book.id, false)
+
+                unchangedContentBooks.add(bookView.book.id)
+
+                return false
+            }
+
             /* Upload to repo. */
             uploadedBook = repo.storeBook(tmpFile, fileName)
 
@@ -167,8 +212,11 @@ class DataRepository @Inject constructor(
 
         updateBookLinkAndSync(bookView.book.id, uploadedBook)
 
+        db.book().updateContentHash(bookView.book.id, contentHash)
+
         updateBookIsModified(bookView.book.id, false)
 
+        return true
     }
 
     @Throws(IOException::class)
@@ -533,7 +581,6 @@ class DataRepository @Inject constructor(
         db.note().getNoteAndAncestorsIds(listOf(noteId)).let { ids ->
             if (ids.isNotEmpty()) {
                 db.note().unfoldNotes(ids)
-                db.note().updateFoldedUnderForNoteFoldedUnderId(ids)
             }
         }
     }
@@ -620,7 +667,9 @@ class DataRepository @Inject constructor(
 
     fun pasteNotes(clipboard: NotesClipboard, bookId: Long, noteId: Long, place: Place): Int {
         return db.runInTransaction(Callable {
-            pasteNotesClipboard(clipboard, bookId, place, noteId)
+            withOrgTimeIdCache {
+                pasteNotesClipboard(clipboard, bookId, place, noteId)
+            }
         })
     }
 
@@ -658,22 +707,18 @@ class DataRepository @Inject constructor(
                 Clipboard entries: ${clipboard.entries}
                 """.trimIndent())
 
-        makeSpaceForNewNotes(clipboard.count, targetNote, place)
+        val space = makeSpaceForNewNotes(clipboard.count, targetNote, place)
 
         var lastNoteId = 0L
         val parentIds = ArrayDeque<Long>().apply {
             add(targetPosition.parentId)
         }
-        val idsMap = mutableMapOf<Long, Long>()
 
         for (entry in clipboard.entries) {
             val level = levelOffset + entry.note.position.level
 
-            val lft = targetPosition.lft + entry.note.position.lft - 1
-            val rgt = targetPosition.lft + entry.note.position.rgt - 1
-
-            val foldedUnderId = idsMap[entry.note.position.foldedUnderId]
-                    ?: if (targetPosition.foldedUnder != 0L) targetPosition.foldedUnder else 0
+            val lft = space.position(entry.note.position.lft)
+            val rgt = space.position(entry.note.position.rgt)
 
             while (lastNoteId != 0L && entry.note.position.level > parentIds.size) {
                 parentIds.addLast(lastNoteId)
@@ -691,7 +736,7 @@ class DataRepository @Inject constructor(
                             rgt = rgt,
                             level = level,
                             parentId = parentIds.peekLast() ?: 0,
-                            foldedUnderId = foldedUnderId
+                            foldedUnderId = 0
                     )
             )
 
@@ -706,8 +751,6 @@ class DataRepository @Inject constructor(
             insertNoteProperties(lastNoteId, properties)
             insertNoteEvents(lastNoteId, note.title, note.content)
 
-            idsMap[entry.note.id] = lastNoteId
-
             pastedNoteIds.add(lastNoteId)
 
             if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Inserted $lastNoteId $note")
@@ -715,6 +758,8 @@ class DataRepository @Inject constructor(
 
         db.noteAncestor().insertAncestorsForNotes(pastedNoteIds)
 
+        db.note().updateInheritedTagsForSubtrees(pastedNoteIds)
+
         // Update descendants count for the target note and its ancestors
         db.note().updateDescendantsCountForNoteAndAncestors(listOf(targetNote.id))
 
@@ -838,8 +883,7 @@ class DataRepository @Inject constructor(
 
         db.noteAncestor().deleteForSubtrees(selectedIds)
 
-        makeSpaceForNewNotes(alignedNotes.size, targetNote, place)
-
+        val space = makeSpaceForNewNotes(alignedNotes.size, targetNote, place)
 
         val ids = mutableSetOf<Long>()
         val sourceBookIds = mutableSetOf<Long>()
@@ -850,8 +894,8 @@ class DataRepository @Inject constructor(
                     note.id,
                     targetNote.position.bookId,
                     targetPosition.level + note.position.level - 1,
-                    targetPosition.lft + note.position.lft - 1,
-                    targetPosition.lft + note.position.rgt - 1,
+                    space.position(note.position.lft),
+                    space.position(note.position.rgt),
                     // Set parent ID for top-level notes
                     if (note.position.level == 1) {
                         targetPosition.parentId
@@ -867,12 +911,9 @@ class DataRepository @Inject constructor(
         // Update note ancestors table
         db.noteAncestor().insertAncestorsForNotes(ids)
 
-        db.note().updateDescendantsCountForAncestors(selectedIds)
+        db.note().updateInheritedTagsForSubtrees(selectedIds)
 
-        db.note().unfoldNotesFoldedUnderOthers(ids)
-        if (targetPosition.foldedUnder != 0L) {
-            db.note().foldUnfolded(ids, targetPosition.foldedUnder)
-        }
+        db.note().updateDescendantsCountForAncestors(selectedIds)
 
         // Update descendants count for the note and its ancestors
         db.note().updateDescendantsCountForNoteAndAncestors(listOf(targetNote.id))
@@ -894,27 +935,15 @@ class DataRepository @Inject constructor(
         }
     }
 
-    data class TargetPosition(
-            val lft: Long = 0,
-            val level: Int = 0,
-            val parentId: Long = 0,
-            val foldedUnder: Long = 0) {
+    data class TargetPosition(val level: Int = 0, val parentId: Long = 0) {
 
         companion object {
             fun getInstance(db: OrgzlyDatabase, targetNote: Note, place: Place): TargetPosition {
-                val lft: Long
                 val level: Int
                 val parentId: Long
 
-                // If target note is hidden, hide under the same note
-                var foldedUnder: Long = 0
-                if (targetNote.position.foldedUnderId != 0L) {
-                    foldedUnder = targetNote.position.foldedUnderId
-                }
-
                 when (place) {
                     Place.ABOVE -> {
-                        lft = targetNote.position.lft
                         level = targetNote.position.level
                         parentId = targetNote.position.parentId
                     }
@@ -929,35 +958,23 @@ class DataRepository @Inject constructor(
 
                         if (lastDescendant != null) {
                             // Insert after last descendant with highest level
-                            lft = lastDescendant.position.rgt + 1
                             level = lastDescendant.position.level
 
                         } else {
                             // Insert just under the target note
-                            lft = targetNote.position.lft + 1
                             level = targetNote.position.level + 1
                         }
 
-                        if (targetNote.position.isFolded) {
-                            foldedUnder = targetNote.id
-                        }
-
                         parentId = targetNote.id
                     }
 
                     Place.UNDER_AS_FIRST -> {
-                        lft = targetNote.position.lft + 1
                         level = targetNote.position.level + 1
 
-                        if (targetNote.position.isFolded) {
-                            foldedUnder = targetNote.id
-                        }
-
                         parentId = targetNote.id
                     }
 
                     Place.BELOW -> {
-                        lft = targetNote.position.rgt + 1
                         level = targetNote.position.level
                         parentId = targetNote.position.parentId
                     }
@@ -965,7 +982,7 @@ class DataRepository @Inject constructor(
                     else -> throw IllegalArgumentException("Unsupported place: $place")
                 }
 
-                return TargetPosition(lft, level, parentId, foldedUnder)
+                return TargetPosition(level, parentId)
             }
         }
     }
@@ -1017,19 +1034,12 @@ class DataRepository @Inject constructor(
         }
     }
 
+    /** Only the note itself is updated, its descendants' visibility follows from it. */
     fun toggleNoteFoldedState(noteId: Long): Int {
         return db.runInTransaction(Callable {
             val note = db.note().get(noteId) ?: return@Callable 0
 
-            val toggled = db.note().updateIsFolded(note.id, !note.position.isFolded)
-
-            if (note.position.isFolded) {
-                db.note().unfoldDescendantsUnderId(note.position.bookId, note.id, note.position.lft, note.position.rgt)
-            } else {
-                db.note().foldDescendantsUnderId(note.position.bookId, note.id, note.position.lft, note.position.rgt)
-            }
-
-            return@Callable toggled
+            db.note().updateIsFolded(note.id, !note.position.isFolded)
         })
     }
 
@@ -1153,41 +1163,180 @@ class DataRepository @Inject constructor(
     }
 
     fun selectNotesFromQueryLiveData(queryString: String): LiveData<List<NoteView>> {
-        val parser = InternalQueryParser()
+        val cached = getCachedQuery(queryString)
 
-        val query = parser.parse(queryString)
-
-        val sqlQuery = buildSqlQuery(query)
+        val sqlQuery = buildSqlQuery(cached.query, cached.template)
 
         return db.noteView().runQueryLiveData(sqlQuery)
     }
 
+    fun selectNotesFromQueryPagingSource(queryString: String): PagingSource<Int, NoteView> {
+        val cached = getCachedQuery(queryString)
+
+        val sqlQuery = buildSqlQuery(cached.query, cached.template)
+
+        return db.noteView().runQueryPagingSource(sqlQuery)
+    }
+
+    fun selectNotesFromQuery(queryString: String): List<NoteView> {
+        val cached = getCachedQuery(queryString)
+
+        val sqlQuery = buildSqlQuery(cached.query, cached.template)
+
+        return profileQuery({ queryString }, sqlQuery) {
+            db.noteView().runQuery(sqlQuery)
+        }
+    }
+
+    /**
+     * Selects at most [limit] notes. Stops querying if the calling coroutine is cancelled.
+     */
+    suspend fun selectNotesFromQueryCancellable(queryString: String, limit: Int): List<NoteView> {
+        val cached = getCachedQuery(queryString)
+
+        val sqlQuery = buildSqlQuery(cached.query, cached.template, limit)
+
+        return profileQuery({ queryString }, sqlQuery) {
+            db.noteView().runQueryCancellable(sqlQuery)
+        }
+    }
+
     fun selectNotesFromQuery(query: Query): List<NoteView> {
-        val sqlQuery = buildSqlQuery(query)
+        val sqlQuery = buildSqlQuery(query, buildSqlQueryTemplate(query))
 
-        return db.noteView().runQuery(sqlQuery)
+        return profileQuery({ DottedQueryBuilder().build(query) }, sqlQuery) {
+            db.noteView().runQuery(sqlQuery)
+        }
     }
 
-    private fun buildSqlQuery(query: Query): SupportSQLiteQuery {
-        val queryBuilder = SqliteQueryBuilder(context)
+    /**
+     * Selects notes of each saved search, recording how long it took.
+     */
+    fun profileSavedSearches() {
+        getSavedSearches().forEach { savedSearch ->
+            val cached = getCachedQuery(savedSearch.query)
 
-        val (selection, selectionArgs, having, orderBy) = queryBuilder.build(query)
+            val sqlQuery = buildSqlQuery(cached.query, cached.template)
 
-        val s = mutableListOf<String>()
+            queryProfiler.profile(savedSearch.query, sqlQuery) {
+                db.noteView().runQuery(sqlQuery)
+            }
+        }
+    }
+
+    /* Profiles the query if enabled in developer options. */
+    private inline fun profileQuery(
+            queryString: () -> String,
+            sqlQuery: SupportSQLiteQuery,
+            select: () -> List<NoteView>
+    ): List<NoteView> {
 
-        if (query.condition != null) {
-            s.add(selection)
+        return if (AppPreferences.profileQueries(context)) {
+            queryProfiler.profile(queryString(), sqlQuery, select)
+        } else {
+            select()
         }
+    }
+
+    /**
+     * Returns agenda occurrences for [days] starting today, with overdue ones first.
+     *
+     * All occurrences are calculated on the first call of the day, or when more days
+     * are requested. After that, only occurrences of notes whose times changed are.
+     * Days calculated are stored with the occurrences, in the same transaction.
+     */
+    fun getAgendaOccurrences(days: Int): List<AgendaOccurrence> {
+        val today = DateTime.now().withTimeAtStartOfDay()
+
+        return db.runInTransaction(Callable {
+            val horizon = db.agendaOccurrence().getHorizon()
+
+            if (horizon == null || horizon.today != today.millis || horizon.days < days) {
+                if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Calculating all agenda occurrences for $days days")
 
-        if (query.options.agendaDays > 0) {
-            s.add("((scheduled_range_id IS NOT NULL AND scheduled_is_active = 1) OR (deadline_range_id IS NOT NULL AND deadline_is_active = 1) OR event_timestamp IS NOT NULL)")
+                db.agendaOccurrence().deleteAll()
+                db.agendaOccurrence().deleteStaleNotes()
+
+                insertAgendaOccurrences(db.agendaOccurrence().getAllTimes(), today, days)
+
+                db.agendaOccurrence().replaceHorizon(AgendaHorizon(today = today.millis, days = days))
+
+            } else {
+                val ids = db.agendaOccurrence().getStaleNoteIds()
+
+                if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Calculating agenda occurrences for ${ids.size} notes")
+
+                ids.chunked(AgendaOccurrenceDao.MAX_IDS_PER_QUERY).forEach { chunk ->
+                    db.agendaOccurrence().deleteForNotes(chunk)
+
+                    insertAgendaOccurrences(db.agendaOccurrence().getTimes(chunk), today, horizon.days)
+                }
+
+                db.agendaOccurrence().deleteStaleNotes()
+            }
+
+            db.agendaOccurrence().getBefore(today.plusDays(days).millis)
+        })
+    }
+
+    private fun insertAgendaOccurrences(times: List<AgendaOccurrenceDao.Time>, today: DateTime, days: Int) {
+        val occurrences = times.flatMap { time ->
+            val range = OrgRange.parseOrNull(time.string) ?: return@flatMap emptyList<AgendaOccurrence>()
+
+            val expandable = AgendaItems.ExpandableOrgRange.fromRange(time.timeType, range)
+
+            val expanded = AgendaUtils.expandOrgDateTime(expandable, today, days)
+
+            val overdueDays = if (expanded.isOverdueToday) listOf(AgendaOccurrence.OVERDUE) else emptyList()
+
+            val expandedDays = expanded.expanded.map { it.withTimeAtStartOfDay().millis }
+
+            (overdueDays + expandedDays).map { day ->
+                AgendaOccurrence(time.noteId, time.timeType, day, time.timestamp)
+            }
+        }
+
+        db.agendaOccurrence().insert(occurrences.distinct())
+    }
+
+    /**
+     * Parses the query, reusing the result if the same query was parsed before.
+     */
+    fun parseQuery(queryString: String): Query {
+        return getCachedQuery(queryString).query
+    }
+
+    private fun getCachedQuery(queryString: String): SqlQueryCache.Entry {
+        return sqlQueryCache.get(SqlQueryCache.key(context, queryString)) {
+            val query = InternalQueryParser().parse(queryString)
+
+            SqlQueryCache.Entry(query, buildSqlQueryTemplate(query))
+        }
+    }
+
+    private fun buildSqlQueryTemplate(query: Query): SqlQueryTemplate {
+        val queryBuilder = SqliteQueryBuilder(context)
+
+        val template = queryBuilder.buildTemplate(query)
+
+        val s = mutableListOf<String>()
+
+        /* Includes agenda's window, if any. */
+        if (template.selection.isNotEmpty()) {
+            s.add(template.selection)
         }
 
         if (!s.isEmpty() || !query.sortOrders.isEmpty()) {
             s.add(NoteDao.WHERE_EXISTING_NOTES)
         }
 
-        val selection2 = if (s.isEmpty()) "0" else TextUtils.join(" AND ", s)
+        val selection = if (s.isEmpty()) "0" else TextUtils.join(" AND ", s)
+
+        return template.copy(selection = selection)
+    }
+
+    private fun buildSqlQuery(query: Query, template: SqlQueryTemplate, limit: Int? = null): SupportSQLiteQuery {
+        val (selection, selectionArgs, having, orderBy) = template.resolve()
 
         // For agenda, group by event timestamp too
         val groupBy = if (query.isAgenda()) {
@@ -1198,10 +1347,11 @@ class DataRepository @Inject constructor(
 
         val supportQuery = SupportSQLiteQueryBuilder
                 .builder("(${NoteViewDao.QUERY_WITH_NOTE_EVENTS})")
-                .selection(selection2, selectionArgs.toTypedArray())
+                .selection(selection, selectionArgs.toTypedArray())
                 .groupBy(groupBy)
                 .having(having)
                 .orderBy(orderBy)
+                .limit(limit?.toString())
                 .create()
 
         if (BuildConfig.LOG_DEBUG)
@@ -1211,23 +1361,75 @@ class DataRepository @Inject constructor(
         return supportQuery
     }
 
-    fun getNotes(bookName: String): List<NoteView> {
-        return db.noteView().getBookNotes(bookName)
+    @JvmOverloads
+    fun getNotes(
+            bookName: String,
+            projection: NoteViewDao.Projection = NoteViewDao.Projection.FULL): List<NoteView> {
+
+        return db.noteView().getBookNotes(bookName, projection)
     }
 
-    fun getVisibleNotesLiveData(bookId: Long, noteId: Long? = null): LiveData<List<NoteView>> {
-        if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, bookId)
+    /**
+     * Passes notes of the book with their properties to [action], in book order.
+     *
+     * Notes and their properties are selected in chunks, so memory used
+     * does not depend on the size of the book.
+     */
+    fun forEachNoteToExport(bookId: Long, action: (NoteView, List<NoteProperty>) -> Unit) {
+        db.runInTransaction {
+            var lft = 0L
+
+            do {
+                val notes = db.noteView().getBookNotesAfter(
+                        bookId, lft, EXPORT_CHUNK_SIZE, NoteViewDao.Projection.EXPORT)
 
-        return if (noteId != null) {
-            // Only return note's subtree
-            db.note().get(noteId)?.let { note ->
-                db.noteView().getVisibleLiveData(bookId, note.position.lft, note.position.rgt)
-            } ?: MutableLiveData<List<NoteView>>()
-        } else {
-            db.noteView().getVisibleLiveData(bookId)
+                if (notes.isEmpty()) {
+                    break
+                }
+
+                val properties = db.noteProperty().getForNotesBetween(
+                        bookId, notes.first().note.position.lft, notes.last().note.position.lft)
+                        .groupBy { it.noteId }
+
+                notes.forEach { noteView ->
+                    action(noteView, properties[noteView.note.id].orEmpty())
+                }
+
+                lft = notes.last().note.position.lft
+
+            } while (notes.size == EXPORT_CHUNK_SIZE)
         }
     }
 
+    fun getVisibleNotesPagingSource(
+            bookId: Long,
+            projection: NoteViewDao.Projection = NoteViewDao.Projection.FULL): PagingSource<BookNotesPagingSource.Key, NoteView> {
+
+        return BookNotesPagingSource(db, bookId, projection)
+    }
+
+    /**
+     * Position of the note in the list of visible notes of the book.
+     * Returns null if the note is not visible.
+     */
+    fun getVisibleNotePosition(bookId: Long, noteId: Long): Int? {
+        return db.runInTransaction(Callable {
+            db.note().get(noteId)?.let { note ->
+                val visibility = BookVisibility.load(db, bookId)
+
+                if (visibility.isVisible(note)) visibility.countBefore(note.position.lft) else null
+            }
+        })
+    }
+
+    fun getVisibleNoteIds(bookId: Long, ids: Set<Long>): Set<Long> {
+        return db.runInTransaction(Callable {
+            val visibility = BookVisibility.load(db, bookId)
+
+            db.note().get(ids).filter { visibility.isVisible(it) }.mapTo(hashSetOf()) { it.id }
+        })
+    }
+
     fun getNoteCount(bookId: Long): Int {
         return db.note().getCount(bookId)
     }
@@ -1351,7 +1553,9 @@ class DataRepository @Inject constructor(
         }
 
         return db.runInTransaction(Callable {
-            createNote(payload, target, createdAt)
+            withOrgTimeIdCache {
+                createNote(payload, target, createdAt)
+            }
         })
     }
 
@@ -1378,10 +1582,12 @@ class DataRepository @Inject constructor(
                     throw IOException("Target note not found")
                 }
 
+                val space = makeSpaceForNewNotes(1, targetNote, target.place)
+
                 NotePosition(
                         bookId = target.bookId,
-                        lft = targetNote.position.lft,
-                        rgt = targetNote.position.lft + 1,
+                        lft = space.position(1),
+                        rgt = space.position(2),
                         level = targetNote.position.level,
                         parentId = targetNote.position.parentId)
             }
@@ -1391,10 +1597,12 @@ class DataRepository @Inject constructor(
                     throw IOException("Target note not found")
                 }
 
+                val space = makeSpaceForNewNotes(1, targetNote, target.place)
+
                 NotePosition(
                         bookId = target.bookId,
-                        lft = targetNote.position.rgt + 1,
-                        rgt = targetNote.position.rgt + 2,
+                        lft = space.position(1),
+                        rgt = space.position(2),
                         level = targetNote.position.level,
                         parentId = targetNote.position.parentId
                 )
@@ -1405,13 +1613,14 @@ class DataRepository @Inject constructor(
                     throw IOException("Target note not found")
                 }
 
+                val space = makeSpaceForNewNotes(1, targetNote, target.place)
+
                 NotePosition(
                         bookId = target.bookId,
-                        lft = targetNote.position.rgt,
-                        rgt = targetNote.position.rgt + 1,
+                        lft = space.position(1),
+                        rgt = space.position(2),
                         level = targetNote.position.level + 1,
-                        parentId = targetNote.id,
-                        foldedUnderId = if (targetNote.position.isFolded) targetNote.id else 0
+                        parentId = targetNote.id
                 )
             }
 
@@ -1421,31 +1630,27 @@ class DataRepository @Inject constructor(
 
             Place.UNSPECIFIED -> {
                 /* If target note is not used, add note at the end with level 1. */
-                val rootRgt = db.note().getMaxRgtForBook(target.bookId) ?: 0
-                val rootId = db.note().getRootNodeId(target.bookId) ?: 0
+                val root = db.note().getRootNode(target.bookId) ?: NoteDao.rootNote(target.bookId)
+
+                val space = makeSpaceForNewNotes(1, root, Place.UNDER)
 
                 NotePosition(
                         bookId = target.bookId,
-                        lft = rootRgt,
-                        rgt = rootRgt + 1,
+                        lft = space.position(1),
+                        rgt = space.position(2),
                         level = 1,
-                        parentId = rootId
+                        parentId = root.id
                 )
             }
         }
 
-        // Make space for new note
         if (target.place != Place.UNSPECIFIED) {
-            makeSpaceForNewNotes(1, targetNote!!, target.place)
-
             val count = db.note().incrementDescendantsCountForAncestors(
                     target.bookId, newNotePosition.lft, newNotePosition.rgt)
 
             if (BuildConfig.LOG_DEBUG)
                 LogUtils.d(TAG, "Updated descendants_count for $count notes (${target.bookId}, ${newNotePosition.lft}, ${newNotePosition.rgt})")
-
         }
-        db.note().incrementRgtForRootNote(target.bookId)
 
         val noteEntity = Note(
                 0,
@@ -1471,71 +1676,94 @@ class DataRepository @Inject constructor(
 
         db.noteAncestor().insertAncestorsForNote(noteId)
 
+        db.note().updateInheritedTagsForSubtrees(setOf(noteId))
+
         updateBookIsModified(target.bookId, true, time)
 
         return noteEntity.copy(id = noteId)
     }
 
     /**
-     * Increment notes' lft and rgt to make space for new notes.
+     * Reserve lft and rgt values for new notes, between the target note and the notes next to it.
+     * Following notes are not shifted, see [NestedSetGaps].
      */
-    private fun makeSpaceForNewNotes(numberOfNotes: Int, targetNote: Note, place: Place) {
-        val spaceRequired = numberOfNotes * 2
-
+    private fun makeSpaceForNewNotes(numberOfNotes: Int, targetNote: Note, place: Place): NestedSetGaps.Space {
         val bookId = targetNote.position.bookId
 
+        val after: Long
+        val before: Long
+        val enclosing: Note
+
         when (place) {
             Place.ABOVE -> {
-                db.note().incrementLftForLftGe(bookId, targetNote.position.lft, spaceRequired)
-                db.note().incrementRgtForRgtGtOrRoot(bookId, targetNote.position.lft, spaceRequired)
+                enclosing = getParentOrRoot(targetNote)
+                before = targetNote.position.lft
+                after = db.note().getPositionBefore(bookId, before) ?: enclosing.position.lft
             }
 
             Place.UNDER -> {
-                db.note().incrementLftForLftGt(bookId, targetNote.position.rgt, spaceRequired)
-                db.note().incrementRgtForRgtGeOrRoot(bookId, targetNote.position.rgt, spaceRequired)
+                enclosing = targetNote
+                before = targetNote.position.rgt
+                after = db.note().getPositionBefore(bookId, before) ?: targetNote.position.lft
             }
 
             Place.UNDER_AS_FIRST -> {
-                db.note().incrementLftForLftGt(bookId, targetNote.position.lft, spaceRequired)
-                db.note().incrementRgtForRgtGtOrRoot(bookId, targetNote.position.lft, spaceRequired)
+                enclosing = targetNote
+                after = targetNote.position.lft
+                before = db.note().getPositionAfter(bookId, after) ?: targetNote.position.rgt
             }
 
             Place.BELOW -> {
-                db.note().incrementLftForLftGt(bookId, targetNote.position.rgt, spaceRequired)
-                db.note().incrementRgtForRgtGtOrRoot(bookId, targetNote.position.rgt, spaceRequired)
+                enclosing = getParentOrRoot(targetNote)
+                after = targetNote.position.rgt
+                before = db.note().getPositionAfter(bookId, after) ?: enclosing.position.rgt
             }
 
             else -> throw IllegalArgumentException("Unsupported paste relative position $place")
         }
+
+        return NestedSetGaps(db).makeSpace(enclosing, after, before, numberOfNotes)
     }
 
+    private fun getParentOrRoot(note: Note): Note {
+        return db.note().get(note.position.parentId)
+                ?: db.note().getRootNode(note.position.bookId)
+                ?: NoteDao.rootNote(note.position.bookId)
+    }
 
     fun updateNote(noteId: Long, notePayload: NotePayload): Note? {
         val note = db.note().get(noteId) ?: return null
 
         return db.runInTransaction(Callable {
-            updateBookIsModified(note.position.bookId, true)
-
-            replaceNoteProperties(noteId, notePayload.properties)
-            replaceNoteEvents(noteId, notePayload.title, notePayload.content)
-
-            val newNote = note.copy(
-                    title = notePayload.title,
-                    content = notePayload.content,
-                    contentLineCount = MiscUtils.lineCount(notePayload.content),
-                    state = notePayload.state,
-                    priority = notePayload.priority,
-                    scheduledRangeId = getOrgRangeId(notePayload.scheduled),
-                    deadlineRangeId = getOrgRangeId(notePayload.deadline),
-                    closedRangeId = getOrgRangeId(notePayload.closed),
-                    tags = Note.dbSerializeTags(notePayload.tags)
-            )
+            withOrgTimeIdCache {
+                updateBookIsModified(note.position.bookId, true)
+
+                replaceNoteProperties(noteId, notePayload.properties)
+                replaceNoteEvents(noteId, notePayload.title, notePayload.content)
+
+                val newNote = note.copy(
+                        title = notePayload.title,
+                        content = notePayload.content,
+                        contentLineCount = MiscUtils.lineCount(notePayload.content),
+                        state = notePayload.state,
+                        priority = notePayload.priority,
+                        scheduledRangeId = getOrgRangeId(notePayload.scheduled),
+                        deadlineRangeId = getOrgRangeId(notePayload.deadline),
+                        closedRangeId = getOrgRangeId(notePayload.closed),
+                        tags = Note.dbSerializeTags(notePayload.tags)
+                )
+
+                val count = db.note().update(newNote)
 
-            val count = db.note().update(newNote)
+                // Descendants inherit note's tags
+                if (newNote.tags != note.tags) {
+                    db.note().updateInheritedTagsForSubtrees(setOf(noteId))
+                }
 
-            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Updated $count note: $newNote")
+                if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Updated $count note: $newNote")
 
-            newNote
+                newNote
+            }
         })
     }
 
@@ -1563,20 +1791,25 @@ class DataRepository @Inject constructor(
         insertNoteEvents(noteId, title, content)
     }
 
-    private fun insertNoteEvents(noteId: Long, title: String, content: String?) {
+    private fun insertNoteEvents(
+            noteId: Long,
+            title: String,
+            content: String?,
+            insert: (NoteEvent) -> Unit = { db.noteEvent().replace(it) }) {
+
         if (title.isNotEmpty()) {
-            parseAndInsertEvents(noteId, title)
+            parseAndInsertEvents(noteId, title, insert)
         }
 
         if (!content.isNullOrEmpty()) {
-            parseAndInsertEvents(noteId, content)
+            parseAndInsertEvents(noteId, content, insert)
         }
     }
 
-    private fun parseAndInsertEvents(noteId: Long, str: String) {
+    private fun parseAndInsertEvents(noteId: Long, str: String, insert: (NoteEvent) -> Unit) {
         OrgActiveTimestamps.parse(str).forEach { range ->
             getOrgRangeId(range)?.let { orgRangeId ->
-                db.noteEvent().replace(NoteEvent(noteId, orgRangeId))
+                insert(NoteEvent(noteId, orgRangeId))
             }
         }
     }
@@ -1665,13 +1898,13 @@ class DataRepository @Inject constructor(
         try {
             val encoding = Encoding.detect(filePath, selectedEncoding)
 
+            /* Only needed for books loaded from repositories. */
+            val contentHash = if (vrook != null) MiscUtils.sha1(File(filePath)) else null
+
             return db.runInTransaction(Callable {
-                loadBookFromReader(
-                        bookName,
-                        vrook,
-                        InputStreamReader(FileInputStream(File(filePath)), encoding.used),
-                        encoding
-                )
+                loadBookFromParser(bookName, vrook, encoding, contentHash) { listener ->
+                    parseOrg(InputStreamReader(FileInputStream(File(filePath)), encoding.used), listener)
+                }
             })
 
         } catch (e: IOException) {
@@ -1684,12 +1917,105 @@ class DataRepository @Inject constructor(
         }
     }
 
+    /**
+     * Downloads and parses the book, without storing it.
+     * Does not write to the database, so it can run concurrently with other loads.
+     *
+     * Book is not parsed if it has the same content as when it was last loaded or saved.
+     */
+    @Throws(IOException::class)
+    fun parseBookFromRepo(rook: Rook): ParsedBook {
+        val fileName = BookName.getFileName(context, rook.uri)
+
+        val repo = getRepoInstance(rook.repoId, rook.repoType, rook.repoUri.toString())
+
+        val tmpFile = getTempBookFile()
+        try {
+            val vrook = repo.retrieveBook(fileName, tmpFile)
+
+            val bookName = BookName.fromFileName(fileName)
+
+            val contentHash = MiscUtils.sha1(tmpFile)
+
+            /* Touched, re-uploaded or saved without changes. */
+            if (isContentUnchanged(bookName.name, contentHash)) {
+                return ParsedBook(bookName.name, vrook, null, null, emptyList(), contentHash)
+            }
+
+            val encoding = Encoding.detect(tmpFile.path, if (AppPreferences.forceUtf8(context)) "UTF-8" else null)
+
+            val nodes = mutableListOf<OrgNodeInSet>()
+            lateinit var file: OrgFile
+
+            parseOrg(InputStreamReader(FileInputStream(tmpFile), encoding.used), object : OrgNestedSetParserListener {
+                override fun onNode(node: OrgNodeInSet) {
+                    nodes.add(node)
+                }
+
+                override fun onFile(orgFile: OrgFile) {
+                    file = orgFile
+                }
+            })
+
+            return ParsedBook(bookName.name, vrook, encoding, file, nodes, contentHash)
+
+        } finally {
+            tmpFile.delete()
+        }
+    }
+
+    /**
+     * Stores the book parsed by [parseBookFromRepo].
+     * If its content is unchanged, only links the book to the new remote version.
+     */
+    fun loadParsedBook(parsedBook: ParsedBook): BookView? {
+        val encoding = parsedBook.encoding
+        val file = parsedBook.file
+
+        val bookId = db.runInTransaction(Callable {
+            if (encoding == null || file == null) {
+                val bookId = db.book().getOrInsert(parsedBook.name)
+
+                if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Not loading unchanged ${parsedBook.name}")
+
+                updateBookLinkAndSync(bookId, parsedBook.vrook)
+
+                unchangedContentBooks.add(bookId)
+
+                bookId
+
+            } else {
+                loadBookFromParser(parsedBook.name, parsedBook.vrook, encoding, parsedBook.contentHash) { listener ->
+                    parsedBook.nodes.forEach(listener::onNode)
+                    listener.onFile(file)
+                }
+            }
+        })
+
+        return getBookView(bookId)
+    }
+
+    /**
+     * Whether the book was last loaded from or saved to the repository with the same content,
+     * so loading it again would not change it.
+     */
+    private fun isContentUnchanged(bookName: String, contentHash: String): Boolean {
+        val book = db.book().get(bookName) ?: return false
+
+        return !book.isDummy && book.contentHash == contentHash
+    }
+
+    /**
+     * @param contentHash SHA-1 of the loaded file, if it comes from a repository
+     * @param parse runs the parser, passing parsed notes and file to the listener
+     */
     @Throws(IOException::class)
-    private fun loadBookFromReader(
+    private fun loadBookFromParser(
             bookName: String,
             vrook: VersionedRook?,
-            inReader: Reader,
-            encoding: Encoding): Long {
+            encoding: Encoding,
+            contentHash: String?,
+            parse: (OrgNestedSetParserListener) -> Unit): Long {
 
         val startedAt = System.currentTimeMillis()
 
@@ -1697,24 +2023,213 @@ class DataRepository @Inject constructor(
 
         val bookId = db.book().getOrInsert(bookName)
 
+        val startFolded = AppPreferences.notebooksStartFolded(context)
+
+        val stats = withOrgTimeIdCache {
+            /* Update already loaded book in place, keeping IDs of notes. */
+            if (db.note().getCount(bookId) > 0) {
+                updateNotesFromParser(bookId, bookName, vrook, encoding, startFolded, parse)
+            } else {
+                insertNotesFromParser(bookId, bookName, vrook, encoding, startFolded, parse)
+            }
+        }
+
+        val time = System.currentTimeMillis() - startedAt
+
+        bookLoadStats[bookId] = BookLoadStats(stats.inserted, stats.updated, stats.deleted, stats.unchanged, stats.rows, time)
+
+        if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "$bookName: Parsing done in $time ms ($stats)")
+
+        if (vrook != null) {
+            updateBookLinkAndSync(bookId, vrook)
+        }
+
+        db.book().updateContentHash(bookId, contentHash)
+
+        updateBookIsModified(bookId, false)
+
+        return bookId
+    }
+
+    /**
+     * Inserts all notes, replacing any existing ones.
+     */
+    private fun insertNotesFromParser(
+            bookId: Long,
+            bookName: String,
+            vrook: VersionedRook?,
+            encoding: Encoding,
+            startFolded: Boolean,
+            parse: (OrgNestedSetParserListener) -> Unit): NotesDiffWriter.Stats {
+
         // Delete all notes from this book
-        db.note().deleteByBookId(bookId)
+        val deleted = db.note().deleteByBookId(bookId)
 
         /*
-         * Maps node's lft to database id.
-         * Used to update parent id and insert ancestors.
-         * Not using SparseArray as speed is preferred over memory here.
+         * Notes waiting for their parent to be parsed.
+         * Nodes are parsed after their descendants, so parent's ID is not known yet.
          */
-        @SuppressLint("UseSparseArrays") val lft2id = HashMap<Long, Long>()
+        val ancestorsTracker = NoteAncestorsTracker<Note>()
+
+        var inserted = 0
 
-        /* Set of ids for which parent is already set. */
-        val notesWithParentSet = HashSet<Long>()
+        val writer = NotesBulkWriter(db)
+
+        writer.use {
+            parseBook(bookId, bookName, vrook, encoding, startFolded, parse) { node, parsedNote, properties ->
+                val noteId = writer.newNoteId()
+
+                val note = parsedNote.copy(id = noteId)
+
+                properties.forEach { property ->
+                    writer.insert(property.copy(noteId = noteId))
+                }
+
+                insertNoteEvents(noteId, note.title, note.content) {
+                    writer.insert(it)
+                }
+
+                /* Set children's parent ID and insert ancestors for all descendants. */
+                ancestorsTracker.add(node.lft, noteId, note, { child ->
+                    writer.insert(child.copy(position = child.position.copy(parentId = noteId)))
+
+                }, { descendantId ->
+                    writer.insert(NoteAncestor(
+                            noteId = descendantId,
+                            bookId = bookId,
+                            ancestorNoteId = noteId))
+                })
+
+                inserted++
+            }
+
+            // Root node and any orphans left without a parent
+            ancestorsTracker.removeRemaining().forEach { note ->
+                writer.insert(note)
+            }
+        }
+
+        db.note().updateInheritedTagsForBook(bookId)
+
+        return NotesDiffWriter.Stats(inserted, 0, deleted, 0, writer.rowCount + deleted)
+    }
+
+    /**
+     * Updates existing notes to match the parsed ones, writing only the changed notes.
+     */
+    private fun updateNotesFromParser(
+            bookId: Long,
+            bookName: String,
+            vrook: VersionedRook?,
+            encoding: Encoding,
+            startFolded: Boolean,
+            parse: (OrgNestedSetParserListener) -> Unit): NotesDiffWriter.Stats {
 
+        val parsed = mutableListOf<NotesDiffWriter.ParsedNote>()
+
+        parseBook(bookId, bookName, vrook, encoding, startFolded, parse) { _, note, properties ->
+            parsed.add(NotesDiffWriter.ParsedNote(note, properties))
+        }
+
+        return NotesDiffWriter(db, bookId).write(parsed, startFolded) { note, insert ->
+            insertNoteEvents(note.id, note.title, note.content, insert)
+        }
+    }
+
+    /**
+     * Runs [parse], updating book's settings and passing each note to [onNote].
+     * Notes are passed in post-order (after all of their descendants),
+     * without their ID (which is also missing from their properties) and parent.
+     */
+    @Throws(IOException::class)
+    private fun parseBook(
+            bookId: Long,
+            bookName: String,
+            vrook: VersionedRook?,
+            encoding: Encoding,
+            startFolded: Boolean,
+            parse: (OrgNestedSetParserListener) -> Unit,
+            onNote: (OrgNodeInSet, Note, List<NoteProperty>) -> Unit) {
 
         val useCreatedAtProperty = AppPreferences.createdAt(context)
         val createdAtProperty = AppPreferences.createdAtProperty(context)
-        val startFolded = AppPreferences.notebooksStartFolded(context)
 
+        parse(object : OrgNestedSetParserListener {
+            @Throws(IOException::class)
+            override fun onNode(node: OrgNodeInSet) {
+
+                val scheduledRangeId = getOrgRangeId(node.head.scheduled)
+                val deadlineRangeId = getOrgRangeId(node.head.deadline)
+                val closedRangeId = getOrgRangeId(node.head.closed)
+                val clockRangeId = getOrgRangeId(node.head.clock)
+
+                var content: String? = null
+                var contentLineCount = 0
+
+                if (node.head.hasContent()) {
+                    content = node.head.content
+                    contentLineCount = MiscUtils.lineCount(node.head.content)
+                }
+
+                /* Spaced out, so notes can be inserted without shifting the following ones. */
+                val position = NotePosition(
+                        bookId = bookId,
+                        lft = node.lft * NestedSetGaps.GAP,
+                        rgt = node.rgt * NestedSetGaps.GAP,
+                        level = node.level,
+                        parentId = 0,
+                        foldedUnderId = 0,
+                        isFolded = startFolded && node.level > 0,
+                        descendantsCount = node.descendantsCount)
+
+                val note = Note(
+                        0,
+                        title = node.head.title,
+                        priority = node.head.priority,
+                        state = node.head.state,
+                        scheduledRangeId = scheduledRangeId,
+                        deadlineRangeId = deadlineRangeId,
+                        closedRangeId = closedRangeId,
+                        clockRangeId = clockRangeId,
+                        tags = if (node.head.hasTags()) Note.dbSerializeTags(node.head.tags) else null,
+                        createdAt = getCreatedAtFromProperty(node, useCreatedAtProperty, createdAtProperty),
+                        content = content,
+                        contentLineCount = contentLineCount,
+                        position = position
+                )
+
+                val properties = node.head.properties.all.mapIndexed { index, property ->
+                    NoteProperty(0, index + 1, property.name, property.value)
+                }
+
+                onNote(node, note, properties)
+            }
+
+            @Throws(IOException::class)
+            override fun onFile(file: OrgFile) {
+                val book = Book(
+                        bookId,
+                        bookName,
+                        mtime = vrook?.mtime, // Set book's mtime to remote book's
+                        preface = file.preface, // TODO: Move to and rename OrgFileSettings
+                        isIndented = file.settings.isIndented,
+                        title = file.settings.title,
+                        isDummy = false,
+                        usedEncoding = encoding.used,
+                        detectedEncoding = encoding.detected,
+                        selectedEncoding = encoding.selected
+                )
+
+                db.book().update(book)
+            }
+        })
+    }
+
+    /**
+     * Parses Org content, passing parsed notes and file to the listener.
+     */
+    @Throws(IOException::class)
+    private fun parseOrg(inReader: Reader, listener: OrgNestedSetParserListener) {
         BufferedReader(inReader).use { reader ->
             /*
              * Create and run parser.
@@ -1724,121 +2239,59 @@ class DataRepository @Inject constructor(
                     .setInput(reader)
                     .setTodoKeywords(AppPreferences.todoKeywordsSet(context))
                     .setDoneKeywords(AppPreferences.doneKeywordsSet(context))
-                    .setListener(object : OrgNestedSetParserListener {
-                        @Throws(IOException::class)
-                        override fun onNode(node: OrgNodeInSet) {
-
-                            val scheduledRangeId = getOrgRangeId(node.head.scheduled)
-                            val deadlineRangeId = getOrgRangeId(node.head.deadline)
-                            val closedRangeId = getOrgRangeId(node.head.closed)
-                            val clockRangeId = getOrgRangeId(node.head.clock)
-
-                            var content: String? = null
-                            var contentLineCount = 0
+                    .setListener(listener)
+                    .build()
+                    .parse()
+        }
+    }
 
-                            if (node.head.hasContent()) {
-                                content = node.head.content
-                                contentLineCount = MiscUtils.lineCount(node.head.content)
-                            }
+    /**
+     * Returns and forgets statistics of the last load of the book.
+     */
+    fun removeBookLoadStats(bookId: Long): BookLoadStats? {
+        return bookLoadStats.remove(bookId)
+    }
 
-                            val position = NotePosition(
-                                    bookId = bookId,
-                                    lft = node.lft,
-                                    rgt = node.rgt,
-                                    level = node.level,
-                                    parentId = 0,
-                                    foldedUnderId = 0,
-                                    isFolded = startFolded && node.level > 0,
-                                    descendantsCount = node.descendantsCount)
-
-                            val note = Note(
-                                    0,
-                                    title = node.head.title,
-                                    priority = node.head.priority,
-                                    state = node.head.state,
-                                    scheduledRangeId = scheduledRangeId,
-                                    deadlineRangeId = deadlineRangeId,
-                                    closedRangeId = closedRangeId,
-                                    clockRangeId = clockRangeId,
-                                    tags = if (node.head.hasTags()) Note.dbSerializeTags(node.head.tags) else null,
-                                    createdAt = getCreatedAtFromProperty(node, useCreatedAtProperty, createdAtProperty),
-                                    content = content,
-                                    contentLineCount = contentLineCount,
-                                    position = position
-                            )
-
-                            val noteId = db.note().insert(note)
-
-                            insertNoteProperties(noteId, node.head.properties)
-                            insertNoteEvents(noteId, note.title, note.content)
-
-                            /*
-                             * Update notes' parent IDs and insert ancestors.
-                             * Going through all descendants - nodes between lft and rgt.
-                             *
-                             *  lft:  1    2    3    4    5   6
-                             *            L2   l1   r2   R2
-                             */
-                            lft2id[node.lft] = noteId
-                            for (index in node.lft + 1 until node.rgt) {
-                                val descendantId = lft2id[index]
-                                if (descendantId != null) {
-                                    if (!notesWithParentSet.contains(descendantId)) {
-                                        db.note().updateParentForNote(descendantId, noteId)
-
-                                        if (startFolded && position.level > 0) {
-                                            db.note().setFoldedUnder(descendantId, noteId)
-                                        }
-
-                                        notesWithParentSet.add(descendantId)
-                                    }
-
-                                    db.noteAncestor().insert(NoteAncestor(
-                                            noteId = descendantId,
-                                            bookId = bookId,
-                                            ancestorNoteId = noteId))
-                                }
-                            }
-                        }
+    /**
+     * Returns and forgets whether the last sync of the book skipped loading or saving it,
+     * as its content was unchanged.
+     */
+    fun removeUnchangedContent(bookId: Long): Boolean {
+        return unchangedContentBooks.remove(bookId)
+    }
 
-                        @Throws(IOException::class)
-                        override fun onFile(file: OrgFile) {
-                            val book = Book(
-                                    bookId,
-                                    bookName,
-                                    mtime = vrook?.mtime, // Set book's mtime to remote book's
-                                    preface = file.preface, // TODO: Move to and rename OrgFileSettings
-                                    isIndented = file.settings.isIndented,
-                                    title = file.settings.title,
-                                    isDummy = false,
-                                    usedEncoding = encoding.used,
-                                    detectedEncoding = encoding.detected,
-                                    selectedEncoding = encoding.selected
-                            )
-
-                            db.book().update(book)
-                        }
+    private fun getOrgRangeId(range: String?): Long? {
+        return getOrgRangeId(OrgRange.parseOrNull(range))
+    }
 
-                    })
-                    .build()
-                    .parse()
+    /**
+     * Runs [block] with IDs of times cached, unless they are already.
+     * Must be called inside a transaction.
+     */
+    private fun <T> withOrgTimeIdCache(block: () -> T): T {
+        if (orgTimeIdCache.get() != null) {
+            return block()
         }
 
-        if (BuildConfig.LOG_DEBUG)
-            LogUtils.d(TAG, bookName + ": Parsing done in " +
-                    (System.currentTimeMillis() - startedAt) + " ms")
+        val cache = OrgTimeIdCache()
 
-        if (vrook != null) {
-            updateBookLinkAndSync(bookId, vrook)
-        }
+        orgTimeIdCache.set(cache)
 
-        updateBookIsModified(bookId, false)
+        try {
+            return block()
 
-        return bookId
+        } finally {
+            orgTimeIdCache.remove()
+
+            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Time IDs cache: $cache")
+        }
     }
 
-    private fun getOrgRangeId(range: String?): Long? {
-        return getOrgRangeId(OrgRange.parseOrNull(range))
+    /**
+     * Hits and misses of time ID caches, for debugging.
+     */
+    fun getOrgTimeIdCacheStats(): OrgTimeIdCache.Stats {
+        return OrgTimeIdCache.totalStats()
     }
 
     private fun getOrgRangeId(range: OrgRange?): Long? {
@@ -1848,6 +2301,16 @@ class DataRepository @Inject constructor(
 
         val str = range.toString()
 
+        val cache = orgTimeIdCache.get()
+
+        return if (cache != null) {
+            cache.getRangeId(str) { selectOrInsertOrgRange(range, str) }
+        } else {
+            selectOrInsertOrgRange(range, str)
+        }
+    }
+
+    private fun selectOrInsertOrgRange(range: OrgRange, str: String): Long {
         val entity = db.orgRange().getByString(str)
 
         if (entity != null) {
@@ -1893,7 +2356,19 @@ class DataRepository @Inject constructor(
     }
 
     private fun getOrgDateTimeId(timestamp: OrgDateTime): Long {
-        return db.orgTimestamp().getByString(timestamp.toString()).let {
+        val str = timestamp.toString()
+
+        val cache = orgTimeIdCache.get()
+
+        return if (cache != null) {
+            cache.getTimestampId(str) { selectOrInsertOrgTimestamp(timestamp, str) }
+        } else {
+            selectOrInsertOrgTimestamp(timestamp, str)
+        }
+    }
+
+    private fun selectOrInsertOrgTimestamp(timestamp: OrgDateTime, str: String): Long {
+        return db.orgTimestamp().getByString(str).let {
             it?.id ?: db.orgTimestamp().insert(OrgTimestampMapper.fromOrgDateTime(timestamp))
         }
     }
@@ -2077,17 +2552,11 @@ class DataRepository @Inject constructor(
      * Return all known tags
      */
     fun selectAllTagsLiveData(): LiveData<List<String>> {
-        return Transformations.map(db.note().getDistinctTagsLiveData()) { tagsList ->
-            tagsList.flatMap { Note.dbDeSerializeTags(it) }.distinct().sorted()
-        }
+        return db.noteTag().getDistinctLiveData()
     }
 
     fun selectAllTags(): List<String> {
-        return db.note().getDistinctTags()
-                .flatMap { tagsList ->
-                    Note.dbDeSerializeTags(tagsList)
-                }
-                .distinct()
+        return db.noteTag().getDistinct()
     }
 
     /**
@@ -2300,9 +2769,12 @@ class DataRepository @Inject constructor(
         if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG)
 
         db.orgTimestamp().getAll().forEach {
-            val timestamp = OrgDateTime.doParse(it.string).calendar.timeInMillis
-            db.orgTimestamp().update(it.copy(timestamp = timestamp))
+            val timestamp = OrgTimestampMapper.fromOrgDateTime(OrgDateTime.doParse(it.string))
+            db.orgTimestamp().update(timestamp.copy(id = it.id))
         }
+
+        // Days of agenda occurrences depend on time zone
+        db.agendaOccurrence().deleteHorizon()
     }
 
     fun getSyncRepos(): List<SyncRepo> {
@@ -2344,5 +2816,8 @@ class DataRepository @Inject constructor(
         private val TAG = DataRepository::class.java.name
 
         const val GETTING_STARTED_NOTEBOOK_RESOURCE_ID = R.raw.orgzly_getting_started
+
+        /** Number of notes selected at once while exporting a book. */
+        private const val EXPORT_CHUNK_SIZE = 500
     }
 }
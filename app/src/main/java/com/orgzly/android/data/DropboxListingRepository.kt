@@ -0,0 +1,58 @@
+package com.orgzly.android.data
+
+import com.orgzly.android.db.OrgzlyDatabase
+import com.orgzly.android.db.entity.DropboxCursor
+import com.orgzly.android.db.entity.DropboxFile
+import java.util.concurrent.Callable
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Files of Dropbox repositories and the cursors to list their changes with.
+ */
+@Singleton
+class DropboxListingRepository @Inject constructor(private val db: OrgzlyDatabase) {
+    private val dao = db.dropboxListing()
+
+    /** Cursor from the last listing of [path], if it was listed last. */
+    fun getCursor(repoId: Long, path: String): String? {
+        return dao.getCursor(repoId)?.takeIf { it.path == path }?.cursor
+    }
+
+    /** Replaces all files after listing the entire folder. */
+    fun replace(repoId: Long, path: String, cursor: String, files: Collection<DropboxFile>): List<DropboxFile> {
+        return db.runInTransaction(Callable {
+            dao.deleteFiles(repoId)
+            dao.replaceFiles(files)
+            dao.replaceCursor(DropboxCursor(repoId, path, cursor))
+
+            dao.getFiles(repoId)
+        })
+    }
+
+    /** Applies changes listed since the stored cursor. */
+    fun update(
+            repoId: Long,
+            path: String,
+            cursor: String,
+            changed: Collection<DropboxFile>,
+            deletedPathsLower: Collection<String>): List<DropboxFile> {
+
+        return db.runInTransaction(Callable {
+            deletedPathsLower.chunked(OrgzlyDatabase.SQLITE_MAX_VARIABLE_NUMBER - 1).forEach {
+                dao.deleteFiles(repoId, it)
+            }
+            dao.replaceFiles(changed)
+            dao.replaceCursor(DropboxCursor(repoId, path, cursor))
+
+            dao.getFiles(repoId)
+        })
+    }
+
+    fun clear(repoId: Long) {
+        db.runInTransaction {
+            dao.deleteFiles(repoId)
+            dao.deleteCursor(repoId)
+        }
+    }
+}
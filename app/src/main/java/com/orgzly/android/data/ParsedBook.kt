@@ -0,0 +1,27 @@
+package com.orgzly.android.data
+
+import com.orgzly.android.repos.VersionedRook
+import com.orgzly.android.util.Encoding
+import com.orgzly.org.OrgFile
+import com.orgzly.org.parser.OrgNodeInSet
+
+/**
+ * Book downloaded and parsed, but not yet stored.
+ *
+ * Book is not parsed if its content is the same as when it was last loaded or saved,
+ * in which case [encoding] and [file] are null and there are no [nodes].
+ *
+ * @property nodes notes in the order they were parsed (post-order)
+ * @property contentHash SHA-1 of the downloaded file
+ */
+class ParsedBook(
+        val name: String,
+        val vrook: VersionedRook,
+        val encoding: Encoding?,
+        val file: OrgFile?,
+        val nodes: List<OrgNodeInSet>,
+        val contentHash: String) {
+
+    val isContentUnchanged: Boolean
+        get() = file == null
+}
@@ -0,0 +1,82 @@
+package com.orgzly.android.data.logs
+
+import androidx.sqlite.db.SupportSQLiteProgram
+import androidx.sqlite.db.SupportSQLiteQuery
+import com.orgzly.BuildConfig
+import com.orgzly.android.db.OrgzlyDatabase
+import com.orgzly.android.util.LogMajorEvents
+
+/**
+ * Records how long notes' queries take and how many notes they select.
+ *
+ * In debug builds, query plan is recorded too. Plans scanning all notes or sorting
+ * using a temporary B-tree are flagged, as such queries are missing an index.
+ */
+class QueryProfiler(private val db: OrgzlyDatabase, private val appLogs: AppLogsRepository) {
+
+    data class Profile(val queryString: String, val ms: Long, val rows: Int, val plan: List<String>) {
+        val isFullScan = plan.any { FULL_SCAN_OF_NOTES.containsMatchIn(it) }
+
+        val isSortedUsingTempBTree = plan.any { it.contains(TEMP_B_TREE_FOR_ORDER_BY) }
+
+        fun toLogMessage(): String {
+            val flags = listOfNotNull(
+                    if (isFullScan) FULL_SCAN_FLAG else null,
+                    if (isSortedUsingTempBTree) ORDER_BY_FLAG else null)
+
+            val summary = (listOf("$ms ms", "$rows rows") + flags).joinToString(", ")
+
+            return (listOf(queryString, summary) + plan.map { "  $it" }).joinToString("\n")
+        }
+    }
+
+    inline fun <T> profile(queryString: String, sqlQuery: SupportSQLiteQuery, select: () -> List<T>): List<T> {
+        val start = System.nanoTime()
+
+        val result = select()
+
+        record(queryString, sqlQuery, (System.nanoTime() - start) / 1_000_000, result.size)
+
+        return result
+    }
+
+    fun record(queryString: String, sqlQuery: SupportSQLiteQuery, ms: Long, rows: Int): Profile {
+        val plan = if (BuildConfig.DEBUG) explain(sqlQuery) else emptyList()
+
+        val profile = Profile(queryString, ms, rows, plan)
+
+        appLogs.log(LogMajorEvents.QUERIES, profile.toLogMessage())
+
+        return profile
+    }
+
+    /**
+     * Returns details of EXPLAIN QUERY PLAN output, with the same arguments bound.
+     */
+    fun explain(sqlQuery: SupportSQLiteQuery): List<String> {
+        val explainQuery = object : SupportSQLiteQuery {
+            override fun getSql(): String = "EXPLAIN QUERY PLAN ${sqlQuery.sql}"
+
+            override fun bindTo(statement: SupportSQLiteProgram) = sqlQuery.bindTo(statement)
+
+            override fun getArgCount(): Int = sqlQuery.argCount
+        }
+
+        return db.query(explainQuery).use { cursor ->
+            val detail = cursor.getColumnIndexOrThrow("detail")
+
+            generateSequence { if (cursor.moveToNext()) cursor.getString(detail) else null }.toList()
+        }
+    }
+
+    companion object {
+        const val FULL_SCAN_FLAG = "FULL SCAN OF NOTES"
+
+        const val ORDER_BY_FLAG = "TEMP B-TREE FOR ORDER BY"
+
+        /* "SCAN TABLE notes" before SQLite 3.36, "SCAN notes" after. Scans using an index are fine. */
+        private val FULL_SCAN_OF_NOTES = Regex("^SCAN (TABLE )?notes\\b(?!.*\\bUSING\\b)")
+
+        private const val TEMP_B_TREE_FOR_ORDER_BY = "USE TEMP B-TREE FOR ORDER BY"
+    }
+}
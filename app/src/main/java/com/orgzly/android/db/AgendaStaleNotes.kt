@@ -0,0 +1,42 @@
+package com.orgzly.android.db
+
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+/**
+ * Triggers marking notes whose stored agenda occurrences need to be recalculated.
+ *
+ * Planning times are changed by pointing the note to a different range,
+ * events are replaced by deleting and inserting them.
+ */
+object AgendaStaleNotes {
+    const val TABLE = "agenda_stale_notes"
+
+    @JvmStatic
+    fun create(db: SupportSQLiteDatabase) {
+        db.execSQL("""
+            CREATE TRIGGER IF NOT EXISTS ${TABLE}_notes_after_insert AFTER INSERT ON notes
+            WHEN new.scheduled_range_id IS NOT NULL OR new.deadline_range_id IS NOT NULL BEGIN
+                INSERT OR IGNORE INTO $TABLE (note_id) VALUES (new.id);
+            END
+        """)
+
+        db.execSQL("""
+            CREATE TRIGGER IF NOT EXISTS ${TABLE}_notes_after_update AFTER UPDATE OF scheduled_range_id, deadline_range_id ON notes
+            WHEN new.scheduled_range_id IS NOT old.scheduled_range_id OR new.deadline_range_id IS NOT old.deadline_range_id BEGIN
+                INSERT OR IGNORE INTO $TABLE (note_id) VALUES (new.id);
+            END
+        """)
+
+        db.execSQL("""
+            CREATE TRIGGER IF NOT EXISTS ${TABLE}_note_events_after_insert AFTER INSERT ON note_events BEGIN
+                INSERT OR IGNORE INTO $TABLE (note_id) VALUES (new.note_id);
+            END
+        """)
+
+        db.execSQL("""
+            CREATE TRIGGER IF NOT EXISTS ${TABLE}_note_events_after_delete AFTER DELETE ON note_events BEGIN
+                INSERT OR IGNORE INTO $TABLE (note_id) VALUES (old.note_id);
+            END
+        """)
+    }
+}
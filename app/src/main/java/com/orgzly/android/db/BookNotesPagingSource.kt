@@ -0,0 +1,163 @@
+package com.orgzly.android.db
+
+import androidx.paging.PagingSource
+import androidx.paging.PagingState
+import androidx.room.InvalidationTracker
+import com.orgzly.BuildConfig
+import com.orgzly.android.App
+import com.orgzly.android.db.dao.NoteViewDao
+import com.orgzly.android.db.entity.NoteView
+import com.orgzly.android.util.LogUtils
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.withContext
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Pages of visible notes of a book, keyed on lft.
+ *
+ * Pages are loaded starting from, after or before a note, so loading a page
+ * costs the same anywhere in the book. After invalidation, only the page
+ * around the note last seen by the list is loaded again.
+ *
+ * Counts of notes before and after the loaded page are used for placeholders,
+ * keeping the list positions and the scrollbar right.
+ *
+ * Notes hidden under folded ones are skipped using [BookVisibility], loaded once
+ * per paging source, as any change to the notes invalidates the source.
+ */
+class BookNotesPagingSource(
+        private val db: OrgzlyDatabase,
+        private val bookId: Long,
+        private val projection: NoteViewDao.Projection
+) : PagingSource<BookNotesPagingSource.Key, NoteView>() {
+
+    sealed class Key {
+        /** Note at [lft]. Pages are loaded starting from, after or before it. */
+        data class Lft(val lft: Long) : Key()
+
+        /** Position in the list. Only used for the initial load, after jumping to a position not loaded. */
+        data class Position(val position: Int) : Key()
+    }
+
+    private val observer = object : InvalidationTracker.Observer(arrayOf("notes", "books")) {
+        override fun onInvalidated(tables: MutableSet<String>) {
+            invalidate()
+        }
+    }
+
+    private val observerRegistered = AtomicBoolean(false)
+
+    /* Loaded inside the first load's transaction. */
+    private val visibility by lazy { BookVisibility.load(db, bookId) }
+
+    /* Position of the first loaded note. Pages are never dropped, so it only changes when prepending. */
+    private val firstLoadedPosition = AtomicInteger(0)
+
+    init {
+        registerInvalidatedCallback {
+            db.invalidationTracker.removeObserver(observer)
+        }
+    }
+
+    override val jumpingSupported: Boolean
+        get() = true
+
+    override suspend fun load(params: LoadParams<Key>): LoadResult<Key, NoteView> {
+        return withContext(App.EXECUTORS.diskIO().asCoroutineDispatcher()) {
+            /* Registered on first load, as it accesses the database. */
+            if (observerRegistered.compareAndSet(false, true)) {
+                db.invalidationTracker.addObserver(observer)
+            }
+
+            val key = params.key
+
+            val result = db.runInTransaction<LoadResult<Key, NoteView>> {
+                when (params) {
+                    is LoadParams.Refresh ->
+                        loadInitial(key ?: Key.Position(0), params.loadSize)
+
+                    is LoadParams.Append -> {
+                        val notes = visibility.getAfter((key as Key.Lft).lft, params.loadSize, projection)
+
+                        LoadResult.Page(
+                                data = notes,
+                                prevKey = null,
+                                nextKey = if (notes.size == params.loadSize) Key.Lft(notes.last().note.position.lft) else null)
+                    }
+
+                    is LoadParams.Prepend -> {
+                        val notes = visibility.getBefore((key as Key.Lft).lft, params.loadSize, projection)
+
+                        firstLoadedPosition.addAndGet(-notes.size)
+
+                        LoadResult.Page(
+                                data = notes,
+                                prevKey = if (notes.size == params.loadSize) Key.Lft(notes.first().note.position.lft) else null,
+                                nextKey = null)
+                    }
+                }
+            }
+
+            /* Database could have changed before the observer was registered. */
+            if (invalid) LoadResult.Invalid() else result
+        }
+    }
+
+    private fun loadInitial(key: Key, loadSize: Int): LoadResult<Key, NoteView> {
+        val count = visibility.count()
+
+        val (notes, itemsBefore) = when (key) {
+            is Key.Lft -> {
+                /* Note at lft could have been hidden or deleted, page starts with the next visible one. */
+                val notes = visibility.getFrom(key.lft, loadSize, projection)
+
+                Pair(notes,
+                        notes.firstOrNull()?.let { visibility.countBefore(it.note.position.lft) } ?: count)
+            }
+
+            is Key.Position -> {
+                val position = key.position.coerceAtMost(count - loadSize).coerceAtLeast(0)
+
+                Pair(visibility.getAt(position, loadSize, projection),
+                        position)
+            }
+        }
+
+        val itemsAfter = (count - itemsBefore - notes.size).coerceAtLeast(0)
+
+        firstLoadedPosition.set(itemsBefore)
+
+        if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, bookId, key, itemsBefore, notes.size, itemsAfter)
+
+        return LoadResult.Page(
+                data = notes,
+                prevKey = if (itemsBefore > 0) notes.firstOrNull()?.let { Key.Lft(it.note.position.lft) } else null,
+                nextKey = if (itemsAfter > 0) notes.lastOrNull()?.let { Key.Lft(it.note.position.lft) } else null,
+                itemsBefore = itemsBefore,
+                itemsAfter = itemsAfter)
+    }
+
+    /**
+     * Key for reloading around the position last accessed by the list.
+     * Note at that position is used if loaded, its position otherwise.
+     */
+    override fun getRefreshKey(state: PagingState<Key, NoteView>): Key? {
+        val anchorPosition = state.anchorPosition ?: return null
+
+        val position = (anchorPosition - state.config.initialLoadSize / 2).coerceAtLeast(0)
+
+        val firstLoaded = firstLoadedPosition.get()
+        val loadedCount = state.pages.sumOf { it.data.size }
+
+        return if (position in firstLoaded until firstLoaded + loadedCount) {
+            state.closestItemToPosition(position)?.let { Key.Lft(it.note.position.lft) }
+        } else {
+            Key.Position(position)
+        }
+    }
+
+    companion object {
+        private val TAG = BookNotesPagingSource::class.java.name
+    }
+}
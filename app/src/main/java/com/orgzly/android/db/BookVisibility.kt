@@ -0,0 +1,179 @@
+package com.orgzly.android.db
+
+import com.orgzly.android.db.dao.NoteViewDao
+import com.orgzly.android.db.entity.Note
+import com.orgzly.android.db.entity.NoteView
+
+/**
+ * Visible notes of a book.
+ *
+ * Note is hidden if any of its ancestors is folded, so folding or unfolding a note
+ * only writes that note. Only folded notes are loaded, keeping lft and rgt of the
+ * outermost ones. Notes between them are visible, notes inside them are skipped
+ * without being scanned.
+ *
+ * Describes the book at the time it was loaded, so it must be used inside
+ * the same transaction, or until the notes are invalidated.
+ */
+class BookVisibility private constructor(
+        private val db: OrgzlyDatabase,
+        private val bookId: Long,
+
+        /* Outermost folded notes with descendants, sorted by lft. */
+        private val foldedLft: LongArray,
+        private val foldedRgt: LongArray,
+
+        /* Number of notes hidden under the first i outermost folded notes. */
+        private val hiddenBefore: IntArray) {
+
+    fun isVisible(note: Note): Boolean {
+        if (note.position.bookId != bookId || note.isCut != 0L || note.position.level == 0) {
+            return false
+        }
+
+        val i = foldedBefore(note.position.lft) - 1
+
+        return i == -1 || foldedRgt[i] < note.position.lft
+    }
+
+    fun count(): Int {
+        return db.note().getCount(bookId) - hiddenBefore.last()
+    }
+
+    /** Number of visible notes before the visible note at [lft]. */
+    fun countBefore(lft: Long): Int {
+        return db.note().getCountBefore(bookId, lft) - hiddenBefore[foldedBefore(lft)]
+    }
+
+    /** Visible notes starting with the one at [lft], or the first visible one after it. */
+    fun getFrom(lft: Long, limit: Int, projection: NoteViewDao.Projection): List<NoteView> {
+        return getAfter(lft - 1, limit, projection)
+    }
+
+    /** Visible notes following the note at [lft]. */
+    fun getAfter(lft: Long, limit: Int, projection: NoteViewDao.Projection): List<NoteView> {
+        val range = foldedBefore(lft + 1)
+
+        return collectAscending(range, maxOf(lft + 1, rangeStart(range)), 0, limit, projection)
+    }
+
+    /** Visible notes preceding the note at [lft], in book order. */
+    fun getBefore(lft: Long, limit: Int, projection: NoteViewDao.Projection): List<NoteView> {
+        /* Range containing lft - 1, or the last one before it. */
+        var range = foldedRgt.binarySearchInsertion(lft - 1)
+        var to = minOf(lft - 1, rangeEnd(range))
+
+        val ids = mutableListOf<Long>()
+
+        while (ids.size < limit && range >= 0) {
+            ids.addAll(db.note().getIdsBetweenDescending(bookId, rangeStart(range), to, limit - ids.size))
+
+            range--
+
+            if (range >= 0) {
+                to = rangeEnd(range)
+            }
+        }
+
+        return db.noteView().getByIds(ids, projection)
+    }
+
+    /** Visible notes starting with the one at [position]. */
+    fun getAt(position: Int, limit: Int, projection: NoteViewDao.Projection): List<NoteView> {
+        /* Last range starting at or before the position. */
+        var low = 0
+        var high = foldedLft.size
+
+        while (low < high) {
+            val mid = (low + high + 1) / 2
+
+            if (countBeforeRange(mid) <= position) {
+                low = mid
+            } else {
+                high = mid - 1
+            }
+        }
+
+        val offset = position - countBeforeRange(low)
+
+        return collectAscending(low, rangeStart(low), offset, limit, projection)
+    }
+
+    private fun collectAscending(
+            firstRange: Int,
+            from: Long,
+            offset: Int,
+            limit: Int,
+            projection: NoteViewDao.Projection): List<NoteView> {
+
+        val ids = mutableListOf<Long>()
+
+        var range = firstRange
+        var start = from
+        var skip = offset
+
+        while (ids.size < limit && range <= foldedLft.size) {
+            ids.addAll(db.note().getIdsBetween(bookId, start, rangeEnd(range), limit - ids.size, skip))
+
+            range++
+            skip = 0
+
+            if (range <= foldedLft.size) {
+                start = rangeStart(range)
+            }
+        }
+
+        return db.noteView().getByIds(ids, projection)
+    }
+
+    /*
+     * Visible notes are in ranges of lft values between outermost folded notes.
+     * Range i ends with the folded note i itself, the last range ends with the book.
+     */
+
+    private fun rangeStart(range: Int): Long {
+        return if (range == 0) Long.MIN_VALUE else foldedRgt[range - 1]
+    }
+
+    private fun rangeEnd(range: Int): Long {
+        return if (range == foldedLft.size) Long.MAX_VALUE else foldedLft[range]
+    }
+
+    private fun countBeforeRange(range: Int): Int {
+        return if (range == 0) 0 else countBefore(foldedRgt[range - 1])
+    }
+
+    /** Number of outermost folded notes with lft less than [lft]. */
+    private fun foldedBefore(lft: Long): Int {
+        return foldedLft.binarySearchInsertion(lft)
+    }
+
+    /* Index of the first element not less than value. */
+    private fun LongArray.binarySearchInsertion(value: Long): Int {
+        val i = binarySearch(value)
+        return if (i >= 0) i else -i - 1
+    }
+
+    companion object {
+        @JvmStatic
+        fun load(db: OrgzlyDatabase, bookId: Long): BookVisibility {
+            val foldedLft = mutableListOf<Long>()
+            val foldedRgt = mutableListOf<Long>()
+            val hiddenBefore = mutableListOf(0)
+
+            for (folded in db.note().getFoldedWithDescendants(bookId)) {
+                /* Skip folded notes under already folded ones. */
+                if (foldedRgt.isNotEmpty() && folded.lft < foldedRgt.last()) {
+                    continue
+                }
+
+                foldedLft.add(folded.lft)
+                foldedRgt.add(folded.rgt)
+                hiddenBefore.add(hiddenBefore.last() + folded.descendantsCount)
+            }
+
+            return BookVisibility(
+                    db, bookId, foldedLft.toLongArray(), foldedRgt.toLongArray(), hiddenBefore.toIntArray())
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.orgzly.android.db
+
+import com.orgzly.BuildConfig
+import com.orgzly.android.db.dao.NoteDao
+import com.orgzly.android.db.entity.Note
+import com.orgzly.android.util.LogUtils
+
+/**
+ * Makes space for new notes in a book's nested set.
+ *
+ * Notes' lft and rgt values are spaced out, so notes can usually be inserted into
+ * a gap without updating any other note. Only lft and rgt ordering is meaningful.
+ *
+ * Once a gap is exhausted, notes are renumbered lazily, within the nearest ancestor
+ * which has enough space. Only if none has, the whole book is renumbered.
+ *
+ * Must be used inside a transaction.
+ */
+class NestedSetGaps(private val db: OrgzlyDatabase) {
+
+    /**
+     * Space reserved for notes inserted between two existing lft or rgt values.
+     * Positions of the new notes, numbered contiguously starting from 1, are mapped to it.
+     */
+    data class Space(val after: Long, val step: Long) {
+        fun position(sequence: Long): Long {
+            return after + sequence * step
+        }
+    }
+
+    /**
+     * Reserves space for [count] notes (2 * [count] positions) between [after] and [before],
+     * which must be adjacent lft or rgt values of the book's notes.
+     *
+     * @param enclosing nearest note containing both [after] and [before] (possibly book's root)
+     */
+    fun makeSpace(enclosing: Note, after: Long, before: Long, count: Int): Space {
+        val required = 2L * count
+
+        /* Enough space in the gap. */
+        if (before - after > required) {
+            return Space(after, (before - after) / (required + 1))
+        }
+
+        var note: Note? = enclosing
+
+        while (note != null && note.position.level > 0) {
+            val inside = db.note().getPositionsInside(note.position.bookId, note.position.lft, note.position.rgt)
+
+            val step = (note.position.rgt - note.position.lft) / (2L * inside.size + required + 1)
+
+            if (step >= MIN_STEP) {
+                if (BuildConfig.LOG_DEBUG)
+                    LogUtils.d(TAG, "Renumbering ${inside.size} notes under ${note.id} with step $step")
+
+                return renumber(note.position.lft, step, inside, after, required)
+            }
+
+            note = db.note().get(note.position.parentId)
+        }
+
+        val root = note ?: db.note().getRootNode(enclosing.position.bookId)
+                ?: throw IllegalStateException("Root note for book ${enclosing.position.bookId} not found")
+
+        /* Appending to the end of the book, only root's rgt needs to grow. */
+        if (before == root.position.rgt) {
+            db.note().updateLftRgt(root.id, root.position.lft, after + (required + 1) * GAP)
+
+            return Space(after, GAP)
+        }
+
+        val inside = db.note().getPositionsInside(root.position.bookId, root.position.lft, root.position.rgt)
+
+        if (BuildConfig.LOG_DEBUG)
+            LogUtils.d(TAG, "Renumbering all ${inside.size} notes of book ${root.position.bookId}")
+
+        val space = renumber(root.position.lft, GAP, inside, after, required)
+
+        val rgt = root.position.lft + (2L * inside.size + required + 1) * GAP
+
+        db.note().updateLftRgt(root.id, root.position.lft, rgt)
+
+        return space
+    }
+
+    /**
+     * Spreads notes evenly after [lft], leaving space for [required] positions after [after].
+     */
+    private fun renumber(
+            lft: Long,
+            step: Long,
+            notes: List<NoteDao.NoteLftRgt>,
+            after: Long,
+            required: Long): Space {
+
+        val values = LongArray(notes.size * 2).also { values ->
+            notes.forEachIndexed { i, note ->
+                values[2 * i] = note.lft
+                values[2 * i + 1] = note.rgt
+            }
+            values.sort()
+        }
+
+        val renumbered = HashMap<Long, Long>(values.size)
+
+        var sequence = 0L
+        var spaceAfter: Long? = null
+
+        for (value in values) {
+            if (spaceAfter == null && value > after) {
+                spaceAfter = lft + sequence * step
+                sequence += required
+            }
+
+            sequence++
+
+            renumbered[value] = lft + sequence * step
+        }
+
+        for (note in notes) {
+            val newLft = renumbered.getValue(note.lft)
+            val newRgt = renumbered.getValue(note.rgt)
+
+            if (newLft != note.lft || newRgt != note.rgt) {
+                db.note().updateLftRgt(note.id, newLft, newRgt)
+            }
+        }
+
+        return Space(spaceAfter ?: (lft + sequence * step), step)
+    }
+
+    companion object {
+        private val TAG: String = NestedSetGaps::class.java.name
+
+        /** Spacing of notes' lft and rgt values when a book is loaded or renumbered. */
+        const val GAP = 1024L
+
+        /**
+         * Smallest spacing ancestor's notes are renumbered with.
+         * Renumbering with less would exhaust the gaps again after a few inserts.
+         */
+        private const val MIN_STEP = 16L
+    }
+}
@@ -0,0 +1,79 @@
+package com.orgzly.android.db
+
+/**
+ * Links nodes of a nested set to their parents and ancestors, for nodes
+ * reported in post-order (all descendants before the node itself), as done
+ * by the parser.
+ *
+ * Nodes still waiting for their parent are kept on a stack. Descendants of
+ * each node are contiguous in post-order, so they are found without scanning
+ * the lft..rgt range. Total work is O(nodes + ancestor rows).
+ *
+ * @param T item kept for each node until its parent is reported
+ */
+class NoteAncestorsTracker<T> {
+    /* IDs of all reported nodes, in post-order. */
+    private var ids = LongArray(INITIAL_CAPACITY)
+    private var idsSize = 0
+
+    /* Nodes waiting for their parent. */
+    private var stackLft = LongArray(INITIAL_CAPACITY)
+    private var stackFirstDescendant = IntArray(INITIAL_CAPACITY)
+    private val stackItems = ArrayList<T>()
+
+    /**
+     * Adds the next node.
+     *
+     * @param onChild called for every child of the node, with child's item
+     * @param onDescendant called for every descendant of the node, with descendant's ID
+     */
+    fun add(lft: Long, id: Long, item: T, onChild: (T) -> Unit, onDescendant: (Long) -> Unit) {
+        var firstDescendant = idsSize
+
+        /* Children are on top of the stack, as they were reported last. */
+        while (stackItems.isNotEmpty() && stackLft[stackItems.size - 1] > lft) {
+            val top = stackItems.size - 1
+
+            firstDescendant = stackFirstDescendant[top]
+
+            onChild(stackItems.removeAt(top))
+        }
+
+        for (i in firstDescendant until idsSize) {
+            onDescendant(ids[i])
+        }
+
+        push(lft, firstDescendant, item)
+
+        if (idsSize == ids.size) {
+            ids = ids.copyOf(ids.size * 2)
+        }
+        ids[idsSize++] = id
+    }
+
+    /**
+     * Removes and returns items of nodes without a parent.
+     */
+    fun removeRemaining(): List<T> {
+        return ArrayList(stackItems).also {
+            stackItems.clear()
+        }
+    }
+
+    private fun push(lft: Long, firstDescendant: Int, item: T) {
+        val top = stackItems.size
+
+        if (top == stackLft.size) {
+            stackLft = stackLft.copyOf(top * 2)
+            stackFirstDescendant = stackFirstDescendant.copyOf(top * 2)
+        }
+
+        stackLft[top] = lft
+        stackFirstDescendant[top] = firstDescendant
+        stackItems.add(item)
+    }
+
+    companion object {
+        private const val INITIAL_CAPACITY = 256
+    }
+}
@@ -0,0 +1,208 @@
+package com.orgzly.android.db
+
+import androidx.sqlite.db.SupportSQLiteDatabase
+import androidx.sqlite.db.SupportSQLiteStatement
+import com.orgzly.android.db.entity.Note
+import com.orgzly.android.db.entity.NoteAncestor
+import com.orgzly.android.db.entity.NoteEvent
+import com.orgzly.android.db.entity.NoteProperty
+import java.io.Closeable
+
+/**
+ * Writes notes and their dependent rows (properties, events and ancestors)
+ * using prepared multi-row INSERT statements.
+ *
+ * Note IDs are assigned here, not by SQLite, so notes can be linked to their
+ * parents in memory before they are written. Rows are buffered per table
+ * and written once there are enough of them to fill a statement.
+ *
+ * Must be used inside a transaction. Foreign key checks are deferred until commit,
+ * as dependent rows can be written before the notes they reference.
+ */
+class NotesBulkWriter(db: OrgzlyDatabase) : Closeable {
+    private val sqlite = db.openHelper.writableDatabase
+
+    private var nextNoteId: Long
+
+    private val notes = MultiRowInsert<Note>(
+            sqlite,
+            "INSERT INTO notes (id, is_cut, created_at, title, tags, state, priority, content, content_line_count, scheduled_range_id, deadline_range_id, closed_range_id, clock_range_id, book_id, lft, rgt, level, parent_id, folded_under_id, is_folded, descendants_count)",
+            21
+    ) { stmt, i, note ->
+        stmt.bindLong(i, note.id)
+        stmt.bindLong(i + 1, note.isCut)
+        stmt.bindNullableLong(i + 2, note.createdAt)
+        stmt.bindString(i + 3, note.title)
+        stmt.bindNullableString(i + 4, note.tags)
+        stmt.bindNullableString(i + 5, note.state)
+        stmt.bindNullableString(i + 6, note.priority)
+        stmt.bindNullableString(i + 7, note.content)
+        stmt.bindLong(i + 8, note.contentLineCount.toLong())
+        stmt.bindNullableLong(i + 9, note.scheduledRangeId)
+        stmt.bindNullableLong(i + 10, note.deadlineRangeId)
+        stmt.bindNullableLong(i + 11, note.closedRangeId)
+        stmt.bindNullableLong(i + 12, note.clockRangeId)
+        stmt.bindLong(i + 13, note.position.bookId)
+        stmt.bindLong(i + 14, note.position.lft)
+        stmt.bindLong(i + 15, note.position.rgt)
+        stmt.bindLong(i + 16, note.position.level.toLong())
+        stmt.bindLong(i + 17, note.position.parentId)
+        stmt.bindLong(i + 18, note.position.foldedUnderId)
+        stmt.bindLong(i + 19, if (note.position.isFolded) 1 else 0)
+        stmt.bindLong(i + 20, note.position.descendantsCount.toLong())
+    }
+
+    private val properties = MultiRowInsert<NoteProperty>(
+            sqlite,
+            "INSERT INTO note_properties (note_id, position, name, value)",
+            4
+    ) { stmt, i, property ->
+        stmt.bindLong(i, property.noteId)
+        stmt.bindLong(i + 1, property.position.toLong())
+        stmt.bindString(i + 2, property.name)
+        stmt.bindString(i + 3, property.value)
+    }
+
+    /* Same timestamp can be found in both title and content. */
+    private val events = MultiRowInsert<NoteEvent>(
+            sqlite,
+            "INSERT OR REPLACE INTO note_events (note_id, org_range_id)",
+            2
+    ) { stmt, i, event ->
+        stmt.bindLong(i, event.noteId)
+        stmt.bindLong(i + 1, event.orgRangeId)
+    }
+
+    private val ancestors = MultiRowInsert<NoteAncestor>(
+            sqlite,
+            "INSERT INTO note_ancestors (book_id, note_id, ancestor_note_id)",
+            3
+    ) { stmt, i, ancestor ->
+        stmt.bindLong(i, ancestor.bookId)
+        stmt.bindLong(i + 1, ancestor.noteId)
+        stmt.bindLong(i + 2, ancestor.ancestorNoteId)
+    }
+
+    init {
+        sqlite.execSQL("PRAGMA defer_foreign_keys = ON")
+
+        /*
+         * Continue the AUTOINCREMENT sequence, so IDs of deleted notes are never reused.
+         * Explicitly inserted IDs advance the sequence the same way generated ones do.
+         */
+        nextNoteId = sqlite.query("SELECT seq FROM sqlite_sequence WHERE name = 'notes'").use { cursor ->
+            if (cursor.moveToFirst()) cursor.getLong(0) + 1 else 1
+        }
+    }
+
+    /** Returns the ID the next note will be inserted with. */
+    fun newNoteId(): Long {
+        return nextNoteId++
+    }
+
+    /** Note must have its ID set with [newNoteId]. */
+    fun insert(note: Note) {
+        notes.add(note)
+    }
+
+    fun insert(property: NoteProperty) {
+        properties.add(property)
+    }
+
+    fun insert(event: NoteEvent) {
+        events.add(event)
+    }
+
+    fun insert(ancestor: NoteAncestor) {
+        ancestors.add(ancestor)
+    }
+
+    /** Number of rows written so far, for all tables. */
+    val rowCount: Long
+        get() = notes.count + properties.count + events.count + ancestors.count
+
+    fun flush() {
+        notes.flush()
+        properties.flush()
+        events.flush()
+        ancestors.flush()
+    }
+
+    override fun close() {
+        flush()
+
+        notes.close()
+        properties.close()
+        events.close()
+        ancestors.close()
+    }
+
+    private class MultiRowInsert<T>(
+            private val sqlite: SupportSQLiteDatabase,
+            private val insertInto: String,
+            private val columnCount: Int,
+            private val bind: (SupportSQLiteStatement, Int, T) -> Unit) : Closeable {
+
+        /* Rows per statement, limited by the number of bind arguments. */
+        private val maxRows = OrgzlyDatabase.SQLITE_MAX_VARIABLE_NUMBER / columnCount
+
+        private val rows = ArrayList<T>(maxRows)
+
+        /* Compiled statements per number of rows. */
+        private val statements = HashMap<Int, SupportSQLiteStatement>()
+
+        var count = 0L
+            private set
+
+        fun add(row: T) {
+            rows.add(row)
+
+            if (rows.size == maxRows) {
+                flush()
+            }
+        }
+
+        fun flush() {
+            if (rows.isEmpty()) {
+                return
+            }
+
+            val stmt = statements.getOrPut(rows.size) {
+                sqlite.compileStatement(sql(rows.size))
+            }
+
+            stmt.clearBindings()
+
+            rows.forEachIndexed { row, entity ->
+                bind(stmt, row * columnCount + 1, entity)
+            }
+
+            stmt.executeInsert()
+
+            count += rows.size
+
+            rows.clear()
+        }
+
+        private fun sql(rowCount: Int): String {
+            val values = (1..columnCount).joinToString(", ", "(", ")") { "?" }
+
+            return "$insertInto VALUES " + (1..rowCount).joinToString(", ") { values }
+        }
+
+        override fun close() {
+            statements.values.forEach { it.close() }
+            statements.clear()
+        }
+    }
+
+    companion object {
+        private fun SupportSQLiteStatement.bindNullableLong(index: Int, value: Long?) {
+            if (value != null) bindLong(index, value) else bindNull(index)
+        }
+
+        private fun SupportSQLiteStatement.bindNullableString(index: Int, value: String?) {
+            if (value != null) bindString(index, value) else bindNull(index)
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.orgzly.android.db
+
+import com.orgzly.android.db.entity.Note
+import com.orgzly.android.db.entity.NoteAncestor
+import com.orgzly.android.db.entity.NoteEvent
+import com.orgzly.android.db.entity.NoteProperty
+
+/**
+ * Updates notes of an already loaded book to match its newly parsed content,
+ * writing only the notes which changed.
+ *
+ * Parsed notes are matched to existing ones by their fingerprint (title, tags,
+ * planning times, content and properties) first, then by title. Matched notes keep
+ * their IDs, so reminders, widgets and anything else referencing them are not affected.
+ * Existing notes left without a match are deleted, parsed ones are inserted.
+ *
+ * Must be used inside a transaction.
+ */
+class NotesDiffWriter(private val db: OrgzlyDatabase, private val bookId: Long) {
+
+    /** Parsed note with its position set, but without ID, parent and folding. */
+    class ParsedNote(val note: Note, val properties: List<NoteProperty>)
+
+    data class Stats(
+            val inserted: Int,
+            val updated: Int,
+            val deleted: Int,
+            val unchanged: Int,
+            /** All rows written, including properties, events and ancestors. */
+            val rows: Long)
+
+    /**
+     * Fields compared to decide if note has changed. Planning times are compared
+     * by range IDs, as ranges are never duplicated.
+     */
+    private data class Fingerprint(
+            val title: String,
+            val tags: String?,
+            val state: String?,
+            val priority: String?,
+            val content: String?,
+            val scheduledRangeId: Long?,
+            val deadlineRangeId: Long?,
+            val closedRangeId: Long?,
+            val clockRangeId: Long?,
+            val createdAt: Long?,
+            val properties: List<Pair<String, String>>)
+
+    /**
+     * @param parsed notes in the order they are parsed (post-order), root included
+     * @param insertEvents parses events from note's title and content
+     */
+    fun write(
+            parsed: List<ParsedNote>,
+            startFolded: Boolean,
+            insertEvents: (Note, (NoteEvent) -> Unit) -> Unit): Stats {
+
+        val existingNotes = db.note().getAllInBook(bookId)
+
+        val existingProperties = db.noteProperty().getAllInBook(bookId).groupBy({ it.noteId }, { Pair(it.name, it.value) })
+
+        val matched = match(parsed, existingNotes, existingProperties)
+
+        val writer = NotesBulkWriter(db)
+
+        val ids = LongArray(parsed.size) { i ->
+            matched[i]?.id ?: writer.newNoteId()
+        }
+
+        val parents = findParents(parsed, ids)
+
+        var inserted = 0
+        var updated = 0
+        var unchanged = 0
+        var updatedRows = 0L
+
+        val ancestorsChanged = BooleanArray(parsed.size)
+
+        /* Notes for which inherited tags could have changed. */
+        val retagged = mutableSetOf<Long>()
+
+        val matchedIds = HashSet<Long>()
+
+        writer.use {
+            /* Parents before their descendants. */
+            for (i in parsed.indices.reversed()) {
+                val parsedNote = parsed[i].note
+                val existing = matched[i]
+                val parent = parents[i]
+
+                val parentId = if (parent != -1) ids[parent] else 0
+
+                /* Keep folding of existing notes. */
+                val isFolded = existing?.position?.isFolded ?: (startFolded && parsedNote.position.level > 0)
+
+                val position = parsedNote.position.copy(parentId = parentId, isFolded = isFolded)
+
+                val note = parsedNote.copy(id = ids[i], position = position)
+
+                ancestorsChanged[i] = existing == null
+                        || existing.position.parentId != parentId
+                        || (parent != -1 && ancestorsChanged[parent])
+
+                if (existing == null) {
+                    writer.insert(note)
+                    insertDependentRows(writer, note, parsed[i].properties, insertEvents)
+                    inserted++
+
+                    retagged.add(note.id)
+
+                } else {
+                    matchedIds.add(existing.id)
+
+                    val contentChanged = fingerprint(note, parsed[i].properties.map { Pair(it.name, it.value) }) !=
+                            fingerprint(existing, existingProperties[existing.id].orEmpty())
+
+                    if (contentChanged) {
+                        db.note().update(note.copy(inheritedTags = existing.inheritedTags))
+
+                        db.noteProperty().delete(note.id)
+                        db.noteEvent().deleteForNote(note.id)
+                        insertDependentRows(writer, note, parsed[i].properties, insertEvents)
+
+                        if (note.tags != existing.tags) {
+                            retagged.add(note.id)
+                        }
+
+                        updated++
+                        updatedRows++
+
+                    } else if (position != existing.position) {
+                        db.note().updatePosition(
+                                note.id,
+                                position.lft,
+                                position.rgt,
+                                position.level,
+                                position.parentId,
+                                position.isFolded,
+                                position.descendantsCount)
+
+                        updated++
+                        updatedRows++
+
+                    } else {
+                        unchanged++
+                    }
+
+                    if (ancestorsChanged[i]) {
+                        retagged.add(note.id)
+                    }
+                }
+            }
+
+            /* Delete notes left without a match (including cut ones), with their dependent rows. */
+            val deletedIds = existingNotes.map { it.id }.filterNot { it in matchedIds }
+
+            db.note().deleteWithoutDescendants(deletedIds)
+
+            updatedRows += deletedIds.size
+
+            /* Replace ancestors of notes which are new or moved under a different parent. */
+            val movedIds = parsed.indices.filter { ancestorsChanged[it] && matched[it] != null }.map { ids[it] }
+
+            db.noteAncestor().deleteForNotes(movedIds)
+
+            for (i in parsed.indices) {
+                if (ancestorsChanged[i]) {
+                    var ancestor = parents[i]
+
+                    while (ancestor != -1) {
+                        writer.insert(NoteAncestor(noteId = ids[i], bookId = bookId, ancestorNoteId = ids[ancestor]))
+                        ancestor = parents[ancestor]
+                    }
+                }
+            }
+
+            writer.flush()
+
+            if (retagged.isNotEmpty()) {
+                db.note().updateInheritedTagsForSubtrees(retagged)
+            }
+
+            return Stats(inserted, updated, deletedIds.size, unchanged, writer.rowCount + updatedRows)
+        }
+    }
+
+    /**
+     * Matches parsed notes to existing ones. Both are taken in post-order (sorted by rgt),
+     * so notes with the same fingerprint or title are matched in the order they appear.
+     */
+    private fun match(
+            parsed: List<ParsedNote>,
+            existingNotes: List<Note>,
+            existingProperties: Map<Long, List<Pair<String, String>>>): Array<Note?> {
+
+        val matched = arrayOfNulls<Note>(parsed.size)
+
+        val candidates = existingNotes
+                .filter { it.isCut == 0L && it.position.level > 0 }
+                .sortedBy { it.position.rgt }
+
+        val byFingerprint = HashMap<Fingerprint, ArrayDeque<Note>>()
+        val byTitle = HashMap<String, ArrayDeque<Note>>()
+
+        for (note in candidates) {
+            byFingerprint.getOrPut(fingerprint(note, existingProperties[note.id].orEmpty())) { ArrayDeque() }.addLast(note)
+            byTitle.getOrPut(note.title) { ArrayDeque() }.addLast(note)
+        }
+
+        val used = HashSet<Long>()
+
+        fun ArrayDeque<Note>.takeUnused(): Note? {
+            while (isNotEmpty()) {
+                val note = removeFirst()
+                if (used.add(note.id)) {
+                    return note
+                }
+            }
+            return null
+        }
+
+        /* Root note. */
+        existingNotes.firstOrNull { it.position.level == 0 }?.let { root ->
+            parsed.indexOfFirst { it.note.position.level == 0 }.takeIf { it != -1 }?.let { i ->
+                matched[i] = root
+                used.add(root.id)
+            }
+        }
+
+        for ((i, parsedNote) in parsed.withIndex()) {
+            if (matched[i] == null && parsedNote.note.position.level > 0) {
+                val fingerprint = fingerprint(parsedNote.note, parsedNote.properties.map { Pair(it.name, it.value) })
+
+                matched[i] = byFingerprint[fingerprint]?.takeUnused()
+            }
+        }
+
+        for ((i, parsedNote) in parsed.withIndex()) {
+            if (matched[i] == null && parsedNote.note.position.level > 0) {
+                matched[i] = byTitle[parsedNote.note.title]?.takeUnused()
+            }
+        }
+
+        return matched
+    }
+
+    /**
+     * Returns index of each note's parent, -1 for the root and orphans.
+     */
+    private fun findParents(parsed: List<ParsedNote>, ids: LongArray): IntArray {
+        val parents = IntArray(parsed.size) { -1 }
+
+        val tracker = NoteAncestorsTracker<Int>()
+
+        for ((i, parsedNote) in parsed.withIndex()) {
+            tracker.add(parsedNote.note.position.lft, ids[i], i, { child -> parents[child] = i }, { })
+        }
+
+        return parents
+    }
+
+    private fun insertDependentRows(
+            writer: NotesBulkWriter,
+            note: Note,
+            properties: List<NoteProperty>,
+            insertEvents: (Note, (NoteEvent) -> Unit) -> Unit) {
+
+        properties.forEach { property ->
+            writer.insert(property.copy(noteId = note.id))
+        }
+
+        insertEvents(note) {
+            writer.insert(it)
+        }
+    }
+
+    private fun fingerprint(note: Note, properties: List<Pair<String, String>>): Fingerprint {
+        return Fingerprint(
+                note.title,
+                note.tags,
+                note.state,
+                note.priority,
+                note.content,
+                note.scheduledRangeId,
+                note.deadlineRangeId,
+                note.closedRangeId,
+                note.clockRangeId,
+                note.createdAt,
+                properties)
+    }
+}
@@ -0,0 +1,113 @@
+package com.orgzly.android.db
+
+import androidx.sqlite.db.SupportSQLiteDatabase
+import java.text.Normalizer
+
+/**
+ * Full-text index of notes' title, content and tags.
+ *
+ * FTS4 table using notes as its external content, so the text is not stored twice.
+ * It is not a Room entity, as triggers Room creates for external content tables
+ * fire on every update of a note. Triggers here only fire when indexed columns
+ * are written, not when notes are moved or folded.
+ */
+object NotesFts {
+    const val TABLE = "notes_fts"
+
+    @JvmStatic
+    fun create(db: SupportSQLiteDatabase) {
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS $TABLE USING fts4(title, content, tags, content=`notes`, tokenize=unicode61)")
+
+        db.execSQL("""
+            CREATE TRIGGER IF NOT EXISTS ${TABLE}_after_insert AFTER INSERT ON notes BEGIN
+                INSERT INTO $TABLE (docid, title, content, tags) VALUES (new.id, new.title, new.content, new.tags);
+            END
+        """)
+
+        db.execSQL("""
+            CREATE TRIGGER IF NOT EXISTS ${TABLE}_before_delete BEFORE DELETE ON notes BEGIN
+                DELETE FROM $TABLE WHERE docid = old.id;
+            END
+        """)
+
+        db.execSQL("""
+            CREATE TRIGGER IF NOT EXISTS ${TABLE}_before_update BEFORE UPDATE OF title, content, tags ON notes BEGIN
+                DELETE FROM $TABLE WHERE docid = old.id;
+            END
+        """)
+
+        db.execSQL("""
+            CREATE TRIGGER IF NOT EXISTS ${TABLE}_after_update AFTER UPDATE OF title, content, tags ON notes BEGIN
+                INSERT INTO $TABLE (docid, title, content, tags) VALUES (new.id, new.title, new.content, new.tags);
+            END
+        """)
+    }
+
+    /**
+     * Indexes all existing notes.
+     */
+    @JvmStatic
+    fun rebuild(db: SupportSQLiteDatabase) {
+        db.execSQL("INSERT INTO $TABLE ($TABLE) VALUES ('rebuild')")
+    }
+
+    /**
+     * Returns MATCH expression for notes with words starting with the [text],
+     * or null if there are no words in it (only punctuation, for example).
+     */
+    @JvmStatic
+    fun matchExpression(text: String): String? {
+        /*
+         * Quotes can't be escaped in a phrase.
+         * Prefix marker must follow the last word directly.
+         */
+        val phrase = text.replace("\"", " ").trimEnd { !it.isLetterOrDigit() }.trim()
+
+        if (phrase.isEmpty()) {
+            return null
+        }
+
+        return "\"$phrase*\""
+    }
+
+    /**
+     * Returns true if notes' text in [values] would be matched by [matchExpression] of [text].
+     *
+     * Splits text into words the way unicode61 tokenizer does, ignoring case and diacritics.
+     * Used for filtering notes already in memory.
+     */
+    @JvmStatic
+    fun matches(text: String, vararg values: String?): Boolean {
+        val phrase = tokenize(text.replace("\"", " "))
+
+        if (phrase.isEmpty()) {
+            return false
+        }
+
+        return values.any { value ->
+            val words = tokenize(value ?: "")
+
+            (0..words.size - phrase.size).any { start ->
+                phrase.indices.all { i ->
+                    if (i == phrase.lastIndex) {
+                        words[start + i].startsWith(phrase[i])
+                    } else {
+                        words[start + i] == phrase[i]
+                    }
+                }
+            }
+        }
+    }
+
+    private fun tokenize(str: String): List<String> {
+        return Normalizer.normalize(str, Normalizer.Form.NFD)
+                .replace(DIACRITICS, "")
+                .lowercase()
+                .split(SEPARATORS)
+                .filter { it.isNotEmpty() }
+    }
+
+    private val DIACRITICS = Regex("\\p{Mn}+")
+
+    private val SEPARATORS = Regex("[^\\p{L}\\p{N}]+")
+}
@@ -0,0 +1,80 @@
+package com.orgzly.android.db
+
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * IDs of org_ranges and org_timestamps rows by their string.
+ *
+ * Times are shared by all notes using them, so the same string is usually
+ * looked up many times while loading a book or pasting notes.
+ *
+ * Rows inserted in a transaction disappear if it is rolled back,
+ * so the cache should not outlive the transaction it is used in.
+ */
+class OrgTimeIdCache(private val maxSize: Int = DEFAULT_MAX_SIZE) {
+
+    data class Stats(val hits: Long, val misses: Long)
+
+    private val ranges = lru()
+
+    private val timestamps = lru()
+
+    var hits = 0L
+        private set
+
+    var misses = 0L
+        private set
+
+    /**
+     * Returns the ID of the range, calling [load] to select or insert it if not cached.
+     */
+    fun getRangeId(str: String, load: () -> Long): Long {
+        return get(ranges, str, load)
+    }
+
+    /**
+     * Returns the ID of the timestamp, calling [load] to select or insert it if not cached.
+     */
+    fun getTimestampId(str: String, load: () -> Long): Long {
+        return get(timestamps, str, load)
+    }
+
+    private fun get(map: LinkedHashMap<String, Long>, str: String, load: () -> Long): Long {
+        val id = map[str]
+
+        return if (id != null) {
+            hits++
+            totalHits.incrementAndGet()
+            id
+
+        } else {
+            misses++
+            totalMisses.incrementAndGet()
+            load().also { map[str] = it }
+        }
+    }
+
+    private fun lru(): LinkedHashMap<String, Long> {
+        return object : LinkedHashMap<String, Long>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Long>?): Boolean {
+                return size > maxSize
+            }
+        }
+    }
+
+    override fun toString(): String {
+        return "$hits hits, $misses misses"
+    }
+
+    companion object {
+        private const val DEFAULT_MAX_SIZE = 4096
+
+        private val totalHits = AtomicLong()
+        private val totalMisses = AtomicLong()
+
+        /** Hits and misses of all caches since the start of the process. */
+        fun totalStats(): Stats {
+            return Stats(totalHits.get(), totalMisses.get())
+        }
+    }
+}
@@ -21,14 +21,20 @@ import java.util.*
 
 @Database(
         entities = [
+            AgendaHorizon::class,
+            AgendaOccurrence::class,
+            AgendaStaleNote::class,
             Book::class,
             BookLink::class,
             BookSync::class,
             DbRepoBook::class,
+            DropboxCursor::class,
+            DropboxFile::class,
             Note::class,
             NoteAncestor::class,
             NoteProperty::class,
             NoteEvent::class,
+            NoteTag::class,
             OrgRange::class,
             OrgTimestamp::class,
             Repo::class,
@@ -39,11 +45,12 @@ import java.util.*
             AppLog::class
         ],
 
-        version = 156
+        version = 166
 )
 @TypeConverters(com.orgzly.android.db.TypeConverters::class)
 abstract class OrgzlyDatabase : RoomDatabase() {
 
+    abstract fun agendaOccurrence(): AgendaOccurrenceDao
     abstract fun book(): BookDao
     abstract fun bookLink(): BookLinkDao
     abstract fun bookView(): BookViewDao
@@ -53,6 +60,7 @@ abstract class OrgzlyDatabase : RoomDatabase() {
     abstract fun noteView(): NoteViewDao
     abstract fun noteProperty(): NotePropertyDao
     abstract fun noteEvent(): NoteEventDao
+    abstract fun noteTag(): NoteTagDao
     abstract fun orgRange(): OrgRangeDao
     abstract fun reminderTime(): ReminderTimeDao
     abstract fun orgTimestamp(): OrgTimestampDao
@@ -62,6 +70,7 @@ abstract class OrgzlyDatabase : RoomDatabase() {
     abstract fun savedSearch(): SavedSearchDao
     abstract fun versionedRook(): VersionedRookDao
     abstract fun dbRepoBook(): DbRepoBookDao
+    abstract fun dropboxListing(): DropboxListingDao
     abstract fun appLog(): AppLogDao
 
     companion object {
@@ -78,6 +87,12 @@ abstract class OrgzlyDatabase : RoomDatabase() {
         fun forMemory(context: Context): OrgzlyDatabase {
             return Room.inMemoryDatabaseBuilder(context.applicationContext, OrgzlyDatabase::class.java)
                     .allowMainThreadQueries()
+                    .addCallback(object : Callback() {
+                        override fun onCreate(db: SupportSQLiteDatabase) {
+                            NotesFts.create(db)
+                            AgendaStaleNotes.create(db)
+                        }
+                    })
                     .build()
         }
 
@@ -113,12 +128,25 @@ abstract class OrgzlyDatabase : RoomDatabase() {
                             MIGRATION_152_153,
                             MIGRATION_153_154,
                             MIGRATION_154_155,
-                            MIGRATION_155_156
+                            MIGRATION_155_156,
+                            MIGRATION_156_157,
+                            MIGRATION_157_158,
+                            MIGRATION_158_159,
+                            MIGRATION_159_160,
+                            MIGRATION_160_161,
+                            MIGRATION_161_162,
+                            MIGRATION_162_163,
+                            MIGRATION_163_164,
+                            MIGRATION_164_165,
+                            MIGRATION_165_166
                     )
                     .addCallback(object : Callback() {
                         override fun onCreate(db: SupportSQLiteDatabase) {
                             if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Database created")
 
+                            NotesFts.create(db)
+                            AgendaStaleNotes.create(db)
+
                             insertDefaultSearches(db)
                         }
 
@@ -564,5 +592,162 @@ abstract class OrgzlyDatabase : RoomDatabase() {
                 db.execSQL("CREATE INDEX IF NOT EXISTS `index_app_logs_name` ON `app_logs` (`name`)")
             }
         }
+
+        private val MIGRATION_156_157 = object : Migration(156, 157) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                /*
+                 * Store inherited tags with the note, instead of joining ancestors on every query.
+                 */
+                db.execSQL("ALTER TABLE notes ADD COLUMN inherited_tags TEXT")
+
+                db.execSQL("""
+                    UPDATE notes
+                    SET inherited_tags = (
+                        SELECT group_concat(a.tags, ' ')
+                        FROM note_ancestors na
+                        JOIN notes a ON (a.id = na.ancestor_note_id)
+                        WHERE na.note_id = notes.id AND a.tags IS NOT NULL AND a.tags != ''
+                    )
+                    WHERE id IN (
+                        SELECT na.note_id
+                        FROM note_ancestors na
+                        JOIN notes a ON (a.id = na.ancestor_note_id)
+                        WHERE a.tags IS NOT NULL AND a.tags != ''
+                    )
+                """)
+            }
+        }
+
+        private val MIGRATION_157_158 = object : Migration(157, 158) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                /*
+                 * Full-text index of notes, replacing LIKE for searching text.
+                 */
+                NotesFts.create(db)
+                NotesFts.rebuild(db)
+            }
+        }
+
+        private val MIGRATION_158_159 = object : Migration(158, 159) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                /*
+                 * Tags of notes, one per row, for searching by tag using an index.
+                 */
+                db.execSQL("CREATE TABLE IF NOT EXISTS `note_tags` (`note_id` INTEGER NOT NULL, `tag` TEXT NOT NULL COLLATE NOCASE, `is_inherited` INTEGER NOT NULL, PRIMARY KEY(`note_id`, `tag`, `is_inherited`), FOREIGN KEY(`note_id`) REFERENCES `notes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_note_tags_tag_is_inherited_note_id` ON `note_tags` (`tag`, `is_inherited`, `note_id`)")
+
+                val query = "SELECT id, tags, inherited_tags FROM notes WHERE COALESCE(tags, '') != '' OR COALESCE(inherited_tags, '') != ''"
+
+                db.query(query).use { cursor ->
+                    while (cursor.moveToNext()) {
+                        val noteId = cursor.getLong(0)
+
+                        for ((column, isInherited) in listOf(1 to 0, 2 to 1)) {
+                            Note.dbDeSerializeTags(cursor.getString(column)).distinctBy { it.lowercase() }.forEach { tag ->
+                                val values = ContentValues()
+                                values.put("note_id", noteId)
+                                values.put("tag", tag)
+                                values.put("is_inherited", isInherited)
+
+                                db.insert("note_tags", SQLiteDatabase.CONFLICT_IGNORE, values)
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private val MIGRATION_159_160 = object : Migration(159, 160) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                /*
+                 * Earliest time timestamp can appear in agenda, to select only notes in its window.
+                 * Months and years are taken as their longest, it only needs to be early enough.
+                 */
+                db.execSQL("ALTER TABLE org_timestamps ADD COLUMN agenda_start_timestamp INTEGER NOT NULL DEFAULT 0")
+
+                db.execSQL("""
+                    UPDATE org_timestamps
+                    SET agenda_start_timestamp = timestamp - COALESCE(delay_value, 0) * (
+                        CASE delay_unit
+                        WHEN 360 THEN 3600000
+                        WHEN 424 THEN 86400000
+                        WHEN 507 THEN 604800000
+                        WHEN 604 THEN 2678400000
+                        WHEN 712 THEN 31622400000
+                        ELSE 0
+                        END
+                    )
+                """)
+
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_org_timestamps_is_active_agenda_start_timestamp` ON `org_timestamps` (`is_active`, `agenda_start_timestamp`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_org_timestamps_repeater_type` ON `org_timestamps` (`repeater_type`)")
+            }
+        }
+
+        private val MIGRATION_160_161 = object : Migration(160, 161) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                /*
+                 * Stored agenda occurrences, so agenda is not expanded from ranges on every display.
+                 * Table is left empty, it is filled when agenda is first displayed.
+                 */
+                db.execSQL("CREATE TABLE IF NOT EXISTS `agenda_occurrences` (`note_id` INTEGER NOT NULL, `time_type` TEXT NOT NULL, `day` INTEGER NOT NULL, `timestamp` INTEGER NOT NULL, PRIMARY KEY(`note_id`, `time_type`, `day`, `timestamp`), FOREIGN KEY(`note_id`) REFERENCES `notes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_agenda_occurrences_day` ON `agenda_occurrences` (`day`)")
+
+                db.execSQL("CREATE TABLE IF NOT EXISTS `agenda_stale_notes` (`note_id` INTEGER NOT NULL, PRIMARY KEY(`note_id`))")
+
+                AgendaStaleNotes.create(db)
+            }
+        }
+
+        private val MIGRATION_161_162 = object : Migration(161, 162) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                /*
+                 * Composite indexes for selecting and updating notes of a book by lft or rgt.
+                 *
+                 * Indexes never used by queries are dropped, as they are updated
+                 * with each write (tags and content are searched using other tables).
+                 */
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_notes_book_id_is_cut_lft` ON `notes` (`book_id`, `is_cut`, `lft`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_notes_book_id_is_cut_rgt` ON `notes` (`book_id`, `is_cut`, `rgt`)")
+
+                for (column in listOf("tags", "content", "book_id", "is_cut", "lft", "rgt", "is_folded", "descendants_count")) {
+                    db.execSQL("DROP INDEX IF EXISTS `index_notes_$column`")
+                }
+            }
+        }
+
+        private val MIGRATION_162_163 = object : Migration(162, 163) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                /*
+                 * Visibility is determined by folded ancestors, folded_under_id is no longer used.
+                 * Folded notes of a book are selected by lft to find the hidden ranges.
+                 */
+                db.execSQL("DROP INDEX IF EXISTS `index_notes_folded_under_id`")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_notes_book_id_is_cut_is_folded_lft` ON `notes` (`book_id`, `is_cut`, `is_folded`, `lft`)")
+
+                db.execSQL("UPDATE notes SET folded_under_id = 0 WHERE folded_under_id != 0")
+            }
+        }
+
+        private val MIGRATION_163_164 = object : Migration(163, 164) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                /* Unknown for existing books, they are loaded or saved once more. */
+                db.execSQL("ALTER TABLE books ADD COLUMN content_hash TEXT")
+            }
+        }
+
+        private val MIGRATION_164_165 = object : Migration(164, 165) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS `dropbox_cursors` (`repo_id` INTEGER NOT NULL, `path` TEXT NOT NULL, `cursor` TEXT NOT NULL, PRIMARY KEY(`repo_id`), FOREIGN KEY(`repo_id`) REFERENCES `repos`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )")
+                db.execSQL("CREATE TABLE IF NOT EXISTS `dropbox_files` (`repo_id` INTEGER NOT NULL, `path_lower` TEXT NOT NULL, `name` TEXT NOT NULL, `rev` TEXT NOT NULL, `server_modified` INTEGER NOT NULL, PRIMARY KEY(`repo_id`, `path_lower`), FOREIGN KEY(`repo_id`) REFERENCES `repos`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )")
+            }
+        }
+
+        private val MIGRATION_165_166 = object : Migration(165, 166) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                /* Left empty, so all agenda occurrences are calculated again. */
+                db.execSQL("CREATE TABLE IF NOT EXISTS `agenda_horizon` (`id` INTEGER NOT NULL, `today` INTEGER NOT NULL, `days` INTEGER NOT NULL, PRIMARY KEY(`id`))")
+            }
+        }
     }
 }
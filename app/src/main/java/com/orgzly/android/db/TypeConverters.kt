@@ -6,6 +6,7 @@ import android.net.Uri
 import androidx.room.TypeConverter
 import com.orgzly.android.db.entity.BookAction
 import com.orgzly.android.repos.RepoType
+import com.orgzly.android.ui.TimeType
 
 object TypeConverters {
     @TypeConverter
@@ -47,4 +48,16 @@ object TypeConverters {
     fun fromRepoTypeToId(type: RepoType): Int {
         return type.id
     }
-}
\ No newline at end of file
+
+    @TypeConverter
+    @JvmStatic
+    fun fromTimeTypeToString(type: TimeType): String {
+        return type.toString()
+    }
+
+    @TypeConverter
+    @JvmStatic
+    fun fromStringToTimeType(type: String): TimeType {
+        return TimeType.valueOf(type)
+    }
+}
@@ -0,0 +1,93 @@
+package com.orgzly.android.db.dao
+
+import androidx.room.ColumnInfo
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.orgzly.android.db.OrgzlyDatabase
+import com.orgzly.android.db.entity.AgendaHorizon
+import com.orgzly.android.db.entity.AgendaOccurrence
+import com.orgzly.android.ui.TimeType
+
+@Dao
+abstract class AgendaOccurrenceDao : BaseDao<AgendaOccurrence> {
+    @Query("SELECT * FROM agenda_occurrences WHERE day < :end ORDER BY day")
+    abstract fun getBefore(end: Long): List<AgendaOccurrence>
+
+    @Query("DELETE FROM agenda_occurrences")
+    abstract fun deleteAll()
+
+    @Query("DELETE FROM agenda_occurrences WHERE note_id IN (:ids)")
+    abstract fun deleteForNotes(ids: List<Long>)
+
+    @Query("SELECT note_id FROM agenda_stale_notes")
+    abstract fun getStaleNoteIds(): List<Long>
+
+    @Query("DELETE FROM agenda_stale_notes")
+    abstract fun deleteStaleNotes()
+
+    @Query("SELECT * FROM agenda_horizon WHERE id = ${AgendaHorizon.ID}")
+    abstract fun getHorizon(): AgendaHorizon?
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract fun replaceHorizon(horizon: AgendaHorizon)
+
+    @Query("DELETE FROM agenda_horizon")
+    abstract fun deleteHorizon()
+
+    @Query("$SELECT_SCHEDULED UNION ALL $SELECT_DEADLINE UNION ALL $SELECT_EVENTS")
+    abstract fun getAllTimes(): List<Time>
+
+    @Query("""
+        $SELECT_SCHEDULED AND notes.id IN (:ids)
+        UNION ALL
+        $SELECT_DEADLINE AND notes.id IN (:ids)
+        UNION ALL
+        $SELECT_EVENTS AND note_events.note_id IN (:ids)
+    """)
+    abstract fun getTimes(ids: List<Long>): List<Time>
+
+    /** Active planning time or event of a note, to be expanded into occurrences. */
+    data class Time(
+            @ColumnInfo(name = "note_id")
+            val noteId: Long,
+
+            @ColumnInfo(name = "time_type")
+            val timeType: TimeType,
+
+            val string: String,
+
+            val timestamp: Long
+    )
+
+    companion object {
+        private const val SELECT_SCHEDULED = """
+            SELECT notes.id AS note_id, 'SCHEDULED' AS time_type, org_ranges.string AS string, org_timestamps.timestamp AS timestamp
+            FROM notes
+            JOIN org_ranges ON (org_ranges.id = notes.scheduled_range_id)
+            JOIN org_timestamps ON (org_timestamps.id = org_ranges.start_timestamp_id)
+            WHERE org_timestamps.is_active = 1
+        """
+
+        private const val SELECT_DEADLINE = """
+            SELECT notes.id AS note_id, 'DEADLINE' AS time_type, org_ranges.string AS string, org_timestamps.timestamp AS timestamp
+            FROM notes
+            JOIN org_ranges ON (org_ranges.id = notes.deadline_range_id)
+            JOIN org_timestamps ON (org_timestamps.id = org_ranges.start_timestamp_id)
+            WHERE org_timestamps.is_active = 1
+        """
+
+        /* Events are expanded from their start time only, same as in notes' view. */
+        private const val SELECT_EVENTS = """
+            SELECT note_events.note_id AS note_id, 'EVENT' AS time_type, org_timestamps.string AS string, org_timestamps.timestamp AS timestamp
+            FROM note_events
+            JOIN org_ranges ON (org_ranges.id = note_events.org_range_id)
+            JOIN org_timestamps ON (org_timestamps.id = org_ranges.start_timestamp_id)
+            WHERE org_timestamps.is_active = 1
+        """
+
+        /** Each of the three selects binds the ids. */
+        const val MAX_IDS_PER_QUERY = OrgzlyDatabase.SQLITE_MAX_VARIABLE_NUMBER / 3
+    }
+}
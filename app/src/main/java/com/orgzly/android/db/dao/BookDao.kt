@@ -53,6 +53,9 @@ abstract class BookDao : BaseDao<Book> {
     @Query("UPDATE books SET is_modified = 0 WHERE id IN (:ids)")
     abstract fun setIsNotModified(ids: Set<Long>): Int
 
+    @Query("UPDATE books SET content_hash = :contentHash WHERE id = :id")
+    abstract fun updateContentHash(id: Long, contentHash: String?)
+
 
 
     fun getOrInsert(name: String): Long =
@@ -0,0 +1,32 @@
+package com.orgzly.android.db.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.orgzly.android.db.entity.DropboxCursor
+import com.orgzly.android.db.entity.DropboxFile
+
+@Dao
+abstract class DropboxListingDao {
+    @Query("SELECT * FROM dropbox_cursors WHERE repo_id = :repoId")
+    abstract fun getCursor(repoId: Long): DropboxCursor?
+
+    @Query("SELECT * FROM dropbox_files WHERE repo_id = :repoId")
+    abstract fun getFiles(repoId: Long): List<DropboxFile>
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract fun replaceCursor(cursor: DropboxCursor)
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract fun replaceFiles(files: Collection<DropboxFile>)
+
+    @Query("DELETE FROM dropbox_files WHERE repo_id = :repoId AND path_lower IN (:pathsLower)")
+    abstract fun deleteFiles(repoId: Long, pathsLower: Collection<String>)
+
+    @Query("DELETE FROM dropbox_files WHERE repo_id = :repoId")
+    abstract fun deleteFiles(repoId: Long)
+
+    @Query("DELETE FROM dropbox_cursors WHERE repo_id = :repoId")
+    abstract fun deleteCursor(repoId: Long)
+}
@@ -18,6 +18,16 @@ abstract class NoteAncestorDao(val db: OrgzlyDatabase) : BaseDao<NoteAncestor> {
     """)
     abstract fun deleteForSubtrees(ids: Set<Long>)
 
+    @Transaction
+    open fun deleteForNotes(ids: Collection<Long>) {
+        ids.chunked(OrgzlyDatabase.SQLITE_MAX_VARIABLE_NUMBER).forEach { chunk ->
+            deleteForNotesChunk(chunk)
+        }
+    }
+
+    @Query("DELETE FROM note_ancestors WHERE note_id IN (:ids)")
+    abstract fun deleteForNotesChunk(ids: List<Long>)
+
     /*
      * "INSERT query type is not supported yet"
      * https://issuetracker.google.com/issues/109900809
@@ -1,6 +1,5 @@
 package com.orgzly.android.db.dao
 
-import androidx.lifecycle.LiveData
 import androidx.room.Dao
 import androidx.room.Query
 import androidx.room.Transaction
@@ -11,13 +10,41 @@ import org.intellij.lang.annotations.Language
 
 
 @Dao
-abstract class NoteDao : BaseDao<Note> {
+abstract class NoteDao(val db: OrgzlyDatabase) : BaseDao<Note> {
     @Query("SELECT * FROM notes WHERE level > 0")
     abstract fun getAll(): List<Note>
 
     @Query("SELECT count(*) FROM notes WHERE book_id = :bookId AND level > 0 AND is_cut = 0")
     abstract fun getCount(bookId: Long): Int
 
+    @Query("SELECT count(*) FROM notes WHERE book_id = :bookId AND $WHERE_EXISTING_NOTES AND lft < :lft")
+    abstract fun getCountBefore(bookId: Long, lft: Long): Int
+
+    /** Folded notes which have descendants, sorted by lft. */
+    @Query("""
+        SELECT lft, rgt, descendants_count AS descendantsCount
+        FROM notes
+        WHERE book_id = :bookId AND $WHERE_EXISTING_NOTES AND is_folded = 1 AND descendants_count > 0
+        ORDER BY lft
+    """)
+    abstract fun getFoldedWithDescendants(bookId: Long): List<FoldedNote>
+
+    @Query("""
+        SELECT id FROM notes
+        WHERE book_id = :bookId AND $WHERE_EXISTING_NOTES AND lft BETWEEN :from AND :to
+        ORDER BY lft
+        LIMIT :limit OFFSET :offset
+    """)
+    abstract fun getIdsBetween(bookId: Long, from: Long, to: Long, limit: Int, offset: Int): List<Long>
+
+    @Query("""
+        SELECT id FROM notes
+        WHERE book_id = :bookId AND $WHERE_EXISTING_NOTES AND lft BETWEEN :from AND :to
+        ORDER BY lft DESC
+        LIMIT :limit
+    """)
+    abstract fun getIdsBetweenDescending(bookId: Long, from: Long, to: Long, limit: Int): List<Long>
+
     @Query("SELECT * FROM notes WHERE id = :id")
     abstract fun get(id: Long): Note?
 
@@ -42,17 +69,33 @@ abstract class NoteDao : BaseDao<Note> {
     @Query("SELECT * FROM notes WHERE parent_id = :id AND $WHERE_EXISTING_NOTES ORDER BY lft")
     abstract fun getChildren(id: Long): List<Note>
 
-    @Query("SELECT DISTINCT tags FROM notes WHERE tags IS NOT NULL AND tags != ''")
-    abstract fun getDistinctTagsLiveData(): LiveData<List<String>>
-
-    @Query("SELECT DISTINCT tags FROM notes WHERE tags IS NOT NULL AND tags != ''")
-    abstract fun getDistinctTags(): List<String>
-
     @Query("DELETE FROM notes WHERE id IN ($SELECT_SUBTREE_IDS_FOR_IDS)")
     abstract fun deleteById(ids: Set<Long>): Int
 
     @Query("DELETE FROM notes WHERE book_id = :bookId")
-    abstract fun deleteByBookId(bookId: Long)
+    abstract fun deleteByBookId(bookId: Long): Int
+
+    /** Deletes notes, but not their descendants. */
+    @Transaction
+    open fun deleteWithoutDescendants(ids: Collection<Long>) {
+        ids.chunked(OrgzlyDatabase.SQLITE_MAX_VARIABLE_NUMBER).forEach { chunk ->
+            deleteWithoutDescendantsChunk(chunk)
+        }
+    }
+
+    @Query("DELETE FROM notes WHERE id IN (:ids)")
+    abstract fun deleteWithoutDescendantsChunk(ids: List<Long>)
+
+    /** All notes of the book, including the root and cut notes. */
+    @Query("SELECT * FROM notes WHERE book_id = :bookId")
+    abstract fun getAllInBook(bookId: Long): List<Note>
+
+    @Query("""
+        UPDATE notes
+        SET lft = :lft, rgt = :rgt, level = :level, parent_id = :parentId, is_folded = :isFolded, descendants_count = :descendantsCount
+        WHERE id = :id
+    """)
+    abstract fun updatePosition(id: Long, lft: Long, rgt: Long, level: Int, parentId: Long, isFolded: Boolean, descendantsCount: Int)
 
     @Query(SELECT_NOTE_AND_ANCESTORS_IDS_FOR_IDS)
     abstract fun getNoteAndAncestorsIds(ids: List<Long>): List<Long>
@@ -135,9 +178,6 @@ abstract class NoteDao : BaseDao<Note> {
     """)
     abstract fun incrementDescendantsCountForAncestors(bookId: Long, lft: Long, rgt: Long): Int
 
-    @Query("UPDATE notes SET rgt = rgt + 2 WHERE book_id = :bookId AND level = 0")
-    abstract fun incrementRgtForRootNote(bookId: Long)
-
     @Query("SELECT id FROM notes WHERE book_id = :bookId AND level = 0")
     abstract fun getRootNodeId(bookId: Long): Long?
 
@@ -166,6 +206,44 @@ abstract class NoteDao : BaseDao<Note> {
     """)
     abstract fun updateDescendantsCountForAncestors(ids: Set<Long>, ignoreIds: Set<Long> = emptySet())
 
+    /** Also replaces [com.orgzly.android.db.entity.NoteTag]s of notes in subtrees. */
+    @Transaction
+    open fun updateInheritedTagsForSubtrees(ids: Set<Long>) {
+        ids.chunked(OrgzlyDatabase.SQLITE_MAX_VARIABLE_NUMBER).forEach { chunk ->
+            updateInheritedTagsForSubtreesChunk(chunk)
+        }
+
+        db.noteTag().replaceForSubtrees(ids)
+    }
+
+    @Query("""
+        UPDATE notes
+        SET inherited_tags = ($SELECT_INHERITED_TAGS)
+        WHERE id IN ($SELECT_SUBTREE_IDS_FOR_IDS)
+    """)
+    abstract fun updateInheritedTagsForSubtreesChunk(ids: List<Long>)
+
+    /** Also replaces [com.orgzly.android.db.entity.NoteTag]s of all notes in the book. */
+    @Transaction
+    open fun updateInheritedTagsForBook(bookId: Long) {
+        updateInheritedTagsForBookNotes(bookId)
+
+        db.noteTag().replaceForBook(bookId)
+    }
+
+    /** Only notes which have an ancestor with tags. */
+    @Query("""
+        UPDATE notes
+        SET inherited_tags = ($SELECT_INHERITED_TAGS)
+        WHERE id IN (
+            SELECT na.note_id
+            FROM note_ancestors na
+            JOIN notes a ON (a.id = na.ancestor_note_id)
+            WHERE na.book_id = :bookId AND a.tags IS NOT NULL AND a.tags != ''
+        )
+    """)
+    abstract fun updateInheritedTagsForBookNotes(bookId: Long)
+
     @Query("UPDATE notes SET content = :content, content_line_count = :contentLineCount WHERE id = :id")
     abstract fun updateContent(id: Long, content: String?, contentLineCount: Int)
 
@@ -186,112 +264,47 @@ abstract class NoteDao : BaseDao<Note> {
     abstract fun updateDeadlineTime(ids: Set<Long>, timeId: Long?)
 
 
-    @Transaction
-    open fun foldAll(bookId: Long) {
-        foldAll1(bookId)
-        foldAll2(bookId)
-    }
-
-    @Query("""
-        UPDATE notes
-        SET folded_under_id = parent_id
-        WHERE (book_id = :bookId AND $WHERE_EXISTING_NOTES) AND level > (
-            SELECT min(level) FROM notes WHERE (book_id = :bookId AND $WHERE_EXISTING_NOTES)
-        )
-    """)
-    abstract fun foldAll1(bookId: Long)
-
-    @Query("UPDATE notes SET is_folded = 1 WHERE book_id = :bookId AND $WHERE_EXISTING_NOTES")
-    abstract fun foldAll2(bookId: Long)
+    @Query("UPDATE notes SET is_folded = 1 WHERE book_id = :bookId AND $WHERE_EXISTING_NOTES AND is_folded = 0")
+    abstract fun foldAll(bookId: Long)
 
-    @Query("UPDATE notes SET is_folded = 0, folded_under_id = 0 WHERE book_id = :bookId")
+    @Query("UPDATE notes SET is_folded = 0 WHERE book_id = :bookId AND is_folded = 1")
     abstract fun unfoldAll(bookId: Long)
 
     @Query("UPDATE notes SET is_folded = 0 WHERE id IN (:ids)")
     abstract fun unfoldNotes(ids: List<Long>)
 
-    @Query("""
-        UPDATE notes
-        SET is_folded = 0, folded_under_id = 0
-        WHERE id IN ($SELECT_SUBTREE_IDS_FOR_IDS)
-    """)
+    @Query("UPDATE notes SET is_folded = 0 WHERE id IN ($SELECT_SUBTREE_IDS_FOR_IDS) AND is_folded = 1")
     abstract fun unfoldSubtrees(ids: List<Long>)
 
-    @Transaction
-    open fun foldSubtrees(ids: List<Long>) {
-        foldSubtreesSetRoots(ids)
-        foldSubtreesSetDescendants(ids)
-    }
-
-    @Query("UPDATE notes SET is_folded = 1 WHERE id IN (:ids)")
-    abstract fun foldSubtreesSetRoots(ids: List<Long>)
-
-    @Query("""
-        UPDATE notes
-        SET is_folded = 1, folded_under_id = parent_id
-        WHERE id IN ($SELECT_DESCENDANTS_IDS_FOR_IDS)
-    """)
-    abstract fun foldSubtreesSetDescendants(ids: List<Long>)
-
-    @Query("UPDATE notes SET folded_under_id = 0 WHERE folded_under_id IN (:ids)")
-    abstract fun updateFoldedUnderForNoteFoldedUnderId(ids: List<Long>)
+    @Query("UPDATE notes SET is_folded = 1 WHERE id IN ($SELECT_SUBTREE_IDS_FOR_IDS) AND is_folded = 0")
+    abstract fun foldSubtrees(ids: List<Long>)
 
     @Query("UPDATE notes SET is_folded = :isFolded WHERE id = :id")
     abstract fun updateIsFolded(id: Long, isFolded: Boolean): Int
 
-    /** All descendants which are not already hidden (due to one of the ancestors being folded). */
+    /** Largest lft or rgt in the book (including its root note) less than [value]. */
     @Query("""
-        UPDATE notes
-        SET folded_under_id = :noteId
-        WHERE book_id = :bookId AND $WHERE_EXISTING_NOTES AND :lft < lft AND rgt < :rgt
-            AND (folded_under_id IS NULL OR folded_under_id = 0)
+        SELECT MAX(position) FROM (
+            SELECT MAX(lft) AS position FROM notes WHERE book_id = :bookId AND is_cut = 0 AND lft < :value
+            UNION ALL
+            SELECT MAX(rgt) AS position FROM notes WHERE book_id = :bookId AND is_cut = 0 AND rgt < :value)
     """)
-    abstract fun foldDescendantsUnderId(bookId: Long, noteId: Long, lft: Long, rgt: Long)
+    abstract fun getPositionBefore(bookId: Long, value: Long): Long?
 
-    /** All descendants which are hidden because of this note being folded. */
+    /** Smallest lft or rgt in the book (including its root note) greater than [value]. */
     @Query("""
-        UPDATE notes
-        SET folded_under_id = 0
-        WHERE book_id = :bookId AND $WHERE_EXISTING_NOTES AND :lft < lft AND rgt < :rgt
-            AND folded_under_id = :noteId
+        SELECT MIN(position) FROM (
+            SELECT MIN(lft) AS position FROM notes WHERE book_id = :bookId AND is_cut = 0 AND lft > :value
+            UNION ALL
+            SELECT MIN(rgt) AS position FROM notes WHERE book_id = :bookId AND is_cut = 0 AND rgt > :value)
     """)
-    abstract fun unfoldDescendantsUnderId(bookId: Long, noteId: Long, lft: Long, rgt: Long)
+    abstract fun getPositionAfter(bookId: Long, value: Long): Long?
 
-    @Query("UPDATE notes SET lft = lft + :inc WHERE (book_id = :bookId AND $WHERE_EXISTING_NOTES) AND lft >= :value")
-    abstract fun incrementLftForLftGe(bookId: Long, value: Long, inc: Int)
+    @Query("SELECT id, lft, rgt FROM notes WHERE book_id = :bookId AND is_cut = 0 AND :lft < lft AND rgt < :rgt")
+    abstract fun getPositionsInside(bookId: Long, lft: Long, rgt: Long): List<NoteLftRgt>
 
-    @Query("UPDATE notes SET lft = lft + :inc WHERE (book_id = :bookId AND $WHERE_EXISTING_NOTES) AND lft > :value")
-    abstract fun incrementLftForLftGt(bookId: Long, value: Long, inc: Int)
-
-    @Query("UPDATE notes SET rgt = rgt + :inc WHERE book_id = :bookId AND is_cut = 0 AND rgt > :value")
-    abstract fun incrementRgtForRgtGtOrRoot(bookId: Long, value: Long, inc: Int)
-
-    @Query("UPDATE notes SET rgt = rgt + :inc WHERE book_id = :bookId AND is_cut = 0 AND rgt >= :value")
-    abstract fun incrementRgtForRgtGeOrRoot(bookId: Long, value: Long, inc: Int)
-
-    @Transaction
-    open fun unfoldNotesFoldedUnderOthers(ids: Set<Long>) {
-        ids.chunked(OrgzlyDatabase.SQLITE_MAX_VARIABLE_NUMBER/2).forEach { chunk ->
-            unfoldNotesFoldedUnderOthersChunk(chunk)
-        }
-    }
-
-    @Query("""
-        UPDATE notes
-        SET folded_under_id = 0
-        WHERE id IN (:ids)
-        AND folded_under_id NOT IN (:ids)
-    """)
-    abstract fun unfoldNotesFoldedUnderOthersChunk(ids: List<Long>)
-
-    @Query("UPDATE notes SET folded_under_id = :foldedUnder WHERE id IN (:ids) AND folded_under_id = 0")
-    abstract fun foldUnfolded(ids: Set<Long>, foldedUnder: Long)
-
-    @Query("UPDATE notes SET folded_under_id = :parentId WHERE id = :noteId")
-    abstract fun setFoldedUnder(noteId: Long, parentId: Long)
-
-    @Query("UPDATE notes SET parent_id = :parentId WHERE id = :noteId")
-    abstract fun updateParentForNote(noteId: Long, parentId: Long)
+    @Query("UPDATE notes SET lft = :lft, rgt = :rgt WHERE id = :id")
+    abstract fun updateLftRgt(id: Long, lft: Long, rgt: Long)
 
     @Query("""
         UPDATE notes
@@ -335,9 +348,6 @@ abstract class NoteDao : BaseDao<Note> {
     @Query("""SELECT DISTINCT book_id FROM notes WHERE id IN (:ids) AND COALESCE(state, "") != COALESCE(:state, "")""")
     abstract fun getBookIdsForNotesNotMatchingState(ids: Set<Long>, state: String?): List<Long>
 
-    @Query("SELECT MAX(rgt) FROM notes WHERE book_id = :bookId AND is_cut = 0")
-    abstract fun getMaxRgtForBook(bookId: Long): Long?
-
     @Query("SELECT * FROM notes WHERE book_id = :bookId AND level > 0 ORDER BY lft LIMIT 1")
     abstract fun getFirstNoteInBook(bookId: Long): Note?
 
@@ -372,6 +382,15 @@ abstract class NoteDao : BaseDao<Note> {
             AND n.rgt <= a.rgt
             """
 
+        /* Tags of all ancestors of the note being updated. */
+        @Language("RoomSql")
+        private const val SELECT_INHERITED_TAGS = """
+            SELECT group_concat(a.tags, ' ')
+            FROM note_ancestors na
+            JOIN notes a ON (a.id = na.ancestor_note_id)
+            WHERE na.note_id = notes.id AND a.tags IS NOT NULL AND a.tags != ''
+            """
+
         @Language("RoomSql")
         private const val SELECT_SUBTREE_FOR_IDS = """
             SELECT d.*
@@ -388,7 +407,7 @@ abstract class NoteDao : BaseDao<Note> {
             """
 
         @Language("RoomSql")
-        private const val SELECT_SUBTREE_IDS_FOR_IDS = """
+        const val SELECT_SUBTREE_IDS_FOR_IDS = """
             SELECT DISTINCT d.id
             FROM notes n, notes d
             WHERE n.id IN (:ids)
@@ -398,17 +417,6 @@ abstract class NoteDao : BaseDao<Note> {
             AND d.rgt <= n.rgt
             """
 
-        @Language("RoomSql")
-        private const val SELECT_DESCENDANTS_IDS_FOR_IDS = """
-            SELECT DISTINCT d.id
-            FROM notes n, notes d
-            WHERE n.id IN (:ids)
-            AND d.book_id = n.book_id
-            AND d.is_cut = 0
-            AND n.lft < d.lft
-            AND d.rgt < n.rgt
-            """
-
         fun rootNote(bookId: Long): Note {
             return Note(id = 0, position = NotePosition(bookId, lft = 1, rgt = 2, level = 0))
         }
@@ -416,6 +424,10 @@ abstract class NoteDao : BaseDao<Note> {
 
     data class NoteIdBookId(val noteId: Long, val bookId: Long)
 
+    data class NoteLftRgt(val id: Long, val lft: Long, val rgt: Long)
+
+    data class FoldedNote(val lft: Long, val rgt: Long, val descendantsCount: Int)
+
     data class NoteForStateUpdate(
             val noteId: Long,
             val state: String?,
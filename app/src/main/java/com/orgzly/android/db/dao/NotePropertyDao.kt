@@ -17,6 +17,25 @@ abstract class NotePropertyDao : BaseDao<NoteProperty> {
     @Query("SELECT * FROM note_properties")
     abstract fun getAll(): List<NoteProperty>
 
+    @Query("""
+        SELECT note_properties.*
+        FROM note_properties
+        JOIN notes ON (notes.id = note_properties.note_id)
+        WHERE notes.book_id = :bookId
+        ORDER BY note_properties.note_id, note_properties.position
+    """)
+    abstract fun getAllInBook(bookId: Long): List<NoteProperty>
+
+    /** Properties of the book's notes with lft between [fromLft] and [toLft], both inclusive. */
+    @Query("""
+        SELECT note_properties.*
+        FROM note_properties
+        JOIN notes ON (notes.id = note_properties.note_id)
+        WHERE notes.book_id = :bookId AND notes.lft BETWEEN :fromLft AND :toLft
+        ORDER BY note_properties.note_id, note_properties.position
+    """)
+    abstract fun getForNotesBetween(bookId: Long, fromLft: Long, toLft: Long): List<NoteProperty>
+
     @Transaction
     open fun upsert(noteId: Long, name: String, value: String) {
         val properties = get(noteId, name)
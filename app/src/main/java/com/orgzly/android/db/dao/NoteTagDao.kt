@@ -0,0 +1,82 @@
+package com.orgzly.android.db.dao
+
+import androidx.lifecycle.LiveData
+import androidx.room.ColumnInfo
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.Transaction
+import com.orgzly.android.db.OrgzlyDatabase
+import com.orgzly.android.db.entity.Note
+import com.orgzly.android.db.entity.NoteTag
+
+@Dao
+abstract class NoteTagDao : BaseDao<NoteTag> {
+    @Query("SELECT DISTINCT tag FROM note_tags WHERE is_inherited = 0 ORDER BY tag")
+    abstract fun getDistinctLiveData(): LiveData<List<String>>
+
+    @Query("SELECT DISTINCT tag FROM note_tags WHERE is_inherited = 0 ORDER BY tag")
+    abstract fun getDistinct(): List<String>
+
+    @Query("SELECT * FROM note_tags WHERE note_id = :noteId")
+    abstract fun get(noteId: Long): List<NoteTag>
+
+    /** Replaces tags of notes in subtrees with those currently stored with the notes. */
+    @Transaction
+    open fun replaceForSubtrees(ids: Set<Long>) {
+        ids.chunked(OrgzlyDatabase.SQLITE_MAX_VARIABLE_NUMBER).forEach { chunk ->
+            replaceNotesTags(getNotesTagsForSubtrees(chunk))
+        }
+    }
+
+    /** Replaces tags of all notes in the book with those currently stored with the notes. */
+    @Transaction
+    open fun replaceForBook(bookId: Long) {
+        deleteForBook(bookId)
+        insert(getNotesTagsForBook(bookId).flatMap { toNoteTags(it) })
+    }
+
+    private fun replaceNotesTags(notesTags: List<NoteTags>) {
+        notesTags.map { it.id }.chunked(OrgzlyDatabase.SQLITE_MAX_VARIABLE_NUMBER).forEach { chunk ->
+            deleteForNotes(chunk)
+        }
+
+        insert(notesTags.flatMap { toNoteTags(it) })
+    }
+
+    private fun toNoteTags(notesTags: NoteTags): List<NoteTag> {
+        val own = Note.dbDeSerializeTags(notesTags.tags).distinctBy { it.lowercase() }.map {
+            NoteTag(notesTags.id, it, false)
+        }
+
+        val inherited = Note.dbDeSerializeTags(notesTags.inheritedTags).distinctBy { it.lowercase() }.map {
+            NoteTag(notesTags.id, it, true)
+        }
+
+        return own + inherited
+    }
+
+    @Query("SELECT id, tags, inherited_tags FROM notes WHERE id IN (${NoteDao.SELECT_SUBTREE_IDS_FOR_IDS})")
+    abstract fun getNotesTagsForSubtrees(ids: List<Long>): List<NoteTags>
+
+    @Query("""
+        SELECT id, tags, inherited_tags
+        FROM notes
+        WHERE book_id = :bookId AND (COALESCE(tags, '') != '' OR COALESCE(inherited_tags, '') != '')
+    """)
+    abstract fun getNotesTagsForBook(bookId: Long): List<NoteTags>
+
+    @Query("DELETE FROM note_tags WHERE note_id IN (:ids)")
+    abstract fun deleteForNotes(ids: List<Long>)
+
+    @Query("DELETE FROM note_tags WHERE note_id IN (SELECT id FROM notes WHERE book_id = :bookId)")
+    abstract fun deleteForBook(bookId: Long)
+
+    data class NoteTags(
+            val id: Long,
+
+            val tags: String?,
+
+            @ColumnInfo(name = "inherited_tags")
+            val inheritedTags: String?
+    )
+}
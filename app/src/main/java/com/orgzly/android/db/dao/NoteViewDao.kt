@@ -1,10 +1,13 @@
 package com.orgzly.android.db.dao
 
 import androidx.lifecycle.LiveData
+import androidx.paging.PagingSource
 import androidx.room.Dao
 import androidx.room.Query
 import androidx.room.RawQuery
+import androidx.sqlite.db.SimpleSQLiteQuery
 import androidx.sqlite.db.SupportSQLiteQuery
+import com.orgzly.android.db.OrgzlyDatabase
 import com.orgzly.android.db.entity.Book
 import com.orgzly.android.db.entity.Note
 import com.orgzly.android.db.entity.NoteView
@@ -12,32 +15,21 @@ import org.intellij.lang.annotations.Language
 
 @Dao
 abstract class NoteViewDao {
-    @Query("$QUERY WHERE notes.level > 0 GROUP BY notes.id")
+    @Query("$QUERY WHERE notes.level > 0")
     abstract fun getAll(): List<NoteView>
 
-    @Query("""
-        $QUERY
-        WHERE notes.book_id = :bookId
-        AND notes.level > 0
-        AND notes.is_cut = 0
-        AND notes.folded_under_id = 0
-        GROUP BY notes.id
-        ORDER BY notes.lft
-    """)
-    abstract fun getVisibleLiveData(bookId: Long): LiveData<List<NoteView>>
-
-    @Query("""
-        $QUERY
-        WHERE notes.book_id = :bookId
-        AND notes.level > 0
-        AND notes.is_cut = 0
-        AND notes.folded_under_id = 0
-        AND :lft <= notes.lft
-        AND notes.rgt <= :rgt
-        GROUP BY notes.id
-        ORDER BY notes.lft
-    """)
-    abstract fun getVisibleLiveData(bookId: Long, lft: Long, rgt: Long): LiveData<List<NoteView>>
+    /** Notes with [ids], in book order. */
+    fun getByIds(ids: Collection<Long>, projection: Projection): List<NoteView> {
+        return ids.chunked(OrgzlyDatabase.SQLITE_MAX_VARIABLE_NUMBER).flatMap { chunk ->
+            runQuery(SimpleSQLiteQuery("""
+                ${projection.query}
+                WHERE notes.id IN (${chunk.joinToString(",") { "?" }})
+            """, chunk.toTypedArray()))
+        }.sortedBy { it.note.position.lft }
+    }
+
+    @RawQuery(observedEntities = [ Note::class, Book::class ])
+    abstract fun runQueryPagingSource(query: SupportSQLiteQuery): PagingSource<Int, NoteView>
 
     @RawQuery(observedEntities = [ Note::class, Book::class ])
     abstract fun runQueryLiveData(query: SupportSQLiteQuery): LiveData<List<NoteView>>
@@ -45,14 +37,56 @@ abstract class NoteViewDao {
     @RawQuery(observedEntities = [ Note::class, Book::class ])
     abstract fun runQuery(query: SupportSQLiteQuery): List<NoteView>
 
-    @Query("$QUERY WHERE notes.id = :id GROUP BY notes.id")
+    /** Query is interrupted if the calling coroutine is cancelled. */
+    @RawQuery
+    abstract suspend fun runQueryCancellable(query: SupportSQLiteQuery): List<NoteView>
+
+    @Query("$QUERY WHERE notes.id = :id")
     abstract fun get(id: Long): NoteView?
 
-    @Query("$QUERY WHERE notes.title = :title GROUP BY notes.id ORDER BY lft DESC LIMIT 1")
+    @Query("$QUERY WHERE notes.title = :title ORDER BY lft DESC LIMIT 1")
     abstract fun getLast(title: String): NoteView?
 
-    @Query("$QUERY WHERE book_name = :bookName AND notes.level > 0 AND notes.is_cut = 0 GROUP BY notes.id ORDER BY notes.lft")
-    abstract fun getBookNotes(bookName: String): List<NoteView>
+    fun getBookNotes(bookName: String, projection: Projection): List<NoteView> {
+        return runQuery(SimpleSQLiteQuery("""
+            ${projection.query}
+            WHERE book_name = ?
+            AND notes.level > 0
+            AND notes.is_cut = 0
+            ORDER BY notes.lft
+        """, arrayOf(bookName)))
+    }
+
+    /**
+     * Notes of the book following the note at [lft], including folded ones.
+     * Used to go through all notes of a large book in chunks.
+     */
+    fun getBookNotesAfter(bookId: Long, lft: Long, limit: Int, projection: Projection): List<NoteView> {
+        return runQuery(SimpleSQLiteQuery("""
+            ${projection.query}
+            WHERE notes.book_id = ?
+            AND notes.level > 0
+            AND notes.is_cut = 0
+            AND ? < notes.lft
+            ORDER BY notes.lft
+            LIMIT ?
+        """, arrayOf(bookId, lft, limit)))
+    }
+
+    /**
+     * Columns selected for [NoteView]. Columns not needed by the caller are NULL,
+     * skipping the joins and per-row date calculations required to get them.
+     */
+    enum class Projection(val query: String) {
+        /** All columns. */
+        FULL(QUERY),
+
+        /** Columns displayed in a list of notes (planning times, but not their details). */
+        LIST_ITEM(QUERY_LIST_ITEM),
+
+        /** Columns required to write the note back to a file. */
+        EXPORT(QUERY_EXPORT)
+    }
 
 
     companion object {
@@ -62,8 +96,6 @@ abstract class NoteViewDao {
 
             notes.*,
 
-            group_concat(t_notes_with_inherited_tags.tags, ' ') AS inherited_tags,
-
             t_scheduled_range.string AS scheduled_range_string,
             t_scheduled_timestamps_start.string AS scheduled_time_string,
             t_scheduled_timestamps_end.string AS scheduled_time_end_string,
@@ -111,17 +143,106 @@ abstract class NoteViewDao {
             LEFT JOIN org_timestamps t_clock_timestamps_start ON t_clock_timestamps_start.id = t_clock_range.start_timestamp_id
             LEFT JOIN org_timestamps t_clock_timestamps_end ON t_clock_timestamps_end.id = t_clock_range.end_timestamp_id
             LEFT JOIN books t_books ON t_books.id = notes.book_id
-            LEFT JOIN note_ancestors t_note_ancestors ON t_note_ancestors.note_id = notes.id
-            LEFT JOIN notes t_notes_with_inherited_tags ON t_notes_with_inherited_tags.id = t_note_ancestors.ancestor_note_id
         """
 
         @Language("RoomSql")
-        const val QUERY_WITH_NOTE_EVENTS = """
+        const val QUERY_LIST_ITEM = """
             SELECT
 
             notes.*,
 
-            group_concat(t_notes_with_inherited_tags.tags, ' ') AS inherited_tags,
+            t_scheduled_range.string AS scheduled_range_string,
+            NULL AS scheduled_time_string,
+            NULL AS scheduled_time_end_string,
+            NULL AS scheduled_time_timestamp,
+            NULL AS scheduled_time_start_of_day,
+            NULL AS scheduled_time_hour,
+
+            t_deadline_range.string AS deadline_range_string,
+            NULL AS deadline_time_string,
+            NULL AS deadline_time_end_string,
+            NULL AS deadline_time_timestamp,
+            NULL AS deadline_time_start_of_day,
+            NULL AS deadline_time_hour,
+
+            t_closed_range.string AS closed_range_string,
+            NULL AS closed_time_string,
+            NULL AS closed_time_end_string,
+            NULL AS closed_time_timestamp,
+            NULL AS closed_time_start_of_day,
+            NULL AS closed_time_hour,
+
+            NULL AS clock_range_string,
+            NULL AS clock_time_string,
+            NULL AS clock_time_end_string,
+
+            NULL AS event_string,
+            NULL AS event_timestamp,
+            NULL AS event_start_of_day,
+            NULL AS event_hour,
+
+            t_books.name AS book_name
+
+            FROM notes
+
+            LEFT JOIN org_ranges t_scheduled_range ON t_scheduled_range.id = notes.scheduled_range_id
+            LEFT JOIN org_ranges t_deadline_range ON t_deadline_range.id = notes.deadline_range_id
+            LEFT JOIN org_ranges t_closed_range ON t_closed_range.id = notes.closed_range_id
+            LEFT JOIN books t_books ON t_books.id = notes.book_id
+        """
+
+        @Language("RoomSql")
+        const val QUERY_EXPORT = """
+            SELECT
+
+            notes.*,
+
+            t_scheduled_range.string AS scheduled_range_string,
+            NULL AS scheduled_time_string,
+            NULL AS scheduled_time_end_string,
+            NULL AS scheduled_time_timestamp,
+            NULL AS scheduled_time_start_of_day,
+            NULL AS scheduled_time_hour,
+
+            t_deadline_range.string AS deadline_range_string,
+            NULL AS deadline_time_string,
+            NULL AS deadline_time_end_string,
+            NULL AS deadline_time_timestamp,
+            NULL AS deadline_time_start_of_day,
+            NULL AS deadline_time_hour,
+
+            t_closed_range.string AS closed_range_string,
+            NULL AS closed_time_string,
+            NULL AS closed_time_end_string,
+            NULL AS closed_time_timestamp,
+            NULL AS closed_time_start_of_day,
+            NULL AS closed_time_hour,
+
+            t_clock_range.string AS clock_range_string,
+            NULL AS clock_time_string,
+            NULL AS clock_time_end_string,
+
+            NULL AS event_string,
+            NULL AS event_timestamp,
+            NULL AS event_start_of_day,
+            NULL AS event_hour,
+
+            t_books.name AS book_name
+
+            FROM notes
+
+            LEFT JOIN org_ranges t_scheduled_range ON t_scheduled_range.id = notes.scheduled_range_id
+            LEFT JOIN org_ranges t_deadline_range ON t_deadline_range.id = notes.deadline_range_id
+            LEFT JOIN org_ranges t_closed_range ON t_closed_range.id = notes.closed_range_id
+            LEFT JOIN org_ranges t_clock_range ON t_clock_range.id = notes.clock_range_id
+            LEFT JOIN books t_books ON t_books.id = notes.book_id
+        """
+
+        @Language("RoomSql")
+        const val QUERY_WITH_NOTE_EVENTS = """
+            SELECT
+
+            notes.*,
 
             t_scheduled_range.string AS scheduled_range_string,
             t_scheduled_timestamps_start.is_active AS scheduled_is_active,
@@ -172,8 +293,6 @@ abstract class NoteViewDao {
             LEFT JOIN org_timestamps t_clock_timestamps_start ON t_clock_timestamps_start.id = t_clock_range.start_timestamp_id
             LEFT JOIN org_timestamps t_clock_timestamps_end ON t_clock_timestamps_end.id = t_clock_range.end_timestamp_id
             LEFT JOIN books t_books ON t_books.id = notes.book_id
-            LEFT JOIN note_ancestors t_note_ancestors ON t_note_ancestors.note_id = notes.id
-            LEFT JOIN notes t_notes_with_inherited_tags ON t_notes_with_inherited_tags.id = t_note_ancestors.ancestor_note_id
 
             LEFT JOIN note_events t_note_events ON t_note_events.note_id = notes.id
             LEFT JOIN org_ranges t_note_events_range ON t_note_events_range.id = t_note_events.org_range_id
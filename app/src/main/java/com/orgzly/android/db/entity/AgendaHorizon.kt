@@ -0,0 +1,23 @@
+package com.orgzly.android.db.entity
+
+import androidx.room.*
+
+/**
+ * Days for which [AgendaOccurrence]s are stored, starting with [today].
+ *
+ * Single row, missing if occurrences were never calculated or have to be calculated again.
+ */
+@Entity(tableName = "agenda_horizon")
+data class AgendaHorizon(
+        @PrimaryKey
+        val id: Long = ID,
+
+        /** Start of the day on which occurrences were calculated. */
+        val today: Long,
+
+        val days: Int
+) {
+    companion object {
+        const val ID = 1L
+    }
+}
@@ -0,0 +1,44 @@
+package com.orgzly.android.db.entity
+
+import androidx.room.*
+import com.orgzly.android.ui.TimeType
+
+/**
+ * Day on which the note appears in agenda, for one of its planning times or events.
+ *
+ * Stored for days starting today, up to a horizon. See [com.orgzly.android.db.dao.AgendaOccurrenceDao].
+ */
+@Entity(
+        tableName = "agenda_occurrences",
+
+        primaryKeys = [ "note_id", "time_type", "day", "timestamp" ],
+
+        foreignKeys = [
+            ForeignKey(
+                    entity = Note::class,
+                    parentColumns = arrayOf("id"),
+                    childColumns = arrayOf("note_id"),
+                    onDelete = ForeignKey.CASCADE)
+        ],
+
+        indices = [
+            Index("day")
+        ]
+)
+data class AgendaOccurrence(
+        @ColumnInfo(name = "note_id")
+        val noteId: Long,
+
+        @ColumnInfo(name = "time_type")
+        val timeType: TimeType,
+
+        /** Start of the day, or [OVERDUE] for planning times in the past. */
+        val day: Long,
+
+        /** Start of the planning time or event this occurrence is expanded from. */
+        val timestamp: Long
+) {
+    companion object {
+        const val OVERDUE = 0L
+    }
+}
@@ -0,0 +1,15 @@
+package com.orgzly.android.db.entity
+
+import androidx.room.*
+
+/**
+ * Note whose planning times or events changed since its [AgendaOccurrence]s were stored.
+ *
+ * Inserted by triggers. No foreign key, as triggers fire while notes are being deleted.
+ */
+@Entity(tableName = "agenda_stale_notes")
+data class AgendaStaleNote(
+        @PrimaryKey
+        @ColumnInfo(name = "note_id")
+        val noteId: Long
+)
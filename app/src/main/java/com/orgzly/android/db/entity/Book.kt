@@ -48,7 +48,11 @@ data class Book constructor(
         val lastAction: BookAction? = null,
 
         @ColumnInfo(name = "is_modified")
-        val isModified: Boolean = false
+        val isModified: Boolean = false,
+
+        /** SHA-1 of the file last loaded from or saved to the repository */
+        @ColumnInfo(name = "content_hash")
+        val contentHash: String? = null
 ) {
 
     override fun toString(): String {
@@ -0,0 +1,28 @@
+package com.orgzly.android.db.entity
+
+import androidx.room.*
+
+/**
+ * Cursor returned by the last listing of Dropbox repository's folder.
+ */
+@Entity(
+        tableName = "dropbox_cursors",
+
+        foreignKeys = [
+            ForeignKey(
+                    entity = Repo::class,
+                    parentColumns = arrayOf("id"),
+                    childColumns = arrayOf("repo_id"),
+                    onDelete = ForeignKey.CASCADE)
+        ]
+)
+data class DropboxCursor(
+        @PrimaryKey
+        @ColumnInfo(name = "repo_id")
+        val repoId: Long,
+
+        /* Listed folder, cursor is not valid if repository's URL changes. */
+        val path: String,
+
+        val cursor: String
+)
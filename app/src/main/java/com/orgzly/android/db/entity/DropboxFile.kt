@@ -0,0 +1,34 @@
+package com.orgzly.android.db.entity
+
+import androidx.room.*
+
+/**
+ * Book file in Dropbox repository, as of the last listing of its folder.
+ */
+@Entity(
+        tableName = "dropbox_files",
+
+        primaryKeys = [ "repo_id", "path_lower" ],
+
+        foreignKeys = [
+            ForeignKey(
+                    entity = Repo::class,
+                    parentColumns = arrayOf("id"),
+                    childColumns = arrayOf("repo_id"),
+                    onDelete = ForeignKey.CASCADE)
+        ]
+)
+data class DropboxFile(
+        @ColumnInfo(name = "repo_id")
+        val repoId: Long,
+
+        @ColumnInfo(name = "path_lower")
+        val pathLower: String,
+
+        val name: String,
+
+        val rev: String,
+
+        @ColumnInfo(name = "server_modified")
+        val serverModified: Long
+)
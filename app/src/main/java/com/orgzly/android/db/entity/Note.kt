@@ -35,18 +35,16 @@ import com.google.gson.Gson
                     onDelete = ForeignKey.CASCADE)
         ],
 
+        /*
+         * Notes of a book are mostly selected and updated by a range of lft or rgt,
+         * skipping cut notes, so book_id and is_cut come before them.
+         */
         indices = [
             Index("title"),
-            Index("tags"),
-            Index("content"),
-            Index("book_id"),
-            Index("is_cut"),
-            Index("lft"),
-            Index("rgt"),
-            Index("is_folded"),
-            Index("folded_under_id"),
+            Index("book_id", "is_cut", "lft"),
+            Index("book_id", "is_cut", "rgt"),
+            Index("book_id", "is_cut", "is_folded", "lft"),
             Index("parent_id"),
-            Index("descendants_count"),
             Index("scheduled_range_id"),
             Index("deadline_range_id"),
             Index("closed_range_id")
@@ -88,7 +86,11 @@ data class Note(
         val clockRangeId: Long? = null,
 
         @Embedded(prefix = "")
-        val position: NotePosition
+        val position: NotePosition,
+
+        /** Tags of all ancestors, kept in sync with note_ancestors */
+        @ColumnInfo(name = "inherited_tags")
+        val inheritedTags: String? = null
 ) {
 
     fun hasContent(): Boolean {
@@ -21,7 +21,10 @@ data class NotePosition(
         @ColumnInfo(name = "parent_id")
         val parentId: Long = 0,
 
-        /** ID of the folded note which hides this one */
+        /**
+         * No longer used and always 0. Note is hidden if any of its ancestors
+         * is folded, see [com.orgzly.android.db.BookVisibility].
+         */
         @ColumnInfo(name = "folded_under_id")
         val foldedUnderId: Long = 0,
 
@@ -0,0 +1,36 @@
+package com.orgzly.android.db.entity
+
+import androidx.room.*
+
+/**
+ * Note's own or inherited tag, one per row.
+ *
+ * Kept in sync with notes' tags and inherited_tags columns, to search by tag using an index.
+ */
+@Entity(
+        tableName = "note_tags",
+
+        primaryKeys = [ "note_id", "tag", "is_inherited" ],
+
+        foreignKeys = [
+            ForeignKey(
+                    entity = Note::class,
+                    parentColumns = arrayOf("id"),
+                    childColumns = arrayOf("note_id"),
+                    onDelete = ForeignKey.CASCADE)
+        ],
+
+        indices = [
+            Index("tag", "is_inherited", "note_id")
+        ]
+)
+data class NoteTag(
+        @ColumnInfo(name = "note_id")
+        val noteId: Long,
+
+        @ColumnInfo(collate = ColumnInfo.NOCASE)
+        val tag: String,
+
+        @ColumnInfo(name = "is_inherited")
+        val isInherited: Boolean
+)
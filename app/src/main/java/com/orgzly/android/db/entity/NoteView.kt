@@ -8,9 +8,6 @@ data class NoteView(
         @Embedded
         val note: Note,
 
-        @ColumnInfo(name = "inherited_tags")
-        val inheritedTags: String? = null,
-
         @ColumnInfo(name = "scheduled_range_string")
         val scheduledRangeString : String? = null,
         @ColumnInfo(name = "scheduled_time_string")
@@ -70,10 +67,10 @@ data class NoteView(
         val bookName: String
 ) {
     fun hasInheritedTags(): Boolean {
-        return inheritedTags != null
+        return note.inheritedTags != null
     }
 
     fun getInheritedTagsList(): List<String> {
-        return Note.dbDeSerializeTags(inheritedTags)
+        return Note.dbDeSerializeTags(note.inheritedTags)
     }
 }
@@ -8,7 +8,9 @@ import androidx.room.*
         indices = [
             Index("string", unique = true),
             Index("timestamp"),
-            Index("end_timestamp")
+            Index("end_timestamp"),
+            Index("is_active", "agenda_start_timestamp"),
+            Index("repeater_type")
         ]
 )
 data class OrgTimestamp(
@@ -68,5 +70,9 @@ data class OrgTimestamp(
         val timestamp: Long,
 
         @ColumnInfo(name = "end_timestamp")
-        val endTimestamp: Long?
+        val endTimestamp: Long?,
+
+        /** Earliest time it can appear in agenda, before [timestamp] if there is a warning period. */
+        @ColumnInfo(name = "agenda_start_timestamp", defaultValue = "0")
+        val agendaStartTimestamp: Long = 0
 )
\ No newline at end of file
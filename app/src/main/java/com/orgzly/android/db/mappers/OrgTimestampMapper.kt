@@ -65,7 +65,15 @@ object OrgTimestampMapper {
             delayValue = dt.delay.value
             delayUnit = timeUnit(dt.delay.unit)
         }
-        
+
+        val agendaStartTimestamp = if (dt.hasDelay()) {
+            val start = dt.calendar.clone() as Calendar
+            start.add(calendarField(dt.delay.unit), -dt.delay.value)
+            start.timeInMillis
+        } else {
+            timestamp
+        }
+
         return OrgTimestamp(
                 0,
                 string,
@@ -88,7 +96,8 @@ object OrgTimestampMapper {
                 delayValue,
                 delayUnit,
                 timestamp,
-                endTimestamp
+                endTimestamp,
+                agendaStartTimestamp
         )
     }
 
@@ -125,6 +134,17 @@ object OrgTimestampMapper {
         }
     }
 
+    private fun calendarField(unit: OrgInterval.Unit): Int {
+        return when (unit) {
+            OrgInterval.Unit.HOUR -> Calendar.HOUR_OF_DAY
+            OrgInterval.Unit.DAY -> Calendar.DAY_OF_MONTH
+            OrgInterval.Unit.WEEK -> Calendar.WEEK_OF_YEAR
+            OrgInterval.Unit.MONTH -> Calendar.MONTH
+            OrgInterval.Unit.YEAR -> Calendar.YEAR
+            else -> Calendar.DAY_OF_MONTH
+        }
+    }
+
     fun delayType(type: OrgDelay.Type): Int {
         return when (type) {
             OrgDelay.Type.ALL -> DELAY_TYPE_ALL
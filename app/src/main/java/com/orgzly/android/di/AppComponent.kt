@@ -12,6 +12,7 @@ import com.orgzly.android.reminders.RemindersBroadcastReceiver
 import com.orgzly.android.sync.SyncWorker
 import com.orgzly.android.ui.BookChooserActivity
 import com.orgzly.android.ui.logs.AppLogsActivity
+import com.orgzly.android.ui.logs.QueryProfilesActivity
 import com.orgzly.android.ui.TemplateChooserActivity
 import com.orgzly.android.ui.books.BooksFragment
 import com.orgzly.android.ui.main.MainActivity
@@ -62,6 +63,7 @@ interface AppComponent {
     fun inject(arg: TemplateChooserActivity)
     fun inject(arg: ListWidgetSelectionActivity)
     fun inject(arg: AppLogsActivity)
+    fun inject(arg: QueryProfilesActivity)
 
     fun inject(arg: BooksFragment)
     fun inject(arg: NotesFragment)
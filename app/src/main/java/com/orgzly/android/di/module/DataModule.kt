@@ -5,6 +5,7 @@ import android.content.res.Resources
 import com.orgzly.android.LocalStorage
 import com.orgzly.android.data.DataRepository
 import com.orgzly.android.data.DbRepoBookRepository
+import com.orgzly.android.data.DropboxListingRepository
 import com.orgzly.android.data.logs.AppLogsRepository
 import com.orgzly.android.data.logs.DatabaseAppLogsRepository
 import com.orgzly.android.db.OrgzlyDatabase
@@ -23,15 +24,20 @@ internal open class DataModule {
             database: OrgzlyDatabase,
             repoFactory: RepoFactory,
             resources: Resources,
-            localStorage: LocalStorage
+            localStorage: LocalStorage,
+            appLogs: AppLogsRepository
     ): DataRepository {
-        return DataRepository(app, database, repoFactory, resources, localStorage)
+        return DataRepository(app, database, repoFactory, resources, localStorage, appLogs)
     }
 
     @Provides
     @Singleton
-    internal fun providesRepoFactory(app: Application, dbRepoBookRepository: DbRepoBookRepository): RepoFactory {
-        return RepoFactory(app, dbRepoBookRepository)
+    internal fun providesRepoFactory(
+            app: Application,
+            dbRepoBookRepository: DbRepoBookRepository,
+            dropboxListingRepository: DropboxListingRepository
+    ): RepoFactory {
+        return RepoFactory(app, dbRepoBookRepository, dropboxListingRepository)
     }
 
     @Provides
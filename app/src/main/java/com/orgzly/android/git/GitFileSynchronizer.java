@@ -21,20 +21,31 @@ import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 
 public class GitFileSynchronizer {
     private static String TAG = GitFileSynchronizer.class.getSimpleName();
 
+    /* Commits walked before looking up each of the remaining files separately. */
+    private static final int MAX_WALKED_COMMITS = 1000;
+
     private Git git;
     private GitPreferences preferences;
 
@@ -387,6 +398,111 @@ public class GitFileSynchronizer {
         return log.iterator().next();
     }
 
+    /**
+     * Finds the latest commit of each file, like {@link #getLatestCommitOfFile(Uri)},
+     * but walking the history only once for all of them.
+     *
+     * A file's latest commit is the newest one in which the file has its current
+     * content and differs from the file in every parent of the commit.
+     *
+     * Files not found within the walked commits are looked up using git log, one by one.
+     *
+     * @param paths paths of the files, relative to the repository root
+     * @return latest commit of each file found in HEAD
+     */
+    public Map<String, RevCommit> getLatestCommitsOfFiles(Collection<String> paths) throws IOException {
+        return getLatestCommitsOfFiles(paths, MAX_WALKED_COMMITS);
+    }
+
+    Map<String, RevCommit> getLatestCommitsOfFiles(Collection<String> paths, int maxWalkedCommits) throws IOException {
+        Map<String, RevCommit> result = new HashMap<>();
+
+        RevCommit head = currentHead();
+        if (head == null || paths.isEmpty()) {
+            return result;
+        }
+
+        Repository repository = git.getRepository();
+
+        /* Current content of each file. */
+        Map<String, ObjectId> remaining = new HashMap<>();
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathFilterGroup.createFromStrings(paths));
+            treeWalk.addTree(head.getTree());
+            while (treeWalk.next()) {
+                remaining.put(treeWalk.getPathString(), treeWalk.getObjectId(0));
+            }
+        }
+
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            revWalk.sort(RevSort.COMMIT_TIME_DESC);
+            revWalk.markStart(revWalk.parseCommit(head));
+
+            int walked = 0;
+
+            for (RevCommit commit : revWalk) {
+                if (remaining.isEmpty() || walked++ == maxWalkedCommits) {
+                    break;
+                }
+
+                try (TreeWalk treeWalk = new TreeWalk(repository)) {
+                    treeWalk.setRecursive(true);
+                    /* Skip files and directories same in the commit and all of its parents. */
+                    treeWalk.setFilter(AndTreeFilter.create(
+                            PathFilterGroup.createFromStrings(remaining.keySet()), TreeFilter.ANY_DIFF));
+                    treeWalk.addTree(commit.getTree());
+                    for (RevCommit parent : commit.getParents()) {
+                        treeWalk.addTree(revWalk.parseCommit(parent).getTree());
+                    }
+
+                    while (treeWalk.next()) {
+                        String path = treeWalk.getPathString();
+                        ObjectId blobId = treeWalk.getObjectId(0);
+
+                        if (!blobId.equals(remaining.get(path))) {
+                            continue;
+                        }
+
+                        boolean differsFromParents = true;
+                        for (int i = 1; i < treeWalk.getTreeCount(); i++) {
+                            if (blobId.equals(treeWalk.getObjectId(i))) {
+                                differsFromParents = false;
+                                break;
+                            }
+                        }
+
+                        if (differsFromParents) {
+                            result.put(path, commit);
+                            remaining.remove(path);
+                        }
+                    }
+                }
+            }
+        }
+
+        for (String path : remaining.keySet()) {
+            result.put(path, getLatestCommitOfPath(path));
+        }
+
+        return result;
+    }
+
+    private RevCommit getLatestCommitOfPath(String path) throws IOException {
+        try {
+            Iterator<RevCommit> log = git.log().setMaxCount(1).addPath(path).call().iterator();
+
+            if (!log.hasNext()) {
+                throw new IOException("No commit found for " + path);
+            }
+
+            return log.next();
+
+        } catch (GitAPIException e) {
+            throw new IOException("Failed finding commit for " + path + ": " + e.getMessage(), e);
+        }
+    }
+
     public String repoPath() {
         return git.getRepository().getWorkTree().getAbsolutePath();
     }
@@ -365,12 +365,28 @@ public class AppPreferences {
         getDefaultSharedPreferences(context).edit().putBoolean(key, value).apply();
     }
 
+    public static boolean profileQueries(Context context) {
+        return getDefaultSharedPreferences(context).getBoolean(
+                context.getResources().getString(R.string.pref_key_profile_queries),
+                context.getResources().getBoolean(R.bool.pref_default_profile_queries));
+    }
+
     public static boolean showSyncNotifications(Context context) {
         return getDefaultSharedPreferences(context).getBoolean(
                 context.getResources().getString(R.string.pref_key_show_sync_notifications),
                 context.getResources().getBoolean(R.bool.pref_default_show_sync_notifications));
     }
 
+    /*
+     * Maximum number of notebooks downloaded and parsed at the same time during sync.
+     * Each parsed notebook is kept in memory until it's synced, so memory use grows with it.
+     */
+    public static int syncConcurrentBooks(Context context) {
+        return Integer.parseInt(getDefaultSharedPreferences(context).getString(
+                context.getResources().getString(R.string.pref_key_sync_concurrent_books),
+                context.getResources().getString(R.string.pref_default_sync_concurrent_books)));
+    }
+
     public static String colorTheme(Context context) {
         return getDefaultSharedPreferences(context).getString(
                 context.getResources().getString(R.string.pref_key_color_theme),
@@ -1,19 +1,26 @@
 package com.orgzly.android.query
 
 import org.intellij.lang.annotations.Language
+import java.util.concurrent.ConcurrentHashMap
 
 abstract class QueryParser {
     data class ConditionMatch(
             @Language("RegExp") val regex: String,
-            val rule: (match: MatchResult) -> Condition?)
+            val rule: (match: MatchResult) -> Condition?) {
+        val pattern = compile(regex)
+    }
 
     data class SortOrderMatch(
             @Language("RegExp") val regex: String,
-            val rule: (match: MatchResult) -> SortOrder?)
+            val rule: (match: MatchResult) -> SortOrder?) {
+        val pattern = compile(regex)
+    }
 
     data class OptionMatch(
             @Language("RegExp") val regex: String,
-            val rule: (match: MatchResult, options: Options) -> Options?)
+            val rule: (match: MatchResult, options: Options) -> Options?) {
+        val pattern = compile(regex)
+    }
 
     protected abstract val groupOpen: String
     protected abstract val groupClose: String
@@ -130,7 +137,7 @@ abstract class QueryParser {
                 else -> {
                     // Check if token is a condition.
                     for (def in conditions) {
-                        val match = def.regex.toRegex().find(token)
+                        val match = def.pattern.find(token)
                         if (match != null) {
                             val e = def.rule(match)
                             if (e != null) {
@@ -142,7 +149,7 @@ abstract class QueryParser {
 
                     // Check if token is a sort order.
                     for (def in sortOrders) {
-                        val match = def.regex.toRegex().find(token)
+                        val match = def.pattern.find(token)
                         if (match != null) {
                             val e = def.rule(match)
                             if (e != null) {
@@ -154,7 +161,7 @@ abstract class QueryParser {
 
                     // Check if token is an instruction.
                     for (def in supportedOptions) {
-                        val match = def.regex.toRegex().find(token)
+                        val match = def.pattern.find(token)
                         if (match != null) {
                             val e = def.rule(match, options)
                             if (e != null) {
@@ -189,4 +196,13 @@ abstract class QueryParser {
      * AND has precedence over OR
      */
     enum class Operator { AND, OR }
+
+    companion object {
+        /* Parsers are created for every query, rules are the same. */
+        private val patterns = ConcurrentHashMap<String, Regex>()
+
+        private fun compile(regex: String): Regex {
+            return patterns.getOrPut(regex) { regex.toRegex() }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+package com.orgzly.android.query
+
+import com.orgzly.android.db.NotesFts
+import com.orgzly.android.db.entity.Note
+import com.orgzly.android.db.entity.NoteView
+
+/**
+ * Narrowing down of a query, as it usually happens while the query is being typed.
+ *
+ * Notes found by the narrower query are a subset of the notes found by the previous one,
+ * so they can be selected from the previous results in memory.
+ */
+object QueryRefinement {
+    /**
+     * Returns conditions which notes found by [previous] must also match to be found by [query],
+     * or null if [query] is not its refinement (it could find notes [previous] did not).
+     */
+    @JvmStatic
+    fun conditionsAdded(previous: Query, query: Query): List<Condition>? {
+        // Query without conditions finds nothing
+        if (previous.condition == null || query.condition == null) {
+            return null
+        }
+
+        if (previous.sortOrders != query.sortOrders || previous.options != query.options) {
+            return null
+        }
+
+        val remaining = operands(query.condition).toMutableList()
+        val added = mutableListOf<Condition>()
+
+        for (condition in operands(previous.condition)) {
+            val narrower = remaining.find { it == condition }
+                    ?: remaining.find { isNarrower(it, condition) }
+                    ?: return null
+
+            remaining.remove(narrower)
+
+            if (narrower != condition) {
+                added.add(narrower)
+            }
+        }
+
+        return added + remaining
+    }
+
+    /**
+     * Returns true if note matches the condition, false if it doesn't,
+     * or null if condition can't be checked in memory.
+     */
+    @JvmStatic
+    fun matches(note: NoteView, condition: Condition, defaultPriority: String): Boolean? {
+        return when (condition) {
+            is Condition.InBook ->
+                (note.bookName == condition.name) != condition.not
+
+            is Condition.HasState ->
+                ((note.note.state ?: "") == condition.state.uppercase()) != condition.not
+
+            is Condition.HasPriority -> {
+                val priority = note.note.priority?.takeIf { it.isNotEmpty() } ?: defaultPriority
+                (priority.lowercase() == condition.priority) != condition.not
+            }
+
+            is Condition.HasSetPriority ->
+                ((note.note.priority ?: "").lowercase() == condition.priority) != condition.not
+
+            is Condition.HasTag -> {
+                val tags = Note.dbDeSerializeTags(note.note.tags) + note.getInheritedTagsList()
+                tags.any { foldAsciiCase(it) == foldAsciiCase(condition.tag) } != condition.not
+            }
+
+            is Condition.HasOwnTag -> {
+                val tags = Note.dbDeSerializeTags(note.note.tags)
+                tags.any { foldAsciiCase(it) == foldAsciiCase(condition.tag) } != condition.not
+            }
+
+            is Condition.HasText -> {
+                if (isSearchedByWords(condition)) {
+                    NotesFts.matches(condition.text, note.note.title, note.note.content, note.note.tags)
+                } else {
+                    listOf(note.note.title, note.note.content, note.note.tags).any {
+                        it != null && foldAsciiCase(it).contains(foldAsciiCase(condition.text))
+                    }
+                }
+            }
+
+            is Condition.And -> {
+                val results = condition.operands.map { matches(note, it, defaultPriority) }
+                if (results.contains(null)) null else results.all { it == true }
+            }
+
+            is Condition.Or -> {
+                val results = condition.operands.map { matches(note, it, defaultPriority) }
+                if (results.contains(null)) null else results.any { it == true }
+            }
+
+            // Depend on settings or current time
+            else -> null
+        }
+    }
+
+    /* SQLite's NOCASE and LIKE ignore case of ASCII letters only. */
+    private fun foldAsciiCase(str: String): String {
+        return str.map { if (it in 'A'..'Z') it.lowercaseChar() else it }.joinToString("")
+    }
+
+    private fun operands(condition: Condition): List<Condition> {
+        return if (condition is Condition.And) condition.operands else listOf(condition)
+    }
+
+    /**
+     * Text searched by words is narrowed down by typing more of it,
+     * as the last word is matched as a prefix.
+     */
+    private fun isNarrower(condition: Condition, than: Condition): Boolean {
+        return condition is Condition.HasText && than is Condition.HasText
+                && isSearchedByWords(condition)
+                && isSearchedByWords(than)
+                && condition.text.startsWith(than.text)
+    }
+
+    private fun isSearchedByWords(condition: Condition.HasText): Boolean {
+        return !condition.isQuoted && NotesFts.matchExpression(condition.text) != null
+    }
+}
@@ -0,0 +1,67 @@
+package com.orgzly.android.query.sql
+
+import android.content.Context
+import com.orgzly.android.prefs.AppPreferences
+import com.orgzly.android.query.Query
+
+/**
+ * Parsed queries and their SQL, by query string and preferences used to build the SQL.
+ *
+ * The same few queries (saved searches, widgets, agenda) are run over and over.
+ */
+class SqlQueryCache(private val maxSize: Int = DEFAULT_MAX_SIZE) {
+
+    data class Key(
+            val queryString: String,
+            val todoKeywords: Set<String>,
+            val doneKeywords: Set<String>,
+            val defaultPriority: String)
+
+    class Entry(val query: Query, val template: SqlQueryTemplate)
+
+    private val entries = object : LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, Entry>?): Boolean {
+            return size > maxSize
+        }
+    }
+
+    var hits = 0L
+        private set
+
+    var misses = 0L
+        private set
+
+    /**
+     * Returns cached entry for the [key], calling [build] to create it if not cached.
+     */
+    @Synchronized
+    fun get(key: Key, build: () -> Entry): Entry {
+        val entry = entries[key]
+
+        return if (entry != null) {
+            hits++
+            entry
+
+        } else {
+            misses++
+            build().also { entries[key] = it }
+        }
+    }
+
+    override fun toString(): String {
+        return "$hits hits, $misses misses"
+    }
+
+    companion object {
+        private const val DEFAULT_MAX_SIZE = 32
+
+        @JvmStatic
+        fun key(context: Context, queryString: String): Key {
+            return Key(
+                    queryString,
+                    AppPreferences.todoKeywordsSet(context),
+                    AppPreferences.doneKeywordsSet(context),
+                    AppPreferences.defaultPriority(context))
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.orgzly.android.query.sql
+
+import com.orgzly.android.query.TimeUtils
+
+/**
+ * [SqlQuery] with times relative to now left as placeholders in the selection.
+ *
+ * Can be reused for as long as preferences it was built with don't change,
+ * resolving the times every time the query is run.
+ */
+data class SqlQueryTemplate(
+        val selection: String,
+        val selectionArgs: List<String>,
+        val having: String,
+        val orderBy: String,
+        val times: List<RelativeTime>) {
+
+    data class RelativeTime(val field: Int, val amount: Int, val addOneMore: Boolean)
+
+    fun resolve(): SqlQuery {
+        return SqlQuery(resolve(selection), selectionArgs, having, orderBy)
+    }
+
+    /**
+     * Replaces placeholders in [sql] with times computed now.
+     */
+    fun resolve(sql: String): String {
+        if (times.isEmpty()) {
+            return sql
+        }
+
+        val values = times.map { TimeUtils.timeFromNow(it.field, it.amount, it.addOneMore) }
+
+        return PLACEHOLDER.replace(sql) { match ->
+            values[match.groupValues[1].toInt()].toString()
+        }
+    }
+
+    companion object {
+        private val PLACEHOLDER = Regex("""\{time(\d+)\}""")
+
+        fun placeholder(index: Int): String {
+            return "{time$index}"
+        }
+    }
+}
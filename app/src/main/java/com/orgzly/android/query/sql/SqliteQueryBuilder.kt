@@ -2,6 +2,7 @@ package com.orgzly.android.query.sql
 
 import android.content.Context
 import android.database.DatabaseUtils
+import com.orgzly.android.db.NotesFts
 import com.orgzly.android.prefs.AppPreferences
 import com.orgzly.android.query.*
 import com.orgzly.org.datetime.OrgInterval
@@ -16,20 +17,35 @@ class SqliteQueryBuilder(val context: Context) {
 
     private var order: String = ""
 
+    private val times: MutableList<SqlQueryTemplate.RelativeTime> = ArrayList()
+
     private var hasScheduledCondition = false
     private var hasDeadlineCondition = false
     private var hasCreatedCondition = false
 
     fun build(query: Query): SqlQuery {
+        return buildTemplate(query).resolve()
+    }
+
+    /**
+     * Builds the query, leaving times relative to now to be resolved when it's run.
+     */
+    fun buildTemplate(query: Query): SqlQueryTemplate {
         hasScheduledCondition = false
         hasDeadlineCondition = false
         hasCreatedCondition = false
 
         where = toString(query.condition)
 
+        if (query.options.agendaDays > 0) {
+            val window = toAgendaWindow(query.options.agendaDays)
+
+            where = if (where.isEmpty()) window else "$where AND $window"
+        }
+
         order = buildOrderBy(query.sortOrders)
 
-        return SqlQuery(where, arguments, having, order)
+        return SqlQueryTemplate(where, arguments, having, order, times)
     }
 
     private fun buildOrderBy(sortOrders: List<SortOrder>): String {
@@ -220,13 +236,13 @@ class SqliteQueryBuilder(val context: Context) {
             }
 
             is Condition.HasTag -> {
-                repeat(2) { arguments.add("%${expr.tag}%") }
-                not(expr.not, "(COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?)")
+                arguments.add(expr.tag)
+                not(expr.not, "id IN (SELECT note_id FROM note_tags WHERE tag = ?)")
             }
 
             is Condition.HasOwnTag -> {
-                arguments.add("%${expr.tag}%")
-                not(expr.not, "(COALESCE(tags, '') LIKE ?)")
+                arguments.add(expr.tag)
+                not(expr.not, "id IN (SELECT note_id FROM note_tags WHERE tag = ? AND is_inherited = 0)")
             }
 
             is Condition.Event -> {
@@ -253,8 +269,16 @@ class SqliteQueryBuilder(val context: Context) {
             }
 
             is Condition.HasText -> {
-                repeat(3) { arguments.add("%${expr.text}%") }
-                "(title LIKE ? OR content LIKE ? OR tags LIKE ?)"
+                /* Quoted text is searched for literally. */
+                val match = if (expr.isQuoted) null else NotesFts.matchExpression(expr.text)
+
+                if (match != null) {
+                    arguments.add(match)
+                    "id IN (SELECT docid FROM ${NotesFts.TABLE} WHERE ${NotesFts.TABLE} MATCH ?)"
+                } else {
+                    repeat(3) { arguments.add("%${expr.text}%") }
+                    "(title LIKE ? OR content LIKE ? OR tags LIKE ?)"
+                }
             }
 
             is Condition.Or -> joinConditions(expr.operands, "OR")
@@ -271,8 +295,8 @@ class SqliteQueryBuilder(val context: Context) {
 
         val (field, value) = getFieldAndValueFromInterval(interval)
 
-        val timeFromNow = TimeUtils.timeFromNow(field, value)
-        val timeFromNowPlusOne = TimeUtils.timeFromNow(field, value, true)
+        val timeFromNow by lazy { relativeTime(field, value) }
+        val timeFromNowPlusOne by lazy { relativeTime(field, value, true) }
 
 
         val cond = when (relation) {
@@ -293,6 +317,38 @@ class SqliteQueryBuilder(val context: Context) {
         return "($activeOnly$column != 0 AND $cond)"
     }
 
+    /**
+     * Notes which can appear in agenda of [days] days starting today.
+     *
+     * Planning times in the past are always included, as they are shown as overdue.
+     * Repeating events are included if they start before the end of agenda.
+     */
+    private fun toAgendaWindow(days: Int): String {
+        val today = relativeTime(Calendar.DAY_OF_MONTH, 0)
+        val end = relativeTime(Calendar.DAY_OF_MONTH, days)
+
+        val planningRanges = "SELECT r.id FROM org_timestamps t JOIN org_ranges r ON (r.start_timestamp_id = t.id) " +
+                "WHERE t.is_active = 1 AND t.agenda_start_timestamp < $end"
+
+        val eventRanges = "SELECT r.id FROM org_timestamps t JOIN org_ranges r ON (r.start_timestamp_id = t.id) " +
+                "WHERE $today <= t.timestamp AND t.timestamp < $end " +
+                "UNION SELECT r.id FROM org_timestamps t JOIN org_ranges r ON (r.start_timestamp_id = t.id) " +
+                "WHERE t.repeater_type >= 0 AND t.timestamp < $end " +
+                "UNION SELECT r.id FROM org_timestamps e JOIN org_ranges r ON (r.end_timestamp_id = e.id) JOIN org_timestamps t ON (t.id = r.start_timestamp_id) " +
+                "WHERE $today <= e.timestamp AND t.timestamp < $end"
+
+        return "id IN (" +
+                "SELECT id FROM notes WHERE scheduled_range_id IN ($planningRanges) " +
+                "UNION SELECT id FROM notes WHERE deadline_range_id IN ($planningRanges) " +
+                "UNION SELECT note_id FROM note_events WHERE org_range_id IN ($eventRanges))"
+    }
+
+    private fun relativeTime(field: Int, amount: Int, addOneMore: Boolean = false): String {
+        times.add(SqlQueryTemplate.RelativeTime(field, amount, addOneMore))
+
+        return SqlQueryTemplate.placeholder(times.size - 1)
+    }
+
     /*
      * TODO: Clean this up.
      * There's no need to depend on Org-supported units.
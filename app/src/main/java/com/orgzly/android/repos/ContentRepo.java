@@ -1,6 +1,8 @@
 package com.orgzly.android.repos;
 
+import android.content.ContentResolver;
 import android.content.Context;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.provider.DocumentsContract;
@@ -11,8 +13,8 @@ import androidx.documentfile.provider.DocumentFile;
 import com.orgzly.BuildConfig;
 import com.orgzly.android.BookName;
 import com.orgzly.android.db.entity.Repo;
+import com.orgzly.android.util.FileTransfer;
 import com.orgzly.android.util.LogUtils;
-import com.orgzly.android.util.MiscUtils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -20,16 +22,44 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Using DocumentFile, for devices running Lollipop or later.
+ *
+ * Directory is listed with a single query. Listed documents are kept by name and reused
+ * to find books, as sync lists the repository and then retrieves or stores its books
+ * using different instances. Listing is repeated if a document is not found.
+ * Kept listing is dropped when books are listed again and when sync ends.
  */
 public class ContentRepo implements SyncRepo {
     private static final String TAG = ContentRepo.class.getName();
 
     public static final String SCHEME = "content";
 
+    private static final String[] DOCUMENT_PROJECTION = new String[] {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED,
+            DocumentsContract.Document.COLUMN_MIME_TYPE,
+            DocumentsContract.Document.COLUMN_SIZE,
+            DocumentsContract.Document.COLUMN_FLAGS
+    };
+
+    /* Temporary and replaced documents are hidden and not supported books, so they're never listed as such. */
+    private static final String TEMP_FILE_PREFIX = ".";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String OLD_FILE_SUFFIX = ".old";
+
+    /* Last listed documents of each repository, by name. */
+    private static final Map<Uri, Map<String, Document>> listings = new ConcurrentHashMap<>();
+
     private final long repoId;
     private final Uri repoUri;
 
@@ -37,6 +67,13 @@ public class ContentRepo implements SyncRepo {
 
     private final DocumentFile repoDocumentFile;
 
+    /**
+     * Drops kept listings, so documents changed after the sync are listed again.
+     */
+    public static void clearListings() {
+        listings.clear();
+    }
+
     public ContentRepo(RepoWithProps repoWithProps, Context context) {
         Repo repo = repoWithProps.getRepo();
 
@@ -67,38 +104,36 @@ public class ContentRepo implements SyncRepo {
     public List<VersionedRook> getBooks() throws IOException {
         List<VersionedRook> result = new ArrayList<>();
 
-        DocumentFile[] files = repoDocumentFile.listFiles();
+        /* Not kept if listing fails. */
+        listings.remove(repoUri);
 
-        if (files != null) {
-            // Can't compare TreeDocumentFile
-            // Arrays.sort(files);
+        Map<String, Document> documents = listDocuments();
 
-            for (DocumentFile file : files) {
-                if (BookName.isSupportedFormatFileName(file.getName())) {
+        if (recoverDocuments(documents)) {
+            documents = listDocuments();
+        }
 
-                    if (BuildConfig.LOG_DEBUG) {
-                        LogUtils.d(TAG,
-                                "file.getName()", file.getName(),
-                                "getUri()", getUri(),
-                                "repoDocumentFile.getUri()", repoDocumentFile.getUri(),
-                                "file", file,
-                                "file.getUri()", file.getUri(),
-                                "file.getParentFile()", file.getParentFile().getUri());
-                    }
+        for (Document document : new ArrayList<>(documents.values())) {
+            if (BookName.isSupportedFormatFileName(document.name)) {
+                Uri uri = documentUri(document);
 
-                    result.add(new VersionedRook(
-                            repoId,
-                            RepoType.DOCUMENT,
-                            getUri(),
-                            file.getUri(),
-                            String.valueOf(file.lastModified()),
-                            file.lastModified()
-                    ));
+                if (BuildConfig.LOG_DEBUG) {
+                    LogUtils.d(TAG,
+                            "document.name", document.name,
+                            "getUri()", getUri(),
+                            "repoDocumentFile.getUri()", repoDocumentFile.getUri(),
+                            "uri", uri);
                 }
-            }
 
-        } else {
-            Log.e(TAG, "Listing files in " + getUri() + " returned null.");
+                result.add(new VersionedRook(
+                        repoId,
+                        RepoType.DOCUMENT,
+                        getUri(),
+                        uri,
+                        String.valueOf(document.lastModified),
+                        document.lastModified
+                ));
+            }
         }
 
         return result;
@@ -106,24 +141,52 @@ public class ContentRepo implements SyncRepo {
 
     @Override
     public VersionedRook retrieveBook(String fileName, File destinationFile) throws IOException {
-        DocumentFile sourceFile = repoDocumentFile.findFile(fileName);
-        if (sourceFile == null) {
+        Document sourceDocument = findDocument(fileName);
+
+        if (sourceDocument == null) {
             throw new FileNotFoundException("Book " + fileName + " not found in " + repoUri);
-        } else {
-            if (BuildConfig.LOG_DEBUG) {
-                LogUtils.d(TAG, "Found DocumentFile for " + fileName + ": " + sourceFile.getUri());
-            }
         }
 
         /* "Download" the file. */
-        try (InputStream is = context.getContentResolver().openInputStream(sourceFile.getUri())) {
-            MiscUtils.writeStreamToFile(is, destinationFile);
+        try {
+            copyDocumentToFile(sourceDocument, destinationFile);
+
+            if (sourceDocument.size >= 0 && sourceDocument.size != destinationFile.length()) {
+                /* Listing is stale, the document was changed. */
+                sourceDocument = null;
+            }
+
+        } catch (FileNotFoundException e) {
+            /* Listing is stale, the document was replaced. */
+            sourceDocument = null;
+        }
+
+        if (sourceDocument == null) {
+            sourceDocument = listDocuments().get(fileName);
+
+            if (sourceDocument == null) {
+                throw new FileNotFoundException("Book " + fileName + " not found in " + repoUri);
+            }
+
+            copyDocumentToFile(sourceDocument, destinationFile);
+        }
+
+        Uri uri = documentUri(sourceDocument);
+
+        if (BuildConfig.LOG_DEBUG) {
+            LogUtils.d(TAG, "Found document for " + fileName + ": " + uri);
         }
 
-        String rev = String.valueOf(sourceFile.lastModified());
-        long mtime = sourceFile.lastModified();
+        String rev = String.valueOf(sourceDocument.lastModified);
+        long mtime = sourceDocument.lastModified;
 
-        return new VersionedRook(repoId, RepoType.DOCUMENT, repoUri, sourceFile.getUri(), rev, mtime);
+        return new VersionedRook(repoId, RepoType.DOCUMENT, repoUri, uri, rev, mtime);
+    }
+
+    private void copyDocumentToFile(Document document, File file) throws IOException {
+        try (InputStream is = context.getContentResolver().openInputStream(documentUri(document))) {
+            FileTransfer.copy(is, file);
+        }
     }
 
     @Override
@@ -132,47 +195,248 @@ public class ContentRepo implements SyncRepo {
             throw new FileNotFoundException("File " + file + " does not exist");
         }
 
-        /* Delete existing file. */
-        DocumentFile existingFile = repoDocumentFile.findFile(fileName);
-        if (existingFile != null) {
-            existingFile.delete();
+        Document existingDocument = findDocument(fileName);
+
+        Uri uri = null;
+
+        /* New book is simply written, there is nothing to keep if that fails. */
+        if (existingDocument != null) {
+            uri = replaceDocument(file, existingDocument);
+        }
+
+        if (uri == null) {
+            uri = overwriteDocument(file, fileName);
         }
 
-        /* Create new file. */
-        DocumentFile destinationFile = repoDocumentFile.createFile("text/*", fileName);
+        long lastModified = DocumentFile.fromSingleUri(context, uri).lastModified();
 
-        if (destinationFile == null) {
-            throw new IOException("Failed creating " + fileName + " in " + repoUri);
+        int flags = existingDocument != null ? existingDocument.flags : 0;
+
+        updateListing(null, new Document(DocumentsContract.getDocumentId(uri), fileName, lastModified, file.length(), flags));
+
+        String rev = String.valueOf(lastModified);
+        long mtime = System.currentTimeMillis();
+
+        return new VersionedRook(repoId, RepoType.DOCUMENT, getUri(), uri, rev, mtime);
+    }
+
+    /**
+     * Writes to a temporary document, moves the existing document aside, renames
+     * the temporary one into its place and deletes the old one.
+     *
+     * Document with the book's name is either the old or the new complete book.
+     * If interrupted between the two renames, the book is restored by
+     * {@link #recoverDocuments(Map)} when books are listed next time.
+     *
+     * @return new document, or null if the document can't be renamed (nothing is changed then)
+     */
+    private Uri replaceDocument(File file, Document existingDocument) throws IOException {
+        String fileName = existingDocument.name;
+
+        if ((existingDocument.flags & DocumentsContract.Document.FLAG_SUPPORTS_RENAME) == 0) {
+            return null;
         }
 
-        Uri uri = destinationFile.getUri();
+        Uri tempUri = createDocument(tempFileName(fileName));
 
-        /* Write file content to uri. */
-        OutputStream out = context.getContentResolver().openOutputStream(uri);
         try {
-            MiscUtils.writeFileToStream(file, out);
-        } finally {
-            if (out != null) {
-                out.close();
+            writeDocument(file, tempUri);
+        } catch (IOException e) {
+            deleteDocument(tempUri);
+            throw e;
+        }
+
+        Uri oldUri = renameDocument(documentUri(existingDocument), oldFileName(fileName));
+
+        if (oldUri == null) {
+            /* Listing is stale or the document can't be renamed. */
+            deleteDocument(tempUri);
+            return null;
+        }
+
+        Uri uri = renameDocument(tempUri, fileName);
+
+        if (uri == null) {
+            renameDocument(oldUri, fileName);
+            deleteDocument(tempUri);
+
+            throw new IOException("Failed renaming " + tempUri + " to " + fileName);
+        }
+
+        if (!deleteDocument(oldUri)) {
+            Log.w(TAG, "Failed deleting replaced document " + oldUri);
+        }
+
+        return uri;
+    }
+
+    /**
+     * Finishes replacing of documents which was interrupted, by the app being killed for example.
+     *
+     * Without the book's document, temporary document is complete if the old one exists,
+     * as that one is moved aside only after writing. Otherwise the old one is restored.
+     * Leftovers are deleted if the book's document exists.
+     *
+     * @return true if any document was changed
+     */
+    private boolean recoverDocuments(Map<String, Document> documents) {
+        Set<String> fileNames = new LinkedHashSet<>();
+
+        for (String name : documents.keySet()) {
+            String fileName = replacedFileName(name);
+
+            if (fileName != null) {
+                fileNames.add(fileName);
             }
         }
 
-        String rev = String.valueOf(destinationFile.lastModified());
-        long mtime = System.currentTimeMillis();
+        for (String fileName : fileNames) {
+            Document book = documents.get(fileName);
+            Document temp = documents.get(tempFileName(fileName));
+            Document old = documents.get(oldFileName(fileName));
 
-        return new VersionedRook(repoId, RepoType.DOCUMENT, getUri(), uri, rev, mtime);
+            if (book == null && old != null) {
+                Log.w(TAG, "Restoring interrupted replacing of " + fileName + " in " + repoUri);
+
+                if (temp != null && renameDocument(documentUri(temp), fileName) != null) {
+                    temp = null;
+                } else if (renameDocument(documentUri(old), fileName) != null) {
+                    old = null;
+                }
+            }
+
+            if (temp != null) {
+                deleteDocument(documentUri(temp));
+            }
+
+            if (old != null) {
+                deleteDocument(documentUri(old));
+            }
+        }
+
+        return !fileNames.isEmpty();
+    }
+
+    private static String tempFileName(String fileName) {
+        return TEMP_FILE_PREFIX + fileName + TEMP_FILE_SUFFIX;
+    }
+
+    private static String oldFileName(String fileName) {
+        return TEMP_FILE_PREFIX + fileName + OLD_FILE_SUFFIX;
+    }
+
+    /**
+     * Book's file name if this is its temporary or replaced document, null otherwise.
+     */
+    private static String replacedFileName(String name) {
+        if (!name.startsWith(TEMP_FILE_PREFIX)) {
+            return null;
+        }
+
+        String fileName;
+
+        if (name.endsWith(TEMP_FILE_SUFFIX)) {
+            fileName = name.substring(TEMP_FILE_PREFIX.length(), name.length() - TEMP_FILE_SUFFIX.length());
+        } else if (name.endsWith(OLD_FILE_SUFFIX)) {
+            fileName = name.substring(TEMP_FILE_PREFIX.length(), name.length() - OLD_FILE_SUFFIX.length());
+        } else {
+            return null;
+        }
+
+        return BookName.isSupportedFormatFileName(fileName) ? fileName : null;
+    }
+
+    /**
+     * Writes to the existing document, or to a new one if there is none.
+     */
+    private Uri overwriteDocument(File file, String fileName) throws IOException {
+        Document existingDocument = findDocument(fileName);
+
+        if (existingDocument != null) {
+            try {
+                writeDocument(file, documentUri(existingDocument));
+                return documentUri(existingDocument);
+
+            } catch (FileNotFoundException e) {
+                /* Listing is stale, try the current document. */
+                existingDocument = listDocuments().get(fileName);
+
+                if (existingDocument != null) {
+                    writeDocument(file, documentUri(existingDocument));
+                    return documentUri(existingDocument);
+                }
+            }
+        }
+
+        Uri uri = createDocument(fileName);
+
+        writeDocument(file, uri);
+
+        return uri;
+    }
+
+    private void writeDocument(File file, Uri uri) throws IOException {
+        /* Truncate, as some providers don't for "w". */
+        try (OutputStream out = context.getContentResolver().openOutputStream(uri, "wt")) {
+            if (out == null) {
+                throw new IOException("Failed opening " + uri + " for writing");
+            }
+
+            FileTransfer.copy(file, out);
+        }
+    }
+
+    private Uri createDocument(String fileName) throws IOException {
+        DocumentFile documentFile = repoDocumentFile.createFile("text/*", fileName);
+
+        if (documentFile == null) {
+            throw new IOException("Failed creating " + fileName + " in " + repoUri);
+        }
+
+        return documentFile.getUri();
+    }
+
+    /**
+     * Renames the document, returning its URI or null if renaming failed.
+     *
+     * No URI is returned by the provider when the document's ID has not changed, and,
+     * before Android 10, when renaming failed. Document's name is checked in that case.
+     */
+    private Uri renameDocument(Uri uri, String name) {
+        Uri renamedUri;
+
+        try {
+            renamedUri = DocumentsContract.renameDocument(context.getContentResolver(), uri, name);
+
+        } catch (FileNotFoundException | RuntimeException e) {
+            Log.w(TAG, "Failed renaming " + uri + " to " + name, e);
+            return null;
+        }
+
+        if (renamedUri == null) {
+            DocumentFile documentFile = DocumentFile.fromSingleUri(context, uri);
+
+            if (documentFile != null && name.equals(documentFile.getName())) {
+                renamedUri = uri;
+            }
+        }
+
+        return renamedUri;
     }
 
     @Override
     public VersionedRook renameBook(Uri from, String name) throws IOException {
         DocumentFile fromDocFile = DocumentFile.fromSingleUri(context, from);
-        BookName bookName = BookName.fromFileName(fromDocFile.getName());
+        String fromFileName = fromDocFile.getName();
+        BookName bookName = BookName.fromFileName(fromFileName);
         String newFileName = BookName.fileName(name, bookName.getFormat());
 
-        /* Check if document already exists. */
-        DocumentFile existingFile = repoDocumentFile.findFile(newFileName);
-        if (existingFile != null) {
-            throw new IOException("File at " + existingFile.getUri() + " already exists");
+        /* Check if document already exists, making sure listing is not stale. */
+        if (findDocument(newFileName) != null) {
+            Document existingDocument = listDocuments().get(newFileName);
+            if (existingDocument != null) {
+                throw new IOException("File at " + documentUri(existingDocument) + " already exists");
+            }
         }
 
         Uri newUri = DocumentsContract.renameDocument(context.getContentResolver(), from, newFileName);
@@ -180,6 +444,12 @@ public class ContentRepo implements SyncRepo {
         long mtime = fromDocFile.lastModified();
         String rev = String.valueOf(mtime);
 
+        if (newUri != null) {
+            updateListing(fromFileName, new Document(DocumentsContract.getDocumentId(newUri), newFileName, mtime, -1, 0));
+        } else {
+            listings.remove(repoUri);
+        }
+
         return new VersionedRook(repoId, RepoType.DOCUMENT, getUri(), newUri, rev, mtime);
     }
 
@@ -188,9 +458,120 @@ public class ContentRepo implements SyncRepo {
         DocumentFile docFile = DocumentFile.fromSingleUri(context, uri);
 
         if (docFile != null && docFile.exists()) {
+            String fileName = docFile.getName();
+
             if (! docFile.delete()) {
                 throw new IOException("Failed deleting document " + uri);
             }
+
+            updateListing(fileName, null);
+        }
+    }
+
+    /**
+     * Lists documents in the directory using a single query.
+     */
+    private Map<String, Document> listDocuments() throws IOException {
+        Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(
+                repoUri, DocumentsContract.getDocumentId(repoDocumentFile.getUri()));
+
+        ContentResolver resolver = context.getContentResolver();
+
+        Map<String, Document> documents = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        try (Cursor cursor = resolver.query(childrenUri, DOCUMENT_PROJECTION, null, null, null)) {
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    String mimeType = cursor.getString(3);
+
+                    if (DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType)) {
+                        continue;
+                    }
+
+                    Document document = new Document(
+                            cursor.getString(0),
+                            cursor.getString(1),
+                            cursor.isNull(2) ? 0 : cursor.getLong(2),
+                            cursor.isNull(4) ? -1 : cursor.getLong(4),
+                            cursor.isNull(5) ? 0 : cursor.getInt(5));
+
+                    if (document.name != null && !documents.containsKey(document.name)) {
+                        documents.put(document.name, document);
+                    }
+                }
+
+            } else {
+                Log.e(TAG, "Listing files in " + getUri() + " returned null.");
+            }
+
+        } catch (IllegalArgumentException | SecurityException e) {
+            throw new IOException("Failed listing files in " + getUri() + ": " + e.getMessage(), e);
+        }
+
+        listings.put(repoUri, documents);
+
+        return documents;
+    }
+
+    /**
+     * Document from the last listing, listing again if it's not there.
+     */
+    private Document findDocument(String fileName) throws IOException {
+        Map<String, Document> documents = listings.get(repoUri);
+
+        Document document = documents != null ? documents.get(fileName) : null;
+
+        if (document == null) {
+            document = listDocuments().get(fileName);
+        }
+
+        return document;
+    }
+
+    private void updateListing(String removedName, Document added) {
+        Map<String, Document> documents = listings.get(repoUri);
+
+        if (documents != null) {
+            if (removedName != null) {
+                documents.remove(removedName);
+            }
+
+            if (added != null) {
+                documents.put(added.name, added);
+            }
+        }
+    }
+
+    private boolean deleteDocument(Uri uri) {
+        try {
+            return DocumentsContract.deleteDocument(context.getContentResolver(), uri);
+
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+    }
+
+    private Uri documentUri(Document document) {
+        return DocumentsContract.buildDocumentUriUsingTree(repoUri, document.id);
+    }
+
+    private static class Document {
+        final String id;
+        final String name;
+        final long lastModified;
+
+        /* Size in bytes, -1 if unknown. Checked with the retrieved content, as modification time can't be. */
+        final long size;
+
+        /* Document's flags, 0 if unknown. */
+        final int flags;
+
+        Document(String id, String name, long lastModified, long size, int flags) {
+            this.id = id;
+            this.name = name;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.flags = flags;
         }
     }
 
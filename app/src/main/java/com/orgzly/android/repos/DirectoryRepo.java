@@ -6,7 +6,7 @@ import android.util.Log;
 import com.orgzly.android.BookName;
 import com.orgzly.android.LocalStorage;
 import com.orgzly.android.db.entity.Repo;
-import com.orgzly.android.util.MiscUtils;
+import com.orgzly.android.util.FileTransfer;
 import com.orgzly.android.util.UriUtils;
 
 import org.jetbrains.annotations.NotNull;
@@ -122,7 +122,7 @@ public class DirectoryRepo implements SyncRepo {
         File sourceFile = new File(path);
 
         /* "Download" the file. */
-        MiscUtils.copyFile(sourceFile, destinationFile);
+        FileTransfer.copy(sourceFile, destinationFile);
 
         String rev = String.valueOf(sourceFile.lastModified());
         long mtime = sourceFile.lastModified();
@@ -147,8 +147,8 @@ public class DirectoryRepo implements SyncRepo {
         /* Create necessary directories. */
         createDir(destinationFileParent);
 
-        /* "Upload" the file. */
-        MiscUtils.copyFile(file, destinationFile);
+        /* "Upload" the file, never leaving it partially written. */
+        FileTransfer.copyAtomically(file, destinationFile);
 
         String rev = String.valueOf(destinationFile.lastModified());
         long mtime = destinationFile.lastModified();
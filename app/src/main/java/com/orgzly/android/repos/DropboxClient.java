@@ -8,16 +8,18 @@ import com.dropbox.core.DbxException;
 import com.dropbox.core.DbxRequestConfig;
 import com.dropbox.core.android.Auth;
 import com.dropbox.core.v2.DbxClientV2;
+import com.dropbox.core.v2.files.DeletedMetadata;
 import com.dropbox.core.v2.files.FileMetadata;
-import com.dropbox.core.v2.files.FolderMetadata;
-import com.dropbox.core.v2.files.GetMetadataErrorException;
+import com.dropbox.core.v2.files.ListFolderContinueErrorException;
+import com.dropbox.core.v2.files.ListFolderErrorException;
 import com.dropbox.core.v2.files.ListFolderResult;
-import com.dropbox.core.v2.files.LookupError;
 import com.dropbox.core.v2.files.Metadata;
 import com.dropbox.core.v2.files.RelocationResult;
 import com.dropbox.core.v2.files.WriteMode;
 import com.orgzly.BuildConfig;
 import com.orgzly.android.BookName;
+import com.orgzly.android.data.DropboxListingRepository;
+import com.orgzly.android.db.entity.DropboxFile;
 import com.orgzly.android.prefs.AppPreferences;
 
 import java.io.BufferedOutputStream;
@@ -28,8 +30,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 public class DropboxClient {
     private static final String TAG = DropboxClient.class.getName();
@@ -46,18 +52,38 @@ public class DropboxClient {
     final private Context mContext;
     final private long repoId;
 
+    /* Files from the last listing, null if they should not be kept. */
+    final private DropboxListingRepository listing;
+
     private DbxClientV2 dbxClient;
 
     private boolean tryLinking = false;
 
     public DropboxClient(Context context, long id) {
+        this(context, id, null);
+    }
+
+    public DropboxClient(Context context, long id, DropboxListingRepository listing) {
         mContext = context;
 
         repoId = id;
 
+        this.listing = listing;
+
         createClient();
     }
 
+    /* For tests. */
+    DropboxClient(Context context, long id, DropboxListingRepository listing, DbxClientV2 client) {
+        mContext = context;
+
+        repoId = id;
+
+        this.listing = listing;
+
+        dbxClient = client;
+    }
+
     private void createClient() {
         String accessToken = getToken();
 
@@ -139,6 +165,10 @@ public class DropboxClient {
         AppPreferences.dropboxToken(mContext, null);
     }
 
+    /**
+     * Lists the folder. If it was listed before, only changes since then are requested
+     * (a single call if nothing has changed) and applied to the stored files.
+     */
     public List<VersionedRook> getBooks(Uri repoUri) throws IOException {
         linkedOrThrow();
 
@@ -154,48 +184,36 @@ public class DropboxClient {
         /* Strip trailing slashes. */
         path = path.replaceAll("/+$", "");
 
-        try {
-            if (ROOT_PATH.equals(path) || dbxClient.files().getMetadata(path) instanceof FolderMetadata) {
-                /* Get folder content. */
-                ListFolderResult result = dbxClient.files().listFolder(path);
-                while (true) {
-                    for (Metadata metadata : result.getEntries()) {
-                        if (metadata instanceof FileMetadata) {
-                            FileMetadata file = (FileMetadata) metadata;
-
-                            if (BookName.isSupportedFormatFileName(file.getName())) {
-                                Uri uri = repoUri.buildUpon().appendPath(file.getName()).build();
-                                VersionedRook book = new VersionedRook(
-                                        repoId,
-                                        RepoType.DROPBOX,
-                                        repoUri,
-                                        uri,
-                                        file.getRev(),
-                                        file.getServerModified().getTime());
-
-                                list.add(book);
-                            }
-                        }
-                    }
+        List<DropboxFile> files = null;
 
-                    if (!result.getHasMore()) {
-                        break;
-                    }
+        try {
+            String cursor = listing != null ? listing.getCursor(repoId, path) : null;
 
-                    result = dbxClient.files().listFolderContinue(result.getCursor());
-                }
+            if (cursor != null) {
+                files = listFolderChanges(path, cursor);
+            }
 
-            } else {
-                throw new IOException("Not a directory: " + repoUri);
+            if (files == null) {
+                files = listFolder(path);
             }
 
         } catch (DbxException e) {
             e.printStackTrace();
 
-            /* If we get NOT_FOUND from Dropbox, just return the empty list. */
-            if (e instanceof GetMetadataErrorException) {
-                if (((GetMetadataErrorException) e).errorValue.getPathValue() == LookupError.NOT_FOUND) {
-                    return list;
+            if (e instanceof ListFolderErrorException) {
+                ListFolderErrorException listFolderError = (ListFolderErrorException) e;
+
+                if (listFolderError.errorValue.isPath()) {
+                    /* If we get NOT_FOUND from Dropbox, just return the empty list. */
+                    if (listFolderError.errorValue.getPathValue().isNotFound()) {
+                        if (listing != null) {
+                            listing.clear(repoId);
+                        }
+                        return list;
+
+                    } else if (listFolderError.errorValue.getPathValue().isNotFolder()) {
+                        throw new IOException("Not a directory: " + repoUri);
+                    }
                 }
             }
 
@@ -204,9 +222,118 @@ public class DropboxClient {
                                   (e.getMessage() != null ? e.getMessage() : e.toString()));
         }
 
+        for (DropboxFile file : files) {
+            Uri uri = repoUri.buildUpon().appendPath(file.getName()).build();
+
+            list.add(new VersionedRook(
+                    repoId,
+                    RepoType.DROPBOX,
+                    repoUri,
+                    uri,
+                    file.getRev(),
+                    file.getServerModified()));
+        }
+
         return list;
     }
 
+    /**
+     * Lists the entire folder, storing its files and the cursor for the next listing.
+     *
+     * The cursor of the last page already points to the state just listed,
+     * so there is no need to request the latest one.
+     */
+    private List<DropboxFile> listFolder(String path) throws DbxException {
+        List<DropboxFile> files = new ArrayList<>();
+
+        ListFolderResult result = dbxClient.files().listFolder(path);
+
+        while (true) {
+            for (Metadata metadata : result.getEntries()) {
+                DropboxFile file = toDropboxFile(metadata);
+
+                if (file != null) {
+                    files.add(file);
+                }
+            }
+
+            if (!result.getHasMore()) {
+                break;
+            }
+
+            result = dbxClient.files().listFolderContinue(result.getCursor());
+        }
+
+        if (listing != null) {
+            return listing.replace(repoId, path, result.getCursor(), files);
+        } else {
+            return files;
+        }
+    }
+
+    /**
+     * Lists changes since the cursor and applies them to the stored files.
+     *
+     * @return all files or null if the cursor is no longer valid
+     */
+    private List<DropboxFile> listFolderChanges(String path, String cursor) throws DbxException {
+        /* Entries are in order, later ones override earlier for the same path. */
+        Map<String, DropboxFile> changed = new LinkedHashMap<>();
+        Set<String> deleted = new HashSet<>();
+
+        ListFolderResult result;
+
+        try {
+            result = dbxClient.files().listFolderContinue(cursor);
+
+        } catch (ListFolderContinueErrorException e) {
+            /* Reset by Dropbox or folder gone, list everything again. */
+            e.printStackTrace();
+            return null;
+        }
+
+        while (true) {
+            for (Metadata metadata : result.getEntries()) {
+                DropboxFile file = toDropboxFile(metadata);
+
+                if (file != null) {
+                    changed.put(file.getPathLower(), file);
+                    deleted.remove(file.getPathLower());
+
+                } else if (metadata instanceof DeletedMetadata) {
+                    changed.remove(metadata.getPathLower());
+                    deleted.add(metadata.getPathLower());
+                }
+            }
+
+            if (!result.getHasMore()) {
+                break;
+            }
+
+            result = dbxClient.files().listFolderContinue(result.getCursor());
+        }
+
+        return listing.update(repoId, path, result.getCursor(), changed.values(), deleted);
+    }
+
+    /* Supported book files only, null for anything else. */
+    private DropboxFile toDropboxFile(Metadata metadata) {
+        if (metadata instanceof FileMetadata) {
+            FileMetadata file = (FileMetadata) metadata;
+
+            if (BookName.isSupportedFormatFileName(file.getName())) {
+                return new DropboxFile(
+                        repoId,
+                        file.getPathLower(),
+                        file.getName(),
+                        file.getRev(),
+                        file.getServerModified().getTime());
+            }
+        }
+
+        return null;
+    }
+
     /**
      * Download file from Dropbox and store it to a local file.
      */
@@ -3,6 +3,7 @@ package com.orgzly.android.repos;
 import android.content.Context;
 import android.net.Uri;
 
+import com.orgzly.android.data.DropboxListingRepository;
 import com.orgzly.android.util.UriUtils;
 
 import java.io.File;
@@ -16,9 +17,9 @@ public class DropboxRepo implements SyncRepo {
     private final Uri repoUri;
     private final DropboxClient client;
 
-    public DropboxRepo(RepoWithProps repoWithProps, Context context) {
+    public DropboxRepo(RepoWithProps repoWithProps, Context context, DropboxListingRepository listing) {
         this.repoUri = Uri.parse(repoWithProps.getRepo().getUrl());
-        this.client = new DropboxClient(context, repoWithProps.getRepo().getId());
+        this.client = new DropboxClient(context, repoWithProps.getRepo().getId(), listing);
     }
 
     @Override
@@ -36,8 +36,13 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class GitRepo implements SyncRepo, TwoWaySyncRepo {
+    /* Last listed books, per repository. Repo instances are created for each operation. */
+    private static final Map<Long, CachedBooks> booksCache = new ConcurrentHashMap<>();
+
     private final long repoId;
 
     /**
@@ -237,14 +242,23 @@ public class GitRepo implements SyncRepo, TwoWaySyncRepo {
 
     private VersionedRook currentVersionedRook(Uri uri) throws IOException {
         RevCommit commit = null;
-        if (uri.toString().contains("%")) {
-            uri = Uri.parse(Uri.decode(uri.toString()));
-        }
+        uri = decodedUri(uri);
         try {
             commit = synchronizer.getLatestCommitOfFile(uri);
         } catch (GitAPIException e) {
             e.printStackTrace();
         }
+        return versionedRook(uri, commit);
+    }
+
+    private Uri decodedUri(Uri uri) {
+        if (uri.toString().contains("%")) {
+            return Uri.parse(Uri.decode(uri.toString()));
+        }
+        return uri;
+    }
+
+    private VersionedRook versionedRook(Uri uri, RevCommit commit) {
         long mtime = (long)commit.getCommitTime()*1000;
         return new VersionedRook(repoId, RepoType.GIT, getUri(), uri, commit.name(), mtime);
     }
@@ -266,14 +280,21 @@ public class GitRepo implements SyncRepo, TwoWaySyncRepo {
     public List<VersionedRook> getBooks() throws IOException {
         synchronizer.setBranchAndGetLatest();
         List<VersionedRook> result = new ArrayList<>();
-        if (synchronizer.currentHead() == null) {
+        RevCommit head = synchronizer.currentHead();
+        if (head == null) {
             return result;
         }
 
+        /* Working tree is clean, so nothing changed since the last listing if HEAD is the same. */
+        CachedBooks cached = booksCache.get(repoId);
+        if (cached != null && cached.head.equals(head.getId()) && cached.repoUri.equals(getUri())) {
+            return new ArrayList<>(cached.books);
+        }
+
         TreeWalk walk = new TreeWalk(git.getRepository());
         walk.reset();
         walk.setRecursive(true);
-        walk.addTree(synchronizer.currentHead().getTree());
+        walk.addTree(head.getTree());
         final IgnoreNode ignores = getIgnores();
         walk.setFilter(new TreeFilter() {
             @Override
@@ -294,6 +315,7 @@ public class GitRepo implements SyncRepo, TwoWaySyncRepo {
                 return this;
             }
         });
+        List<String> filePaths = new ArrayList<>();
         while (walk.next()) {
             final FileMode mode = walk.getFileMode(0);
             final boolean isDirectory = mode == FileMode.TREE;
@@ -301,11 +323,37 @@ public class GitRepo implements SyncRepo, TwoWaySyncRepo {
             if (isDirectory)
                 continue;
             if (BookName.isSupportedFormatFileName(filePath))
-                result.add(
-                        currentVersionedRook(
-                                Uri.withAppendedPath(Uri.EMPTY, walk.getPathString())));
+                filePaths.add(filePath);
+        }
+
+        /* Single history walk for all books, instead of one per book. */
+        Map<String, RevCommit> commits = synchronizer.getLatestCommitsOfFiles(filePaths);
+
+        for (String filePath : filePaths) {
+            RevCommit commit = commits.get(filePath);
+            if (commit != null) {
+                result.add(versionedRook(decodedUri(Uri.withAppendedPath(Uri.EMPTY, filePath)), commit));
+            }
+        }
+
+        booksCache.put(repoId, new CachedBooks(head.getId(), getUri(), result));
+
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Books listed for a HEAD commit.
+     */
+    private static class CachedBooks {
+        final ObjectId head;
+        final Uri repoUri;
+        final List<VersionedRook> books;
+
+        CachedBooks(ObjectId head, Uri repoUri, List<VersionedRook> books) {
+            this.head = head;
+            this.repoUri = repoUri;
+            this.books = books;
         }
-        return result;
     }
 
     public Uri getUri() {
@@ -3,6 +3,7 @@ package com.orgzly.android.repos
 import android.content.Context
 import com.orgzly.BuildConfig
 import com.orgzly.android.data.DbRepoBookRepository
+import com.orgzly.android.data.DropboxListingRepository
 import com.orgzly.android.prefs.AppPreferences
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -10,7 +11,8 @@ import javax.inject.Singleton
 @Singleton
 class RepoFactory @Inject constructor(
         private val context: Context,
-        private val dbRepoBookRepository: DbRepoBookRepository
+        private val dbRepoBookRepository: DbRepoBookRepository,
+        private val dropboxListingRepository: DropboxListingRepository
 ) {
     fun getInstance(repoWithProps: RepoWithProps): SyncRepo {
         val type = repoWithProps.repo.type.id
@@ -20,7 +22,7 @@ class RepoFactory @Inject constructor(
                 MockRepo(repoWithProps, dbRepoBookRepository)
 
             type == RepoType.DROPBOX.id && BuildConfig.IS_DROPBOX_ENABLED ->
-                DropboxRepo(repoWithProps, context)
+                DropboxRepo(repoWithProps, context, dropboxListingRepository)
 
             type == RepoType.DIRECTORY.id ->
                 DirectoryRepo(repoWithProps, false)
@@ -29,7 +31,7 @@ class RepoFactory @Inject constructor(
                 ContentRepo(repoWithProps, context)
 
             type == RepoType.WEBDAV.id ->
-                WebdavRepo.getInstance(repoWithProps)
+                WebdavRepo.getInstance(repoWithProps, context)
 
             type == RepoType.GIT.id && AppPreferences.gitIsEnabled(context) ->
                 GitRepo.getInstance(repoWithProps, context)
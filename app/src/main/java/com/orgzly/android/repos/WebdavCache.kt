@@ -0,0 +1,143 @@
+package com.orgzly.android.repos
+
+import android.net.Uri
+import com.orgzly.android.LocalStorage
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Files of a WebDAV repository as last listed, downloaded or uploaded, with their ETags.
+ *
+ * Content of downloaded and uploaded files is kept too, so a file which has not
+ * changed since is not downloaded again (server responds to If-None-Match with 304).
+ *
+ * Stored in the cache directory, as a new repository instance is used for each
+ * operation. Instances are shared for the same directory.
+ */
+class WebdavCache private constructor(private val dir: File) {
+
+    data class Entry(val name: String, val etag: String?, val modified: Long)
+
+    private val entries: MutableMap<String, Entry> by lazy { read() }
+
+    @Synchronized
+    fun get(name: String): Entry? {
+        return entries[name]
+    }
+
+    /** Content of the file, if it was kept for its current ETag. */
+    @Synchronized
+    fun getContent(name: String): File? {
+        return entries[name]?.takeIf { it.etag != null }?.let { contentFile(name).takeIf(File::exists) }
+    }
+
+    /**
+     * Replaces all entries with the listed ones.
+     * Content is discarded for files which have changed or no longer exist.
+     */
+    @Synchronized
+    fun replaceAll(listed: List<Entry>) {
+        val names = listed.mapTo(hashSetOf()) { it.name }
+
+        for (entry in entries.values) {
+            if (entry.name !in names) {
+                contentFile(entry.name).delete()
+            }
+        }
+
+        for (entry in listed) {
+            if (entries[entry.name]?.etag != entry.etag || entry.etag == null) {
+                contentFile(entry.name).delete()
+            }
+        }
+
+        entries.clear()
+        listed.associateByTo(entries) { it.name }
+
+        write()
+    }
+
+    /** Updates the entry, keeping a copy of the file's content if its ETag is known. */
+    @Synchronized
+    fun put(entry: Entry, content: File?) {
+        val contentFile = contentFile(entry.name)
+
+        if (content != null && entry.etag != null) {
+            content.copyTo(contentFile, overwrite = true)
+        } else {
+            contentFile.delete()
+        }
+
+        entries[entry.name] = entry
+
+        write()
+    }
+
+    @Synchronized
+    fun remove(name: String) {
+        contentFile(name).delete()
+
+        if (entries.remove(name) != null) {
+            write()
+        }
+    }
+
+    private fun contentFile(name: String): File {
+        return File(dir, Uri.encode(name))
+    }
+
+    /* One line per file: encoded name, ETag (empty if unknown) and modification time. */
+
+    private fun read(): MutableMap<String, Entry> {
+        val map = hashMapOf<String, Entry>()
+
+        val file = File(dir, LISTING_FILE_NAME)
+
+        if (file.exists()) {
+            try {
+                file.forEachLine { line ->
+                    val fields = line.split('\t')
+
+                    if (fields.size == 3) {
+                        val name = Uri.decode(fields[0])
+                        map[name] = Entry(name, fields[1].ifEmpty { null }, fields[2].toLong())
+                    }
+                }
+            } catch (e: Exception) {
+                /* Start from scratch, it is only a cache. */
+                e.printStackTrace()
+                LocalStorage.deleteRecursive(dir)
+                map.clear()
+            }
+        }
+
+        return map
+    }
+
+    private fun write() {
+        try {
+            dir.mkdirs()
+
+            File(dir, LISTING_FILE_NAME).printWriter().use { writer ->
+                for (entry in entries.values) {
+                    writer.println("${Uri.encode(entry.name)}\t${entry.etag.orEmpty()}\t${entry.modified}")
+                }
+            }
+        } catch (e: IOException) {
+            e.printStackTrace()
+        }
+    }
+
+    companion object {
+        /* Not a valid encoded file name, so it can't clash with files' content. */
+        private const val LISTING_FILE_NAME = "%listing"
+
+        private val instances = ConcurrentHashMap<String, WebdavCache>()
+
+        @JvmStatic
+        fun forDirectory(dir: File): WebdavCache {
+            return instances.getOrPut(dir.absolutePath) { WebdavCache(dir) }
+        }
+    }
+}
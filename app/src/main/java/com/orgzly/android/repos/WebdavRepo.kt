@@ -1,5 +1,6 @@
 package com.orgzly.android.repos
 
+import android.content.Context
 import android.net.Uri
 import com.burgstaller.okhttp.AuthenticationCacheInterceptor
 import com.burgstaller.okhttp.CachingAuthenticatorDecorator
@@ -12,10 +13,15 @@ import com.orgzly.android.BookName
 import com.orgzly.android.util.UriUtils
 import com.thegrizzlylabs.sardineandroid.DavResource
 import com.thegrizzlylabs.sardineandroid.impl.OkHttpSardine
+import com.thegrizzlylabs.sardineandroid.impl.SardineException
 import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.asRequestBody
+import okhttp3.Response
 import okio.Buffer
 import java.io.File
 import java.io.FileOutputStream
+import java.io.IOException
 import java.io.InputStream
 import java.security.KeyStore
 import java.security.cert.CertificateFactory
@@ -33,11 +39,17 @@ class WebdavRepo(
         private val uri: Uri,
         private val username: String,
         private val password: String,
-        private val certificates: String? = null
+        private val certificates: String? = null,
+        private val cache: WebdavCache? = null
 ) : SyncRepo {
 
+    /* Shared by Sardine and requests which need response headers. */
+    private val client by lazy {
+        okHttpClient()
+    }
+
     private val sardine by lazy {
-        OkHttpSardine(okHttpClient())
+        OkHttpSardine(client)
     }
 
     private fun okHttpClient(): OkHttpClient {
@@ -124,7 +136,10 @@ class WebdavRepo(
         const val PASSWORD_PREF_KEY = "password"
         const val CERTIFICATES_PREF_KEY = "certificates"
 
-        fun getInstance(repoWithProps: RepoWithProps): WebdavRepo {
+        private const val HTTP_NOT_MODIFIED = 304
+        private const val HTTP_NOT_FOUND = 404
+
+        fun getInstance(repoWithProps: RepoWithProps, context: Context): WebdavRepo {
             val id = repoWithProps.repo.id
 
             val uri = Uri.parse(repoWithProps.repo.url)
@@ -139,7 +154,9 @@ class WebdavRepo(
 
             val certificates = repoWithProps.props[CERTIFICATES_PREF_KEY]
 
-            return WebdavRepo(id, uri, username, password, certificates)
+            val cache = WebdavCache.forDirectory(File(context.cacheDir, "webdav/$id"))
+
+            return WebdavRepo(id, uri, username, password, certificates, cache)
         }
     }
 
@@ -155,63 +172,155 @@ class WebdavRepo(
         return uri
     }
 
+    /**
+     * Lists the directory with a single PROPFIND (Depth: 1), creating it if it doesn't exist.
+     */
     override fun getBooks(): MutableList<VersionedRook> {
         val url = uri.toUrl()
 
-        if (!sardine.exists(url)) {
-            sardine.createDirectory(url)
+        val resources = try {
+            sardine.list(url)
+
+        } catch (e: SardineException) {
+            if (e.statusCode == HTTP_NOT_FOUND) {
+                sardine.createDirectory(url)
+                emptyList()
+            } else {
+                throw e
+            }
         }
 
-        return sardine
-                .list(url)
-                .mapNotNull {
-                    if (it.isDirectory || !BookName.isSupportedFormatFileName(it.name)) {
-                        null
-                    } else {
-                        it.toVersionedRook()
-                    }
-                }
-                .toMutableList()
+        val entries = resources
+                .filter { !it.isDirectory && BookName.isSupportedFormatFileName(it.name) }
+                .map { it.toEntry() }
+
+        cache?.replaceAll(entries)
+
+        return entries.map { it.toVersionedRook() }.toMutableList()
     }
 
-    override fun retrieveBook(fileName: String?, destination: File?): VersionedRook {
+    /**
+     * Downloads the file, unless the cached copy is still current (If-None-Match).
+     * Version is taken from response headers or the last listing.
+     */
+    override fun retrieveBook(fileName: String, destination: File): VersionedRook {
         val fileUrl = Uri.withAppendedPath(uri, fileName).toUrl()
 
-        sardine.get(fileUrl).use { inputStream ->
-            FileOutputStream(destination).use { outputStream ->
-                inputStream.copyTo(outputStream)
+        val cached = cache?.get(fileName)
+        val cachedContent = cache?.getContent(fileName)
+
+        val request = Request.Builder().url(fileUrl).get().apply {
+            if (cachedContent != null) {
+                header("If-None-Match", checkNotNull(cached?.etag))
+            }
+        }.build()
+
+        val entry = client.newCall(request).execute().use { response ->
+            if (response.code == HTTP_NOT_MODIFIED && cachedContent != null) {
+                cachedContent.copyTo(destination, overwrite = true)
+
+                cached
+
+            } else {
+                checkResponse(response, fileUrl)
+
+                FileOutputStream(destination).use { outputStream ->
+                    checkNotNull(response.body).byteStream().copyTo(outputStream)
+                }
+
+                response.toEntry(fileName, cached)?.also {
+                    cache?.put(it, destination)
+                }
             }
         }
 
-        return sardine.list(fileUrl).first().toVersionedRook()
+        return (entry ?: listEntry(fileUrl)).toVersionedRook()
     }
 
-    override fun storeBook(file: File?, fileName: String?): VersionedRook {
+    /**
+     * Uploads the file, taking its version from the response headers.
+     * Only if there is no ETag in the response, the version is listed afterwards.
+     */
+    override fun storeBook(file: File, fileName: String): VersionedRook {
         val fileUrl = Uri.withAppendedPath(uri, fileName).toUrl()
 
-        sardine.put(fileUrl, file, null)
+        val request = Request.Builder().url(fileUrl).put(file.asRequestBody()).build()
+
+        val entry = client.newCall(request).execute().use { response ->
+            checkResponse(response, fileUrl)
+
+            /* Servers often leave out Last-Modified on PUT. */
+            response.toEntry(fileName, null, uploadedAt = System.currentTimeMillis())
 
-        return sardine.list(fileUrl).first().toVersionedRook()
+        } ?: listEntry(fileUrl)
+
+        cache?.put(entry, file)
+
+        return entry.toVersionedRook()
     }
 
-    override fun renameBook(from: Uri, name: String?): VersionedRook {
+    override fun renameBook(from: Uri, name: String): VersionedRook {
         val destUrl = UriUtils.getUriForNewName(from, name).toUrl()
+
         sardine.move(from.toUrl(), destUrl)
-        return sardine.list(destUrl).first().toVersionedRook()
+
+        val entry = listEntry(destUrl)
+
+        from.lastPathSegment?.let { cache?.remove(it) }
+        cache?.put(entry, null)
+
+        return entry.toVersionedRook()
     }
 
     override fun delete(uri: Uri) {
         sardine.delete(uri.toUrl())
+
+        uri.lastPathSegment?.let { cache?.remove(it) }
+    }
+
+    /* PROPFIND for a single file, for when the version is not known otherwise. */
+    private fun listEntry(fileUrl: String): WebdavCache.Entry {
+        val entry = sardine.list(fileUrl).first().toEntry()
+
+        cache?.put(entry, null)
+
+        return entry
+    }
+
+    private fun checkResponse(response: Response, url: String) {
+        if (!response.isSuccessful) {
+            throw IOException("Request for $url failed: ${response.code} ${response.message}")
+        }
+    }
+
+    /*
+     * Entry from the response's ETag and Last-Modified headers.
+     * Without Last-Modified, modification time is taken from the cached entry if ETag
+     * is the same, or is the upload time if ETag is known (it alone is the revision then).
+     */
+    private fun Response.toEntry(fileName: String, cached: WebdavCache.Entry?, uploadedAt: Long? = null): WebdavCache.Entry? {
+        val etag = header("ETag")
+
+        val modified = headers.getDate("Last-Modified")?.time
+                ?: cached?.takeIf { etag != null && it.etag == etag }?.modified
+                ?: uploadedAt?.takeIf { etag != null }
+
+        return modified?.let { WebdavCache.Entry(fileName, etag, it) }
+    }
+
+    private fun DavResource.toEntry(): WebdavCache.Entry {
+        return WebdavCache.Entry(this.name, this.etag, this.modified.time)
     }
 
-    private fun DavResource.toVersionedRook(): VersionedRook {
+    /* Revision is the ETag, if server provides it, so it's known right after uploading. */
+    private fun WebdavCache.Entry.toVersionedRook(): VersionedRook {
         return VersionedRook(
                 repoId,
                 RepoType.WEBDAV,
                 uri,
                 Uri.withAppendedPath(uri, this.name),
-                this.name + this.modified.time.toString(),
-                this.modified.time
+                this.etag ?: (this.name + this.modified.toString()),
+                this.modified
         )
     }
 
@@ -29,8 +29,11 @@ enum class BookSyncStatus {
     ONLY_BOOK_WITH_LINK;
 
     // TODO: Extract string resources
+    /**
+     * @param changed false if loading or saving was skipped, as the content was unchanged
+     */
     @JvmOverloads
-    fun msg(arg: Any = ""): String {
+    fun msg(arg: Any = "", changed: Boolean = true): String {
         when (this) {
             NO_CHANGE ->
                 return "No change"
@@ -66,10 +69,10 @@ enum class BookSyncStatus {
                 return "Last synced notebook and latest remote notebook differ"
 
             NO_BOOK_ONE_ROOK, DUMMY_WITHOUT_LINK_AND_ONE_ROOK, BOOK_WITH_LINK_AND_ROOK_MODIFIED, DUMMY_WITH_LINK ->
-                return "Loaded from $arg"
+                return if (changed) "Loaded from $arg" else "Unchanged in $arg, not loaded"
 
             ONLY_BOOK_WITHOUT_LINK_AND_ONE_REPO, BOOK_WITH_LINK_LOCAL_MODIFIED, ONLY_BOOK_WITH_LINK ->
-                return "Saved to $arg"
+                return if (changed) "Saved to $arg" else "Unchanged in $arg, not saved"
 
             else ->
                 throw IllegalArgumentException("Unknown sync status " + this)
@@ -5,7 +5,20 @@ import androidx.work.Data
 import androidx.work.workDataOf
 import com.orgzly.R
 
-data class SyncState(val type: Type, val message: String? = null, val current: Int, val total: Int) {
+/**
+ * @property rows rows written while loading the book, for [Type.BOOK_ENDED]
+ * @property time time it took to sync the book in milliseconds, for [Type.BOOK_ENDED]
+ * @property skipped books not loaded or saved as their content was unchanged, for [Type.FINISHED]
+ */
+data class SyncState(
+    val type: Type,
+    val message: String? = null,
+    val current: Int,
+    val total: Int,
+    val rows: Long = 0,
+    val time: Long = 0,
+    val skipped: Int = 0
+) {
     enum class Type {
         CANCELING,
 
@@ -60,7 +73,10 @@ data class SyncState(val type: Type, val message: String? = null, val current: I
             DATA_TYPE to type.toString(),
             DATA_MESSAGE to message,
             DATA_CURRENT to current,
-            DATA_TOTAL to total
+            DATA_TOTAL to total,
+            DATA_ROWS to rows,
+            DATA_TIME to time,
+            DATA_SKIPPED to skipped
         )
     }
 
@@ -102,7 +118,7 @@ data class SyncState(val type: Type, val message: String? = null, val current: I
 //    }
 
     override fun toString(): String {
-        return "$type($message $current/$total)"
+        return "$type($message $current/$total, $rows rows in $time ms, $skipped skipped)"
     }
 
     companion object {
@@ -110,6 +126,9 @@ data class SyncState(val type: Type, val message: String? = null, val current: I
         private const val DATA_MESSAGE = "message"
         private const val DATA_CURRENT = "current"
         private const val DATA_TOTAL = "total"
+        private const val DATA_ROWS = "rows"
+        private const val DATA_TIME = "time"
+        private const val DATA_SKIPPED = "skipped"
 
 //        private const val SHARED_PREF_NAME = "sync-state"
 
@@ -126,8 +145,8 @@ data class SyncState(val type: Type, val message: String? = null, val current: I
 
         @JvmStatic
         @JvmOverloads
-        fun getInstance(type: Type, message: String? = null, current: Int = 0, total: Int = 0): SyncState {
-            return SyncState(type, message, current, total)
+        fun getInstance(type: Type, message: String? = null, current: Int = 0, total: Int = 0, rows: Long = 0, time: Long = 0, skipped: Int = 0): SyncState {
+            return SyncState(type, message, current, total, rows, time, skipped)
         }
 
         @JvmStatic
@@ -136,8 +155,11 @@ data class SyncState(val type: Type, val message: String? = null, val current: I
             val message = data.getString(DATA_MESSAGE)
             val current = data.getInt(DATA_CURRENT, 0)
             val total = data.getInt(DATA_TOTAL, 0)
+            val rows = data.getLong(DATA_ROWS, 0)
+            val time = data.getLong(DATA_TIME, 0)
+            val skipped = data.getInt(DATA_SKIPPED, 0)
 
-            return SyncState(Type.valueOf(type), message, current, total)
+            return SyncState(Type.valueOf(type), message, current, total, rows, time, skipped)
         }
     }
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import com.orgzly.android.BookFormat
 import com.orgzly.android.BookName
 import com.orgzly.android.NotesOrgExporter
 import com.orgzly.android.data.DataRepository
+import com.orgzly.android.data.ParsedBook
 import com.orgzly.android.db.entity.BookAction
 import com.orgzly.android.db.entity.Repo
 import com.orgzly.android.repos.SyncRepo
@@ -70,14 +71,47 @@ object SyncUtils {
         return namesakes
     }
 
+    /**
+     * Downloads and parses the remote book, if syncing the namesake requires loading it.
+     * Does not write to the database, so it can run concurrently for different namesakes.
+     *
+     * @return parsed book to pass to [syncNamesake], or null if there is nothing to load
+     */
+    @Throws(IOException::class)
+    @JvmStatic
+    fun prepareNamesake(dataRepository: DataRepository, namesake: BookNamesake): ParsedBook? {
+        /* Books in two-way sync repositories are loaded while syncing. */
+        if (namesake.rooks.isNotEmpty() && namesake.status !== BookSyncStatus.NO_CHANGE) {
+            val rook = namesake.rooks[0]
+            val repo = dataRepository.getRepoInstance(rook.repoId, rook.repoType, rook.repoUri.toString())
+            if (repo is TwoWaySyncRepo) {
+                return null
+            }
+        }
+
+        return when (namesake.status!!) {
+            BookSyncStatus.NO_BOOK_ONE_ROOK, BookSyncStatus.DUMMY_WITHOUT_LINK_AND_ONE_ROOK ->
+                dataRepository.parseBookFromRepo(namesake.rooks[0])
+
+            BookSyncStatus.DUMMY_WITH_LINK, BookSyncStatus.BOOK_WITH_LINK_AND_ROOK_MODIFIED ->
+                dataRepository.parseBookFromRepo(namesake.latestLinkedRook)
+
+            else ->
+                null
+        }
+    }
+
     /**
      * Passed [com.orgzly.android.sync.BookNamesake] is NOT updated after load or save.
      *
      * FIXME: Hardcoded BookName.Format.ORG below
+     *
+     * @param parsedBook remote book already parsed by [prepareNamesake]
      */
     @Throws(Exception::class)
     @JvmStatic
-    fun syncNamesake(dataRepository: DataRepository, namesake: BookNamesake): BookAction {
+    @JvmOverloads
+    fun syncNamesake(dataRepository: DataRepository, namesake: BookNamesake, parsedBook: ParsedBook? = null): BookAction {
         val repoEntity: Repo?
         val repoUrl: String
         val fileName: String
@@ -120,17 +154,17 @@ object SyncUtils {
             /* Load remote book. */
 
             BookSyncStatus.NO_BOOK_ONE_ROOK, BookSyncStatus.DUMMY_WITHOUT_LINK_AND_ONE_ROOK -> {
-                dataRepository.loadBookFromRepo(namesake.rooks[0])
+                val loaded = loadBook(dataRepository, namesake.rooks[0], parsedBook)
                 bookAction = BookAction.forNow(
                     BookAction.Type.INFO,
-                    namesake.status.msg(namesake.rooks[0].uri))
+                    namesake.status.msg(namesake.rooks[0].uri, loaded))
             }
 
             BookSyncStatus.DUMMY_WITH_LINK, BookSyncStatus.BOOK_WITH_LINK_AND_ROOK_MODIFIED -> {
-                dataRepository.loadBookFromRepo(namesake.latestLinkedRook)
+                val loaded = loadBook(dataRepository, namesake.latestLinkedRook, parsedBook)
                 bookAction = BookAction.forNow(
                     BookAction.Type.INFO,
-                    namesake.status.msg(namesake.latestLinkedRook.uri))
+                    namesake.status.msg(namesake.latestLinkedRook.uri, loaded))
             }
 
             /* Save local book to repository. */
@@ -147,8 +181,10 @@ object SyncUtils {
                 repoEntity = namesake.book.linkRepo
                 repoUrl = repoEntity!!.url
                 fileName = BookName.getFileName(App.getAppContext(), namesake.book.syncedTo!!.uri)
-                dataRepository.saveBookToRepo(repoEntity, fileName, namesake.book, BookFormat.ORG)
-                bookAction = BookAction.forNow(BookAction.Type.INFO, namesake.status.msg(repoUrl))
+                /* Remote book has not changed since it was last synced. */
+                val saved = dataRepository.saveBookToRepo(
+                    repoEntity, fileName, namesake.book, BookFormat.ORG, skipIfUnchanged = true)
+                bookAction = BookAction.forNow(BookAction.Type.INFO, namesake.status.msg(repoUrl, saved))
             }
 
             BookSyncStatus.ONLY_BOOK_WITH_LINK -> {
@@ -165,6 +201,18 @@ object SyncUtils {
         return bookAction
     }
 
+    /**
+     * @return false if the book was not loaded, as its content was unchanged
+     */
+    @Throws(IOException::class)
+    private fun loadBook(dataRepository: DataRepository, rook: VersionedRook, parsedBook: ParsedBook?): Boolean {
+        val book = parsedBook ?: dataRepository.parseBookFromRepo(rook)
+
+        dataRepository.loadParsedBook(book)
+
+        return !book.isContentUnchanged
+    }
+
     @Throws(IOException::class)
     private fun handleTwoWaySync(dataRepository: DataRepository, repo: TwoWaySyncRepo, namesake: BookNamesake): Boolean {
         val (book, _, _, currentRook) = namesake.book
@@ -9,6 +9,7 @@ import com.orgzly.R
 import com.orgzly.android.App
 import com.orgzly.android.SharingShortcutsManager
 import com.orgzly.android.data.DataRepository
+import com.orgzly.android.data.ParsedBook
 import com.orgzly.android.db.entity.BookAction
 import com.orgzly.android.prefs.AppPreferences
 import com.orgzly.android.reminders.RemindersScheduler
@@ -18,7 +19,15 @@ import com.orgzly.android.ui.util.haveNetworkConnection
 import com.orgzly.android.util.AppPermissions
 import com.orgzly.android.util.LogUtils
 import com.orgzly.android.widgets.ListWidgetProvider
+import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
 import java.util.concurrent.CancellationException
 import javax.inject.Inject
@@ -29,6 +38,9 @@ class SyncWorker(val context: Context, val params: WorkerParameters) :
     @Inject
     lateinit var dataRepository: DataRepository
 
+    /* Books not loaded or saved, as their content was unchanged. */
+    private var skippedBooks = 0
+
     override suspend fun doWork(): Result {
         App.appComponent.inject(this)
 
@@ -41,6 +53,9 @@ class SyncWorker(val context: Context, val params: WorkerParameters) :
 
         } catch (e: Exception) {
             SyncState.getInstance(SyncState.Type.FAILED_EXCEPTION, e.localizedMessage)
+
+        } finally {
+            ContentRepo.clearListings()
         }
 
         val result = if (state.isFailure()) {
@@ -94,7 +109,7 @@ class SyncWorker(val context: Context, val params: WorkerParameters) :
         val time = System.currentTimeMillis()
         AppPreferences.lastSuccessfulSyncTime(context, time)
 
-        return SyncState.getInstance(SyncState.Type.FINISHED)
+        return SyncState.getInstance(SyncState.Type.FINISHED, skipped = skippedBooks)
     }
 
     private fun messageIfBooksFailed(dataRepository: DataRepository): String? {
@@ -208,34 +223,89 @@ class SyncWorker(val context: Context, val params: WorkerParameters) :
 
         /*
          * Start syncing name by name.
+         *
+         * Remote books are downloaded and parsed concurrently, ahead of the one being synced.
+         * Syncing itself, which writes to the database, is done for one book at a time,
+         * in the same order as before.
+         *
+         * Parsed books wait in memory until synced: up to the concurrency plus the one
+         * being synced, see AppPreferences.syncConcurrentBooks.
          */
-        for ((curr, namesake) in orderedNamesakes.values.withIndex()) {
-            /* If task has been canceled, just mark the remaining books as such. */
-            if (isStopped) {
-                dataRepository.setBookLastActionAndSyncStatus(
-                    namesake.book.book.id,
-                    BookAction.forNow(BookAction.Type.INFO, context.getString(R.string.canceled)))
+        val concurrency = AppPreferences.syncConcurrentBooks(context).coerceAtLeast(1)
+
+        coroutineScope {
+            /* Limits read-ahead, while the permits limit books being prepared at once. */
+            val prepared = Channel<Deferred<PreparedNamesake>>(concurrency - 1)
+            val permits = Semaphore(concurrency)
+
+            launch {
+                for (namesake in orderedNamesakes.values) {
+                    if (isStopped) {
+                        break
+                    }
+
+                    prepared.send(async(Dispatchers.IO) {
+                        permits.withPermit {
+                            prepareNamesake(namesake)
+                        }
+                    })
+                }
 
-            } else {
-                sendProgress(SyncState.getInstance(
-                    SyncState.Type.BOOK_STARTED, namesake.name, curr, namesakes.size))
+                prepared.close()
+            }
 
-                try {
-                    val action = SyncUtils.syncNamesake(dataRepository, namesake)
-                    dataRepository.setBookLastActionAndSyncStatus(
-                        namesake.book.book.id,
-                        action,
-                        namesake.status.toString())
-                } catch (e: Exception) {
-                    e.printStackTrace()
+            for ((curr, namesake) in orderedNamesakes.values.withIndex()) {
+                /* Preparation stops once task has been canceled. */
+                val preparedNamesake = if (isStopped) null else prepared.receiveCatching().getOrNull()?.await()
+
+                /* If task has been canceled, just mark the remaining books as such. */
+                if (preparedNamesake == null) {
                     dataRepository.setBookLastActionAndSyncStatus(
                         namesake.book.book.id,
-                        BookAction.forNow(BookAction.Type.ERROR, e.message.orEmpty()))
-                }
+                        BookAction.forNow(BookAction.Type.INFO, context.getString(R.string.canceled)))
+
+                } else {
+                    sendProgress(SyncState.getInstance(
+                        SyncState.Type.BOOK_STARTED, namesake.name, curr, namesakes.size))
+
+                    val startedAt = System.currentTimeMillis()
+
+                    try {
+                        preparedNamesake.error?.let { throw it }
+
+                        val action = SyncUtils.syncNamesake(
+                            dataRepository, namesake, preparedNamesake.parsedBook)
+                        dataRepository.setBookLastActionAndSyncStatus(
+                            namesake.book.book.id,
+                            action,
+                            namesake.status.toString())
+                    } catch (e: Exception) {
+                        e.printStackTrace()
+                        dataRepository.setBookLastActionAndSyncStatus(
+                            namesake.book.book.id,
+                            BookAction.forNow(BookAction.Type.ERROR, e.message.orEmpty()))
+                    }
+
+                    /* Only set if the book was loaded. */
+                    val loadStats = dataRepository.removeBookLoadStats(namesake.book.book.id)
+
+                    val skipped = dataRepository.removeUnchangedContent(namesake.book.book.id)
 
-                sendProgress(SyncState.getInstance(
-                    SyncState.Type.BOOK_ENDED, namesake.name, curr + 1, namesakes.size))
+                    if (skipped) {
+                        skippedBooks++
+                    }
+
+                    val time = preparedNamesake.time + System.currentTimeMillis() - startedAt
+
+                    if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Synced ${namesake.name} in $time ms: $loadStats, skipped: $skipped")
+
+                    sendProgress(SyncState.getInstance(
+                        SyncState.Type.BOOK_ENDED, namesake.name, curr + 1, namesakes.size, loadStats?.rows ?: 0, time))
+                }
             }
+
+            /* Books prepared after the task has been canceled are not needed. */
+            coroutineContext.cancelChildren()
         }
 
         if (isStopped) {
@@ -253,6 +323,29 @@ class SyncWorker(val context: Context, val params: WorkerParameters) :
         return null
     }
 
+    /**
+     * Downloads and parses the remote book, if it needs to be loaded.
+     * Failure is returned, to be reported when the book is synced.
+     * Cancellation is not a failure, it cancels the sync.
+     */
+    private fun prepareNamesake(namesake: BookNamesake): PreparedNamesake {
+        val startedAt = System.currentTimeMillis()
+
+        return try {
+            val parsedBook = SyncUtils.prepareNamesake(dataRepository, namesake)
+
+            PreparedNamesake(parsedBook, null, System.currentTimeMillis() - startedAt)
+
+        } catch (e: CancellationException) {
+            throw e
+
+        } catch (e: Exception) {
+            PreparedNamesake(null, e, System.currentTimeMillis() - startedAt)
+        }
+    }
+
+    private class PreparedNamesake(val parsedBook: ParsedBook?, val error: Exception?, val time: Long)
+
     // TODO: Remove or repo.requiresStoragePermission
     private fun reposRequireStoragePermission(repos: Collection<SyncRepo>): Boolean {
         for (repo in repos) {
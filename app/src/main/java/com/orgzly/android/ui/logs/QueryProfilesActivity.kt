@@ -0,0 +1,106 @@
+package com.orgzly.android.ui.logs
+
+import android.os.Bundle
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.Observer
+import androidx.lifecycle.ViewModelProvider
+import androidx.lifecycle.lifecycleScope
+import androidx.lifecycle.repeatOnLifecycle
+import com.orgzly.R
+import com.orgzly.android.App
+import com.orgzly.android.data.DataRepository
+import com.orgzly.android.data.logs.AppLogsRepository
+import com.orgzly.android.ui.CommonActivity
+import com.orgzly.android.ui.showSnackbar
+import com.orgzly.android.ui.util.copyPlainTextToClipboard
+import com.orgzly.android.ui.util.sharePlainText
+import com.orgzly.databinding.ActivityLogsBinding
+import kotlinx.coroutines.launch
+import javax.inject.Inject
+
+/**
+ * Time, rows and plans of profiled notes' queries.
+ *
+ * Queries whose last plan scans all notes or sorts using a temporary B-tree are listed first.
+ */
+class QueryProfilesActivity : CommonActivity() {
+    private lateinit var binding: ActivityLogsBinding
+
+    private lateinit var viewModel: QueryProfilesViewModel
+
+    @Inject
+    lateinit var dataRepository: DataRepository
+
+    @Inject
+    lateinit var appLogs: AppLogsRepository
+
+    override fun onCreate(savedInstanceState: Bundle?) {
+        App.appComponent.inject(this)
+
+        super.onCreate(savedInstanceState)
+
+        binding = ActivityLogsBinding.inflate(layoutInflater)
+
+        setContentView(binding.root)
+
+        binding.info.setTextIsSelectable(true)
+        binding.logs.setTextIsSelectable(true)
+
+        val factory = QueryProfilesViewModelFactory.getInstance(dataRepository, appLogs)
+        viewModel = ViewModelProvider(this, factory)[QueryProfilesViewModel::class.java]
+
+        lifecycleScope.launch {
+            repeatOnLifecycle(Lifecycle.State.STARTED) {
+                launch {
+                    viewModel.flagged.collect {
+                        binding.info.text = if (it.isNotEmpty()) {
+                            it.joinToString("\n\n")
+                        } else {
+                            getString(R.string.no_flagged_queries)
+                        }
+                    }
+                }
+
+                launch {
+                    viewModel.logs.collect {
+                        binding.logs.text = it.joinToString("\n\n")
+                    }
+                }
+            }
+        }
+
+        viewModel.errorEvent.observeSingle(this, Observer { error ->
+            if (error != null) {
+                showSnackbar((error.cause ?: error).localizedMessage)
+            }
+        })
+
+        binding.topToolbar.run {
+            setTitle(R.string.query_profiles)
+
+            menu.clear()
+            inflateMenu(R.menu.query_profiles_actions)
+
+            setNavigationOnClickListener {
+                finish()
+            }
+
+            setOnMenuItemClickListener { menuItem ->
+                when (menuItem.itemId) {
+                    R.id.profile_saved_searches ->
+                        viewModel.profileSavedSearches()
+                    R.id.copy ->
+                        copyPlainTextToClipboard("Orgzly Query Profiles", allText())
+                    R.id.share ->
+                        sharePlainText(allText())
+                }
+
+                true
+            }
+        }
+    }
+
+    private fun allText(): CharSequence {
+        return binding.info.text.toString() + "\n\n" + binding.logs.text.toString()
+    }
+}
@@ -0,0 +1,44 @@
+package com.orgzly.android.ui.logs
+
+import com.orgzly.android.App
+import com.orgzly.android.data.DataRepository
+import com.orgzly.android.data.logs.AppLogsRepository
+import com.orgzly.android.data.logs.QueryProfiler
+import com.orgzly.android.ui.CommonViewModel
+import com.orgzly.android.util.LogMajorEvents
+import kotlinx.coroutines.flow.map
+import java.util.*
+
+class QueryProfilesViewModel(
+        private val dataRepository: DataRepository,
+        appLogsRepository: AppLogsRepository
+) : CommonViewModel() {
+
+    private val entries = appLogsRepository.getFlow(LogMajorEvents.QUERIES)
+
+    val logs = entries.map {
+        it.map { logEntry ->
+            "${Date(logEntry.time)}\n${logEntry.message}"
+        }
+    }
+
+    /* Queries flagged the last time they were profiled. */
+    val flagged = entries.map {
+        it.associateBy { logEntry -> logEntry.message.substringBefore("\n") }
+                .values
+                .filter { logEntry -> FLAGS.any { flag -> logEntry.message.contains(flag) } }
+                .map { logEntry -> logEntry.message.lines().take(2).joinToString("\n") }
+    }
+
+    fun profileSavedSearches() {
+        App.EXECUTORS.diskIO().execute {
+            catchAndPostError {
+                dataRepository.profileSavedSearches()
+            }
+        }
+    }
+
+    companion object {
+        private val FLAGS = listOf(QueryProfiler.FULL_SCAN_FLAG, QueryProfiler.ORDER_BY_FLAG)
+    }
+}
@@ -0,0 +1,23 @@
+package com.orgzly.android.ui.logs
+
+import androidx.lifecycle.ViewModel
+import androidx.lifecycle.ViewModelProvider
+import com.orgzly.android.data.DataRepository
+import com.orgzly.android.data.logs.AppLogsRepository
+
+class QueryProfilesViewModelFactory(
+        private val dataRepository: DataRepository,
+        private val appLogsRepository: AppLogsRepository
+) : ViewModelProvider.Factory {
+
+    override fun <T : ViewModel> create(modelClass: Class<T>): T {
+        @Suppress("UNCHECKED_CAST")
+        return QueryProfilesViewModel(dataRepository, appLogsRepository) as T
+    }
+
+    companion object {
+        fun getInstance(dataRepository: DataRepository, appLogsRepository: AppLogsRepository): ViewModelProvider.Factory {
+            return QueryProfilesViewModelFactory(dataRepository, appLogsRepository)
+        }
+    }
+}
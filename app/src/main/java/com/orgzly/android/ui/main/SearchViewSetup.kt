@@ -12,6 +12,7 @@ import com.orgzly.android.query.Query
 import com.orgzly.android.query.user.DottedQueryBuilder
 import com.orgzly.android.ui.DisplayManager
 import com.orgzly.android.ui.notes.book.BookFragment
+import com.orgzly.android.ui.notes.query.search.SearchFragment
 
 
 /**
@@ -29,6 +30,15 @@ fun FragmentActivity.setupSearchView(menu: Menu) {
         return null
     }
 
+    fun getActiveSearchFragment(): SearchFragment? {
+        supportFragmentManager.findFragmentByTag(SearchFragment.FRAGMENT_TAG)?.let { searchFragment ->
+            if (searchFragment is SearchFragment && searchFragment.isVisible) {
+                return searchFragment
+            }
+        }
+        return null
+    }
+
     val activity = this
 
     val searchItem = menu.findItem(R.id.search_view)
@@ -76,6 +86,8 @@ fun FragmentActivity.setupSearchView(menu: Menu) {
 
     searchView.setOnQueryTextListener(object : SearchView.OnQueryTextListener {
         override fun onQueryTextChange(str: String?): Boolean {
+            // Search as you type, if search results are displayed
+            getActiveSearchFragment()?.liveSearch(str ?: "")
             return false
         }
 
@@ -9,7 +9,6 @@ import androidx.recyclerview.widget.DiffUtil
 import androidx.recyclerview.widget.RecyclerView
 import com.orgzly.R
 import com.orgzly.android.db.entity.Book
-import com.orgzly.android.db.entity.Note
 import com.orgzly.android.db.entity.NoteView
 import com.orgzly.android.prefs.AppPreferences
 import com.orgzly.android.ui.SelectableItemAdapter
@@ -25,7 +24,7 @@ class BookAdapter(
     private val clickListener: OnClickListener,
     private val inBook: Boolean
 ) :
-    ListAdapterWithHeaders<NoteView, RecyclerView.ViewHolder>(DIFF_CALLBACK, 1),
+    PagingDataAdapterWithHeaders<NoteView, RecyclerView.ViewHolder>(DIFF_CALLBACK, 1),
     SelectableItemAdapter {
 
     private var currentPreface: String? = null
@@ -37,15 +36,21 @@ class BookAdapter(
 
     private val noteViewHolderListener = object: NoteItemViewHolder.ClickListener {
         override fun onClick(view: View, position: Int) {
-            clickListener.onNoteClick(view, position, getItem(position))
+            peek(position)?.let { noteView ->
+                clickListener.onNoteClick(view, position, noteView)
+            }
         }
         override fun onLongClick(view: View, position: Int) {
-            clickListener.onNoteLongClick(view, position, getItem(position))
+            peek(position)?.let { noteView ->
+                clickListener.onNoteLongClick(view, position, noteView)
+            }
         }
     }
 
     inner class FoldedViewHolder(view: View) : RecyclerView.ViewHolder(view)
 
+    inner class PlaceholderViewHolder(view: View) : RecyclerView.ViewHolder(view)
+
     inner class PrefaceViewHolder(val binding: ItemPrefaceBinding) :
         RecyclerView.ViewHolder(binding.root) {
 
@@ -57,15 +62,14 @@ class BookAdapter(
     }
 
     override fun getItemViewType(position: Int): Int {
-        return when {
-            position == 0 -> R.layout.item_preface
-            isVisible(getItem(position).note) -> VISIBLE_ITEM_TYPE
-            else -> HIDDEN_ITEM_TYPE
+        if (position == 0) {
+            return R.layout.item_preface
         }
-    }
 
-    private fun isVisible(note: Note): Boolean {
-        return !inBook || note.position.foldedUnderId == 0L
+        val noteView = peek(position)
+
+        /* Notes hidden under folded ones are not paged. */
+        return if (noteView == null) PLACEHOLDER_ITEM_TYPE else VISIBLE_ITEM_TYPE
     }
 
     override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): RecyclerView.ViewHolder {
@@ -81,6 +85,15 @@ class BookAdapter(
                 FoldedViewHolder(View(context))
             }
 
+            PLACEHOLDER_ITEM_TYPE -> {
+                val binding = ItemHeadBinding.inflate(
+                    LayoutInflater.from(context), parent, false)
+
+                NoteItemViewBinder.setupSpacingForDensitySetting(context, binding)
+
+                PlaceholderViewHolder(binding.root.apply { visibility = View.INVISIBLE })
+            }
+
             else -> {
                 val binding = ItemHeadBinding.inflate(
                     LayoutInflater.from(context), parent, false)
@@ -105,9 +118,14 @@ class BookAdapter(
                 return
             }
 
+            h.itemViewType == PLACEHOLDER_ITEM_TYPE -> {
+                /* Loads the page with the note. */
+                getItem(position)
+            }
+
             else -> {
                 val holder = h as NoteItemViewHolder
-                val noteView = getItem(position)
+                val noteView = getItem(position) ?: return
                 val note = noteView.note
 
                 noteItemViewBinder.bind(holder, noteView)
@@ -119,7 +137,7 @@ class BookAdapter(
 
     override fun getItemId(position: Int): Long {
         return if (position > 0) {
-            getItem(position).note.id
+            peek(position)?.note?.id ?: placeholderItemId(position)
         } else {
             -1
         }
@@ -162,6 +180,15 @@ class BookAdapter(
 
         const val HIDDEN_ITEM_TYPE = 0 // Not used
         const val VISIBLE_ITEM_TYPE = 1
+        const val PLACEHOLDER_ITEM_TYPE = 2
+
+        /*
+         * Stable IDs must be unique, so placeholders get negative IDs by position.
+         * Note IDs are positive, -1 is reserved for the header.
+         */
+        private fun placeholderItemId(position: Int): Long {
+            return -(position + 2L)
+        }
 
         private val DIFF_CALLBACK: DiffUtil.ItemCallback<NoteView> =
             object : DiffUtil.ItemCallback<NoteView>() {
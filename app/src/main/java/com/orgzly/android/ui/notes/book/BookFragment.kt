@@ -78,6 +78,10 @@ class BookFragment :
 
     var currentBook: Book? = null
 
+    private var notesLoaded = false
+
+    private var pendingSpotlightPosition: Int? = null
+
     private var mBookId: Long = 0
 
     private val appBarBackPressHandler = object : OnBackPressedCallback(false) {
@@ -182,31 +186,32 @@ class BookFragment :
             }
         })
 
-        viewModel.data.observe(viewLifecycleOwner, Observer { data ->
-            if (BuildConfig.LOG_DEBUG)
-                LogUtils.d(TAG, "Observed data: book ${data.book} and ${data.notes?.size} notes")
-
-            val book = data.book
-            val notes = data.notes
+        viewModel.book.observe(viewLifecycleOwner, Observer<Book?> { book ->
+            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Observed book: $book")
 
             this.currentBook = book
 
             viewAdapter.setPreface(book)
 
-            if (notes != null) {
-                if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Submitting list")
-                viewAdapter.submitList(notes)
+            setFlipperDisplayedChild()
+        })
 
-                val ids = notes.mapTo(hashSetOf()) { it.note.id }
+        viewModel.notes.observe(viewLifecycleOwner, Observer { notes ->
+            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Submitting notes")
 
-                viewAdapter.getSelection().removeNonExistent(ids)
+            viewAdapter.submitData(viewLifecycleOwner.lifecycle, notes)
+        })
 
-                viewModel.appBar.toModeFromSelectionCount(viewAdapter.getSelection().count)
+        viewAdapter.addOnPagesUpdatedListener(onPagesUpdated)
 
-                scrollToNoteIfSet(arguments?.getLong(ARG_NOTE_ID, 0) ?: 0)
-            }
+        viewModel.visibleSelectedIdsEvent.observeSingle(viewLifecycleOwner, Observer { ids ->
+            viewAdapter.getSelection().removeNonExistent(ids)
+
+            viewModel.appBar.toModeFromSelectionCount(viewAdapter.getSelection().count)
+        })
 
-            setFlipperDisplayedChild(notes)
+        viewModel.notePositionEvent.observeSingle(viewLifecycleOwner, Observer { (noteId, position) ->
+            scrollToNote(noteId, position + 1) // Preface is the first item
         })
 
         viewModel.refileRequestEvent.observeSingle(viewLifecycleOwner, Observer {
@@ -279,16 +284,32 @@ class BookFragment :
         }
     }
 
-    private fun setFlipperDisplayedChild(notes: List<NoteView>?) {
+    private val onPagesUpdated: () -> Unit = {
+        if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Pages updated: ${viewAdapter.getDataItemCount()} notes")
+
+        notesLoaded = true
+
+        if (viewAdapter.getSelection().count > 0) {
+            viewModel.checkSelection(viewAdapter.getSelection().getIds())
+        }
+
+        scrollToNoteIfSet(arguments?.getLong(ARG_NOTE_ID, 0) ?: 0)
+
+        spotlightPendingPosition()
+
+        setFlipperDisplayedChild()
+    }
+
+    private fun setFlipperDisplayedChild() {
         if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG)
 
         if (currentBook == null) {
             viewModel.setFlipperDisplayedChild(BookViewModel.FlipperDisplayedChild.DOES_NOT_EXIST)
 
-        } else if (notes == null) {
+        } else if (!notesLoaded) {
             viewModel.setFlipperDisplayedChild(BookViewModel.FlipperDisplayedChild.LOADING)
 
-        } else if (notes.isNotEmpty() || viewAdapter.isPrefaceDisplayed()) {
+        } else if (viewAdapter.getDataItemCount() > 0 || viewAdapter.isPrefaceDisplayed()) {
             viewModel.setFlipperDisplayedChild(BookViewModel.FlipperDisplayedChild.LOADED)
 
         } else {
@@ -305,6 +326,10 @@ class BookFragment :
     override fun onDestroyView() {
         super.onDestroyView()
 
+        viewAdapter.removeOnPagesUpdatedListener(onPagesUpdated)
+
+        notesLoaded = false
+
         if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG)
     }
 
@@ -362,28 +387,35 @@ class BookFragment :
         if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, noteId)
 
         if (noteId > 0) {
-            val startedAt = System.currentTimeMillis()
+            /* Note might not be loaded, get its position from the database. */
+            viewModel.findNotePosition(noteId)
+        }
+    }
 
-            for (i in 0 until viewAdapter.itemCount) {
-                val id = viewAdapter.getItemId(i)
+    private fun scrollToNote(noteId: Long, position: Int) {
+        if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, noteId, position)
 
-                if (id == noteId) {
-                    scrollToPosition(i)
+        scrollToPosition(position)
 
-                    binding.fragmentBookRecyclerView.post {
-                        spotlightScrolledToView(i)
-                    }
+        /* Spotlight once the note is loaded. */
+        pendingSpotlightPosition = position
 
-                    /* Make sure we don't scroll again (for example after configuration change). */
-                    Handler().postDelayed({ arguments?.remove(ARG_NOTE_ID) }, 500)
+        binding.fragmentBookRecyclerView.post {
+            spotlightPendingPosition()
+        }
 
-                    break
-                }
-            }
+        /* Make sure we don't scroll again (for example after configuration change). */
+        Handler().postDelayed({ arguments?.remove(ARG_NOTE_ID) }, 500)
+    }
+
+    private fun spotlightPendingPosition() {
+        val position = pendingSpotlightPosition ?: return
+
+        if (viewAdapter.peek(position) != null) {
+            pendingSpotlightPosition = null
 
-            if (BuildConfig.LOG_DEBUG) {
-                val ms = System.currentTimeMillis() - startedAt
-                LogUtils.d(TAG, "Scrolling to note " + noteId + " took " + ms + "ms")
+            binding.fragmentBookRecyclerView.post {
+                spotlightScrolledToView(position)
             }
         }
     }
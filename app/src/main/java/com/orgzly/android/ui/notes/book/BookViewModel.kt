@@ -1,10 +1,16 @@
 package com.orgzly.android.ui.notes.book
 
-import androidx.lifecycle.MediatorLiveData
+import androidx.lifecycle.LiveData
 import androidx.lifecycle.MutableLiveData
-import androidx.lifecycle.Transformations
+import androidx.lifecycle.viewModelScope
+import androidx.paging.Pager
+import androidx.paging.PagingConfig
+import androidx.paging.PagingData
+import androidx.paging.cachedIn
+import androidx.paging.liveData
 import com.orgzly.android.App
 import com.orgzly.android.data.DataRepository
+import com.orgzly.android.db.dao.NoteViewDao
 import com.orgzly.android.db.entity.Book
 import com.orgzly.android.db.entity.NoteView
 import com.orgzly.android.ui.CommonViewModel
@@ -15,10 +21,6 @@ import com.orgzly.android.usecase.UseCaseRunner
 
 class BookViewModel(private val dataRepository: DataRepository, val bookId: Long) : CommonViewModel() {
 
-    private data class Params(val noteId: Long? = null)
-
-    private val params = MutableLiveData<Params>(Params())
-
     enum class FlipperDisplayedChild {
         LOADING,
         LOADED,
@@ -32,23 +34,45 @@ class BookViewModel(private val dataRepository: DataRepository, val bookId: Long
         flipperDisplayedChild.value = child
     }
 
-    data class Data(val book: Book?, val notes: List<NoteView>?)
+    val book: LiveData<Book> = dataRepository.getBookLiveData(bookId)
 
-    val data = Transformations.switchMap(params) { _ ->
-        MediatorLiveData<Data>().apply {
-            addSource(dataRepository.getBookLiveData(bookId)) {
-                value = Data(it, value?.notes)
+    /* Only the notes around the displayed ones are loaded. */
+    val notes: LiveData<PagingData<NoteView>> = Pager(
+            config = PagingConfig(
+                    pageSize = PAGE_SIZE,
+                    enablePlaceholders = true,
+                    jumpThreshold = PAGE_SIZE * 3),
+            pagingSourceFactory = {
+                dataRepository.getVisibleNotesPagingSource(bookId, NoteViewDao.Projection.LIST_ITEM)
             }
-            addSource(dataRepository.getVisibleNotesLiveData(bookId)) {
-                value = Data(value?.book, it)
+    ).liveData.cachedIn(viewModelScope)
+
+    val notePositionEvent: SingleLiveEvent<Pair<Long, Int>> = SingleLiveEvent()
+
+    /** Finds the position of the note in the list, if it is visible. */
+    fun findNotePosition(noteId: Long) {
+        App.EXECUTORS.diskIO().execute {
+            dataRepository.getVisibleNotePosition(bookId, noteId)?.let { position ->
+                notePositionEvent.postValue(Pair(noteId, position))
             }
         }
     }
 
+    val visibleSelectedIdsEvent: SingleLiveEvent<Set<Long>> = SingleLiveEvent()
+
+    /** Finds which of the selected notes are still visible, as not all of them are loaded. */
+    fun checkSelection(ids: Set<Long>) {
+        App.EXECUTORS.diskIO().execute {
+            visibleSelectedIdsEvent.postValue(dataRepository.getVisibleNoteIds(bookId, ids))
+        }
+    }
+
     companion object {
         const val APP_BAR_DEFAULT_MODE = 0
         const val APP_BAR_SELECTION_MODE = 1
         const val APP_BAR_SELECTION_MOVE_MODE = 2
+
+        private const val PAGE_SIZE = 100
     }
 
     val appBar = AppBar(mapOf(
@@ -58,7 +82,7 @@ class BookViewModel(private val dataRepository: DataRepository, val bookId: Long
 
 
     fun cycleVisibility() {
-        data.value?.book?.let { book ->
+        book.value?.let { book ->
             App.EXECUTORS.diskIO().execute {
                 catchAndPostError {
                     UseCaseRunner.run(BookCycleVisibility(book))
@@ -1,34 +1,59 @@
 package com.orgzly.android.ui.notes.book
 
+import androidx.lifecycle.Lifecycle
+import androidx.paging.AsyncPagingDataDiffer
+import androidx.paging.ItemSnapshotList
+import androidx.paging.PagingData
 import androidx.recyclerview.widget.*
 import com.orgzly.BuildConfig
 import com.orgzly.android.util.LogUtils
 
-abstract class ListAdapterWithHeaders<T, VH : RecyclerView.ViewHolder>(
+abstract class PagingDataAdapterWithHeaders<T : Any, VH : RecyclerView.ViewHolder>(
         private val diffCallback: DiffUtil.ItemCallback<T>,
         private val headers: Int = 1
 ) : RecyclerView.Adapter<VH>() {
 
     private val differ by lazy {
-        AsyncListDiffer<T>(
-                ListUpdateWithHeadersCallback(this),
-                AsyncDifferConfig.Builder<T>(diffCallback).build())
+        AsyncPagingDataDiffer(diffCallback, ListUpdateWithHeadersCallback(this))
     }
 
-    fun submitList(list: List<T>?) {
-        differ.submitList(list)
+    fun submitData(lifecycle: Lifecycle, pagingData: PagingData<T>) {
+        differ.submitData(lifecycle, pagingData)
     }
 
-    fun getItem(position: Int): T {
-        return differ.currentList[position - headers]
+    /**
+     * Returns null for a placeholder and triggers loading of the items around it.
+     */
+    fun getItem(position: Int): T? {
+        return differ.getItem(position - headers)
+    }
+
+    /**
+     * Returns null for a placeholder, without triggering any loading.
+     */
+    fun peek(position: Int): T? {
+        return differ.peek(position - headers)
+    }
+
+    fun snapshot(): ItemSnapshotList<T> {
+        return differ.snapshot()
+    }
+
+    fun addOnPagesUpdatedListener(listener: () -> Unit) {
+        differ.addOnPagesUpdatedListener(listener)
+    }
+
+    fun removeOnPagesUpdatedListener(listener: () -> Unit) {
+        differ.removeOnPagesUpdatedListener(listener)
     }
 
     override fun getItemCount(): Int {
-        return differ.currentList.size + headers
+        return differ.itemCount + headers
     }
 
+    /** Number of items, including placeholders. */
     fun getDataItemCount(): Int {
-        return differ.currentList.size
+        return differ.itemCount
     }
 
     inner class ListUpdateWithHeadersCallback(
@@ -57,6 +82,6 @@ abstract class ListAdapterWithHeaders<T, VH : RecyclerView.ViewHolder>(
     }
 
     companion object {
-        private val TAG = ListAdapterWithHeaders::class.java.name
+        private val TAG = PagingDataAdapterWithHeaders::class.java.name
     }
-}
\ No newline at end of file
+}
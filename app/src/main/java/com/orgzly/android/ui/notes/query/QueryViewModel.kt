@@ -3,12 +3,32 @@ package com.orgzly.android.ui.notes.query
 import androidx.lifecycle.LiveData
 import androidx.lifecycle.MutableLiveData
 import androidx.lifecycle.Transformations
+import androidx.lifecycle.asFlow
+import androidx.lifecycle.asLiveData
+import androidx.lifecycle.liveData
+import androidx.lifecycle.viewModelScope
+import androidx.paging.Pager
+import androidx.paging.PagingConfig
+import androidx.paging.PagingData
+import androidx.paging.cachedIn
+import androidx.paging.liveData
 import com.orgzly.BuildConfig
 import com.orgzly.android.data.DataRepository
 import com.orgzly.android.db.entity.NoteView
 import com.orgzly.android.ui.AppBar
 import com.orgzly.android.ui.CommonViewModel
+import com.orgzly.android.ui.notes.query.agenda.AgendaItem
+import com.orgzly.android.ui.notes.query.agenda.AgendaItems
+import com.orgzly.android.ui.notes.query.search.LiveSearch
 import com.orgzly.android.util.LogUtils
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.mapLatest
 
 
 class QueryViewModel(private val dataRepository: DataRepository) : CommonViewModel() {
@@ -41,6 +61,72 @@ class QueryViewModel(private val dataRepository: DataRepository) : CommonViewMod
         }
     }
 
+    data class AgendaData(
+            val notes: List<NoteView>,
+            val items: List<AgendaItem>,
+            val item2databaseIds: Map<Long, Long>)
+
+    /*
+     * Agenda items for the notes.
+     * Stored occurrences are updated and read in the background, as that writes to the database.
+     */
+    val agendaData: LiveData<AgendaData> = Transformations.switchMap(data) { notes ->
+        val query = notesParams.value?.query
+
+        liveData(Dispatchers.IO) {
+            val item2databaseIds = hashMapOf<Long, Long>()
+
+            val items = AgendaItems.getList(dataRepository, notes, query, item2databaseIds)
+
+            emit(AgendaData(notes, items, item2databaseIds))
+        }
+    }
+
+    /* Query results. Only the notes around the displayed ones are loaded. */
+    private val pagedData: LiveData<PagingData<NoteView>> = Transformations.switchMap(notesParams) { params ->
+        if (params.query != null) {
+            Pager(
+                    config = PagingConfig(
+                            pageSize = PAGE_SIZE,
+                            enablePlaceholders = true,
+                            jumpThreshold = PAGE_SIZE * 3),
+                    pagingSourceFactory = {
+                        dataRepository.selectNotesFromQueryPagingSource(params.query)
+                    }
+            ).liveData
+        } else {
+            MutableLiveData<PagingData<NoteView>>()
+        }
+    }.cachedIn(viewModelScope)
+
+    private val liveSearch = LiveSearch(dataRepository)
+
+    private val liveSearchParams = MutableStateFlow<Params?>(null)
+
+    /*
+     * Search results: results of the query being typed, once typing pauses,
+     * or query results when not searching as the query is typed.
+     *
+     * Single stream, so the latest value is always the one to display.
+     * Search still running when the query changes again is cancelled.
+     */
+    @OptIn(FlowPreview::class, ExperimentalCoroutinesApi::class)
+    val searchData: LiveData<PagingData<NoteView>> = liveSearchParams
+            .debounce { params -> if (params != null) LIVE_SEARCH_DEBOUNCE_MS else 0L }
+            .mapLatest { params ->
+                params?.query?.let { query ->
+                    PagingData.from(liveSearch.search(query, params.defaultPriority))
+                }
+            }
+            .flatMapLatest { liveSearchResults ->
+                if (liveSearchResults != null) {
+                    flowOf(liveSearchResults)
+                } else {
+                    pagedData.asFlow()
+                }
+            }
+            .asLiveData()
+
     val appBar: AppBar = AppBar(mapOf(
         APP_BAR_DEFAULT_MODE to null,
         APP_BAR_SELECTION_MODE to APP_BAR_DEFAULT_MODE))
@@ -53,10 +139,19 @@ class QueryViewModel(private val dataRepository: DataRepository) : CommonViewMod
         }
     }
 
+    /* Searches as the query is typed. Stops searching if query is null. */
+    fun liveSearch(query: String?, defaultPriority: String) {
+        liveSearchParams.value = query?.let { Params(it, defaultPriority) }
+    }
+
     companion object {
         private val TAG = QueryViewModel::class.java.name
 
         const val APP_BAR_DEFAULT_MODE = 0
         const val APP_BAR_SELECTION_MODE = 1
+
+        private const val PAGE_SIZE = 100
+
+        private const val LIVE_SEARCH_DEBOUNCE_MS = 300L
     }
 }
\ No newline at end of file
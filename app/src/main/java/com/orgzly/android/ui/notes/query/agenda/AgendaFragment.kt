@@ -226,17 +226,18 @@ class AgendaFragment : QueryFragment(), OnViewHolderClickListener<AgendaItem> {
             }
         })
 
-        viewModel.data.observe(viewLifecycleOwner, Observer { notes ->
-            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Observed notes: ${notes.size}")
+        viewModel.agendaData.observe(viewLifecycleOwner, Observer { agendaData ->
+            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Observed notes: ${agendaData.notes.size}")
 
-            val items = AgendaItems.getList(notes, currentQuery, item2databaseIds)
+            item2databaseIds.clear()
+            item2databaseIds.putAll(agendaData.item2databaseIds)
 
             if (BuildConfig.LOG_DEBUG)
-                LogUtils.d(TAG, "Replacing data with ${items.size} agenda items")
+                LogUtils.d(TAG, "Replacing data with ${agendaData.items.size} agenda items")
 
-            viewAdapter.submitList(items)
+            viewAdapter.submitList(agendaData.items)
 
-            val ids = notes.mapTo(hashSetOf()) { it.note.id }
+            val ids = agendaData.notes.mapTo(hashSetOf()) { it.note.id }
 
             viewAdapter.getSelection().removeNonExistent(ids)
 
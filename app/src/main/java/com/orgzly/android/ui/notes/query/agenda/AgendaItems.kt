@@ -1,10 +1,10 @@
 package com.orgzly.android.ui.notes.query.agenda
 
+import com.orgzly.android.data.DataRepository
+import com.orgzly.android.db.entity.AgendaOccurrence
 import com.orgzly.android.db.entity.NoteView
 import com.orgzly.android.query.Query
-import com.orgzly.android.query.user.InternalQueryParser
 import com.orgzly.android.ui.TimeType
-import com.orgzly.android.util.AgendaUtils
 import com.orgzly.org.datetime.OrgInterval
 import com.orgzly.org.datetime.OrgRange
 import org.joda.time.DateTime
@@ -36,15 +36,16 @@ object AgendaItems {
     }
 
     fun getList(
-            notes: List<NoteView>, queryString: String?, idMap: MutableMap<Long, Long>
+            dataRepository: DataRepository,
+            notes: List<NoteView>,
+            queryString: String?,
+            idMap: MutableMap<Long, Long>
     ): List<AgendaItem> {
 
         return if (queryString != null) {
-            val parser = InternalQueryParser()
-
-            val query = parser.parse(queryString)
+            val query = dataRepository.parseQuery(queryString)
 
-            getList(notes, query, idMap)
+            getList(dataRepository, notes, query, idMap)
 
         } else {
             listOf()
@@ -52,13 +53,17 @@ object AgendaItems {
     }
 
     fun getList(
-            notes: List<NoteView>, query: Query, item2databaseIds: MutableMap<Long, Long>
+            dataRepository: DataRepository,
+            notes: List<NoteView>,
+            query: Query,
+            item2databaseIds: MutableMap<Long, Long>
     ): List<AgendaItem> {
 
-        return getList(notes, item2databaseIds, query.options.agendaDays)
+        return getList(dataRepository, notes, item2databaseIds, query.options.agendaDays)
     }
 
     private fun getList(
+            dataRepository: DataRepository,
             notes: List<NoteView>,
             item2databaseIds: MutableMap<Long, Long>,
             agendaDays: Int
@@ -76,33 +81,35 @@ object AgendaItems {
                 .map { i -> now.plusDays(i) }
                 .associateBy({ it.millis }, { mutableListOf<AgendaItem>() })
 
-        val addedPlanningTimes = HashSet<Long>()
-
-        fun addInstances(note: NoteView, timeType: TimeType, timeString: String) {
-            val range = OrgRange.parseOrNull(timeString) ?: return
-
-            if (!range.startTime.isActive) {
-                return
-            }
+        val occurrences = dataRepository.getAgendaOccurrences(agendaDays)
 
-            val expandable = ExpandableOrgRange.fromRange(timeType, range)
+        // Scheduled before deadline, as they were always added in that order
+        val planningOccurrences = occurrences
+                .filter { it.timeType != TimeType.EVENT }
+                .sortedBy { it.timeType }
+                .groupBy { it.noteId }
 
-            val times = AgendaUtils.expandOrgDateTime(expandable, now, agendaDays)
+        // Notes are listed once per event, matched by event's start
+        val eventOccurrences = occurrences
+                .filter { it.timeType == TimeType.EVENT }
+                .groupBy { Pair(it.noteId, it.timestamp) }
 
-            if (times.isOverdueToday) {
-                overdueNotes.add(AgendaItem.Note(agendaItemId, note, timeType))
-                item2databaseIds[agendaItemId] = note.note.id
-                agendaItemId++
-            }
-
-            // Add each note instance to its day bucket
-            times.expanded.forEach { time ->
-                val bucketKey = time.withTimeAtStartOfDay().millis
+        val addedPlanningTimes = HashSet<Long>()
 
-                dailyNotes[bucketKey]?.let {
-                    it.add(AgendaItem.Note(agendaItemId, note, timeType))
+        fun addInstances(note: NoteView, noteOccurrences: List<AgendaOccurrence>?) {
+            noteOccurrences?.forEach { occurrence ->
+                if (occurrence.day == AgendaOccurrence.OVERDUE) {
+                    overdueNotes.add(AgendaItem.Note(agendaItemId, note, occurrence.timeType))
                     item2databaseIds[agendaItemId] = note.note.id
                     agendaItemId++
+
+                } else {
+                    // Add note instance to its day bucket
+                    dailyNotes[occurrence.day]?.let {
+                        it.add(AgendaItem.Note(agendaItemId, note, occurrence.timeType))
+                        item2databaseIds[agendaItemId] = note.note.id
+                        agendaItemId++
+                    }
                 }
             }
         }
@@ -110,19 +117,14 @@ object AgendaItems {
         notes.forEach { note ->
             // Add planning times for a note only once
             if (!addedPlanningTimes.contains(note.note.id)) {
-                note.scheduledRangeString?.let {
-                    addInstances(note, TimeType.SCHEDULED, it)
-                }
-                note.deadlineRangeString?.let {
-                    addInstances(note, TimeType.DEADLINE, it)
-                }
+                addInstances(note, planningOccurrences[note.note.id])
 
                 addedPlanningTimes.add(note.note.id)
             }
 
             // Add each note's event
-            note.eventString?.let {
-                addInstances(note, TimeType.EVENT, it)
+            note.eventTimestamp?.let {
+                addInstances(note, eventOccurrences[Pair(note.note.id, it)])
             }
         }
 
@@ -0,0 +1,62 @@
+package com.orgzly.android.ui.notes.query.search
+
+import com.orgzly.BuildConfig
+import com.orgzly.android.data.DataRepository
+import com.orgzly.android.db.entity.NoteView
+import com.orgzly.android.query.Query
+import com.orgzly.android.query.QueryRefinement
+import com.orgzly.android.util.LogUtils
+
+/**
+ * Runs the query while it is being typed.
+ *
+ * Results of the last query are kept. If the next query only narrows it down,
+ * notes are selected from those results in memory, instead of querying the database.
+ */
+class LiveSearch(private val dataRepository: DataRepository) {
+
+    private data class Result(val query: Query, val notes: List<NoteView>, val isComplete: Boolean)
+
+    private var last: Result? = null
+
+    /**
+     * Returns up to [MAX_RESULTS] notes. Database query is stopped if the coroutine is cancelled,
+     * in which case the previous results are kept for the next query.
+     */
+    suspend fun search(queryString: String, defaultPriority: String): List<NoteView> {
+        val query = dataRepository.parseQuery(queryString)
+
+        val notes = filterLast(query, defaultPriority)
+                ?: dataRepository.selectNotesFromQueryCancellable(queryString, MAX_RESULTS + 1)
+
+        val result = Result(query, notes.take(MAX_RESULTS), notes.size <= MAX_RESULTS)
+
+        last = result
+
+        return result.notes
+    }
+
+    private fun filterLast(query: Query, defaultPriority: String): List<NoteView>? {
+        val result = last?.takeIf { it.isComplete } ?: return null
+
+        val conditions = QueryRefinement.conditionsAdded(result.query, query) ?: return null
+
+        val notes = result.notes.filter { note ->
+            conditions.all { condition ->
+                QueryRefinement.matches(note, condition, defaultPriority) ?: return null
+            }
+        }
+
+        if (BuildConfig.LOG_DEBUG)
+            LogUtils.d(TAG, "Filtered ${result.notes.size} notes in memory to ${notes.size}")
+
+        return notes
+    }
+
+    companion object {
+        private val TAG = LiveSearch::class.java.name
+
+        /** Only the first results are displayed while typing. */
+        const val MAX_RESULTS = 500
+    }
+}
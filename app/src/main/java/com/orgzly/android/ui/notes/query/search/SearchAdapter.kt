@@ -1,7 +1,7 @@
 package com.orgzly.android.ui.notes.query.search
 
 import android.content.Context
-import androidx.recyclerview.widget.ListAdapter
+import androidx.paging.PagingDataAdapter
 import androidx.recyclerview.widget.DiffUtil
 import android.view.LayoutInflater
 import android.view.View
@@ -18,7 +18,7 @@ import com.orgzly.databinding.ItemHeadBinding
 class SearchAdapter(
         private val context: Context,
         private val clickListener: OnViewHolderClickListener<NoteView>
-) :ListAdapter<NoteView, RecyclerView.ViewHolder>(DIFF_CALLBACK), SelectableItemAdapter {
+) : PagingDataAdapter<NoteView, RecyclerView.ViewHolder>(DIFF_CALLBACK), SelectableItemAdapter {
 
     private val adapterSelection: Selection = Selection()
 
@@ -26,25 +26,40 @@ class SearchAdapter(
 
     private val viewHolderListener = object: NoteItemViewHolder.ClickListener {
         override fun onClick(view: View, position: Int) {
-            clickListener.onClick(view, position, getItem(position))
+            peek(position)?.let { noteView ->
+                clickListener.onClick(view, position, noteView)
+            }
         }
         override fun onLongClick(view: View, position: Int) {
-            clickListener.onLongClick(view, position, getItem(position))
+            peek(position)?.let { noteView ->
+                clickListener.onLongClick(view, position, noteView)
+            }
         }
     }
 
+    inner class PlaceholderViewHolder(view: View) : RecyclerView.ViewHolder(view)
+
+    override fun getItemViewType(position: Int): Int {
+        return if (peek(position) != null) NOTE_ITEM_TYPE else PLACEHOLDER_ITEM_TYPE
+    }
+
     override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): RecyclerView.ViewHolder {
         val binding = ItemHeadBinding.inflate(LayoutInflater.from(context), parent, false)
 
         NoteItemViewBinder.setupSpacingForDensitySetting(context, binding)
 
-        return NoteItemViewHolder(binding, viewHolderListener)
+        return if (viewType == PLACEHOLDER_ITEM_TYPE) {
+            PlaceholderViewHolder(binding.root.apply { visibility = View.INVISIBLE })
+        } else {
+            NoteItemViewHolder(binding, viewHolderListener)
+        }
     }
 
     override fun onBindViewHolder(h: RecyclerView.ViewHolder, position: Int) {
-        val holder = h as NoteItemViewHolder
+        /* Loads the page with the note for placeholders. */
+        val noteView = getItem(position) ?: return
 
-        val noteView = getItem(position)
+        val holder = h as NoteItemViewHolder
 
         val note = noteView.note
 
@@ -54,7 +69,7 @@ class SearchAdapter(
     }
 
     override fun getItemId(position: Int): Long {
-        return getItem(position).note.id
+        return peek(position)?.note?.id ?: placeholderItemId(position)
     }
 
     override fun getSelection(): Selection {
@@ -71,6 +86,14 @@ class SearchAdapter(
     companion object {
         private val TAG = SearchAdapter::class.java.name
 
+        private const val NOTE_ITEM_TYPE = 0
+        private const val PLACEHOLDER_ITEM_TYPE = 1
+
+        /* Unique for stable IDs, never clashing with (positive) note IDs. */
+        private fun placeholderItemId(position: Int): Long {
+            return -(position + 2L)
+        }
+
         private val DIFF_CALLBACK: DiffUtil.ItemCallback<NoteView> =
                 object : DiffUtil.ItemCallback<NoteView>() {
                     override fun areItemsTheSame(oldItem: NoteView, newItem: NoteView): Boolean {
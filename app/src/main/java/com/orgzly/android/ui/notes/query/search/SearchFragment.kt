@@ -223,18 +223,14 @@ class SearchFragment : QueryFragment(), OnViewHolderClickListener<NoteView> {
             }
         })
 
-        viewModel.data.observe(viewLifecycleOwner, Observer { notes ->
-            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Observed notes: ${notes.size}")
+        viewModel.searchData.observe(viewLifecycleOwner, Observer { notes ->
+            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Submitting notes")
 
-            viewAdapter.submitList(notes)
-
-            val ids = notes.mapTo(hashSetOf()) { it.note.id }
-
-            viewAdapter.getSelection().removeNonExistent(ids)
-
-            viewModel.appBar.toModeFromSelectionCount(viewAdapter.getSelection().count)
+            viewAdapter.submitData(viewLifecycleOwner.lifecycle, notes)
         })
 
+        viewAdapter.addOnPagesUpdatedListener(onPagesUpdated)
+
         viewModel.refresh(currentQuery, AppPreferences.defaultPriority(context))
 
         viewModel.appBar.mode.observeSingle(viewLifecycleOwner) { mode ->
@@ -260,6 +256,40 @@ class SearchFragment : QueryFragment(), OnViewHolderClickListener<NoteView> {
         }
     }
 
+    /**
+     * Displays notes found by the query being typed in the search box.
+     * Once the box is cleared, notes of the current query are displayed again.
+     */
+    fun liveSearch(query: String) {
+        if (query.isNotBlank()) {
+            viewModel.liveSearch(query.trim(), AppPreferences.defaultPriority(context))
+
+        } else {
+            viewModel.liveSearch(null, AppPreferences.defaultPriority(context))
+        }
+    }
+
+    private val onPagesUpdated: () -> Unit = {
+        if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Pages updated: ${viewAdapter.itemCount} notes")
+
+        viewModel.viewState.value = if (viewAdapter.itemCount > 0) {
+            QueryViewModel.ViewState.LOADED
+        } else {
+            QueryViewModel.ViewState.EMPTY
+        }
+
+        /* Deselect notes no longer in results, once they are all loaded. */
+        viewAdapter.snapshot().let { snapshot ->
+            if (snapshot.placeholdersBefore == 0 && snapshot.placeholdersAfter == 0) {
+                val ids = snapshot.items.mapTo(hashSetOf()) { it.note.id }
+
+                viewAdapter.getSelection().removeNonExistent(ids)
+
+                viewModel.appBar.toModeFromSelectionCount(viewAdapter.getSelection().count)
+            }
+        }
+    }
+
     override fun onClick(view: View, position: Int, item: NoteView) {
         if (!AppPreferences.isReverseNoteClickAction(context)) {
             if (viewAdapter.getSelection().count > 0) {
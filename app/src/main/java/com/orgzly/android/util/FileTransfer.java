@@ -0,0 +1,114 @@
+package com.orgzly.android.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Copying of books' content between files and streams.
+ *
+ * Files are copied by channels, leaving the copying to the kernel where possible.
+ * Streams (such as documents' descriptors) are copied using large buffers.
+ */
+public class FileTransfer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /**
+     * Copies the file, overwriting the destination.
+     */
+    public static void copy(File src, File dst) throws IOException {
+        try (FileInputStream in = new FileInputStream(src);
+             FileOutputStream out = new FileOutputStream(dst)) {
+
+            transfer(in.getChannel(), out.getChannel());
+        }
+    }
+
+    /**
+     * Copies the file to a temporary file next to the destination, then renames it.
+     * Destination is either left as it was or replaced with the complete copy.
+     */
+    public static void copyAtomically(File src, File dst) throws IOException {
+        File dir = dst.getAbsoluteFile().getParentFile();
+
+        File tmp = File.createTempFile("." + dst.getName() + ".", TEMP_FILE_SUFFIX, dir);
+
+        try {
+            try (FileInputStream in = new FileInputStream(src);
+                 FileOutputStream out = new FileOutputStream(tmp)) {
+
+                transfer(in.getChannel(), out.getChannel());
+
+                /* Make sure content is on disk before it replaces the destination. */
+                out.getChannel().force(true);
+            }
+
+            if (!tmp.renameTo(dst)) {
+                throw new IOException("Failed renaming " + tmp + " to " + dst);
+            }
+
+        } finally {
+            if (tmp.exists()) {
+                tmp.delete();
+            }
+        }
+    }
+
+    public static void copy(InputStream in, File dst) throws IOException {
+        try (OutputStream out = new FileOutputStream(dst)) {
+            copy(in, out);
+        }
+    }
+
+    public static void copy(File src, OutputStream out) throws IOException {
+        try (InputStream in = new FileInputStream(src)) {
+            copy(in, out);
+        }
+    }
+
+    public static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            out.write(buffer, 0, len);
+        }
+    }
+
+    /**
+     * Reads the entire file, decoding it using the default charset.
+     */
+    public static String readString(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(file.length(), Integer.MAX_VALUE - 8));
+
+            copy(in, out);
+
+            return out.toString(Charset.defaultCharset().name());
+        }
+    }
+
+    /* transferTo can copy less than requested, so loop until the end. */
+    private static void transfer(FileChannel src, FileChannel dst) throws IOException {
+        long size = src.size();
+        long position = 0;
+
+        while (position < size) {
+            long transferred = src.transferTo(position, size - position, dst);
+
+            /* File was truncated meanwhile. */
+            if (transferred == 0 && position >= src.size()) {
+                break;
+            }
+
+            position += transferred;
+        }
+    }
+}
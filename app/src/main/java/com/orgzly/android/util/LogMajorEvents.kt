@@ -14,6 +14,8 @@ class LogMajorEvents {
 
         const val REMINDERS = "reminders"
 
+        const val QUERIES = "queries"
+
         fun isEnabled(): Boolean {
             return AppPreferences.logMajorEvents(App.getAppContext())
         }
@@ -15,7 +15,6 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
@@ -51,16 +50,7 @@ public class MiscUtils {
     }
 
     public static String readStringFromFile(File file) throws IOException {
-        StringBuffer fileData = new StringBuffer();
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        char[] buf = new char[1024];
-        int numRead;
-        while ((numRead = reader.read(buf)) != -1) {
-            String readData = String.valueOf(buf, 0, numRead);
-            fileData.append(readData);
-        }
-        reader.close();
-        return fileData.toString();
+        return FileTransfer.readString(file);
     }
 
     public static void writeStringToFile(String str, File file) throws FileNotFoundException {
@@ -120,30 +110,11 @@ public class MiscUtils {
     }
 
     public static void writeStreamToFile(InputStream in, File file) throws IOException {
-        OutputStream out = new FileOutputStream(file);
-        try {
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = in.read(buffer, 0, buffer.length)) != -1) {
-                out.write(buffer, 0, len);
-            }
-        } finally {
-            out.close();
-        }
+        FileTransfer.copy(in, file);
     }
 
     public static void writeFileToStream(File file, OutputStream out) throws IOException {
-        InputStream in = new FileInputStream(file);
-        try {
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = in.read(buffer, 0, buffer.length)) != -1) {
-                out.write(buffer, 0, len);
-            }
-
-        } finally {
-            in.close();
-        }
+        FileTransfer.copy(file, out);
     }
 
     /**
@@ -153,6 +124,34 @@ public class MiscUtils {
         return "“" + str + "”";
     }
 
+    /**
+     * SHA-1 of the file's content, as a hex string.
+     */
+    public static String sha1(File file) throws IOException {
+        MessageDigest md;
+
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+
+        return sb.toString();
+    }
+
     public static long sha1(String s) {
         long l = 0L;
 
@@ -175,16 +174,7 @@ public class MiscUtils {
     }
 
     public static void copyFile(File src, File dst) throws IOException {
-        InputStream in = new FileInputStream(src);
-        OutputStream out = new FileOutputStream(dst);
-
-        byte[] buf = new byte[1024];
-        int len;
-        while ((len = in.read(buf)) > 0) {
-            out.write(buf, 0, len);
-        }
-        in.close();
-        out.close();
+        FileTransfer.copy(src, dst);
     }
 
     /**
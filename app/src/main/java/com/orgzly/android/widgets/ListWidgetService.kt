@@ -14,7 +14,6 @@ import com.orgzly.android.data.DataRepository
 import com.orgzly.android.db.entity.NoteView
 import com.orgzly.android.prefs.AppPreferences
 import com.orgzly.android.query.Query
-import com.orgzly.android.query.user.InternalQueryParser
 import com.orgzly.android.ui.TimeType
 import com.orgzly.android.ui.notes.query.agenda.AgendaItem
 import com.orgzly.android.ui.notes.query.agenda.AgendaItems
@@ -61,8 +60,7 @@ class ListWidgetService : RemoteViewsService() {
     ) : RemoteViewsFactory {
 
         private val query: Query by lazy {
-            val parser = InternalQueryParser()
-            parser.parse(queryString)
+            dataRepository.parseQuery(queryString)
         }
 
         private val userTimeFormatter by lazy {
@@ -86,11 +84,11 @@ class ListWidgetService : RemoteViewsService() {
         override fun onDataSetChanged() {
             if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG)
 
-            val notes = dataRepository.selectNotesFromQuery(query)
+            val notes = dataRepository.selectNotesFromQuery(queryString)
 
             if (query.isAgenda()) {
                 val idMap = mutableMapOf<Long, Long>()
-                val agendaItems = AgendaItems.getList(notes, query, idMap)
+                val agendaItems = AgendaItems.getList(dataRepository, notes, query, idMap)
 
                 dataList = agendaItems.map {
                     when (it) {